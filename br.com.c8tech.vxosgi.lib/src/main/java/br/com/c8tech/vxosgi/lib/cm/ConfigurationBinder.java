@@ -0,0 +1,45 @@
+/**
+ * ==========================================================================
+ * Copyright © 2015-2019 Cristiano Gavião, C8 Technology ME.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Cristiano Gavião (cvgaviao@c8tech.com.br)- initial API and implementation
+ * ==========================================================================
+ */
+package br.com.c8tech.vxosgi.lib.cm;
+
+import java.util.Dictionary;
+
+import org.osgi.annotation.versioning.ConsumerType;
+
+/**
+ * Reads the properties of a configuration into an object of a configuration
+ * type.
+ * <p>
+ * The implementations are usually generated for the types annotated with
+ * {@link ConfigurationBinding} and found by {@link ConfigurationBinders}.
+ *
+ * @param <T>
+ *            the configuration type.
+ *
+ * @since 0.1.1
+ * @author Cristiano Gavião
+ *
+ */
+@ConsumerType
+public interface ConfigurationBinder<T> {
+
+    /**
+     * Binds the properties.
+     *
+     * @param pProperties
+     *            the configuration properties.
+     * @return the object of the configuration type.
+     */
+    T bind(Dictionary<String, ?> pProperties);
+}
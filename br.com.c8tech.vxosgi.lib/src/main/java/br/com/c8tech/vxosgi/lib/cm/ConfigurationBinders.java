@@ -0,0 +1,144 @@
+/**
+ * ==========================================================================
+ * Copyright © 2015-2019 Cristiano Gavião, C8 Technology ME.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Cristiano Gavião (cvgaviao@c8tech.com.br)- initial API and implementation
+ * ==========================================================================
+ */
+package br.com.c8tech.vxosgi.lib.cm;
+
+import java.util.Dictionary;
+import java.util.Hashtable;
+
+import org.osgi.annotation.versioning.ProviderType;
+import org.osgi.util.converter.Converters;
+
+/**
+ * Finds the {@link ConfigurationBinder} of a configuration type.
+ * <p>
+ * The binder generated for a type annotated with
+ * {@link ConfigurationBinding} is used when it is found, otherwise the
+ * properties are converted reflectively by the standard converter. The
+ * binder of each type is looked up once.
+ *
+ * @since 0.1.1
+ * @author Cristiano Gavião
+ *
+ */
+@ProviderType
+public final class ConfigurationBinders {
+
+    /**
+     * Binds a type using the standard converter, which proxies the
+     * configuration type and converts the values on each call.
+     */
+    private static final class ReflectiveBinder<T>
+            implements ConfigurationBinder<T> {
+
+        private final Class<T> type;
+
+        private ReflectiveBinder(Class<T> pType) {
+            type = pType;
+        }
+
+        @Override
+        public T bind(Dictionary<String, ?> pProperties) {
+            return Converters.standardConverter().convert(pProperties)
+                    .to(type);
+        }
+    }
+
+    /**
+     * The suffix appended to the name of a configuration type to name its
+     * generated binder.
+     */
+    public static final String BINDER_SUFFIX = "Binder";
+
+    private static final ClassValue<ConfigurationBinder<?>> BINDERS = new ClassValue<ConfigurationBinder<?>>() {
+
+        @Override
+        protected ConfigurationBinder<?> computeValue(Class<?> pType) {
+            return lookup(pType);
+        }
+    };
+
+    private ConfigurationBinders() {
+    }
+
+    /**
+     * Binds the properties of a configuration to an object of the specified
+     * type.
+     *
+     * @param pType
+     *            the configuration type.
+     * @param pProperties
+     *            the configuration properties, it can be null.
+     * @return the object of the configuration type.
+     */
+    public static <T> T bind(Class<T> pType,
+            Dictionary<String, ?> pProperties) {
+        return binderOf(pType).bind(
+                pProperties != null ? pProperties : new Hashtable<>());
+    }
+
+    /**
+     * Returns the binder of a configuration type.
+     *
+     * @param pType
+     *            the configuration type.
+     * @return the generated binder or the reflective one when no binder was
+     *         generated.
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> ConfigurationBinder<T> binderOf(Class<T> pType) {
+        return (ConfigurationBinder<T>) BINDERS.get(pType);
+    }
+
+    /**
+     * Returns the name of the binder generated for a configuration type.
+     *
+     * @param pBinaryName
+     *            the binary name of the configuration type.
+     * @return the binary name of its binder.
+     */
+    public static String binderName(String pBinaryName) {
+        int simpleNameStart = pBinaryName.lastIndexOf('.') + 1;
+        return pBinaryName.substring(0, simpleNameStart)
+                + pBinaryName.substring(simpleNameStart).replace('$', '_')
+                + BINDER_SUFFIX;
+    }
+
+    /**
+     * @param pType
+     *            the configuration type.
+     * @return true if the type is bound by a generated binder.
+     */
+    public static boolean isGenerated(Class<?> pType) {
+        return !(BINDERS.get(pType) instanceof ReflectiveBinder);
+    }
+
+    private static <T> ConfigurationBinder<?> lookup(Class<T> pType) {
+        ClassLoader classLoader = pType.getClassLoader();
+        if (classLoader != null) {
+            try {
+                Class<?> binderClass = classLoader
+                        .loadClass(binderName(pType.getName()));
+                if (ConfigurationBinder.class.isAssignableFrom(binderClass)) {
+                    return (ConfigurationBinder<?>) binderClass
+                            .getConstructor().newInstance();
+                }
+            } catch (ClassNotFoundException e) { // NOSONAR
+                // not generated, the type is bound reflectively
+            } catch (ReflectiveOperationException | LinkageError e) { // NOSONAR
+                // a stale binder, the type is bound reflectively
+            }
+        }
+        return new ReflectiveBinder<>(pType);
+    }
+}
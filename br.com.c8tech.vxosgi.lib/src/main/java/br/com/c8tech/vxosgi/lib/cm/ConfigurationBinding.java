@@ -0,0 +1,46 @@
+/**
+ * ==========================================================================
+ * Copyright © 2015-2019 Cristiano Gavião, C8 Technology ME.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Cristiano Gavião (cvgaviao@c8tech.com.br)- initial API and implementation
+ * ==========================================================================
+ */
+package br.com.c8tech.vxosgi.lib.cm;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a configuration type, an interface or a component property type
+ * annotation, whose {@link ConfigurationBinder} must be generated at build
+ * time by the annotation processor shipped with this library.
+ * <p>
+ * The generated binder reads each property into a field of an immutable
+ * object without reflection. The property names follow the rules of the
+ * Declarative Services component property types: {@code _} is mapped to
+ * {@code .}, {@code __} to {@code _}, {@code $$} to {@code $} and a single
+ * {@code $} is removed.
+ * <p>
+ * The members can return {@code String}, the primitive types and their
+ * wrappers, enums and arrays of {@code String}, {@code int}, {@code long},
+ * {@code double} and {@code boolean}. Types using other members are bound
+ * reflectively by {@link ConfigurationBinders}.
+ *
+ * @since 0.1.1
+ * @author Cristiano Gavião
+ *
+ */
+@Documented
+@Retention(RetentionPolicy.CLASS)
+@Target(ElementType.TYPE)
+public @interface ConfigurationBinding {
+}
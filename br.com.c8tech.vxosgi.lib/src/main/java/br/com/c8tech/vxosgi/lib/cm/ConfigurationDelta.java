@@ -0,0 +1,206 @@
+/**
+ * ==========================================================================
+ * Copyright © 2015-2019 Cristiano Gavião, C8 Technology ME.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Cristiano Gavião (cvgaviao@c8tech.com.br)- initial API and implementation
+ * ==========================================================================
+ */
+package br.com.c8tech.vxosgi.lib.cm;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.osgi.annotation.versioning.ProviderType;
+
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+
+/**
+ * A versioned change of a configuration exchanged by the
+ * {@link ConfigurationReplication} of the nodes of a cluster.
+ * <p>
+ * A delta carries only the properties changed or removed since its base
+ * version, unless it is a full delta, which carries every property and can
+ * be applied on any version. Versions are ordered by their number and then
+ * by the id of the node where they were created, so concurrent changes of
+ * the same configuration are resolved the same way on every node.
+ *
+ * @since 0.1.1
+ * @author Cristiano Gavião
+ *
+ */
+@ProviderType
+public final class ConfigurationDelta {
+
+    private final String baseOrigin;
+
+    private final long baseVersion;
+
+    private final Map<String, Object> changed;
+
+    private final boolean deleted;
+
+    private final boolean full;
+
+    private final long observedAt;
+
+    private final String origin;
+
+    private final String pid;
+
+    private final Set<String> removed;
+
+    private final long version;
+
+    ConfigurationDelta(String pPid, String pOrigin, long pVersion,
+            String pBaseOrigin, long pBaseVersion, boolean pFull,
+            boolean pDeleted, Map<String, Object> pChanged,
+            Set<String> pRemoved, long pObservedAt) {
+        pid = pPid;
+        origin = pOrigin;
+        version = pVersion;
+        baseOrigin = pBaseOrigin;
+        baseVersion = pBaseVersion;
+        full = pFull;
+        deleted = pDeleted;
+        changed = Collections.unmodifiableMap(pChanged);
+        removed = Collections.unmodifiableSet(pRemoved);
+        observedAt = pObservedAt;
+    }
+
+    /**
+     * Compares two versions.
+     *
+     * @return a negative number, zero or a positive number as the first
+     *         version is older, equal or newer than the second.
+     */
+    static int compareVersions(long pVersion, String pOrigin,
+            long pOtherVersion, String pOtherOrigin) {
+        int result = Long.compare(pVersion, pOtherVersion);
+        if (result != 0) {
+            return result;
+        }
+        return pOrigin.compareTo(pOtherOrigin);
+    }
+
+    static ConfigurationDelta fromJson(JsonObject pJson) {
+        Map<String, Object> changed = new LinkedHashMap<>();
+        JsonObject changedJson = pJson.getJsonObject("changed");
+        for (String key : changedJson.fieldNames()) {
+            changed.put(key, ConfigurationValueCodec
+                    .decode(changedJson.getJsonObject(key)));
+        }
+        Set<String> removed = new HashSet<>();
+        for (Object key : pJson.getJsonArray("removed")) {
+            removed.add((String) key);
+        }
+        return new ConfigurationDelta(pJson.getString("pid"),
+                pJson.getString("origin"), pJson.getLong("version"),
+                pJson.getString("baseOrigin"), pJson.getLong("baseVersion"),
+                pJson.getBoolean("full"), pJson.getBoolean("deleted"),
+                changed, removed, pJson.getLong("observedAt"));
+    }
+
+    /**
+     * @return the id of the node that created the version this delta was
+     *         computed from.
+     */
+    public String getBaseOrigin() {
+        return baseOrigin;
+    }
+
+    /**
+     * @return the number of the version this delta was computed from.
+     */
+    public long getBaseVersion() {
+        return baseVersion;
+    }
+
+    /**
+     * @return the properties added or changed, or every property when this
+     *         is a full delta.
+     */
+    public Map<String, Object> getChangedProperties() {
+        return changed;
+    }
+
+    /**
+     * @return the time in milliseconds since the epoch when the change was
+     *         observed on its origin node.
+     */
+    public long getObservedAt() {
+        return observedAt;
+    }
+
+    /**
+     * @return the id of the node where this version was created.
+     */
+    public String getOrigin() {
+        return origin;
+    }
+
+    public String getPid() {
+        return pid;
+    }
+
+    /**
+     * @return the keys of the removed properties.
+     */
+    public Set<String> getRemovedProperties() {
+        return removed;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * @return true if the configuration was deleted.
+     */
+    public boolean isDeleted() {
+        return deleted;
+    }
+
+    /**
+     * @return true if this delta carries every property of the configuration
+     *         and so does not depend on its base version.
+     */
+    public boolean isFull() {
+        return full;
+    }
+
+    JsonObject toJson() {
+        JsonObject changedJson = new JsonObject();
+        for (Map.Entry<String, Object> entry : changed.entrySet()) {
+            changedJson.put(entry.getKey(),
+                    ConfigurationValueCodec.encode(entry.getValue()));
+        }
+        JsonArray removedJson = new JsonArray();
+        for (String key : removed) {
+            removedJson.add(key);
+        }
+        return new JsonObject().put("pid", pid).put("origin", origin)
+                .put("version", version).put("baseOrigin", baseOrigin)
+                .put("baseVersion", baseVersion).put("full", full)
+                .put("deleted", deleted).put("changed", changedJson)
+                .put("removed", removedJson).put("observedAt", observedAt);
+    }
+
+    @Override
+    public String toString() {
+        return "ConfigurationDelta[pid=" + pid + ", version=" + version + "@"
+                + origin + ", base=" + baseVersion + "@" + baseOrigin
+                + (full ? ", full" : "") + (deleted ? ", deleted" : "")
+                + ", changed=" + changed.keySet() + ", removed=" + removed
+                + "]";
+    }
+}
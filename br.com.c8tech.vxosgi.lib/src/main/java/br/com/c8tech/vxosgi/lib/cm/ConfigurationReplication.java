@@ -0,0 +1,848 @@
+/**
+ * ==========================================================================
+ * Copyright © 2015-2019 Cristiano Gavião, C8 Technology ME.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Cristiano Gavião (cvgaviao@c8tech.com.br)- initial API and implementation
+ * ==========================================================================
+ */
+package br.com.c8tech.vxosgi.lib.cm;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Dictionary;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Hashtable;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.osgi.annotation.versioning.ProviderType;
+import org.osgi.framework.Constants;
+import org.osgi.framework.InvalidSyntaxException;
+import org.osgi.service.cm.Configuration;
+import org.osgi.service.cm.ConfigurationAdmin;
+import org.osgi.service.cm.ConfigurationEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.eventbus.MessageConsumer;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+
+/**
+ * Replicates the configurations of the local {@link ConfigurationAdmin} to
+ * the peer nodes listening on the same Vert.x event bus address.
+ * <p>
+ * The local changes are reported through
+ * {@link #configurationChanged(ConfigurationEvent)}, usually by a
+ * {@link org.osgi.service.cm.ConfigurationListener}. The changes of a batch
+ * window are coalesced and published together as {@link ConfigurationDelta
+ * deltas} holding only the changed and removed properties.
+ * <p>
+ * The deltas received are applied idempotently: the ones whose version is
+ * not newer than the local one are ignored, and a delta whose base version
+ * is not the local version causes a full synchronization of its
+ * configuration to be requested from the peers. The peers answer a
+ * synchronization request directly to the node that made it. Concurrent
+ * changes of the same configuration are resolved by keeping the highest
+ * version, as ordered by {@link ConfigurationDelta}. Factory configurations,
+ * the excluded pids and the properties starting with
+ * {@value #LOCAL_PROPERTY_PREFIX} are not replicated.
+ * <p>
+ * The versions are kept in memory only. When started, the replication takes
+ * the local configurations as version 0 and, once listening on the event
+ * bus, requests a full synchronization from the running peers. The address, batch window and pid patterns can be
+ * changed by {@link #reconfigure(String, long, Collection)} without losing
+ * the versions.
+ * <p>
+ * The propagation latency is measured from the moment the change was
+ * observed on its origin node until it was applied locally, so it is only
+ * meaningful when the clocks of the nodes are synchronized.
+ *
+ * @since 0.1.1
+ * @author Cristiano Gavião
+ *
+ */
+@ProviderType
+public final class ConfigurationReplication {
+
+    /**
+     * The replication state of a configuration on this node.
+     */
+    private static final class PidState {
+
+        private boolean exists;
+
+        private String origin = "";
+
+        private Map<String, Object> properties = Collections.emptyMap();
+
+        private volatile long version;
+    }
+
+    /**
+     * Runs the tasks one at a time, in the order they were submitted, on the
+     * threads of another executor.
+     */
+    private static final class SerialExecutor implements Executor {
+
+        private final Executor delegate;
+
+        private final AtomicBoolean running = new AtomicBoolean();
+
+        private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+
+        private SerialExecutor(Executor pDelegate) {
+            delegate = pDelegate;
+        }
+
+        private void drain() {
+            Runnable task;
+            while ((task = tasks.poll()) != null) {
+                try {
+                    task.run();
+                } catch (RuntimeException e) {
+                    LOGGER.warn("Configuration replication task has failed.",
+                            e);
+                }
+            }
+            running.set(false);
+            if (!tasks.isEmpty() && running.compareAndSet(false, true)) {
+                delegate.execute(this::drain);
+            }
+        }
+
+        @Override
+        public void execute(Runnable pTask) {
+            tasks.add(pTask);
+            if (running.compareAndSet(false, true)) {
+                delegate.execute(this::drain);
+            }
+        }
+    }
+
+    /**
+     * The default event bus address where the deltas are published.
+     */
+    public static final String DEFAULT_ADDRESS = "vxosgi.cm.replication";
+
+    /**
+     * The default time in milliseconds the local changes are coalesced
+     * before being published.
+     */
+    public static final long DEFAULT_BATCH_WINDOW = 50;
+
+    /**
+     * The prefix of the properties configuring the replication itself, which
+     * are never replicated since they are specific to each node.
+     */
+    public static final String LOCAL_PROPERTY_PREFIX = "cm.replication.";
+
+    /**
+     * The properties set by ConfigurationAdmin itself, which are never
+     * replicated.
+     */
+    private static final Set<String> LOCAL_PROPERTIES = Collections
+            .unmodifiableSet(new HashSet<>(Arrays.asList(Constants.SERVICE_PID,
+                    ConfigurationAdmin.SERVICE_FACTORYPID,
+                    ConfigurationAdmin.SERVICE_BUNDLELOCATION)));
+
+    private static final Logger LOGGER = LoggerFactory
+            .getLogger(ConfigurationReplication.class);
+
+    /**
+     * The minimum interval between two synchronization requests of the same
+     * configuration.
+     */
+    private static final long SYNC_REQUEST_INTERVAL = TimeUnit.SECONDS
+            .toNanos(1);
+
+    /**
+     * Appended to the address, followed by the node id, to form the address
+     * where a node receives the answers of its synchronization requests.
+     */
+    private static final String NODE_SUFFIX = ".node.";
+
+    private static final String SYNC_SUFFIX = ".sync";
+
+    private volatile String address;
+
+    private final LongAdder appliedDeltas = new LongAdder();
+
+    private long batchTimer = -1;
+
+    private volatile long batchWindow;
+
+    private final ConfigurationAdmin configurationAdmin;
+
+    private final List<MessageConsumer<JsonObject>> consumers = new ArrayList<>();
+
+    /**
+     * The configurations changed locally since the last published batch,
+     * also the lock guarding {@link #batchTimer}.
+     */
+    private final Set<String> dirty = new HashSet<>();
+
+    private final Set<String> excludedPids;
+
+    private final LongAdder ignoredDeltas = new LongAdder();
+
+    private final Map<String, Long> lastSyncRequests = new HashMap<>();
+
+    private volatile long latencyLast;
+
+    /**
+     * Set once all the consumers are registered on the event bus.
+     */
+    private volatile boolean listening;
+
+    private final LongAccumulator latencyMax = new LongAccumulator(Math::max,
+            0);
+
+    private final LongAdder latencySamples = new LongAdder();
+
+    private final LongAdder latencySum = new LongAdder();
+
+    private final String nodeId;
+
+    private volatile List<String> pidPatterns;
+
+    private final LongAdder publishedBatches = new LongAdder();
+
+    private final LongAdder publishedDeltas = new LongAdder();
+
+    private final SerialExecutor serialExecutor;
+
+    private volatile boolean started;
+
+    /**
+     * Only accessed by the tasks of {@link #serialExecutor}.
+     */
+    private final Map<String, PidState> states = new ConcurrentHashMap<>();
+
+    private volatile boolean stopped;
+
+    private final LongAdder syncRequests = new LongAdder();
+
+    private final Vertx vertx;
+
+    /**
+     * @param pVertx
+     *            the Vert.x instance whose event bus reaches the peers.
+     * @param pConfigurationAdmin
+     *            the local ConfigurationAdmin.
+     * @param pExecutor
+     *            the executor where ConfigurationAdmin is called, since it
+     *            may block the event loop.
+     * @param pNodeId
+     *            the id of this node, unique in the cluster.
+     * @param pAddress
+     *            the event bus address shared by the peers.
+     * @param pBatchWindow
+     *            the time in milliseconds the local changes are coalesced.
+     * @param pPidPatterns
+     *            the pids of the replicated configurations, a pattern ending
+     *            with {@code *} matches the pids starting with its prefix.
+     * @param pExcludedPids
+     *            the pids never replicated even when matching a pattern, as
+     *            the pid configuring the replication itself.
+     */
+    public ConfigurationReplication(Vertx pVertx,
+            ConfigurationAdmin pConfigurationAdmin, Executor pExecutor,
+            String pNodeId, String pAddress, long pBatchWindow,
+            Collection<String> pPidPatterns,
+            Collection<String> pExcludedPids) {
+        vertx = Objects.requireNonNull(pVertx, "vertx");
+        configurationAdmin = Objects.requireNonNull(pConfigurationAdmin,
+                "configurationAdmin");
+        serialExecutor = new SerialExecutor(
+                Objects.requireNonNull(pExecutor, "executor"));
+        nodeId = Objects.requireNonNull(pNodeId, "nodeId");
+        address = Objects.requireNonNull(pAddress, "address");
+        batchWindow = Math.max(1, pBatchWindow);
+        pidPatterns = new ArrayList<>(pPidPatterns);
+        excludedPids = new HashSet<>(pExcludedPids);
+    }
+
+    private static String escapeFilterValue(String pValue) {
+        StringBuilder escaped = new StringBuilder(pValue.length());
+        for (int i = 0; i < pValue.length(); i++) {
+            char c = pValue.charAt(i);
+            if (c == '\\' || c == '*' || c == '(' || c == ')') {
+                escaped.append('\\');
+            }
+            escaped.append(c);
+        }
+        return escaped.toString();
+    }
+
+    private static boolean isLocalProperty(String pKey) {
+        return LOCAL_PROPERTIES.contains(pKey)
+                || pKey.startsWith(LOCAL_PROPERTY_PREFIX);
+    }
+
+    private static Map<String, Object> replicatedProperties(
+            Dictionary<String, Object> pProperties) {
+        Map<String, Object> properties = new HashMap<>();
+        Enumeration<String> keys = pProperties.keys();
+        while (keys.hasMoreElements()) {
+            String key = keys.nextElement();
+            if (!isLocalProperty(key)) {
+                properties.put(key, pProperties.get(key));
+            }
+        }
+        return properties;
+    }
+
+    private void answerSync(JsonObject pRequest) {
+        String origin = pRequest.getString("origin");
+        if (stopped || nodeId.equals(origin)) {
+            return;
+        }
+        Set<String> requested = new HashSet<>();
+        for (Object pid : pRequest.getJsonArray("pids")) {
+            requested.add((String) pid);
+        }
+        JsonArray deltas = new JsonArray();
+        for (Map.Entry<String, PidState> entry : states.entrySet()) {
+            PidState state = entry.getValue();
+            // version 0 was never replicated, so peers have their own
+            if (state.version == 0 || !isReplicated(entry.getKey())
+                    || !requested.isEmpty()
+                            && !requested.contains(entry.getKey())) {
+                continue;
+            }
+            deltas.add(new ConfigurationDelta(entry.getKey(), state.origin,
+                    state.version, state.origin, state.version, true,
+                    !state.exists, state.properties,
+                    Collections.<String>emptySet(), 0).toJson());
+        }
+        if (!deltas.isEmpty()) {
+            // only the requesting node is answered, instead of every peer
+            // broadcasting its whole state to all the others
+            vertx.eventBus().send(address + NODE_SUFFIX + origin,
+                    batchOf(deltas));
+        }
+    }
+
+    private void apply(ConfigurationDelta pDelta) {
+        PidState state = states.computeIfAbsent(pDelta.getPid(),
+                pid -> new PidState());
+        if (ConfigurationDelta.compareVersions(pDelta.getVersion(),
+                pDelta.getOrigin(), state.version, state.origin) <= 0) {
+            // a duplicate or a change superseded locally
+            ignoredDeltas.increment();
+            return;
+        }
+        if (!pDelta.isFull() && (pDelta.getBaseVersion() != state.version
+                || !state.origin.equals(pDelta.getBaseOrigin()))) {
+            // a previous delta was missed
+            requestSync(Collections.singletonList(pDelta.getPid()));
+            return;
+        }
+        Map<String, Object> properties;
+        if (pDelta.isDeleted()) {
+            properties = Collections.emptyMap();
+        } else if (pDelta.isFull()) {
+            properties = new HashMap<>(pDelta.getChangedProperties());
+        } else {
+            properties = new HashMap<>(state.properties);
+            properties.keySet().removeAll(pDelta.getRemovedProperties());
+            properties.putAll(pDelta.getChangedProperties());
+        }
+        properties.keySet().removeIf(ConfigurationReplication::isLocalProperty);
+        try {
+            // the state is updated first, so the local event caused by the
+            // update is not published back
+            long previousVersion = state.version;
+            String previousOrigin = state.origin;
+            Map<String, Object> previousProperties = state.properties;
+            boolean previousExists = state.exists;
+            setState(state, !pDelta.isDeleted(), properties,
+                    pDelta.getVersion(), pDelta.getOrigin());
+            try {
+                writeConfiguration(pDelta.getPid(), pDelta.isDeleted(),
+                        properties);
+            } catch (IOException | RuntimeException e) {
+                setState(state, previousExists, previousProperties,
+                        previousVersion, previousOrigin);
+                throw e;
+            }
+        } catch (IOException | RuntimeException e) {
+            LOGGER.warn("Could not apply the replicated delta {}.", pDelta, e);
+            return;
+        }
+        appliedDeltas.increment();
+        if (pDelta.getObservedAt() > 0) {
+            long latency = Math.max(0,
+                    System.currentTimeMillis() - pDelta.getObservedAt());
+            latencyLast = latency;
+            latencyMax.accumulate(latency);
+            latencySum.add(latency);
+            latencySamples.increment();
+        }
+    }
+
+    private JsonObject batchOf(JsonArray pDeltas) {
+        return new JsonObject().put("origin", nodeId).put("deltas", pDeltas);
+    }
+
+    /**
+     * Reports a change of a local configuration. The changes are published
+     * after the batch window.
+     *
+     * @param pEvent
+     *            the event sent by ConfigurationAdmin.
+     */
+    public void configurationChanged(ConfigurationEvent pEvent) {
+        if (!started || stopped || pEvent.getFactoryPid() != null
+                || pEvent.getType() == ConfigurationEvent.CM_LOCATION_CHANGED
+                || !isReplicated(pEvent.getPid())) {
+            return;
+        }
+        synchronized (dirty) {
+            dirty.add(pEvent.getPid());
+            if (batchTimer < 0) {
+                batchTimer = vertx.setTimer(batchWindow,
+                        id -> serialExecutor.execute(this::flush));
+            }
+        }
+    }
+
+    private ConfigurationDelta computeLocalDelta(String pPid,
+            long pObservedAt) throws IOException {
+        Configuration configuration = findConfiguration(pPid);
+        Dictionary<String, Object> current = configuration != null
+                ? configuration.getProperties()
+                : null;
+        PidState state = states.computeIfAbsent(pPid, pid -> new PidState());
+        ConfigurationDelta delta;
+        if (current == null) {
+            if (!state.exists) {
+                return null;
+            }
+            delta = new ConfigurationDelta(pPid, nodeId, state.version + 1,
+                    state.origin, state.version, false, true,
+                    Collections.<String, Object>emptyMap(),
+                    Collections.<String>emptySet(), pObservedAt);
+            setState(state, false, Collections.<String, Object>emptyMap(),
+                    delta.getVersion(), nodeId);
+            return delta;
+        }
+        Map<String, Object> properties = replicatedProperties(current);
+        Map<String, Object> changed = new HashMap<>();
+        for (Map.Entry<String, Object> entry : properties.entrySet()) {
+            if (!state.properties.containsKey(entry.getKey())
+                    || !Objects.deepEquals(entry.getValue(),
+                            state.properties.get(entry.getKey()))) {
+                changed.put(entry.getKey(), entry.getValue());
+            }
+        }
+        Set<String> removed = new HashSet<>(state.properties.keySet());
+        removed.removeAll(properties.keySet());
+        if (state.exists && changed.isEmpty() && removed.isEmpty()) {
+            // usually the echo of a delta applied from a peer
+            return null;
+        }
+        delta = new ConfigurationDelta(pPid, nodeId, state.version + 1,
+                state.origin, state.version, false, false, changed, removed,
+                pObservedAt);
+        setState(state, true, properties, delta.getVersion(), nodeId);
+        return delta;
+    }
+
+    private Configuration findConfiguration(String pPid) throws IOException {
+        try {
+            Configuration[] configurations = configurationAdmin
+                    .listConfigurations("(" + Constants.SERVICE_PID + "="
+                            + escapeFilterValue(pPid) + ")");
+            return configurations != null ? configurations[0] : null;
+        } catch (InvalidSyntaxException e) {
+            throw new IOException(e);
+        }
+    }
+
+    private void flush() {
+        Set<String> pids;
+        synchronized (dirty) {
+            pids = new HashSet<>(dirty);
+            dirty.clear();
+            batchTimer = -1;
+        }
+        long now = System.currentTimeMillis();
+        JsonArray deltas = new JsonArray();
+        for (String pid : pids) {
+            if (!isReplicated(pid)) {
+                // no longer replicated after a reconfiguration
+                continue;
+            }
+            try {
+                ConfigurationDelta delta = computeLocalDelta(pid, now);
+                if (delta != null) {
+                    deltas.add(delta.toJson());
+                }
+            } catch (IOException | RuntimeException e) {
+                LOGGER.warn("Could not read the configuration '{}'.", pid, e);
+            }
+        }
+        if (publish(deltas)) {
+            publishedBatches.increment();
+            publishedDeltas.add(deltas.size());
+        }
+    }
+
+    /**
+     * @return the number of deltas received from the peers and applied.
+     */
+    public long getAppliedDeltaCount() {
+        return appliedDeltas.sum();
+    }
+
+    /**
+     * @return the number of deltas received that were duplicated or older
+     *         than the local version.
+     */
+    public long getIgnoredDeltaCount() {
+        return ignoredDeltas.sum();
+    }
+
+    /**
+     * @return the propagation latency in milliseconds of the last delta
+     *         applied.
+     */
+    public long getLastPropagationLatency() {
+        return latencyLast;
+    }
+
+    /**
+     * @return the longest propagation latency in milliseconds observed.
+     */
+    public long getMaxPropagationLatency() {
+        return latencyMax.get();
+    }
+
+    /**
+     * @return the mean propagation latency in milliseconds of the deltas
+     *         applied.
+     */
+    public long getMeanPropagationLatency() {
+        long samples = latencySamples.sum();
+        return samples > 0 ? latencySum.sum() / samples : 0;
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    /**
+     * @return the number of batches of local changes published.
+     */
+    public long getPublishedBatchCount() {
+        return publishedBatches.sum();
+    }
+
+    /**
+     * @return the number of deltas of local changes published.
+     */
+    public long getPublishedDeltaCount() {
+        return publishedDeltas.sum();
+    }
+
+    /**
+     * @return the number of synchronization requests published.
+     */
+    public long getSyncRequestCount() {
+        return syncRequests.sum();
+    }
+
+    /**
+     * Returns the replicated version of a configuration on this node.
+     *
+     * @param pPid
+     *            the pid of the configuration.
+     * @return the version, 0 if it was never replicated.
+     */
+    public long getVersion(String pPid) {
+        PidState state = states.get(pPid);
+        return state != null ? state.version : 0;
+    }
+
+    /**
+     * @return true once the replication is started and listening to its
+     *         peers on the event bus.
+     */
+    public boolean isListening() {
+        return listening;
+    }
+
+    private boolean isReplicated(String pPid) {
+        if (excludedPids.contains(pPid)) {
+            return false;
+        }
+        for (String pattern : pidPatterns) {
+            if (pattern.endsWith("*")
+                    ? pPid.startsWith(
+                            pattern.substring(0, pattern.length() - 1))
+                    : pattern.equals(pPid)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean publish(JsonArray pDeltas) {
+        if (pDeltas.isEmpty()) {
+            return false;
+        }
+        vertx.eventBus().publish(address, batchOf(pDeltas));
+        return true;
+    }
+
+    private void receive(JsonObject pBatch) {
+        if (stopped || nodeId.equals(pBatch.getString("origin"))) {
+            return;
+        }
+        for (Object delta : pBatch.getJsonArray("deltas")) {
+            try {
+                ConfigurationDelta received = ConfigurationDelta
+                        .fromJson((JsonObject) delta);
+                if (isReplicated(received.getPid())) {
+                    apply(received);
+                }
+            } catch (RuntimeException e) {
+                LOGGER.warn("Discarding a malformed replicated delta: {}",
+                        delta, e);
+            }
+        }
+    }
+
+    /**
+     * Applies new settings, keeping the replicated versions. The peers are
+     * asked for the configurations that became replicated, and the
+     * consumers are moved when the address changes.
+     *
+     * @param pAddress
+     *            the event bus address shared by the peers.
+     * @param pBatchWindow
+     *            the time in milliseconds the local changes are coalesced.
+     * @param pPidPatterns
+     *            the pids of the replicated configurations, a pattern ending
+     *            with {@code *} matches the pids starting with its prefix.
+     * @throws IllegalStateException
+     *             if the replication was stopped.
+     */
+    public synchronized void reconfigure(String pAddress, long pBatchWindow,
+            Collection<String> pPidPatterns) {
+        Objects.requireNonNull(pAddress, "address");
+        if (stopped) {
+            throw new IllegalStateException(
+                    "The configuration replication was stopped.");
+        }
+        batchWindow = Math.max(1, pBatchWindow);
+        List<String> patterns = new ArrayList<>(pPidPatterns);
+        if (address.equals(pAddress) && pidPatterns.equals(patterns)) {
+            return;
+        }
+        pidPatterns = patterns;
+        if (!started) {
+            address = pAddress;
+            return;
+        }
+        serialExecutor.execute(this::snapshot);
+        if (address.equals(pAddress)) {
+            serialExecutor.execute(
+                    () -> requestSync(Collections.<String>emptyList()));
+        } else {
+            unregisterConsumers();
+            address = pAddress;
+            registerConsumers();
+        }
+    }
+
+    /**
+     * Registers the consumers and, once they are registered on the cluster,
+     * requests the configurations of the peers, so their answers are not
+     * lost.
+     */
+    private void registerConsumers() {
+        consumers.add(vertx.eventBus().<JsonObject>consumer(address,
+                message -> serialExecutor.execute(() -> receive(message.body()))));
+        consumers.add(vertx.eventBus().<JsonObject>consumer(
+                address + NODE_SUFFIX + nodeId,
+                message -> serialExecutor.execute(() -> receive(message.body()))));
+        consumers.add(vertx.eventBus().<JsonObject>consumer(
+                address + SYNC_SUFFIX, message -> serialExecutor
+                        .execute(() -> answerSync(message.body()))));
+        AtomicInteger pending = new AtomicInteger(consumers.size());
+        for (MessageConsumer<JsonObject> consumer : consumers) {
+            consumer.completionHandler(result -> {
+                if (result.failed()) {
+                    LOGGER.warn("Could not register a consumer of '{}'.",
+                            address, result.cause());
+                }
+                if (pending.decrementAndGet() == 0 && !stopped) {
+                    listening = true;
+                    serialExecutor.execute(() -> requestSync(
+                            Collections.<String>emptyList()));
+                }
+            });
+        }
+    }
+
+    private void requestSync(List<String> pPids) {
+        long now = System.nanoTime();
+        JsonArray pids = new JsonArray();
+        for (String pid : pPids) {
+            Long last = lastSyncRequests.get(pid);
+            if (last == null || now - last >= SYNC_REQUEST_INTERVAL) {
+                lastSyncRequests.put(pid, now);
+                pids.add(pid);
+            }
+        }
+        if (!pPids.isEmpty() && pids.isEmpty()) {
+            return;
+        }
+        syncRequests.increment();
+        vertx.eventBus().publish(address + SYNC_SUFFIX,
+                new JsonObject().put("origin", nodeId).put("pids", pids));
+    }
+
+    private static void setState(PidState pState, boolean pExists,
+            Map<String, Object> pProperties, long pVersion, String pOrigin) {
+        pState.exists = pExists;
+        pState.properties = pProperties;
+        pState.origin = pOrigin;
+        pState.version = pVersion;
+    }
+
+    /**
+     * Takes the replicated local configurations not known yet as version 0.
+     */
+    private void snapshot() {
+        try {
+            Configuration[] configurations = configurationAdmin
+                    .listConfigurations(null);
+            if (configurations == null) {
+                return;
+            }
+            Set<String> changed;
+            synchronized (dirty) {
+                // changed after the start, so published by the next flush
+                changed = new HashSet<>(dirty);
+            }
+            for (Configuration configuration : configurations) {
+                Dictionary<String, Object> properties = configuration
+                        .getProperties();
+                if (configuration.getFactoryPid() == null
+                        && properties != null
+                        && isReplicated(configuration.getPid())
+                        && !states.containsKey(configuration.getPid())
+                        && !changed.contains(configuration.getPid())) {
+                    PidState state = new PidState();
+                    setState(state, true, replicatedProperties(properties),
+                            0, "");
+                    states.put(configuration.getPid(), state);
+                }
+            }
+        } catch (IOException | InvalidSyntaxException e) {
+            LOGGER.warn("Could not list the local configurations.", e);
+        }
+    }
+
+    /**
+     * Takes the local configurations as the initial version, starts
+     * listening to the peers and requests their configurations.
+     */
+    public synchronized void start() {
+        if (started) {
+            return;
+        }
+        started = true;
+        serialExecutor.execute(this::snapshot);
+        registerConsumers();
+    }
+
+    /**
+     * Publishes the pending local changes and stops listening to the peers.
+     * A stopped replication can not be started again.
+     */
+    public synchronized void stop() {
+        if (stopped) {
+            return;
+        }
+        stopped = true;
+        synchronized (dirty) {
+            if (batchTimer >= 0) {
+                vertx.cancelTimer(batchTimer);
+                batchTimer = -1;
+            }
+        }
+        serialExecutor.execute(this::flush);
+        unregisterConsumers();
+    }
+
+    @Override
+    public String toString() {
+        return "ConfigurationReplication[node=" + nodeId + ", address="
+                + address + ", configurations=" + states.size()
+                + ", published=" + getPublishedDeltaCount() + ", applied="
+                + getAppliedDeltaCount() + "]";
+    }
+
+    private void unregisterConsumers() {
+        listening = false;
+        for (MessageConsumer<JsonObject> consumer : consumers) {
+            consumer.unregister();
+        }
+        consumers.clear();
+    }
+
+    private void writeConfiguration(String pPid, boolean pDeleted,
+            Map<String, Object> pProperties) throws IOException {
+        if (pDeleted) {
+            Configuration configuration = findConfiguration(pPid);
+            if (configuration != null) {
+                configuration.delete();
+            }
+            return;
+        }
+        // the multi-location binding lets any bundle of this node use it
+        Configuration configuration = configurationAdmin
+                .getConfiguration(pPid, "?");
+        Hashtable<String, Object> properties = new Hashtable<>(pProperties);
+        Dictionary<String, Object> current = configuration.getProperties();
+        if (current != null) {
+            // the local settings of the replication of this node are kept
+            Enumeration<String> keys = current.keys();
+            while (keys.hasMoreElements()) {
+                String key = keys.nextElement();
+                if (key.startsWith(LOCAL_PROPERTY_PREFIX)) {
+                    properties.put(key, current.get(key));
+                }
+            }
+        }
+        configuration.update(properties);
+    }
+}
@@ -0,0 +1,182 @@
+/**
+ * ==========================================================================
+ * Copyright © 2015-2019 Cristiano Gavião, C8 Technology ME.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Cristiano Gavião (cvgaviao@c8tech.com.br)- initial API and implementation
+ * ==========================================================================
+ */
+package br.com.c8tech.vxosgi.lib.cm;
+
+import java.lang.reflect.Array;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+
+/**
+ * Encodes the values allowed in a configuration dictionary as JSON, keeping
+ * their exact types so they are restored on the peer nodes as they were
+ * set.
+ * <p>
+ * A value is written as an object with its type tag {@code t} and its value
+ * {@code v}. Scalars are written as strings, avoiding the precision and type
+ * loss of JSON numbers, arrays are tagged {@code Array:<type>} and
+ * collections {@code Collection:<type>}.
+ *
+ * @since 0.1.1
+ * @author Cristiano Gavião
+ *
+ */
+final class ConfigurationValueCodec {
+
+    private static final String ARRAY_PREFIX = "Array:";
+
+    private static final String COLLECTION_PREFIX = "Collection:";
+
+    private static final String TAG = "t";
+
+    /**
+     * The types allowed by ConfigurationAdmin, keyed by their tag.
+     */
+    private static final Map<String, Class<?>> TYPES = new HashMap<>();
+
+    private static final String VALUE = "v";
+
+    static {
+        for (Class<?> type : new Class<?>[] { Boolean.class, boolean.class,
+                Byte.class, byte.class, Character.class, char.class,
+                Double.class, double.class, Float.class, float.class,
+                Integer.class, int.class, Long.class, long.class, Short.class,
+                short.class, String.class }) {
+            TYPES.put(type.getSimpleName(), type);
+        }
+    }
+
+    private ConfigurationValueCodec() {
+    }
+
+    /**
+     * Restores a value written by {@link #encode(Object)}.
+     *
+     * @param pEncoded
+     *            the encoded value.
+     * @return the value.
+     * @throws IllegalArgumentException
+     *             if the type tag is unknown.
+     */
+    static Object decode(JsonObject pEncoded) {
+        String tag = pEncoded.getString(TAG);
+        if (tag.startsWith(ARRAY_PREFIX)) {
+            String type = tag.substring(ARRAY_PREFIX.length());
+            JsonArray values = pEncoded.getJsonArray(VALUE);
+            Class<?> componentType = TYPES.get(type);
+            if (componentType == null) {
+                throw new IllegalArgumentException(
+                        "Unknown configuration value type: " + type);
+            }
+            Object array = Array.newInstance(componentType, values.size());
+            for (int i = 0; i < values.size(); i++) {
+                Array.set(array, i, parseScalar(type, values.getString(i)));
+            }
+            return array;
+        }
+        if (tag.startsWith(COLLECTION_PREFIX)) {
+            String type = tag.substring(COLLECTION_PREFIX.length());
+            JsonArray values = pEncoded.getJsonArray(VALUE);
+            List<Object> collection = new ArrayList<>(values.size());
+            for (int i = 0; i < values.size(); i++) {
+                collection.add(parseScalar(type, values.getString(i)));
+            }
+            return collection;
+        }
+        return parseScalar(tag, pEncoded.getString(VALUE));
+    }
+
+    /**
+     * Writes a value of a configuration dictionary.
+     *
+     * @param pValue
+     *            the value.
+     * @return the encoded value.
+     * @throws IllegalArgumentException
+     *             if the value has a type not allowed by ConfigurationAdmin.
+     */
+    static JsonObject encode(Object pValue) {
+        Class<?> type = pValue.getClass();
+        if (type.isArray()) {
+            JsonArray values = new JsonArray();
+            int length = Array.getLength(pValue);
+            for (int i = 0; i < length; i++) {
+                values.add(String.valueOf(Array.get(pValue, i)));
+            }
+            return new JsonObject()
+                    .put(TAG, ARRAY_PREFIX + typeName(type.getComponentType()))
+                    .put(VALUE, values);
+        }
+        if (pValue instanceof Collection) {
+            JsonArray values = new JsonArray();
+            String elementType = String.class.getSimpleName();
+            for (Object element : (Collection<?>) pValue) {
+                elementType = typeName(element.getClass());
+                values.add(String.valueOf(element));
+            }
+            return new JsonObject().put(TAG, COLLECTION_PREFIX + elementType)
+                    .put(VALUE, values);
+        }
+        return new JsonObject().put(TAG, typeName(type)).put(VALUE,
+                String.valueOf(pValue));
+    }
+
+    private static Object parseScalar(String pType, String pValue) {
+        switch (pType) {
+        case "Boolean":
+        case "boolean":
+            return Boolean.valueOf(pValue);
+        case "Byte":
+        case "byte":
+            return Byte.valueOf(pValue);
+        case "Character":
+        case "char":
+            return pValue.charAt(0);
+        case "Double":
+        case "double":
+            return Double.valueOf(pValue);
+        case "Float":
+        case "float":
+            return Float.valueOf(pValue);
+        case "Integer":
+        case "int":
+            return Integer.valueOf(pValue);
+        case "Long":
+        case "long":
+            return Long.valueOf(pValue);
+        case "Short":
+        case "short":
+            return Short.valueOf(pValue);
+        case "String":
+            return pValue;
+        default:
+            throw new IllegalArgumentException(
+                    "Unknown configuration value type: " + pType);
+        }
+    }
+
+    private static String typeName(Class<?> pType) {
+        String name = pType.getSimpleName();
+        if (TYPES.get(name) != pType) {
+            throw new IllegalArgumentException(
+                    "Type not allowed in a configuration: " + pType.getName());
+        }
+        return name;
+    }
+}
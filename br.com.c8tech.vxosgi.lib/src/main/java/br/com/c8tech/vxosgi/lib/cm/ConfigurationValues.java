@@ -0,0 +1,290 @@
+/**
+ * ==========================================================================
+ * Copyright © 2015-2019 Cristiano Gavião, C8 Technology ME.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Cristiano Gavião (cvgaviao@c8tech.com.br)- initial API and implementation
+ * ==========================================================================
+ */
+package br.com.c8tech.vxosgi.lib.cm;
+
+import java.lang.reflect.Array;
+import java.util.Collection;
+
+import org.osgi.annotation.versioning.ProviderType;
+import org.osgi.util.converter.ConversionException;
+
+/**
+ * The conversions used by the generated {@link ConfigurationBinder
+ * binders}.
+ * <p>
+ * Values can be provided either as their natural type or as strings, since
+ * they usually come from configuration files. A multi-valued property is
+ * converted to a single value by taking its first element, and a single
+ * value is converted to an array of one element. The default value is only
+ * used when the property is missing: a value that can not be converted
+ * causes a {@link ConversionException}, as the standard converter used by
+ * the reflective binding does.
+ *
+ * @since 0.1.1
+ * @author Cristiano Gavião
+ *
+ */
+@ProviderType
+public final class ConfigurationValues {
+
+    private ConfigurationValues() {
+    }
+
+    public static Boolean asBoolean(Object pValue, Boolean pDefault) {
+        Object value = first(pValue);
+        if (value instanceof Boolean) {
+            return (Boolean) value;
+        }
+        return value != null ? Boolean.valueOf(value.toString().trim())
+                : pDefault;
+    }
+
+    public static boolean[] asBooleanArray(Object pValue,
+            boolean[] pDefault) {
+        if (pValue instanceof boolean[]) {
+            return ((boolean[]) pValue).clone();
+        }
+        if (pValue == null) {
+            return pDefault;
+        }
+        Object[] elements = elements(pValue);
+        boolean[] array = new boolean[elements.length];
+        for (int i = 0; i < elements.length; i++) {
+            array[i] = asBoolean(elements[i], Boolean.FALSE);
+        }
+        return array;
+    }
+
+    public static Byte asByte(Object pValue, Byte pDefault) {
+        Object value = first(pValue);
+        if (value instanceof Number) {
+            return ((Number) value).byteValue();
+        }
+        if (value != null) {
+            try {
+                return Byte.valueOf(value.toString().trim());
+            } catch (NumberFormatException e) {
+                throw unconvertible(value, Byte.class, e);
+            }
+        }
+        return pDefault;
+    }
+
+    public static Character asCharacter(Object pValue, Character pDefault) {
+        Object value = first(pValue);
+        if (value instanceof Character) {
+            return (Character) value;
+        }
+        if (value instanceof Number) {
+            return (char) ((Number) value).intValue();
+        }
+        return value != null && !value.toString().isEmpty()
+                ? value.toString().charAt(0)
+                : pDefault;
+    }
+
+    public static Double asDouble(Object pValue, Double pDefault) {
+        Object value = first(pValue);
+        if (value instanceof Number) {
+            return ((Number) value).doubleValue();
+        }
+        if (value != null) {
+            try {
+                return Double.valueOf(value.toString().trim());
+            } catch (NumberFormatException e) {
+                throw unconvertible(value, Double.class, e);
+            }
+        }
+        return pDefault;
+    }
+
+    public static double[] asDoubleArray(Object pValue, double[] pDefault) {
+        if (pValue instanceof double[]) {
+            return ((double[]) pValue).clone();
+        }
+        if (pValue == null) {
+            return pDefault;
+        }
+        Object[] elements = elements(pValue);
+        double[] array = new double[elements.length];
+        for (int i = 0; i < elements.length; i++) {
+            array[i] = asDouble(elements[i], 0d);
+        }
+        return array;
+    }
+
+    public static <E extends Enum<E>> E asEnum(Object pValue, Class<E> pType,
+            E pDefault) {
+        Object value = first(pValue);
+        if (pType.isInstance(value)) {
+            return pType.cast(value);
+        }
+        if (value != null) {
+            try {
+                return Enum.valueOf(pType, value.toString().trim());
+            } catch (IllegalArgumentException e) {
+                throw unconvertible(value, pType, e);
+            }
+        }
+        return pDefault;
+    }
+
+    public static Float asFloat(Object pValue, Float pDefault) {
+        Object value = first(pValue);
+        if (value instanceof Number) {
+            return ((Number) value).floatValue();
+        }
+        if (value != null) {
+            try {
+                return Float.valueOf(value.toString().trim());
+            } catch (NumberFormatException e) {
+                throw unconvertible(value, Float.class, e);
+            }
+        }
+        return pDefault;
+    }
+
+    public static int[] asIntArray(Object pValue, int[] pDefault) {
+        if (pValue instanceof int[]) {
+            return ((int[]) pValue).clone();
+        }
+        if (pValue == null) {
+            return pDefault;
+        }
+        Object[] elements = elements(pValue);
+        int[] array = new int[elements.length];
+        for (int i = 0; i < elements.length; i++) {
+            array[i] = asInteger(elements[i], 0);
+        }
+        return array;
+    }
+
+    public static Integer asInteger(Object pValue, Integer pDefault) {
+        Object value = first(pValue);
+        if (value instanceof Number) {
+            return ((Number) value).intValue();
+        }
+        if (value != null) {
+            try {
+                return Integer.valueOf(value.toString().trim());
+            } catch (NumberFormatException e) {
+                throw unconvertible(value, Integer.class, e);
+            }
+        }
+        return pDefault;
+    }
+
+    public static Long asLong(Object pValue, Long pDefault) {
+        Object value = first(pValue);
+        if (value instanceof Number) {
+            return ((Number) value).longValue();
+        }
+        if (value != null) {
+            try {
+                return Long.valueOf(value.toString().trim());
+            } catch (NumberFormatException e) {
+                throw unconvertible(value, Long.class, e);
+            }
+        }
+        return pDefault;
+    }
+
+    public static long[] asLongArray(Object pValue, long[] pDefault) {
+        if (pValue instanceof long[]) {
+            return ((long[]) pValue).clone();
+        }
+        if (pValue == null) {
+            return pDefault;
+        }
+        Object[] elements = elements(pValue);
+        long[] array = new long[elements.length];
+        for (int i = 0; i < elements.length; i++) {
+            array[i] = asLong(elements[i], 0L);
+        }
+        return array;
+    }
+
+    public static Short asShort(Object pValue, Short pDefault) {
+        Object value = first(pValue);
+        if (value instanceof Number) {
+            return ((Number) value).shortValue();
+        }
+        if (value != null) {
+            try {
+                return Short.valueOf(value.toString().trim());
+            } catch (NumberFormatException e) {
+                throw unconvertible(value, Short.class, e);
+            }
+        }
+        return pDefault;
+    }
+
+    public static String asString(Object pValue, String pDefault) {
+        Object value = first(pValue);
+        return value != null ? value.toString() : pDefault;
+    }
+
+    public static String[] asStringArray(Object pValue, String[] pDefault) {
+        if (pValue instanceof String[]) {
+            return ((String[]) pValue).clone();
+        }
+        if (pValue == null) {
+            return pDefault;
+        }
+        Object[] elements = elements(pValue);
+        String[] array = new String[elements.length];
+        for (int i = 0; i < elements.length; i++) {
+            array[i] = String.valueOf(elements[i]);
+        }
+        return array;
+    }
+
+    private static Object[] elements(Object pValue) {
+        if (pValue instanceof Object[]) {
+            return (Object[]) pValue;
+        }
+        if (pValue instanceof Collection) {
+            return ((Collection<?>) pValue).toArray();
+        }
+        if (pValue.getClass().isArray()) {
+            Object[] elements = new Object[Array.getLength(pValue)];
+            for (int i = 0; i < elements.length; i++) {
+                elements[i] = Array.get(pValue, i);
+            }
+            return elements;
+        }
+        return new Object[] { pValue };
+    }
+
+    private static Object first(Object pValue) {
+        if (pValue instanceof Object[]) {
+            Object[] elements = (Object[]) pValue;
+            return elements.length > 0 ? elements[0] : null;
+        }
+        if (pValue instanceof Collection) {
+            Collection<?> elements = (Collection<?>) pValue;
+            return elements.isEmpty() ? null : elements.iterator().next();
+        }
+        if (pValue != null && pValue.getClass().isArray()) {
+            return Array.getLength(pValue) > 0 ? Array.get(pValue, 0) : null;
+        }
+        return pValue;
+    }
+
+    private static ConversionException unconvertible(Object pValue,
+            Class<?> pType, Exception pCause) {
+        return new ConversionException("Cannot convert '" + pValue + "' to "
+                + pType.getName() + ".", pCause);
+    }
+}
@@ -0,0 +1,322 @@
+/**
+ * ==========================================================================
+ * Copyright © 2015-2019 Cristiano Gavião, C8 Technology ME.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Cristiano Gavião (cvgaviao@c8tech.com.br)- initial API and implementation
+ * ==========================================================================
+ */
+package br.com.c8tech.vxosgi.lib.cm;
+
+import java.io.StringReader;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.json.spi.JsonProvider;
+import javax.json.stream.JsonParser;
+import javax.json.stream.JsonParserFactory;
+
+import org.osgi.annotation.versioning.ProviderType;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.FrameworkUtil;
+
+/**
+ * Parses JSON-valued configuration properties with the streaming parser of
+ * the JSON-P provider, caching the results by the content of the documents.
+ * <p>
+ * Components usually read the same documents again on every activation and
+ * modification, and factory components read the same document once per
+ * instance. Since the results are keyed by the SHA-256 digest of the
+ * document and the class of the {@link JsonPropertyReader}, an identical
+ * document is parsed only once per node while its result is kept in the
+ * cache, even when it is read concurrently.
+ * <p>
+ * The reader classes are only weakly referenced, but a result is usually an
+ * instance of a class of the bundle of its reader, so the result itself keeps
+ * the class loader of that bundle reachable and the weak reference alone
+ * never clears. The results read by the classes of a bundle are therefore
+ * discarded by {@link #evict(Bundle)} when it is updated, refreshed or
+ * uninstalled, which the activator of this library does for every bundle,
+ * and by {@link #evict(ClassLoader)} when a bundle declaring an
+ * {@link br.com.c8tech.vxosgi.lib.ds.components.AbstractComponent} is
+ * stopped.
+ * <p>
+ * The number of results kept, the least recently used being discarded
+ * first, is set by the system property {@value #PROPERTY_CACHE_SIZE}.
+ *
+ * @since 0.1.1
+ * @author Cristiano Gavião
+ *
+ */
+@ProviderType
+public final class JsonPropertyCache {
+
+    /**
+     * Identifies a document read by a reader class. The document itself is
+     * not kept, only the SHA-256 digest of its content, and the reader class
+     * is weakly referenced.
+     */
+    private static final class ContentKey {
+
+        private final byte[] digest;
+
+        private final int hash;
+
+        private final WeakReference<Class<?>> readerType;
+
+        private ContentKey(Class<?> pReaderType, byte[] pDigest,
+                ReferenceQueue<Class<?>> pQueue) {
+            readerType = new WeakReference<>(pReaderType, pQueue);
+            digest = pDigest;
+            hash = 31 * Arrays.hashCode(pDigest)
+                    + System.identityHashCode(pReaderType);
+        }
+
+        @Override
+        public boolean equals(Object pOther) {
+            if (this == pOther) {
+                return true;
+            }
+            if (!(pOther instanceof ContentKey)) {
+                return false;
+            }
+            ContentKey other = (ContentKey) pOther;
+            Class<?> type = readerType.get();
+            // a collected reader class is only equal to its own key
+            return hash == other.hash && type != null
+                    && type == other.readerType.get()
+                    && MessageDigest.isEqual(digest, other.digest);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    /**
+     * The default number of results kept.
+     */
+    public static final int DEFAULT_CACHE_SIZE = 64;
+
+    private static final ThreadLocal<MessageDigest> DIGESTS = ThreadLocal
+            .withInitial(() -> {
+                try {
+                    return MessageDigest.getInstance("SHA-256");
+                } catch (NoSuchAlgorithmException e) {
+                    // every Java platform must support it
+                    throw new IllegalStateException(e);
+                }
+            });
+
+    private static final JsonPropertyCache INSTANCE = new JsonPropertyCache(
+            Integer.getInteger(JsonPropertyCache.PROPERTY_CACHE_SIZE,
+                    DEFAULT_CACHE_SIZE));
+
+    /**
+     * The system property holding the number of results kept.
+     */
+    public static final String PROPERTY_CACHE_SIZE = "vxosgi.json.cache.size";
+
+    private final ReferenceQueue<Class<?>> collectedReaders = new ReferenceQueue<>();
+
+    private final Map<ContentKey, CompletableFuture<Object>> entries;
+
+    private final LongAdder hits = new LongAdder();
+
+    private final LongAdder misses = new LongAdder();
+
+    private volatile JsonParserFactory parserFactory;
+
+    private JsonPropertyCache(int pCacheSize) {
+        int cacheSize = Math.max(1, pCacheSize);
+        entries = new LinkedHashMap<ContentKey, CompletableFuture<Object>>(16,
+                0.75f, true) {
+
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(
+                    Map.Entry<ContentKey, CompletableFuture<Object>> pEldest) {
+                return size() > cacheSize;
+            }
+        };
+    }
+
+    /**
+     * @return the cache shared by all components of the framework.
+     */
+    public static JsonPropertyCache getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Discards all the results kept.
+     */
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+    /**
+     * Discards the results read by the reader classes of the specified
+     * bundle, usually when it is updated, refreshed or uninstalled, so the
+     * cache does not keep its previous class loader alive.
+     *
+     * @param pBundle
+     *            the bundle of the reader classes.
+     */
+    public void evict(Bundle pBundle) {
+        synchronized (entries) {
+            entries.keySet().removeIf(key -> {
+                Class<?> type = key.readerType.get();
+                return type == null
+                        || pBundle.equals(FrameworkUtil.getBundle(type));
+            });
+        }
+    }
+
+    /**
+     * Discards the results read by the reader classes loaded by the
+     * specified class loader, usually when its bundle is stopped.
+     *
+     * @param pClassLoader
+     *            the class loader of the reader classes.
+     */
+    public void evict(ClassLoader pClassLoader) {
+        synchronized (entries) {
+            entries.keySet().removeIf(key -> {
+                Class<?> type = key.readerType.get();
+                return type == null || type.getClassLoader() == pClassLoader;
+            });
+        }
+    }
+
+    /**
+     * Discards the results whose reader class was collected. Must be called
+     * holding the lock of {@link #entries}.
+     */
+    private void expungeCollected() {
+        if (collectedReaders.poll() == null) {
+            return;
+        }
+        while (collectedReaders.poll() != null) {
+            // drains the queue, a single pass removes them all
+        }
+        entries.keySet().removeIf(key -> key.readerType.get() == null);
+    }
+
+    /**
+     * @return the number of documents read from the cache.
+     */
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    /**
+     * @return the number of documents parsed.
+     */
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    private JsonParserFactory getParserFactory() {
+        JsonParserFactory factory = parserFactory;
+        if (factory == null) {
+            // looked up lazily, the provider may be installed after the lib
+            factory = JsonProvider.provider()
+                    .createParserFactory(Collections.<String, Object>emptyMap());
+            parserFactory = factory;
+        }
+        return factory;
+    }
+
+    /**
+     * @return the number of results kept.
+     */
+    public int getSize() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    /**
+     * Reads a document, parsing it only when an identical document was not
+     * read by a reader of the same class yet.
+     *
+     * @param pDocument
+     *            the JSON document.
+     * @param pReader
+     *            the reader of the document.
+     * @return the structure read, shared with the other readers of the same
+     *         document.
+     * @throws javax.json.JsonException
+     *             if the document could not be read. Failures are not
+     *             cached.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T read(String pDocument, JsonPropertyReader<T> pReader) {
+        MessageDigest digest = DIGESTS.get();
+        ContentKey key = new ContentKey(pReader.getClass(),
+                digest.digest(pDocument.getBytes(StandardCharsets.UTF_8)),
+                collectedReaders);
+        CompletableFuture<Object> result;
+        boolean parse = false;
+        synchronized (entries) {
+            expungeCollected();
+            result = entries.get(key);
+            if (result == null) {
+                result = new CompletableFuture<>();
+                entries.put(key, result);
+                parse = true;
+            }
+        }
+        if (!parse) {
+            hits.increment();
+            try {
+                return (T) result.join();
+            } catch (CompletionException e) {
+                // rethrows the failure of the concurrent parsing
+                if (e.getCause() instanceof Error) {
+                    throw (Error) e.getCause();
+                }
+                throw (RuntimeException) e.getCause();
+            }
+        }
+        misses.increment();
+        try (JsonParser parser = getParserFactory()
+                .createParser(new StringReader(pDocument))) {
+            T value = pReader.read(parser);
+            result.complete(value);
+            return value;
+        } catch (RuntimeException | Error e) {
+            synchronized (entries) {
+                entries.remove(key, result);
+            }
+            result.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "JsonPropertyCache[size=" + getSize() + ", hits="
+                + getHitCount() + ", misses=" + getMissCount() + "]";
+    }
+}
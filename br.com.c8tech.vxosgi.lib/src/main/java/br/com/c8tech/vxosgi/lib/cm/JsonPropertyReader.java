@@ -0,0 +1,71 @@
+/**
+ * ==========================================================================
+ * Copyright © 2015-2019 Cristiano Gavião, C8 Technology ME.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Cristiano Gavião (cvgaviao@c8tech.com.br)- initial API and implementation
+ * ==========================================================================
+ */
+package br.com.c8tech.vxosgi.lib.cm;
+
+import javax.json.stream.JsonParser;
+
+import org.osgi.annotation.versioning.ConsumerType;
+
+/**
+ * Reads a JSON-valued configuration property from the events of a streaming
+ * parser into a structure chosen by the component, avoiding the
+ * intermediate object tree of the JSON-P object model.
+ * <p>
+ * The results are shared by {@link JsonPropertyCache} among every reader of
+ * the same class that reads an identical document. So a reader must be
+ * stateless, its result depending only on the document, and the result
+ * must not be modified.
+ *
+ * <pre>
+ * JsonPropertyReader&lt;Map&lt;String, String&gt;&gt; routes = parser -&gt; {
+ *     Map&lt;String, String&gt; table = new HashMap&lt;&gt;();
+ *     String key = null;
+ *     while (parser.hasNext()) {
+ *         switch (parser.next()) {
+ *         case KEY_NAME:
+ *             key = parser.getString();
+ *             break;
+ *         case VALUE_STRING:
+ *             table.put(key, parser.getString());
+ *             break;
+ *         default:
+ *         }
+ *     }
+ *     return Collections.unmodifiableMap(table);
+ * };
+ * </pre>
+ *
+ * @param <T>
+ *            the type of the structure read.
+ *
+ * @since 0.1.1
+ * @author Cristiano Gavião
+ *
+ */
+@ConsumerType
+@FunctionalInterface
+public interface JsonPropertyReader<T> {
+
+    /**
+     * Reads a document.
+     *
+     * @param pParser
+     *            the parser positioned before the first event of the
+     *            document.
+     * @return the structure read.
+     * @throws javax.json.JsonException
+     *             if the document is malformed or not the one expected.
+     */
+    T read(JsonParser pParser);
+}
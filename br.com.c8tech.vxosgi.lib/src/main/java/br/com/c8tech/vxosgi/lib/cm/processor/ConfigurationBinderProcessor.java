@@ -0,0 +1,424 @@
+/**
+ * ==========================================================================
+ * Copyright © 2015-2019 Cristiano Gavião, C8 Technology ME.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Cristiano Gavião (cvgaviao@c8tech.com.br)- initial API and implementation
+ * ==========================================================================
+ */
+package br.com.c8tech.vxosgi.lib.cm.processor;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.PrimitiveType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.lang.model.util.Elements;
+import javax.tools.Diagnostic;
+
+import br.com.c8tech.vxosgi.lib.cm.ConfigurationBinder;
+import br.com.c8tech.vxosgi.lib.cm.ConfigurationBinders;
+import br.com.c8tech.vxosgi.lib.cm.ConfigurationBinding;
+import br.com.c8tech.vxosgi.lib.cm.ConfigurationValues;
+
+/**
+ * Generates the {@link ConfigurationBinder} of the configuration types
+ * annotated with {@link ConfigurationBinding}.
+ * <p>
+ * The binder of a type is generated in its package and named by
+ * {@link ConfigurationBinders#binderName(String)}. It holds an immutable
+ * implementation of the type whose constructor reads each property with
+ * the conversions of {@link ConfigurationValues}. When a member has a type
+ * not supported, a warning is reported and no binder is generated, so the
+ * type is bound reflectively.
+ * <p>
+ * As the standard converter does, a default method of an interface returns
+ * the value of its property when it is set, otherwise its own
+ * implementation is called.
+ * <p>
+ * The processor is registered as a service of this library, so it is run by
+ * the compiler of any project having the library in its class path.
+ *
+ * @since 0.1.1
+ * @author Cristiano Gavião
+ *
+ */
+@SupportedAnnotationTypes("br.com.c8tech.vxosgi.lib.cm.ConfigurationBinding")
+public final class ConfigurationBinderProcessor extends AbstractProcessor {
+
+    /**
+     * A member of a configuration type and the expression reading its
+     * property.
+     */
+    private static final class Member {
+
+        private final boolean array;
+
+        private final String conversion;
+
+        /**
+         * True when the member is a default method, called when its property
+         * is not set.
+         */
+        private final boolean defaulted;
+
+        private final String fieldType;
+
+        private final String name;
+
+        private final String type;
+
+        private Member(String pName, String pType, String pFieldType,
+                boolean pArray, boolean pDefaulted, String pConversion) {
+            name = pName;
+            type = pType;
+            fieldType = pFieldType;
+            array = pArray;
+            defaulted = pDefaulted;
+            conversion = pConversion;
+        }
+    }
+
+    private static final String VALUES = ConfigurationValues.class
+            .getName();
+
+    private static String arrayMethod(TypeMirror pComponent) {
+        switch (pComponent.getKind()) {
+        case BOOLEAN:
+            return "asBooleanArray";
+        case DOUBLE:
+            return "asDoubleArray";
+        case INT:
+            return "asIntArray";
+        case LONG:
+            return "asLongArray";
+        case DECLARED:
+            return String.class.getName().equals(pComponent.toString())
+                    ? "asStringArray"
+                    : null;
+        default:
+            return null;
+        }
+    }
+
+    /**
+     * Maps a member name to its property name, using the rules of the
+     * Declarative Services component property types.
+     *
+     * @param pMemberName
+     *            the member name.
+     * @return the property name.
+     */
+    static String propertyName(String pMemberName) {
+        StringBuilder name = new StringBuilder(pMemberName.length());
+        for (int i = 0; i < pMemberName.length(); i++) {
+            char c = pMemberName.charAt(i);
+            boolean doubled = i + 1 < pMemberName.length()
+                    && pMemberName.charAt(i + 1) == c;
+            if (c == '_') {
+                name.append(doubled ? '_' : '.');
+            } else if (c == '$') {
+                if (doubled) {
+                    name.append('$');
+                }
+            } else {
+                name.append(c);
+                continue;
+            }
+            if (doubled) {
+                i++;
+            }
+        }
+        return name.toString();
+    }
+
+    private static String scalarMethod(TypeKind pKind) {
+        switch (pKind) {
+        case BOOLEAN:
+            return "asBoolean";
+        case BYTE:
+            return "asByte";
+        case CHAR:
+            return "asCharacter";
+        case DOUBLE:
+            return "asDouble";
+        case FLOAT:
+            return "asFloat";
+        case LONG:
+            return "asLong";
+        case SHORT:
+            return "asShort";
+        default:
+            return "asInteger";
+        }
+    }
+
+    private static String zero(TypeKind pKind) {
+        switch (pKind) {
+        case BOOLEAN:
+            return "false";
+        case BYTE:
+            return "(byte) 0";
+        case CHAR:
+            return "'\\0'";
+        case DOUBLE:
+            return "0d";
+        case FLOAT:
+            return "0f";
+        case LONG:
+            return "0L";
+        case SHORT:
+            return "(short) 0";
+        default:
+            return "0";
+        }
+    }
+
+    /**
+     * Returns the expression converting a property to the type of a member.
+     *
+     * @param pMethod
+     *            the member.
+     * @param pValue
+     *            the expression reading the property.
+     * @param pNullable
+     *            whether a missing property is converted to null, even for a
+     *            primitive type.
+     * @return the expression or null if the type is not supported.
+     */
+    private String conversion(ExecutableElement pMethod, String pValue,
+            boolean pNullable) {
+        TypeMirror type = pMethod.getReturnType();
+        AnnotationValue defaultValue = pMethod.getDefaultValue();
+        String literal = defaultValue != null ? literal(defaultValue, type)
+                : null;
+        if (type.getKind().isPrimitive()) {
+            if (literal == null) {
+                literal = pNullable ? "null" : zero(type.getKind());
+            }
+            return VALUES + "." + scalarMethod(type.getKind()) + "(" + pValue
+                    + ", " + literal + ")";
+        }
+        if (type.getKind() == TypeKind.ARRAY) {
+            TypeMirror component = ((ArrayType) type).getComponentType();
+            String method = arrayMethod(component);
+            return method == null ? null
+                    : VALUES + "." + method + "(" + pValue + ", " + literal
+                            + ")";
+        }
+        if (type.getKind() != TypeKind.DECLARED) {
+            return null;
+        }
+        Element element = ((DeclaredType) type).asElement();
+        if (element.getKind() == ElementKind.ENUM) {
+            return VALUES + ".asEnum(" + pValue + ", " + type + ".class, "
+                    + literal + ")";
+        }
+        if (String.class.getName().equals(type.toString())) {
+            return VALUES + ".asString(" + pValue + ", " + literal + ")";
+        }
+        try {
+            TypeKind primitive = processingEnv.getTypeUtils()
+                    .unboxedType(type).getKind();
+            return VALUES + "." + scalarMethod(primitive) + "(" + pValue
+                    + ", null)";
+        } catch (IllegalArgumentException e) { // NOSONAR
+            // not a wrapper
+            return null;
+        }
+    }
+
+    private void generate(TypeElement pType) throws IOException {
+        Elements elements = processingEnv.getElementUtils();
+        List<Member> members = new ArrayList<>();
+        for (ExecutableElement method : ElementFilter
+                .methodsIn(elements.getAllMembers(pType))) {
+            String owner = ((TypeElement) method.getEnclosingElement())
+                    .getQualifiedName().toString();
+            // the standard converter also reads the default methods
+            boolean defaulted = method.getModifiers()
+                    .contains(Modifier.DEFAULT);
+            if (!defaulted && !method.getModifiers().contains(Modifier.ABSTRACT)
+                    || Object.class.getName().equals(owner)
+                    || java.lang.annotation.Annotation.class.getName()
+                            .equals(owner)) {
+                continue;
+            }
+            String name = method.getSimpleName().toString();
+            String conversion = method.getParameters().isEmpty()
+                    && method.getTypeParameters().isEmpty()
+                            ? conversion(method, "pProperties.get("
+                                    + elements.getConstantExpression(
+                                            propertyName(name))
+                                    + ")", defaulted)
+                            : null;
+            if (conversion == null) {
+                processingEnv.getMessager().printMessage(
+                        Diagnostic.Kind.WARNING,
+                        "The member '" + name
+                                + "' is not supported, the type will be bound reflectively.",
+                        method);
+                return;
+            }
+            TypeMirror type = method.getReturnType();
+            String fieldType = defaulted && type.getKind().isPrimitive()
+                    ? processingEnv.getTypeUtils()
+                            .boxedClass((PrimitiveType) type)
+                            .getQualifiedName().toString()
+                    : type.toString();
+            members.add(new Member(name, type.toString(), fieldType,
+                    type.getKind() == TypeKind.ARRAY, defaulted, conversion));
+        }
+        write(pType, members);
+    }
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    private String literal(AnnotationValue pValue, TypeMirror pType) {
+        Object value = pValue.getValue();
+        if (value instanceof VariableElement) {
+            return pType + "." + ((VariableElement) value).getSimpleName();
+        }
+        if (value instanceof List) {
+            TypeMirror component = ((ArrayType) pType).getComponentType();
+            StringBuilder literal = new StringBuilder("new ").append(component)
+                    .append("[] {");
+            String separator = " ";
+            for (Object element : (List<?>) value) {
+                literal.append(separator)
+                        .append(literal((AnnotationValue) element, component));
+                separator = ", ";
+            }
+            return literal.append(" }").toString();
+        }
+        return processingEnv.getElementUtils().getConstantExpression(value);
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> pAnnotations,
+            RoundEnvironment pRoundEnvironment) {
+        for (Element element : pRoundEnvironment
+                .getElementsAnnotatedWith(ConfigurationBinding.class)) {
+            TypeElement type = (TypeElement) element;
+            if (element.getKind() != ElementKind.INTERFACE
+                    && element.getKind() != ElementKind.ANNOTATION_TYPE
+                    || element.getModifiers().contains(Modifier.PRIVATE)
+                    || !type.getTypeParameters().isEmpty()) {
+                processingEnv.getMessager().printMessage(
+                        Diagnostic.Kind.ERROR,
+                        "@ConfigurationBinding must annotate a non private and non generic interface or annotation type.",
+                        element);
+                continue;
+            }
+            try {
+                generate(type);
+            } catch (IOException e) {
+                processingEnv.getMessager().printMessage(
+                        Diagnostic.Kind.ERROR,
+                        "Could not generate the binder: " + e.getMessage(),
+                        element);
+            }
+        }
+        return true;
+    }
+
+    private void write(TypeElement pType, List<Member> pMembers)
+            throws IOException {
+        Elements elements = processingEnv.getElementUtils();
+        String binderName = ConfigurationBinders
+                .binderName(elements.getBinaryName(pType).toString());
+        String packageName = elements.getPackageOf(pType).getQualifiedName()
+                .toString();
+        String simpleName = binderName.substring(binderName.lastIndexOf('.')
+                + 1);
+        String typeName = pType.getQualifiedName().toString();
+        StringBuilder source = new StringBuilder(1024);
+        if (!packageName.isEmpty()) {
+            source.append("package ").append(packageName).append(";\n\n");
+        }
+        source.append("/**\n * Binds the configuration type {@link ")
+                .append(typeName).append("}.\n * <p>\n * Generated by ")
+                .append(ConfigurationBinderProcessor.class.getName())
+                .append(", do not edit.\n */\npublic final class ")
+                .append(simpleName).append("\n        implements ")
+                .append(ConfigurationBinder.class.getName()).append('<')
+                .append(typeName).append("> {\n\n")
+                .append("    private static final class Bound implements ")
+                .append(typeName).append(" {\n");
+        for (Member member : pMembers) {
+            source.append("\n        private final ").append(member.fieldType)
+                    .append(' ').append(member.name).append(";\n");
+        }
+        source.append(
+                "\n        private Bound(java.util.Dictionary<String, ?> pProperties) {\n");
+        for (Member member : pMembers) {
+            source.append("            ").append(member.name).append(" = ")
+                    .append(member.conversion).append(";\n");
+        }
+        source.append("        }\n");
+        if (pType.getKind() == ElementKind.ANNOTATION_TYPE) {
+            source.append("\n        @Override\n        public Class<? extends java.lang.annotation.Annotation> annotationType() {\n            return ")
+                    .append(typeName).append(".class;\n        }\n");
+        }
+        StringBuilder toString = new StringBuilder();
+        for (Member member : pMembers) {
+            String value = member.array ? member.name + ".clone()"
+                    : member.name;
+            if (member.defaulted) {
+                value = member.name + " != null ? " + value + " : "
+                        + typeName + ".super." + member.name + "()";
+            } else if (member.array) {
+                value = member.name + " != null ? " + value + " : null";
+            }
+            source.append("\n        @Override\n        public ")
+                    .append(member.type).append(' ').append(member.name)
+                    .append("() {\n            return ").append(value)
+                    .append(";\n        }\n");
+            String shown = member.defaulted ? member.name + "()"
+                    : member.name;
+            toString.append(toString.length() == 0 ? "\"" : " + \", ")
+                    .append(member.name).append("=\" + ")
+                    .append(member.array
+                            ? "java.util.Arrays.toString(" + shown + ")"
+                            : shown);
+        }
+        source.append(
+                "\n        @Override\n        public String toString() {\n            return \"")
+                .append(pType.getSimpleName()).append("[\"")
+                .append(toString.length() > 0 ? " + " + toString : "")
+                .append(" + \"]\";\n        }\n    }\n\n")
+                .append("    @Override\n    public ").append(typeName)
+                .append(" bind(java.util.Dictionary<String, ?> pProperties) {\n")
+                .append("        return new Bound(pProperties);\n    }\n}\n");
+        try (Writer writer = processingEnv.getFiler()
+                .createSourceFile(binderName, pType).openWriter()) {
+            writer.append(source);
+        }
+    }
+}
@@ -0,0 +1,334 @@
+/**
+ * ==========================================================================
+ * Copyright © 2015-2019 Cristiano Gavião, C8 Technology ME.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Cristiano Gavião (cvgaviao@c8tech.com.br)- initial API and implementation
+ * ==========================================================================
+ */
+package br.com.c8tech.vxosgi.lib.concurrent;
+
+import java.lang.reflect.Method;
+import java.util.Objects;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.osgi.annotation.versioning.ProviderType;
+
+/**
+ * An executor meant to run the blocking work of a single component instance
+ * (JDBC, file I/O, calls into legacy libraries) and to be shut down together
+ * with it.
+ * <p>
+ * When running on a JVM that supports virtual threads each task gets its own
+ * virtual thread. On older JVMs a bounded pool of daemon platform threads
+ * with a bounded queue is used instead.
+ * <p>
+ * The time tasks spend waiting to be started and executing is measured and
+ * exposed together with the number of queued tasks.
+ *
+ * @since 0.1.1
+ * @author Cristiano Gavião
+ *
+ */
+@ProviderType
+public final class ComponentExecutor implements Executor {
+
+    /**
+     * A task that measures the time it has waited and the time it took.
+     */
+    private final class InstrumentedTask<T> extends FutureTask<T> {
+
+        /**
+         * Whether nobody holds the future of this task, as for the tasks
+         * passed to {@link ComponentExecutor#execute(Runnable)}.
+         */
+        private final boolean detached;
+
+        private final long submittedAt = System.nanoTime();
+
+        private InstrumentedTask(Callable<T> pCallable) {
+            super(pCallable);
+            detached = false;
+        }
+
+        private InstrumentedTask(Runnable pRunnable) {
+            super(pRunnable, null);
+            detached = true;
+        }
+
+        @Override
+        public void run() {
+            long startedAt = System.nanoTime();
+            queued.decrementAndGet();
+            active.incrementAndGet();
+            queueLatencySum.add(startedAt - submittedAt);
+            try {
+                super.run();
+            } finally {
+                long executionLatency = System.nanoTime() - startedAt;
+                active.decrementAndGet();
+                completed.increment();
+                executionLatencySum.add(executionLatency);
+                executionLatencyMax.accumulate(executionLatency);
+            }
+        }
+
+        @Override
+        protected void setException(Throwable pFailure) {
+            super.setException(pFailure);
+            if (detached) {
+                // reported as a plain executor would, instead of being lost
+                Thread thread = Thread.currentThread();
+                thread.getUncaughtExceptionHandler().uncaughtException(thread,
+                        pFailure);
+            }
+        }
+    }
+
+    private static final Method VIRTUAL_THREAD_EXECUTOR_FACTORY = lookupVirtualThreadExecutorFactory();
+
+    private final AtomicInteger active = new AtomicInteger();
+
+    private final LongAdder completed = new LongAdder();
+
+    private final ExecutorService delegate;
+
+    private final LongAccumulator executionLatencyMax = new LongAccumulator(
+            Math::max, 0);
+
+    private final LongAdder executionLatencySum = new LongAdder();
+
+    private final String name;
+
+    private final AtomicInteger queued = new AtomicInteger();
+
+    private final LongAdder queueLatencySum = new LongAdder();
+
+    private final boolean virtual;
+
+    private ComponentExecutor(String pName, ExecutorService pDelegate,
+            boolean pVirtual) {
+        name = pName;
+        delegate = pDelegate;
+        virtual = pVirtual;
+    }
+
+    /**
+     * Creates a new executor.
+     *
+     * @param pName
+     *            the name used for the threads of the executor.
+     * @param pPreferVirtualThreads
+     *            whether virtual threads must be used when the JVM supports
+     *            them.
+     * @param pMaxThreads
+     *            the maximum number of platform threads used when virtual
+     *            threads are not available or not desired.
+     * @param pQueueCapacity
+     *            the maximum number of tasks waiting for a platform thread.
+     * @return the new executor.
+     */
+    public static ComponentExecutor create(String pName,
+            boolean pPreferVirtualThreads, int pMaxThreads,
+            int pQueueCapacity) {
+        Objects.requireNonNull(pName, "name");
+        if (pPreferVirtualThreads && isVirtualThreadSupported()) {
+            try {
+                return new ComponentExecutor(pName,
+                        (ExecutorService) VIRTUAL_THREAD_EXECUTOR_FACTORY
+                                .invoke(null),
+                        true);
+            } catch (ReflectiveOperationException e) { // NOSONAR
+                // falls back to platform threads
+            }
+        }
+        int maxThreads = Math.max(1, pMaxThreads);
+        AtomicInteger counter = new AtomicInteger();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(maxThreads,
+                maxThreads, 30, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(Math.max(1, pQueueCapacity)), r -> {
+                    Thread thread = new Thread(r,
+                            pName + "-" + counter.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        executor.allowCoreThreadTimeOut(true);
+        return new ComponentExecutor(pName, executor, false);
+    }
+
+    /**
+     * Informs whether the running JVM is able to create virtual threads.
+     *
+     * @return true if virtual threads are supported.
+     */
+    public static boolean isVirtualThreadSupported() {
+        return VIRTUAL_THREAD_EXECUTOR_FACTORY != null;
+    }
+
+    private static Method lookupVirtualThreadExecutorFactory() {
+        try {
+            return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+        } catch (NoSuchMethodException | SecurityException e) { // NOSONAR
+            return null;
+        }
+    }
+
+    private <T> InstrumentedTask<T> enqueue(InstrumentedTask<T> pTask) {
+        queued.incrementAndGet();
+        try {
+            delegate.execute(pTask);
+        } catch (RuntimeException e) {
+            queued.decrementAndGet();
+            throw e;
+        }
+        return pTask;
+    }
+
+    /**
+     * Executes the specified task asynchronously. A failure of the task is
+     * handed to the uncaught exception handler of the thread that ran it.
+     *
+     * @throws java.util.concurrent.RejectedExecutionException
+     *             if this executor was shut down or its queue is full.
+     */
+    @Override
+    public void execute(Runnable pTask) {
+        enqueue(new InstrumentedTask<Void>(pTask));
+    }
+
+    /**
+     * @return the number of tasks being executed.
+     */
+    public int getActiveCount() {
+        return active.get();
+    }
+
+    /**
+     * @return the number of tasks already executed.
+     */
+    public long getCompletedCount() {
+        return completed.sum();
+    }
+
+    /**
+     * @return the longest time a task took to execute.
+     */
+    public long getMaxExecutionLatencyNanos() {
+        return executionLatencyMax.get();
+    }
+
+    /**
+     * @return the mean time taken by the executed tasks.
+     */
+    public long getMeanExecutionLatencyNanos() {
+        long count = completed.sum();
+        return count > 0 ? executionLatencySum.sum() / count : 0;
+    }
+
+    /**
+     * @return the mean time the started tasks have waited in the queue.
+     */
+    public long getMeanQueueLatencyNanos() {
+        long count = completed.sum() + active.get();
+        return count > 0 ? queueLatencySum.sum() / count : 0;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return the number of submitted tasks that were not started yet.
+     */
+    public int getQueueDepth() {
+        return queued.get();
+    }
+
+    /**
+     * @return true after {@link #shutdown(long, TimeUnit)} was called.
+     */
+    public boolean isShutdown() {
+        return delegate.isShutdown();
+    }
+
+    /**
+     * @return true if the tasks are executed by virtual threads.
+     */
+    public boolean isVirtual() {
+        return virtual;
+    }
+
+    /**
+     * Creates a new scope used to fan out a group of tasks to this executor
+     * and to join their results.
+     *
+     * @param <T>
+     *            the type of the results of the tasks.
+     * @return the new task scope.
+     */
+    public <T> TaskScope<T> newTaskScope() {
+        return new TaskScope<>(this);
+    }
+
+    /**
+     * Shuts this executor down. Already submitted tasks are given until the
+     * specified deadline to finish, after that they are interrupted.
+     *
+     * @param pTimeout
+     *            the maximum time to wait for the running tasks.
+     * @param pUnit
+     *            the unit of the timeout.
+     * @return true if all tasks have finished before the deadline.
+     */
+    public boolean shutdown(long pTimeout, TimeUnit pUnit) {
+        delegate.shutdown();
+        try {
+            if (delegate.awaitTermination(pTimeout, pUnit)) {
+                return true;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        queued.addAndGet(-delegate.shutdownNow().size());
+        return false;
+    }
+
+    /**
+     * Submits a value-returning task for asynchronous execution.
+     *
+     * @param pTask
+     *            the task to submit.
+     * @param <T>
+     *            the type of the task's result.
+     * @return a future representing the pending result of the task.
+     * @throws java.util.concurrent.RejectedExecutionException
+     *             if this executor was shut down or its queue is full.
+     */
+    public <T> Future<T> submit(Callable<T> pTask) {
+        return enqueue(new InstrumentedTask<>(pTask));
+    }
+
+    @Override
+    public String toString() {
+        return "ComponentExecutor[name=" + name + ", virtual=" + virtual
+                + ", queued=" + getQueueDepth() + ", active="
+                + getActiveCount() + ", completed=" + getCompletedCount()
+                + "]";
+    }
+}
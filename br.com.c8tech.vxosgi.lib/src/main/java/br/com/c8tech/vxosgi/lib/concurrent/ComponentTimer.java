@@ -0,0 +1,218 @@
+/**
+ * ==========================================================================
+ * Copyright © 2015-2019 Cristiano Gavião, C8 Technology ME.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Cristiano Gavião (cvgaviao@c8tech.com.br)- initial API and implementation
+ * ==========================================================================
+ */
+package br.com.c8tech.vxosgi.lib.concurrent;
+
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.osgi.annotation.versioning.ProviderType;
+
+/**
+ * A view of a {@link HashedWheelTimer} scoped to a single component. It
+ * tracks the tasks scheduled through it, so all of them can be cancelled
+ * at once when the component is deactivated.
+ * <p>
+ * The tasks are executed by the worker thread of the timer and must be
+ * short. Blocking work must be handed off to the component executor.
+ *
+ * @since 0.1.1
+ * @author Cristiano Gavião
+ *
+ */
+@ProviderType
+public final class ComponentTimer {
+
+    /**
+     * A task scheduled through this view. Periodic tasks reschedule
+     * themselves after each execution.
+     */
+    private final class TrackedTimeout implements Timeout, Runnable {
+
+        private volatile boolean cancelled;
+
+        private volatile Timeout current;
+
+        private volatile boolean expired;
+
+        private final long periodNanos;
+
+        private final Runnable task;
+
+        private TrackedTimeout(Runnable pTask, long pPeriodNanos) {
+            task = pTask;
+            periodNanos = pPeriodNanos;
+        }
+
+        @Override
+        public boolean cancel() {
+            if (cancelled || expired) {
+                return false;
+            }
+            cancelled = true;
+            outstanding.remove(this);
+            Timeout timeout = current;
+            if (timeout != null) {
+                timeout.cancel();
+            }
+            return true;
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        @Override
+        public boolean isExpired() {
+            return expired;
+        }
+
+        @Override
+        public void run() {
+            if (cancelled) {
+                return;
+            }
+            if (periodNanos <= 0) {
+                expired = true;
+                outstanding.remove(this);
+                task.run();
+                return;
+            }
+            try {
+                task.run();
+            } finally {
+                if (!cancelled) {
+                    current = timer.schedule(this, periodNanos,
+                            TimeUnit.NANOSECONDS);
+                }
+            }
+        }
+    }
+
+    private volatile boolean closed;
+
+    private final Set<TrackedTimeout> outstanding = ConcurrentHashMap
+            .newKeySet();
+
+    private final HashedWheelTimer timer;
+
+    /**
+     * Creates a view of the specified timer.
+     *
+     * @param pTimer
+     *            the timer that will execute the tasks.
+     */
+    public ComponentTimer(HashedWheelTimer pTimer) {
+        timer = Objects.requireNonNull(pTimer, "timer");
+    }
+
+    /**
+     * Cancels all tasks scheduled through this view and prevents new ones
+     * from being scheduled.
+     *
+     * @return the number of tasks cancelled.
+     */
+    public int cancelAll() {
+        closed = true;
+        int count = 0;
+        for (TrackedTimeout timeout : outstanding) {
+            if (timeout.cancel()) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return the number of tasks scheduled through this view that were
+     *         neither executed nor cancelled. Periodic tasks are counted
+     *         until cancelled.
+     */
+    public int getPendingCount() {
+        return outstanding.size();
+    }
+
+    /**
+     * @return true if {@link #cancelAll()} was called.
+     */
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Schedules a task to be executed once after the specified delay.
+     *
+     * @param pTask
+     *            the task to execute. It must be short.
+     * @param pDelay
+     *            the delay.
+     * @param pUnit
+     *            the unit of the delay.
+     * @return the handle of the scheduled task.
+     * @throws IllegalStateException
+     *             if this view was closed.
+     */
+    public Timeout schedule(Runnable pTask, long pDelay, TimeUnit pUnit) {
+        return track(new TrackedTimeout(Objects.requireNonNull(pTask, "task"),
+                0), pUnit.toNanos(pDelay));
+    }
+
+    /**
+     * Schedules a task to be executed periodically, waiting the specified
+     * period between the end of an execution and the start of the next one.
+     *
+     * @param pTask
+     *            the task to execute. It must be short.
+     * @param pInitialDelay
+     *            the delay of the first execution.
+     * @param pPeriod
+     *            the delay between executions.
+     * @param pUnit
+     *            the unit of the delays.
+     * @return the handle of the scheduled task.
+     * @throws IllegalStateException
+     *             if this view was closed.
+     */
+    public Timeout scheduleWithFixedDelay(Runnable pTask, long pInitialDelay,
+            long pPeriod, TimeUnit pUnit) {
+        if (pPeriod <= 0) {
+            throw new IllegalArgumentException("The period must be positive.");
+        }
+        return track(new TrackedTimeout(Objects.requireNonNull(pTask, "task"),
+                pUnit.toNanos(pPeriod)), pUnit.toNanos(pInitialDelay));
+    }
+
+    @Override
+    public String toString() {
+        return "ComponentTimer[pending=" + getPendingCount() + ", closed="
+                + closed + "]";
+    }
+
+    private Timeout track(TrackedTimeout pTimeout, long pDelayNanos) {
+        if (closed) {
+            throw new IllegalStateException(
+                    "The component timer was already closed.");
+        }
+        outstanding.add(pTimeout);
+        pTimeout.current = timer.schedule(pTimeout, pDelayNanos,
+                TimeUnit.NANOSECONDS);
+        if (closed) {
+            // raced with cancelAll()
+            pTimeout.cancel();
+        }
+        return pTimeout;
+    }
+}
@@ -0,0 +1,470 @@
+/**
+ * ==========================================================================
+ * Copyright © 2015-2019 Cristiano Gavião, C8 Technology ME.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Cristiano Gavião (cvgaviao@c8tech.com.br)- initial API and implementation
+ * ==========================================================================
+ */
+package br.com.c8tech.vxosgi.lib.concurrent;
+
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.osgi.annotation.versioning.ProviderType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A timer optimized for a very large number of pending timeouts, most of them
+ * expected to be cancelled before expiring, like I/O timeouts and periodic
+ * refreshes.
+ * <p>
+ * Timeouts are kept in a wheel of buckets, each one holding a doubly linked
+ * list of the timeouts expiring in that tick. Scheduling only enqueues the
+ * new timeout and cancelling only flags it, both in constant time; the single
+ * worker thread moves them into or out of their buckets on the next tick. The
+ * precision is therefore bounded by the tick duration.
+ * <p>
+ * Expired tasks are executed by the worker thread, so they must be short.
+ * Blocking work must be handed off to an executor.
+ * <p>
+ * The {@link #getSharedInstance() shared instance} lives as long as the
+ * bundle of this library. It is stopped by {@link LibraryActivator} when the
+ * bundle stops and can not be stopped by anyone else.
+ *
+ * @since 0.1.1
+ * @author Cristiano Gavião
+ *
+ */
+@ProviderType
+public final class HashedWheelTimer {
+
+    /**
+     * A list of the timeouts placed in the same slot of the wheel.
+     */
+    private static final class Bucket {
+
+        private WheelTimeout head;
+
+        private WheelTimeout tail;
+
+        private void add(WheelTimeout pTimeout) {
+            pTimeout.bucket = this;
+            if (head == null) {
+                head = pTimeout;
+                tail = pTimeout;
+            } else {
+                tail.next = pTimeout;
+                pTimeout.prev = tail;
+                tail = pTimeout;
+            }
+        }
+
+        private void expireTimeouts(long pDeadline) {
+            WheelTimeout timeout = head;
+            while (timeout != null) {
+                WheelTimeout next = timeout.next;
+                if (timeout.remainingRounds <= 0) {
+                    remove(timeout);
+                    if (timeout.deadline <= pDeadline) {
+                        timeout.expire();
+                    }
+                } else if (timeout.isCancelled()) {
+                    remove(timeout);
+                } else {
+                    timeout.remainingRounds--;
+                }
+                timeout = next;
+            }
+        }
+
+        private void remove(WheelTimeout pTimeout) {
+            if (pTimeout.prev != null) {
+                pTimeout.prev.next = pTimeout.next;
+            }
+            if (pTimeout.next != null) {
+                pTimeout.next.prev = pTimeout.prev;
+            }
+            if (pTimeout == head) {
+                head = pTimeout.next;
+            }
+            if (pTimeout == tail) {
+                tail = pTimeout.prev;
+            }
+            pTimeout.prev = null;
+            pTimeout.next = null;
+            pTimeout.bucket = null;
+        }
+    }
+
+    /**
+     * A timeout placed in the wheel. It is kept as small as possible since
+     * there can be millions of them.
+     */
+    private final class WheelTimeout implements Timeout {
+
+        private Bucket bucket;
+
+        /**
+         * The expiration time, relative to the start time of the timer.
+         */
+        private final long deadline;
+
+        private WheelTimeout next;
+
+        private WheelTimeout prev;
+
+        private long remainingRounds;
+
+        // not private, so it can be reached by the STATE updater
+        volatile int state; // NOSONAR
+
+        private final Runnable task;
+
+        private WheelTimeout(Runnable pTask, long pDeadline) {
+            task = pTask;
+            deadline = pDeadline;
+        }
+
+        @Override
+        public boolean cancel() {
+            if (!STATE.compareAndSet(this, ST_INIT, ST_CANCELLED)) {
+                return false;
+            }
+            cancelledTimeouts.add(this);
+            return true;
+        }
+
+        private void expire() {
+            if (!STATE.compareAndSet(this, ST_INIT, ST_EXPIRED)) {
+                return;
+            }
+            pendingCount.decrementAndGet();
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                LOGGER.warn("A task scheduled in timer '{}' has failed.", name,
+                        e);
+            }
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return state == ST_CANCELLED;
+        }
+
+        @Override
+        public boolean isExpired() {
+            return state == ST_EXPIRED;
+        }
+    }
+
+    /**
+     * The default duration of a tick of the shared timer.
+     */
+    public static final long DEFAULT_TICK_MILLIS = 10;
+
+    /**
+     * The default number of buckets of the wheel of the shared timer.
+     */
+    public static final int DEFAULT_TICKS_PER_WHEEL = 512;
+
+    private static final Logger LOGGER = LoggerFactory
+            .getLogger(HashedWheelTimer.class);
+
+    private static final String SHARED_NAME = "vxosgi-wheel-timer";
+
+    /**
+     * The timer shared by all components, lazily created.
+     */
+    private static volatile HashedWheelTimer shared;
+
+    /**
+     * Set while the bundle of this library is stopped, so the shared timer is
+     * not created again.
+     */
+    private static boolean sharedClosed; // guarded by HashedWheelTimer.class
+
+    /**
+     * The maximum number of new timeouts moved into the wheel on each tick,
+     * so a burst of scheduling can not stall the expiration.
+     */
+    private static final int MAX_TRANSFERS_PER_TICK = 100_000;
+
+    private static final AtomicIntegerFieldUpdater<WheelTimeout> STATE = AtomicIntegerFieldUpdater
+            .newUpdater(WheelTimeout.class, "state");
+
+    private static final int ST_CANCELLED = 1;
+
+    private static final int ST_EXPIRED = 2;
+
+    private static final int ST_INIT = 0;
+
+    private final Queue<WheelTimeout> cancelledTimeouts = new ConcurrentLinkedQueue<>();
+
+    private final int mask;
+
+    private final String name;
+
+    private final Queue<WheelTimeout> newTimeouts = new ConcurrentLinkedQueue<>();
+
+    private final AtomicLong pendingCount = new AtomicLong();
+
+    private volatile boolean running = true;
+
+    private final boolean sharedInstance;
+
+    private final long startTime;
+
+    private final long tickNanos;
+
+    private final Bucket[] wheel;
+
+    private final Thread worker;
+
+    /**
+     * Creates a new timer and starts its worker thread.
+     *
+     * @param pName
+     *            the name of the worker thread.
+     * @param pTickDuration
+     *            the duration of each tick.
+     * @param pUnit
+     *            the unit of the tick duration.
+     * @param pTicksPerWheel
+     *            the number of buckets of the wheel, rounded up to a power of
+     *            two.
+     */
+    public HashedWheelTimer(String pName, long pTickDuration, TimeUnit pUnit,
+            int pTicksPerWheel) {
+        this(pName, pTickDuration, pUnit, pTicksPerWheel, false);
+    }
+
+    private HashedWheelTimer(String pName, long pTickDuration, TimeUnit pUnit,
+            int pTicksPerWheel, boolean pSharedInstance) {
+        name = Objects.requireNonNull(pName, "name");
+        sharedInstance = pSharedInstance;
+        tickNanos = Math.max(TimeUnit.MILLISECONDS.toNanos(1),
+                pUnit.toNanos(pTickDuration));
+        int size = 1;
+        while (size < pTicksPerWheel && size < (1 << 30)) {
+            size <<= 1;
+        }
+        wheel = new Bucket[size];
+        for (int i = 0; i < size; i++) {
+            wheel[i] = new Bucket();
+        }
+        mask = size - 1;
+        startTime = System.nanoTime();
+        worker = new Thread(this::work, pName);
+        worker.setDaemon(true);
+        // must not pin the class loader of whoever created it
+        worker.setContextClassLoader(HashedWheelTimer.class.getClassLoader());
+        worker.start();
+    }
+
+    /**
+     * Stops the shared timer, called when the bundle of this library stops.
+     * It is not created again until {@link #openSharedInstance()} is called.
+     */
+    static void closeSharedInstance() {
+        HashedWheelTimer timer;
+        synchronized (HashedWheelTimer.class) {
+            sharedClosed = true;
+            timer = shared;
+            shared = null;
+        }
+        if (timer != null) {
+            timer.halt();
+        }
+    }
+
+    /**
+     * @return the timer shared by all components of the framework.
+     * @throws IllegalStateException
+     *             if the bundle of this library was stopped.
+     */
+    public static HashedWheelTimer getSharedInstance() {
+        HashedWheelTimer timer = shared;
+        if (timer != null) {
+            return timer;
+        }
+        synchronized (HashedWheelTimer.class) {
+            if (sharedClosed) {
+                throw new IllegalStateException("The timer '" + SHARED_NAME
+                        + "' was stopped with its bundle.");
+            }
+            if (shared == null) {
+                shared = new HashedWheelTimer(SHARED_NAME,
+                        DEFAULT_TICK_MILLIS, TimeUnit.MILLISECONDS,
+                        DEFAULT_TICKS_PER_WHEEL, true);
+            }
+            return shared;
+        }
+    }
+
+    /**
+     * Allows the shared timer to be created again, called when the bundle of
+     * this library starts.
+     */
+    static synchronized void openSharedInstance() {
+        sharedClosed = false;
+    }
+
+    /**
+     * @return the number of timeouts that have neither expired nor been
+     *         removed after being cancelled.
+     */
+    public long getPendingCount() {
+        return pendingCount.get();
+    }
+
+    private void halt() {
+        running = false;
+        worker.interrupt();
+        if (Thread.currentThread() == worker) {
+            return;
+        }
+        try {
+            // the thread must be gone before the bundle class loader is
+            // released
+            worker.join(TimeUnit.NANOSECONDS.toMillis(tickNanos) + 1_000L);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void processCancelledTimeouts() {
+        WheelTimeout timeout;
+        while ((timeout = cancelledTimeouts.poll()) != null) {
+            if (timeout.bucket != null) {
+                timeout.bucket.remove(timeout);
+            }
+            pendingCount.decrementAndGet();
+        }
+    }
+
+    /**
+     * Schedules a task to be executed once after the specified delay.
+     *
+     * @param pTask
+     *            the task to execute. It must be short.
+     * @param pDelay
+     *            the delay.
+     * @param pUnit
+     *            the unit of the delay.
+     * @return the handle of the scheduled task.
+     * @throws IllegalStateException
+     *             if the timer was stopped.
+     */
+    public Timeout schedule(Runnable pTask, long pDelay, TimeUnit pUnit) {
+        Objects.requireNonNull(pTask, "task");
+        if (!running) {
+            throw new IllegalStateException(
+                    "The timer '" + name + "' was stopped.");
+        }
+        long deadline = System.nanoTime() - startTime
+                + Math.max(0, pUnit.toNanos(pDelay));
+        if (deadline < 0) {
+            // guards against overflow of very long delays
+            deadline = Long.MAX_VALUE;
+        }
+        WheelTimeout timeout = new WheelTimeout(pTask, deadline);
+        pendingCount.incrementAndGet();
+        newTimeouts.add(timeout);
+        if (!running && newTimeouts.remove(timeout)) {
+            // raced with stop(), it would never expire
+            pendingCount.decrementAndGet();
+            throw new IllegalStateException(
+                    "The timer '" + name + "' was stopped.");
+        }
+        return timeout;
+    }
+
+    /**
+     * Stops the worker thread. Pending timeouts will never expire and new
+     * ones are refused.
+     *
+     * @throws UnsupportedOperationException
+     *             if this is the {@link #getSharedInstance() shared timer},
+     *             which is stopped with the bundle of this library.
+     */
+    public void stop() {
+        if (sharedInstance) {
+            throw new UnsupportedOperationException("The timer '" + name
+                    + "' is shared, it is stopped with its bundle.");
+        }
+        halt();
+    }
+
+    @Override
+    public String toString() {
+        return "HashedWheelTimer[name=" + name + ", pending="
+                + getPendingCount() + "]";
+    }
+
+    private void transferTimeoutsToBuckets(long pTick) {
+        for (int i = 0; i < MAX_TRANSFERS_PER_TICK; i++) {
+            WheelTimeout timeout = newTimeouts.poll();
+            if (timeout == null) {
+                return;
+            }
+            if (timeout.isCancelled()) {
+                // it will be discounted by processCancelledTimeouts
+                continue;
+            }
+            long calculated = timeout.deadline / tickNanos;
+            timeout.remainingRounds = (calculated - pTick) / wheel.length;
+            // a late timeout is placed in the current tick
+            long ticks = Math.max(calculated, pTick);
+            wheel[(int) (ticks & mask)].add(timeout);
+        }
+    }
+
+    /**
+     * Sleeps until the end of the specified tick.
+     *
+     * @return the time elapsed since the start or -1 if the timer stopped.
+     */
+    private long waitForNextTick(long pTick) {
+        long deadline = tickNanos * (pTick + 1);
+        for (;;) {
+            long current = System.nanoTime() - startTime;
+            long sleepMillis = (deadline - current + 999_999) / 1_000_000;
+            if (sleepMillis <= 0) {
+                return current;
+            }
+            try {
+                Thread.sleep(sleepMillis);
+            } catch (InterruptedException e) { // NOSONAR
+                if (!running) {
+                    return -1;
+                }
+            }
+        }
+    }
+
+    private void work() {
+        long tick = 0;
+        while (running) {
+            long deadline = waitForNextTick(tick);
+            if (deadline < 0) {
+                return;
+            }
+            processCancelledTimeouts();
+            transferTimeoutsToBuckets(tick);
+            wheel[(int) (tick & mask)].expireTimeouts(deadline);
+            tick++;
+        }
+    }
+}
@@ -0,0 +1,65 @@
+/**
+ * ==========================================================================
+ * Copyright © 2015-2019 Cristiano Gavião, C8 Technology ME.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Cristiano Gavião (cvgaviao@c8tech.com.br)- initial API and implementation
+ * ==========================================================================
+ */
+package br.com.c8tech.vxosgi.lib.concurrent;
+
+import org.osgi.framework.BundleActivator;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.BundleEvent;
+import org.osgi.framework.SynchronousBundleListener;
+
+import br.com.c8tech.vxosgi.lib.cm.JsonPropertyCache;
+
+/**
+ * The activator of the bundle of this library. It ties the resources shared
+ * by all the components to the life of the bundle, so stopping or refreshing
+ * it does not leave threads behind that would keep its class loader alive.
+ * <p>
+ * It also discards the results cached by {@link JsonPropertyCache} for any
+ * bundle that is updated, refreshed or uninstalled, since they would keep
+ * the previous class loader of that bundle alive.
+ *
+ * @since 0.1.1
+ * @author Cristiano Gavião
+ *
+ */
+public final class LibraryActivator implements BundleActivator {
+
+    private final SynchronousBundleListener bundleListener = pEvent -> {
+        switch (pEvent.getType()) {
+        case BundleEvent.UNINSTALLED:
+        case BundleEvent.UNRESOLVED:
+        case BundleEvent.UPDATED:
+            JsonPropertyCache.getInstance().evict(pEvent.getBundle());
+            break;
+        default:
+            break;
+        }
+    };
+
+    @Override
+    public void start(BundleContext pContext) throws Exception {
+        HashedWheelTimer.openSharedInstance();
+        pContext.addBundleListener(bundleListener);
+    }
+
+    @Override
+    public void stop(BundleContext pContext) throws Exception {
+        try {
+            pContext.removeBundleListener(bundleListener);
+            JsonPropertyCache.getInstance().clear();
+        } finally {
+            HashedWheelTimer.closeSharedInstance();
+        }
+    }
+}
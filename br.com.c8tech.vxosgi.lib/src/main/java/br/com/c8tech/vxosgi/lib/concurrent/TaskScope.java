@@ -0,0 +1,140 @@
+/**
+ * ==========================================================================
+ * Copyright © 2015-2019 Cristiano Gavião, C8 Technology ME.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Cristiano Gavião (cvgaviao@c8tech.com.br)- initial API and implementation
+ * ==========================================================================
+ */
+package br.com.c8tech.vxosgi.lib.concurrent;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.osgi.annotation.versioning.ProviderType;
+
+/**
+ * A scope used to fan out a group of related tasks to a
+ * {@link ComponentExecutor} and to join them afterwards.
+ * <p>
+ * The scope fails as soon as any of its tasks fails, cancelling the others.
+ * Closing the scope cancels the tasks that have not finished, so it is meant
+ * to be used with a try-with-resources block:
+ *
+ * <pre>
+ * try (TaskScope&lt;Row&gt; scope = getComponentExecutor().newTaskScope()) {
+ *     scope.fork(() -&gt; queryA());
+ *     scope.fork(() -&gt; queryB());
+ *     List&lt;Row&gt; rows = scope.join(2, TimeUnit.SECONDS);
+ * }
+ * </pre>
+ *
+ * @param <T>
+ *            the type of the results of the tasks.
+ *
+ * @since 0.1.1
+ * @author Cristiano Gavião
+ *
+ */
+@ProviderType
+public final class TaskScope<T> implements AutoCloseable {
+
+    private final CompletionService<T> completionService;
+
+    private final List<Future<T>> futures = new ArrayList<>();
+
+    private boolean joined;
+
+    TaskScope(ComponentExecutor pExecutor) {
+        completionService = new ExecutorCompletionService<>(pExecutor);
+    }
+
+    private void cancelAll() {
+        for (Future<T> future : futures) {
+            future.cancel(true);
+        }
+    }
+
+    /**
+     * Cancels all tasks of this scope that have not finished yet.
+     */
+    @Override
+    public void close() {
+        cancelAll();
+    }
+
+    /**
+     * Forks a new task in this scope.
+     *
+     * @param pTask
+     *            the task to execute.
+     * @return the future of the task.
+     * @throws IllegalStateException
+     *             if the scope was already joined.
+     */
+    public Future<T> fork(Callable<T> pTask) {
+        if (joined) {
+            throw new IllegalStateException("The task scope was joined.");
+        }
+        Future<T> future = completionService.submit(pTask);
+        futures.add(future);
+        return future;
+    }
+
+    /**
+     * Waits for all the forked tasks to finish, until the specified deadline.
+     *
+     * @param pTimeout
+     *            the maximum time to wait.
+     * @param pUnit
+     *            the unit of the timeout.
+     * @return the results of the tasks, in the order they were forked.
+     * @throws ExecutionException
+     *             the failure of the first failed task. All other tasks are
+     *             cancelled.
+     * @throws TimeoutException
+     *             if the deadline was reached. All unfinished tasks are
+     *             cancelled.
+     * @throws InterruptedException
+     *             if the current thread was interrupted while waiting.
+     */
+    public List<T> join(long pTimeout, TimeUnit pUnit)
+            throws ExecutionException, TimeoutException, InterruptedException {
+        joined = true;
+        long deadline = System.nanoTime() + pUnit.toNanos(pTimeout);
+        try {
+            for (int i = 0; i < futures.size(); i++) {
+                Future<T> done = completionService.poll(
+                        deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                if (done == null) {
+                    throw new TimeoutException(
+                            "The tasks of the scope have not finished in "
+                                    + pUnit.toMillis(pTimeout) + "ms.");
+                }
+                // fails fast, surfacing the exception of the failed task
+                done.get();
+            }
+        } catch (ExecutionException | TimeoutException
+                | InterruptedException e) {
+            cancelAll();
+            throw e;
+        }
+        List<T> results = new ArrayList<>(futures.size());
+        for (Future<T> future : futures) {
+            results.add(future.get());
+        }
+        return results;
+    }
+}
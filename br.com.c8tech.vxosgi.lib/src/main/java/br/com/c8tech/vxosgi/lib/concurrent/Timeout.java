@@ -0,0 +1,45 @@
+/**
+ * ==========================================================================
+ * Copyright © 2015-2019 Cristiano Gavião, C8 Technology ME.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Cristiano Gavião (cvgaviao@c8tech.com.br)- initial API and implementation
+ * ==========================================================================
+ */
+package br.com.c8tech.vxosgi.lib.concurrent;
+
+import org.osgi.annotation.versioning.ProviderType;
+
+/**
+ * A handle for a task scheduled in a {@link HashedWheelTimer} or in a
+ * {@link ComponentTimer}.
+ *
+ * @since 0.1.1
+ * @author Cristiano Gavião
+ *
+ */
+@ProviderType
+public interface Timeout {
+
+    /**
+     * Cancels the scheduled task. Periodic tasks are not executed anymore.
+     *
+     * @return false if the task was already executed or cancelled.
+     */
+    boolean cancel();
+
+    /**
+     * @return true if the task was cancelled.
+     */
+    boolean isCancelled();
+
+    /**
+     * @return true if the task was executed. Periodic tasks never expire.
+     */
+    boolean isExpired();
+}
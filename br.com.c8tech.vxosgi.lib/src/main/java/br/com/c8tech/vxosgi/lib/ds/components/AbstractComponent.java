@@ -15,8 +15,12 @@ package br.com.c8tech.vxosgi.lib.ds.components;
 
 import static org.osgi.service.component.ComponentConstants.COMPONENT_ID;
 import static org.osgi.service.component.ComponentConstants.COMPONENT_NAME;
+import static org.osgi.service.component.ComponentConstants.DEACTIVATION_REASON_BUNDLE_STOPPED;
+import static org.osgi.service.component.ComponentConstants.DEACTIVATION_REASON_UNSPECIFIED;
 
 import java.util.Objects;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 
 import org.osgi.annotation.versioning.ProviderType;
 import org.osgi.framework.Bundle;
@@ -29,7 +33,14 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import br.com.c8tech.vxosgi.lib.ConstantsLogging;
+import br.com.c8tech.vxosgi.lib.cm.ConfigurationBinders;
+import br.com.c8tech.vxosgi.lib.cm.ConfigurationBinding;
 import br.com.c8tech.vxosgi.lib.cm.ConfigurationUtil;
+import br.com.c8tech.vxosgi.lib.cm.JsonPropertyCache;
+import br.com.c8tech.vxosgi.lib.cm.JsonPropertyReader;
+import br.com.c8tech.vxosgi.lib.concurrent.ComponentExecutor;
+import br.com.c8tech.vxosgi.lib.concurrent.ComponentTimer;
+import br.com.c8tech.vxosgi.lib.concurrent.HashedWheelTimer;
 import br.com.c8tech.vxosgi.lib.ds.ComponentWorkflowException;
 
 /**
@@ -41,6 +52,10 @@ import br.com.c8tech.vxosgi.lib.ds.ComponentWorkflowException;
  * Unfortunately the specification do no allow us to put annotations on base
  * parent classes. It <b>must</b> be done on every children class. The methods
  * on this class are aimed to help with this challenge.
+ * <p>
+ * The activations, modifications and deactivations done by the default
+ * workflows are always recorded in the {@link LifecycleJournal} of the
+ * component name.
  * 
  * @since 0.1.1
  * @author Cristiano Gavião
@@ -49,6 +64,92 @@ import br.com.c8tech.vxosgi.lib.ds.ComponentWorkflowException;
 @ProviderType
 public abstract class AbstractComponent {
 
+    /**
+     * A step of a lifecycle workflow whose resource usage can be accounted.
+     */
+    @FunctionalInterface
+    private interface PhaseAction {
+
+        void run() throws ComponentWorkflowException;
+    }
+
+    /**
+     * The default maximum number of platform threads used by the component
+     * executor when virtual threads are not available.
+     */
+    public static final int DEFAULT_EXECUTOR_MAX_THREADS = 8;
+
+    /**
+     * The default maximum number of tasks waiting for a platform thread of
+     * the component executor.
+     */
+    public static final int DEFAULT_EXECUTOR_QUEUE_CAPACITY = 1024;
+
+    /**
+     * The default time in milliseconds given to the tasks of the component
+     * executor to finish during the deactivation.
+     */
+    public static final long DEFAULT_EXECUTOR_SHUTDOWN_TIMEOUT = 5_000L;
+
+    /**
+     * The component property used to set the maximum number of bytes a
+     * lifecycle phase can allocate before being reported. Zero, the default,
+     * disables the check.
+     */
+    public static final String PROP_ACCOUNTING_ALLOCATION_BUDGET = "component.accounting.budget.allocation";
+
+    /**
+     * The component property used to set the maximum CPU time in milliseconds
+     * a lifecycle phase can spend before being reported. Zero, the default,
+     * disables the check.
+     */
+    public static final String PROP_ACCOUNTING_CPU_BUDGET = "component.accounting.budget.cpu";
+
+    /**
+     * The component property used to enable the accounting of the bytes
+     * allocated and the CPU time spent by each lifecycle phase, see
+     * {@link ComponentResourceAccounting}. Default is false.
+     */
+    public static final String PROP_ACCOUNTING_ENABLED = "component.accounting.enabled";
+
+    /**
+     * The component property used to set the maximum time in milliseconds a
+     * debounced configuration modification can stay pending. Default is ten
+     * times the quiet window.
+     */
+    public static final String PROP_DEBOUNCE_MAX_DELAY = "component.modification.debounce.maxdelay";
+
+    /**
+     * The component property used to enable the debouncing of configuration
+     * modifications, setting the quiet window in milliseconds within which
+     * modifications are coalesced. Zero, the default, disables it.
+     */
+    public static final String PROP_DEBOUNCE_QUIET_WINDOW = "component.modification.debounce.quiet";
+
+    /**
+     * The component property used to set the maximum number of platform
+     * threads used by the component executor.
+     */
+    public static final String PROP_EXECUTOR_MAX_THREADS = "component.executor.max.threads";
+
+    /**
+     * The component property used to set the maximum number of tasks waiting
+     * for a platform thread of the component executor.
+     */
+    public static final String PROP_EXECUTOR_QUEUE_CAPACITY = "component.executor.queue.capacity";
+
+    /**
+     * The component property used to set the time in milliseconds given to
+     * the tasks of the component executor to finish during the deactivation.
+     */
+    public static final String PROP_EXECUTOR_SHUTDOWN_TIMEOUT = "component.executor.shutdown.timeout";
+
+    /**
+     * The component property used to inform whether the component executor
+     * must use virtual threads when the JVM supports them. Default is true.
+     */
+    public static final String PROP_EXECUTOR_VIRTUAL_THREADS = "component.executor.virtual.threads";
+
     private static final String MSG = " of component instance id-{} from '{}'.";
 
     private static final String MSG_END_ACTIVATION = "Activated component instance id-{} from '{}'.";
@@ -81,8 +182,31 @@ public abstract class AbstractComponent {
      */
     private String componentName;
 
+    /**
+     * The executor used to run the blocking work of this component. It is
+     * lazily created and shut down during the deactivation.
+     */
+    private ComponentExecutor componentExecutor;
+
+    /**
+     * The view of the shared timer used by this component. It is lazily
+     * created and all its tasks are cancelled during the deactivation.
+     */
+    private ComponentTimer componentTimer;
+
+    /**
+     * Set when the executor and the timer were released by the
+     * deactivation, so they are not created again.
+     */
+    private boolean deactivated;
+
     private Logger logger;
 
+    /**
+     * Coalesces the configuration modifications when debouncing is enabled.
+     */
+    private ModificationDebouncer modificationDebouncer;
+
     /**
      * DS needs a default constructor. But the children classes must call the
      * constructor {@link #AbstractComponent(Logger)} and pass the class logger
@@ -168,6 +292,74 @@ public abstract class AbstractComponent {
     protected void afterActivationWorkflow() throws ComponentWorkflowException {
     }
 
+    /**
+     * Internal extension point used by the base classes of this package in
+     * order to finish the activation of the component instance after the
+     * custom {@link #afterActivationWorkflow()} was called and before the
+     * activation is reported as ended to DS.
+     *
+     * @throws ComponentWorkflowException
+     *             an exception that will make DS fail the activation.
+     */
+    void completeActivationWorkflow() throws ComponentWorkflowException {
+    }
+
+    /**
+     * Internal extension point used by the base classes of this package in
+     * order to release what they hold after the custom
+     * {@link #beforeDeactivationWorkflow(Integer)} was called and before the
+     * component properties are reset.
+     *
+     * @param pDeactivationReason
+     *            the reason informed by DS.
+     */
+    void completeDeactivationWorkflow(Integer pDeactivationReason) {
+    }
+
+    /**
+     * Internal extension point used by the base classes of this package in
+     * order to apply the new component properties after the custom
+     * {@link #afterModificationWorkflow(ComponentContext)} was called.
+     *
+     * @throws ComponentWorkflowException
+     *             an exception that will make DS fail the modification.
+     */
+    void completeModificationWorkflow() throws ComponentWorkflowException {
+    }
+
+    /**
+     * Internal extension point used by the base classes of this package in
+     * order to prepare the component instance after its properties were
+     * initialized and before the custom {@link #afterActivationWorkflow()} is
+     * called.
+     *
+     * @throws ComponentWorkflowException
+     *             an exception that will make DS fail the activation.
+     */
+    void prepareActivationWorkflow() throws ComponentWorkflowException {
+    }
+
+    /**
+     * Internal extension point called when an accounted lifecycle phase has
+     * exceeded one of the budgets set by the component properties
+     * {@value #PROP_ACCOUNTING_ALLOCATION_BUDGET} and
+     * {@value #PROP_ACCOUNTING_CPU_BUDGET}.
+     *
+     * @param pUsage
+     *            the aggregated usage of the phase.
+     * @param pAllocatedBytes
+     *            the bytes allocated by this execution of the phase.
+     * @param pCpuNanos
+     *            the CPU time spent by this execution of the phase.
+     */
+    void resourceBudgetExceeded(PhaseResourceUsage pUsage,
+            long pAllocatedBytes, long pCpuNanos) {
+        getLogger().warn(ConstantsLogging.MARKER_COMPONENT_LIFECYCLE,
+                "Phase {} of component instance id-{} from '{}' has exceeded its budget, allocating {} bytes and spending {}ns of CPU.",
+                pUsage.getPhase(), getId(), getNameShort(), pAllocatedBytes,
+                pCpuNanos);
+    }
+
     /**
      * This empty method is aimed to be optionally overridden by concrete
      * subclasses in order to extend the default deactivate workflow.
@@ -220,6 +412,9 @@ public abstract class AbstractComponent {
     }
 
     /**
+     * When the activation fails, what was created by it is released as it
+     * would be by the deactivation workflow, since DS does not deactivate a
+     * component instance whose activation has failed.
      *
      * @see #activate(ComponentContext)
      * @see #initializeComponentProperties(ComponentContext)
@@ -237,24 +432,47 @@ public abstract class AbstractComponent {
             final ComponentContext pInjectedComponentContext)
             throws ComponentWorkflowException {
 
-        getLogger().trace(ConstantsLogging.MARKER_COMPONENT_LIFECYCLE,
-                MSG_INI_ACTIVATION, componentId, getNameShort());
+        long startedAt = System.currentTimeMillis();
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            getLogger().trace(ConstantsLogging.MARKER_COMPONENT_LIFECYCLE,
+                    MSG_INI_ACTIVATION, componentId, getNameShort());
 
-        initializeMandatoryComponentProperties(pInjectedComponentContext);
+            initializeMandatoryComponentProperties(pInjectedComponentContext);
 
-        getLogger().trace(ConstantsLogging.MARKER_COMPONENT_LIFECYCLE,
-                MSG_INI_CONFIGURATION, componentId, getNameShort());
+            getLogger().trace(ConstantsLogging.MARKER_COMPONENT_LIFECYCLE,
+                    MSG_INI_CONFIGURATION, componentId, getNameShort());
 
-        initializeComponentProperties(pInjectedComponentContext);
+            runAccountedPhase(LifecyclePhase.CONFIGURATION,
+                    () -> initializeComponentProperties(
+                            pInjectedComponentContext));
 
-        getLogger().trace(ConstantsLogging.MARKER_COMPONENT_LIFECYCLE,
-                MSG_END_CONFIGURATION, componentId, getNameShort());
+            getLogger().trace(ConstantsLogging.MARKER_COMPONENT_LIFECYCLE,
+                    MSG_END_CONFIGURATION, componentId, getNameShort());
 
-        // calls custom children optional activation method
-        afterActivationWorkflow();
+            runAccountedPhase(LifecyclePhase.ACTIVATION, () -> {
+                prepareActivationWorkflow();
 
-        getLogger().info(ConstantsLogging.MARKER_COMPONENT_LIFECYCLE,
-                MSG_END_ACTIVATION, getId(), getNameShort());
+                // calls custom children optional activation method
+                afterActivationWorkflow();
+
+                completeActivationWorkflow();
+            });
+
+            registerComponentInstance();
+
+            getLogger().info(ConstantsLogging.MARKER_COMPONENT_LIFECYCLE,
+                    MSG_END_ACTIVATION, getId(), getNameShort());
+            failed = false;
+        } finally {
+            if (failed) {
+                // DS never calls deactivate when the activation has failed
+                releaseFailedActivation();
+            }
+            journalTransition(LifecyclePhase.ACTIVATION,
+                    LifecycleJournal.NO_REASON, startedAt, start, failed);
+        }
     }
 
     /**
@@ -267,11 +485,41 @@ public abstract class AbstractComponent {
     protected final void defaultComponentDeactivationWorkflow(
             Integer pDeactivationReason) throws ComponentWorkflowException {
 
-        getLogger().debug(ConstantsLogging.MARKER_COMPONENT_LIFECYCLE,
-                MSG_INI_DEACTIVATION, getId(), pDeactivationReason);
-        beforeDeactivationWorkflow(pDeactivationReason);
+        long startedAt = System.currentTimeMillis();
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            getLogger().debug(ConstantsLogging.MARKER_COMPONENT_LIFECYCLE,
+                    MSG_INI_DEACTIVATION, getId(), pDeactivationReason);
+            ComponentRegistry.getInstance().unregister(this);
+            cancelPendingModification();
+
+            runAccountedPhase(LifecyclePhase.DEACTIVATION, () -> {
+                beforeDeactivationWorkflow(pDeactivationReason);
+
+                completeDeactivationWorkflow(pDeactivationReason);
+            });
+            failed = false;
+        } finally {
+            // released even when a deactivation hook has failed
+            cancelComponentTimer();
+
+            shutdownComponentExecutor();
+
+            journalTransition(LifecyclePhase.DEACTIVATION,
+                    pDeactivationReason != null ? pDeactivationReason
+                            : DEACTIVATION_REASON_UNSPECIFIED,
+                    startedAt, start, failed);
+
+            if (pDeactivationReason != null
+                    && pDeactivationReason == DEACTIVATION_REASON_BUNDLE_STOPPED) {
+                // the cached JSON results must not pin the stopped bundle
+                JsonPropertyCache.getInstance()
+                        .evict(getClass().getClassLoader());
+            }
 
-        resetMandatoryComponentProperties();
+            resetMandatoryComponentProperties();
+        }
     }
 
     /**
@@ -287,17 +535,167 @@ public abstract class AbstractComponent {
             final ComponentContext pInjectedComponentContext)
             throws ComponentWorkflowException {
 
-        initializeMandatoryComponentProperties(pInjectedComponentContext);
-        getLogger().debug(ConstantsLogging.MARKER_COMPONENT_LIFECYCLE,
-                MSG_INI_MODIFICATION, getId(), getNameShort());
+        long startedAt = System.currentTimeMillis();
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            initializeMandatoryComponentProperties(pInjectedComponentContext);
+            getLogger().debug(ConstantsLogging.MARKER_COMPONENT_LIFECYCLE,
+                    MSG_INI_MODIFICATION, getId(), getNameShort());
 
-        initializeComponentProperties(pInjectedComponentContext);
+            runAccountedPhase(LifecyclePhase.CONFIGURATION,
+                    () -> initializeComponentProperties(
+                            pInjectedComponentContext));
 
-        // calls custom children optional activation method
-        afterModificationWorkflow(pInjectedComponentContext);
+            // calls custom children optional activation method
+            runAccountedPhase(LifecyclePhase.MODIFICATION, () -> {
+                afterModificationWorkflow(pInjectedComponentContext);
+                completeModificationWorkflow();
+            });
 
-        getLogger().trace(ConstantsLogging.MARKER_COMPONENT_LIFECYCLE,
-                MSG_END_MODIFICATION, getId(), getNameShort());
+            getLogger().trace(ConstantsLogging.MARKER_COMPONENT_LIFECYCLE,
+                    MSG_END_MODIFICATION, getId(), getNameShort());
+            failed = false;
+        } finally {
+            journalTransition(LifecyclePhase.MODIFICATION,
+                    LifecycleJournal.NO_REASON, startedAt, start, failed);
+        }
+    }
+
+    /**
+     * A modification workflow that coalesces the configuration modifications
+     * arriving within the quiet window set by the component property
+     * {@value #PROP_DEBOUNCE_QUIET_WINDOW}, applying only the latest one
+     * through {@link #defaultComponentModificationWorkflow(ComponentContext)}.
+     * A pending modification is never delayed longer than the time set by
+     * {@value #PROP_DEBOUNCE_MAX_DELAY}.
+     * <p>
+     * Debounced modifications are applied asynchronously and one at a time
+     * by the {@link #getComponentExecutor() component executor}, so their
+     * failures are logged instead of being reported to DS. The deactivation
+     * discards the pending modification and waits for the one being applied
+     * before calling {@link #beforeDeactivationWorkflow(Integer)}. When the
+     * quiet window is not set, the modification is applied immediately.
+     *
+     * @see #modified(ComponentContext)
+     * @param pInjectedComponentContext
+     *            the injected component context object related to this
+     *            component instance.
+     * @throws ComponentWorkflowException
+     *             an exception that will make DS fail the modification, only
+     *             thrown when debouncing is disabled.
+     */
+    protected final void debouncedComponentModificationWorkflow(
+            final ComponentContext pInjectedComponentContext)
+            throws ComponentWorkflowException {
+        long quietWindow = ComponentProperties.getLong(
+                pInjectedComponentContext, PROP_DEBOUNCE_QUIET_WINDOW, 0);
+        if (quietWindow <= 0) {
+            defaultComponentModificationWorkflow(pInjectedComponentContext);
+            return;
+        }
+        long maxDelay = ComponentProperties.getLong(pInjectedComponentContext,
+                PROP_DEBOUNCE_MAX_DELAY, quietWindow * 10);
+        synchronized (this) {
+            if (modificationDebouncer == null) {
+                // captured once, the timer thread must not take the monitor
+                // of this component
+                modificationDebouncer = new ModificationDebouncer(
+                        getComponentExecutor(),
+                        this::applyDebouncedModification);
+            }
+        }
+        modificationDebouncer.submit(pInjectedComponentContext,
+                TimeUnit.MILLISECONDS.toNanos(quietWindow),
+                TimeUnit.MILLISECONDS.toNanos(Math.max(quietWindow, maxDelay)));
+    }
+
+    private void applyDebouncedModification(
+            final ComponentContext pInjectedComponentContext) {
+        try {
+            defaultComponentModificationWorkflow(pInjectedComponentContext);
+        } catch (ComponentWorkflowException | RuntimeException e) {
+            getLogger().error(ConstantsLogging.MARKER_COMPONENT_LIFECYCLE,
+                    "Failed to apply debounced modification of component instance id-{} from '{}'.",
+                    getId(), getNameShort(), e);
+        }
+    }
+
+    private void cancelComponentTimer() {
+        ComponentTimer timer;
+        synchronized (this) {
+            deactivated = true;
+            timer = componentTimer;
+            componentTimer = null;
+        }
+        if (timer != null) {
+            int cancelled = timer.cancelAll();
+            getLogger().debug(ConstantsLogging.MARKER_COMPONENT_LIFECYCLE,
+                    "{} pending timeouts of component instance id-{} from '{}' were cancelled.",
+                    cancelled, getId(), getNameShort());
+        }
+    }
+
+    private void cancelPendingModification() {
+        ModificationDebouncer debouncer;
+        synchronized (this) {
+            debouncer = modificationDebouncer;
+        }
+        if (debouncer == null) {
+            return;
+        }
+        // waits without the monitor of this component, which the running
+        // modification may need
+        long timeout = ComponentProperties.getLong(componentContext,
+                PROP_EXECUTOR_SHUTDOWN_TIMEOUT,
+                DEFAULT_EXECUTOR_SHUTDOWN_TIMEOUT);
+        try {
+            if (!debouncer.cancel(timeout, TimeUnit.MILLISECONDS)) {
+                getLogger().warn(ConstantsLogging.MARKER_COMPONENT_LIFECYCLE,
+                        "Debounced modification of component instance id-{} from '{}' still running after {}ms.",
+                        getId(), getNameShort(), timeout);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Checks that this component instance was not deactivated, before
+     * creating something that its deactivation must release.
+     *
+     * @throws IllegalStateException
+     *             if this component instance was deactivated.
+     */
+    final synchronized void ensureActive() {
+        if (deactivated) {
+            throw new IllegalStateException("The component instance id-"
+                    + getId() + " from '" + getNameShort()
+                    + "' was deactivated.");
+        }
+    }
+
+    /**
+     * The number of debounced configuration modifications that were applied.
+     *
+     * @return the number of applied debounced modifications.
+     */
+    public final synchronized long getAppliedModificationCount() {
+        return modificationDebouncer != null
+                ? modificationDebouncer.getAppliedCount()
+                : 0;
+    }
+
+    /**
+     * The number of configuration modifications that were discarded because
+     * a newer one arrived within the debouncing quiet window.
+     *
+     * @return the number of coalesced modifications.
+     */
+    public final synchronized long getCoalescedModificationCount() {
+        return modificationDebouncer != null
+                ? modificationDebouncer.getCoalescedCount()
+                : 0;
     }
 
     /**
@@ -328,6 +726,112 @@ public abstract class AbstractComponent {
         return ConfigurationUtil.instance(getComponentContext().getProperties());
     }
 
+    /**
+     * Binds the component properties to an object of a configuration type,
+     * usually called from {@link #initializeComponentProperties}.
+     * <p>
+     * Types annotated with {@link ConfigurationBinding} are bound by the
+     * binder generated at build time, without reflection, the others by the
+     * standard converter.
+     *
+     * @param pConfigurationType
+     *            the configuration type, an interface or a component
+     *            property type annotation.
+     * @return the object of the configuration type.
+     */
+    public final <T> T getContextProperties(Class<T> pConfigurationType) {
+        return ConfigurationBinders.bind(pConfigurationType,
+                getComponentContext().getProperties());
+    }
+
+    /**
+     * Reads a JSON-valued component property through the
+     * {@link JsonPropertyCache}, so an identical document is only parsed
+     * once, even across modifications and factory instances.
+     *
+     * @param pKey
+     *            the key of the property.
+     * @param pReader
+     *            the stateless reader of the document.
+     * @return the structure read or null if the property is not set.
+     * @throws javax.json.JsonException
+     *             if the document could not be read.
+     */
+    protected final <T> T getContextJsonProperty(String pKey,
+            JsonPropertyReader<T> pReader) {
+        Object value = getComponentContext().getProperties().get(pKey);
+        return value != null
+                ? JsonPropertyCache.getInstance().read(value.toString(),
+                        pReader)
+                : null;
+    }
+
+    /**
+     * Returns the executor where this component instance must run its
+     * blocking work, instead of creating its own thread pools.
+     * <p>
+     * It is backed by virtual threads when the JVM supports them, otherwise
+     * by a bounded pool of platform threads. It is shut down automatically
+     * by {@link #defaultComponentDeactivationWorkflow(Integer)} right after
+     * {@link #beforeDeactivationWorkflow(Integer)}, waiting at most the time
+     * set by the component property {@value #PROP_EXECUTOR_SHUTDOWN_TIMEOUT}
+     * for the running tasks.
+     *
+     * @return the executor of this component instance.
+     * @throws RejectedExecutionException
+     *             if this component instance was deactivated.
+     */
+    protected final synchronized ComponentExecutor getComponentExecutor() {
+        if (deactivated) {
+            throw new RejectedExecutionException("The component instance id-"
+                    + getId() + " from '" + getNameShort()
+                    + "' was deactivated.");
+        }
+        if (componentExecutor == null || componentExecutor.isShutdown()) {
+            componentExecutor = ComponentExecutor.create(
+                    "vxosgi-" + getNameShort(),
+                    ComponentProperties.getBoolean(componentContext,
+                            PROP_EXECUTOR_VIRTUAL_THREADS, true),
+                    ComponentProperties.getInt(componentContext,
+                            PROP_EXECUTOR_MAX_THREADS,
+                            DEFAULT_EXECUTOR_MAX_THREADS),
+                    ComponentProperties.getInt(componentContext,
+                            PROP_EXECUTOR_QUEUE_CAPACITY,
+                            DEFAULT_EXECUTOR_QUEUE_CAPACITY));
+        }
+        return componentExecutor;
+    }
+
+    /**
+     * Returns the timer this component instance must use to schedule its
+     * timeouts and periodic tasks, instead of creating its own timer
+     * threads.
+     * <p>
+     * It is a view of the {@link HashedWheelTimer#getSharedInstance() shared
+     * wheel timer}, so scheduling and cancelling are cheap and its precision
+     * is about {@value HashedWheelTimer#DEFAULT_TICK_MILLIS}ms. The tasks
+     * run on the timer thread and must hand off any blocking work to the
+     * {@link #getComponentExecutor() component executor}. All tasks still
+     * pending are cancelled automatically by
+     * {@link #defaultComponentDeactivationWorkflow(Integer)}.
+     *
+     * @return the timer of this component instance.
+     * @throws IllegalStateException
+     *             if this component instance was deactivated.
+     */
+    protected final synchronized ComponentTimer getComponentTimer() {
+        if (deactivated) {
+            throw new IllegalStateException("The component instance id-"
+                    + getId() + " from '" + getNameShort()
+                    + "' was deactivated.");
+        }
+        if (componentTimer == null || componentTimer.isClosed()) {
+            componentTimer = new ComponentTimer(
+                    HashedWheelTimer.getSharedInstance());
+        }
+        return componentTimer;
+    }
+
     /**
      * The ID of the component instance.
      *
@@ -446,6 +950,9 @@ public abstract class AbstractComponent {
      * {@link #defaultComponentModificationWorkflow(ComponentContext)}, but a
      * custom behavior is allowed by simply overriding the method
      * {@link #afterModificationWorkflow(ComponentContext)}.<br>
+     * Bursts of modifications can be coalesced by setting the component
+     * property {@value #PROP_DEBOUNCE_QUIET_WINDOW}, see
+     * {@link #debouncedComponentModificationWorkflow(ComponentContext)}.<br>
      *
      * But the developer can choose a different activation workflow method.
      *
@@ -457,7 +964,7 @@ public abstract class AbstractComponent {
      */
     public void modified(final ComponentContext pInjectedComponentContext)
             throws ComponentWorkflowException {
-        defaultComponentModificationWorkflow(pInjectedComponentContext);
+        debouncedComponentModificationWorkflow(pInjectedComponentContext);
     }
 
     /**
@@ -499,6 +1006,96 @@ public abstract class AbstractComponent {
 
     }
 
+    /**
+     * Records a transition in the {@link LifecycleJournal} of this component
+     * name. It must be called before the component properties are reset.
+     */
+    private void journalTransition(LifecyclePhase pPhase, int pReason,
+            long pStartedAt, long pStart, boolean pFailed) {
+        LifecycleJournal.journalOf(getName())
+                .record(componentId != null ? componentId : -1L, pPhase,
+                        pReason, pStartedAt, System.nanoTime() - pStart,
+                        pFailed);
+    }
+
+    private void registerComponentInstance() {
+        if (componentId == null) {
+            return;
+        }
+        BundleContext bundleContext = componentContext.getBundleContext();
+        ComponentRegistry.getInstance().register(this,
+                bundleContext != null
+                        ? bundleContext.getBundle().getBundleId()
+                        : -1L);
+    }
+
+    private void releaseFailedActivation() {
+        ComponentRegistry.getInstance().unregister(this);
+        try {
+            completeDeactivationWorkflow(DEACTIVATION_REASON_UNSPECIFIED);
+        } catch (RuntimeException e) {
+            getLogger().warn(ConstantsLogging.MARKER_COMPONENT_LIFECYCLE,
+                    "Failed to release the failed activation of component instance id-{} from '{}'.",
+                    getId(), getNameShort(), e);
+        } finally {
+            cancelComponentTimer();
+
+            shutdownComponentExecutor();
+        }
+    }
+
+    private void runAccountedPhase(LifecyclePhase pPhase, PhaseAction pAction)
+            throws ComponentWorkflowException {
+        if (!ComponentProperties.getBoolean(componentContext,
+                PROP_ACCOUNTING_ENABLED, false)) {
+            pAction.run();
+            return;
+        }
+        ComponentResourceAccounting accounting = ComponentResourceAccounting
+                .getInstance();
+        long allocatedAtStart = accounting.currentThreadAllocatedBytes();
+        long cpuAtStart = accounting.currentThreadCpuNanos();
+        try {
+            pAction.run();
+        } finally {
+            long allocated = accounting.currentThreadAllocatedBytes()
+                    - allocatedAtStart;
+            long cpu = accounting.currentThreadCpuNanos() - cpuAtStart;
+            long allocationBudget = ComponentProperties.getLong(
+                    componentContext, PROP_ACCOUNTING_ALLOCATION_BUDGET, 0);
+            long cpuBudget = TimeUnit.MILLISECONDS
+                    .toNanos(ComponentProperties.getLong(componentContext,
+                            PROP_ACCOUNTING_CPU_BUDGET, 0));
+            boolean breach = (allocationBudget > 0
+                    && allocated > allocationBudget)
+                    || (cpuBudget > 0 && cpu > cpuBudget);
+            PhaseResourceUsage usage = accounting.record(getName(), pPhase,
+                    allocated, cpu, breach);
+            if (breach) {
+                resourceBudgetExceeded(usage, allocated, cpu);
+            }
+        }
+    }
+
+    private void shutdownComponentExecutor() {
+        ComponentExecutor executor;
+        synchronized (this) {
+            executor = componentExecutor;
+            componentExecutor = null;
+        }
+        if (executor == null) {
+            return;
+        }
+        long timeout = ComponentProperties.getLong(componentContext,
+                PROP_EXECUTOR_SHUTDOWN_TIMEOUT,
+                DEFAULT_EXECUTOR_SHUTDOWN_TIMEOUT);
+        if (!executor.shutdown(timeout, TimeUnit.MILLISECONDS)) {
+            getLogger().warn(ConstantsLogging.MARKER_COMPONENT_LIFECYCLE,
+                    "Tasks of component instance id-{} from '{}' were interrupted after {}ms.",
+                    getId(), getNameShort(), timeout);
+        }
+    }
+
     @Override
     public String toString() {
 
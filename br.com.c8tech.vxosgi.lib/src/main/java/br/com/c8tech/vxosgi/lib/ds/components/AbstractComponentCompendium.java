@@ -14,21 +14,35 @@
 package br.com.c8tech.vxosgi.lib.ds.components;
 
 import java.util.Dictionary;
+import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.Hashtable;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReference;
 
 import org.osgi.annotation.versioning.ProviderType;
 import org.osgi.service.cm.ConfigurationAdmin;
+import org.osgi.service.component.ComponentConstants;
 import org.osgi.service.component.ComponentContext;
 import org.osgi.service.event.Event;
 import org.osgi.service.event.EventAdmin;
+import org.osgi.service.event.EventConstants;
 import org.osgi.service.prefs.PreferencesService;
 import org.slf4j.Logger;
 
 import br.com.c8tech.vxosgi.lib.ConstantsLib;
 import br.com.c8tech.vxosgi.lib.ConstantsLogging;
+import br.com.c8tech.vxosgi.lib.concurrent.ComponentExecutor;
+import br.com.c8tech.vxosgi.lib.event.DeadlineEventDelivery;
+import br.com.c8tech.vxosgi.lib.event.DeliveryReport;
+import br.com.c8tech.vxosgi.lib.event.EventJournal;
+import br.com.c8tech.vxosgi.lib.event.EventJournalConsumer;
+import br.com.c8tech.vxosgi.lib.event.PartitionedEventDispatcher;
+import br.com.c8tech.vxosgi.lib.event.PriorityEventDispatcher;
+import br.com.c8tech.vxosgi.lib.trace.EventTracer;
+import br.com.c8tech.vxosgi.lib.trace.TraceContext;
+import br.com.c8tech.vxosgi.lib.trace.TraceScope;
 
 /**
  * A basic abstract parent class for OSGi Declarative Service component classes
@@ -58,21 +72,102 @@ import br.com.c8tech.vxosgi.lib.ConstantsLogging;
 @ProviderType
 public abstract class AbstractComponentCompendium extends AbstractComponent {
 
+    /**
+     * The default maximum number of platform threads used to call the event
+     * handlers by {@link #sendEvent(String, Dictionary, long, TimeUnit)}.
+     */
+    public static final int DEFAULT_DELIVERY_MAX_THREADS = 4;
+
+    /**
+     * The property of a {@link #TOPIC_RESOURCE_BUDGET_EXCEEDED} event holding
+     * the bytes allocated by the phase.
+     */
+    public static final String EVENT_PROP_ALLOCATED_BYTES = "allocated.bytes";
+
+    /**
+     * The property of a {@link #TOPIC_RESOURCE_BUDGET_EXCEEDED} event holding
+     * the CPU time in nanoseconds spent by the phase.
+     */
+    public static final String EVENT_PROP_CPU_NANOS = "cpu.nanos";
+
+    /**
+     * The property of a {@link #TOPIC_RESOURCE_BUDGET_EXCEEDED} event holding
+     * the name of the {@link LifecyclePhase}.
+     */
+    public static final String EVENT_PROP_PHASE = "lifecycle.phase";
+
+    /**
+     * The component property used to set the number of deadlines an event
+     * handler can miss in a row before being shed by
+     * {@link #sendEvent(String, Dictionary, long, TimeUnit)}.
+     */
+    public static final String PROP_DELIVERY_FAILURE_THRESHOLD = "component.event.delivery.failure.threshold";
+
+    /**
+     * The component property used to set the maximum number of platform
+     * threads used to call the event handlers by
+     * {@link #sendEvent(String, Dictionary, long, TimeUnit)}. It is not used
+     * when the component executor runs on virtual threads.
+     */
+    public static final String PROP_DELIVERY_MAX_THREADS = "component.event.delivery.max.threads";
+
+    /**
+     * The component property used to set the time in milliseconds an event
+     * handler that keeps missing the deadlines stays shed.
+     */
+    public static final String PROP_DELIVERY_OPEN_DURATION = "component.event.delivery.open.duration";
+
+    /**
+     * The topic of the event posted when an accounted lifecycle phase of the
+     * component has exceeded its allocation or CPU budget.
+     */
+    public static final String TOPIC_RESOURCE_BUDGET_EXCEEDED = "br/com/c8tech/vxosgi/component/RESOURCE_BUDGET_EXCEEDED";
+
     /**
      * Holds an atomic reference of a {@link ConfigurationAdmin} service.
      */
     private AtomicReference<ConfigurationAdmin> configAdminServiceRef;
 
+    /**
+     * Delivers the events sent with a deadline. It is lazily created and
+     * released during the deactivation.
+     */
+    private DeadlineEventDelivery deadlineEventDelivery;
+
+    /**
+     * The executor where {@link #deadlineEventDelivery} calls the handlers,
+     * kept apart so handlers that miss their deadlines do not starve the
+     * component executor.
+     */
+    private ComponentExecutor deliveryExecutor;
+
     /**
      * Holds an atomic reference of a {@link EventAdmin} service.
      */
     private AtomicReference<EventAdmin> eventAdminServiceRef;
 
+    /**
+     * Holds an atomic reference of a {@link EventJournal} service.
+     */
+    private AtomicReference<EventJournal> eventJournalServiceRef;
+
+    /**
+     * Holds an atomic reference of a {@link PartitionedEventDispatcher}
+     * service.
+     */
+    private AtomicReference<PartitionedEventDispatcher> partitionedEventDispatcherServiceRef;
+
     /**
      * Holds an atomic reference of a {@link PreferencesService} service.
      */
     private AtomicReference<PreferencesService> preferencesServiceRef;
 
+    /**
+     * Holds an atomic reference of a {@link PriorityEventDispatcher}
+     * service.
+     */
+    private AtomicReference<PriorityEventDispatcher> priorityEventDispatcherServiceRef;
+
     /**
      * DS needs a default constructor. But the children classes must call the
      * constructor {@link #AbstractComponent(Logger)} and pass the class logger
@@ -235,6 +330,52 @@ public abstract class AbstractComponentCompendium extends AbstractComponent {
         defaultBindEventAdminService(pEventAdmin);
     }
 
+    /**
+     * This method is aimed to be used to bind an instance of the
+     * {@link EventJournal} interface to the current instance of this
+     * component.
+     * <p>
+     * Once bound, the events posted to the topics the journal considers
+     * durable are appended to it before being delivered to
+     * {@link EventAdmin}, allowing them to be replayed using
+     * {@link #replayDurableEvents(String, EventJournalConsumer)}.
+     * <p>
+     * It must be overridden in child concrete classes and tagged
+     * with @Reference annotation in order to allow the
+     * bndlib/maven-bundle-plugin to detected it and generate the proper
+     * configuration files.
+     *
+     * @see #defaultBindEventJournalService(EventJournal)
+     * @see #unbindEventJournalService(EventJournal)
+     * @param pEventJournal
+     *            the injected EventJournal service instance. It can be null.
+     */
+    protected void bindEventJournalService(final EventJournal pEventJournal) {
+        defaultBindEventJournalService(pEventJournal);
+    }
+
+    /**
+     * This method is aimed to be used to bind an instance of the
+     * {@link PartitionedEventDispatcher} to the current instance of this
+     * component, enabling
+     * {@link #postPartitionedEvent(String, Object, Map) key ordered
+     * publishing}.
+     * <p>
+     * It must be overridden in child concrete classes and tagged
+     * with @Reference annotation in order to allow the
+     * bndlib/maven-bundle-plugin to detected it and generate the proper
+     * configuration files.
+     *
+     * @see #defaultBindPartitionedEventDispatcherService(PartitionedEventDispatcher)
+     * @see #unbindPartitionedEventDispatcherService(PartitionedEventDispatcher)
+     * @param pDispatcher
+     *            the injected dispatcher instance. It can be null.
+     */
+    protected void bindPartitionedEventDispatcherService(
+            final PartitionedEventDispatcher pDispatcher) {
+        defaultBindPartitionedEventDispatcherService(pDispatcher);
+    }
+
     /**
      * This method is aimed to be used to bind an instance of the
      * {@link PreferencesService} interface to the current instance of this
@@ -267,6 +408,27 @@ public abstract class AbstractComponentCompendium extends AbstractComponent {
         defaultBindPreferencesService(pPreferencesService);
     }
 
+    /**
+     * This method is aimed to be used to bind an instance of the
+     * {@link PriorityEventDispatcher} to the current instance of this
+     * component, enabling
+     * {@link #postPriorityEvent(String, Map) priority aware publishing}.
+     * <p>
+     * It must be overridden in child concrete classes and tagged
+     * with @Reference annotation in order to allow the
+     * bndlib/maven-bundle-plugin to detected it and generate the proper
+     * configuration files.
+     *
+     * @see #defaultBindPriorityEventDispatcherService(PriorityEventDispatcher)
+     * @see #unbindPriorityEventDispatcherService(PriorityEventDispatcher)
+     * @param pDispatcher
+     *            the injected dispatcher instance. It can be null.
+     */
+    protected void bindPriorityEventDispatcherService(
+            final PriorityEventDispatcher pDispatcher) {
+        defaultBindPriorityEventDispatcherService(pDispatcher);
+    }
+
     protected final void defaultBindConfigurationAdminService(
             final ConfigurationAdmin pConfigAdminService) {
         getConfigurationAdminServiceRef().set(pConfigAdminService);
@@ -289,6 +451,37 @@ public abstract class AbstractComponentCompendium extends AbstractComponent {
                 "Bound EventAdmin service for component.{}", "");
     }
 
+    /**
+     * This method will log and save the injected instance of
+     * {@link EventJournal} service.
+     *
+     * @see #bindEventJournalService(EventJournal)
+     * @param pEventJournal
+     *            the injected EventJournal service instance. It can be null.
+     */
+    protected final void defaultBindEventJournalService(
+            final EventJournal pEventJournal) {
+        getEventJournalServiceRef().set(pEventJournal);
+        getLogger().trace(ConstantsLogging.MARKER_SERVICE_BINDING,
+                "Bound EventJournal service for component.{}", "");
+    }
+
+    /**
+     * This method will log and save the injected instance of
+     * {@link PartitionedEventDispatcher} service.
+     *
+     * @see #bindPartitionedEventDispatcherService(PartitionedEventDispatcher)
+     * @param pDispatcher
+     *            the injected dispatcher instance. It can be null.
+     */
+    protected final void defaultBindPartitionedEventDispatcherService(
+            final PartitionedEventDispatcher pDispatcher) {
+        getPartitionedEventDispatcherServiceRef().set(pDispatcher);
+        getLogger().trace(ConstantsLogging.MARKER_SERVICE_BINDING,
+                "Bound PartitionedEventDispatcher service for component.{}",
+                "");
+    }
+
     /**
      * This method will log and save the injected instance of
      * {@link PreferencesService} service.
@@ -305,6 +498,21 @@ public abstract class AbstractComponentCompendium extends AbstractComponent {
                 "Bound PreferencesService for component.{}", "");
     }
 
+    /**
+     * This method will log and save the injected instance of
+     * {@link PriorityEventDispatcher} service.
+     *
+     * @see #bindPriorityEventDispatcherService(PriorityEventDispatcher)
+     * @param pDispatcher
+     *            the injected dispatcher instance. It can be null.
+     */
+    protected final void defaultBindPriorityEventDispatcherService(
+            final PriorityEventDispatcher pDispatcher) {
+        getPriorityEventDispatcherServiceRef().set(pDispatcher);
+        getLogger().trace(ConstantsLogging.MARKER_SERVICE_BINDING,
+                "Bound PriorityEventDispatcher service for component.{}", "");
+    }
+
     /**
      * Method called by the DS or other to unbind an instance of
      * {@link EventAdmin} service.
@@ -334,6 +542,36 @@ public abstract class AbstractComponentCompendium extends AbstractComponent {
                 "Unbound EventAdmin for component '{}'.", getId());
     }
 
+    /**
+     * Method called by the DS or other to unbind an instance of
+     * {@link EventJournal} service.
+     *
+     * @param pEventJournal
+     *            the injected EventJournal service instance.
+     */
+    protected final void defaultUnbindEventJournalService(
+            final EventJournal pEventJournal) {
+        getEventJournalServiceRef().compareAndSet(pEventJournal, null);
+        getLogger().trace(ConstantsLogging.MARKER_SERVICE_BINDING,
+                "Unbound EventJournal for component '{}'.", getId());
+    }
+
+    /**
+     * Method called by the DS or other to unbind an instance of
+     * {@link PartitionedEventDispatcher} service.
+     *
+     * @param pDispatcher
+     *            the injected dispatcher instance.
+     */
+    protected final void defaultUnbindPartitionedEventDispatcherService(
+            final PartitionedEventDispatcher pDispatcher) {
+        getPartitionedEventDispatcherServiceRef().compareAndSet(pDispatcher,
+                null);
+        getLogger().trace(ConstantsLogging.MARKER_SERVICE_BINDING,
+                "Unbound PartitionedEventDispatcher for component '{}'.",
+                getId());
+    }
+
     /**
      * Method called by the DS or other to unbind an instance of
      * {@link EventAdmin} service.
@@ -348,6 +586,22 @@ public abstract class AbstractComponentCompendium extends AbstractComponent {
                 "Unbound PreferencesService for component '{}'.", getId());
     }
 
+    /**
+     * Method called by the DS or other to unbind an instance of
+     * {@link PriorityEventDispatcher} service.
+     *
+     * @param pDispatcher
+     *            the injected dispatcher instance.
+     */
+    protected final void defaultUnbindPriorityEventDispatcherService(
+            final PriorityEventDispatcher pDispatcher) {
+        getPriorityEventDispatcherServiceRef().compareAndSet(pDispatcher,
+                null);
+        getLogger().trace(ConstantsLogging.MARKER_SERVICE_BINDING,
+                "Unbound PriorityEventDispatcher for component '{}'.",
+                getId());
+    }
+
     protected ConfigurationAdmin getConfigurationAdmin() {
         return getConfigurationAdminServiceRef().get();
     }
@@ -363,6 +617,40 @@ public abstract class AbstractComponentCompendium extends AbstractComponent {
         return configAdminServiceRef;
     }
 
+    /**
+     * Returns the delivery used by
+     * {@link #sendEvent(String, Dictionary, long, TimeUnit)}, allowing the
+     * statistics of each event handler to be read.
+     *
+     * @return the deadline bounded delivery of this component instance.
+     * @throws IllegalStateException
+     *             if this component instance was deactivated.
+     */
+    protected final synchronized DeadlineEventDelivery getDeadlineEventDelivery() {
+        if (deadlineEventDelivery == null) {
+            ensureActive();
+            deliveryExecutor = ComponentExecutor.create(
+                    "vxosgi-" + getNameShort() + "-delivery",
+                    ComponentProperties.getBoolean(getComponentContext(),
+                            PROP_EXECUTOR_VIRTUAL_THREADS, true),
+                    ComponentProperties.getInt(getComponentContext(),
+                            PROP_DELIVERY_MAX_THREADS,
+                            DEFAULT_DELIVERY_MAX_THREADS),
+                    ComponentProperties.getInt(getComponentContext(),
+                            PROP_EXECUTOR_QUEUE_CAPACITY,
+                            DEFAULT_EXECUTOR_QUEUE_CAPACITY));
+            deadlineEventDelivery = new DeadlineEventDelivery(
+                    getBundleContext(), deliveryExecutor,
+                    ComponentProperties.getInt(getComponentContext(),
+                            PROP_DELIVERY_FAILURE_THRESHOLD,
+                            DeadlineEventDelivery.DEFAULT_FAILURE_THRESHOLD),
+                    ComponentProperties.getLong(getComponentContext(),
+                            PROP_DELIVERY_OPEN_DURATION,
+                            DeadlineEventDelivery.DEFAULT_OPEN_DURATION));
+        }
+        return deadlineEventDelivery;
+    }
+
     /**
      * A method that returns the {@link EventAdmin} service instance.
      *
@@ -383,6 +671,46 @@ public abstract class AbstractComponentCompendium extends AbstractComponent {
         return eventAdminServiceRef;
     }
 
+    /**
+     * A method that returns the {@link EventJournal} service instance.
+     *
+     * @return the EventJournal service instance. It can be null.
+     */
+    protected final EventJournal getEventJournalService() {
+        return getEventJournalServiceRef().get();
+    }
+
+    /**
+     *
+     * @return the atomic reference for EventJournal.
+     */
+    private AtomicReference<EventJournal> getEventJournalServiceRef() {
+        if (eventJournalServiceRef == null) {
+            eventJournalServiceRef = new AtomicReference<>();
+        }
+        return eventJournalServiceRef;
+    }
+
+    /**
+     * A method that returns the {@link PartitionedEventDispatcher} instance.
+     *
+     * @return the PartitionedEventDispatcher instance. It can be null.
+     */
+    protected final PartitionedEventDispatcher getPartitionedEventDispatcherService() {
+        return getPartitionedEventDispatcherServiceRef().get();
+    }
+
+    /**
+     *
+     * @return the atomic reference for PartitionedEventDispatcher.
+     */
+    private AtomicReference<PartitionedEventDispatcher> getPartitionedEventDispatcherServiceRef() {
+        if (partitionedEventDispatcherServiceRef == null) {
+            partitionedEventDispatcherServiceRef = new AtomicReference<>();
+        }
+        return partitionedEventDispatcherServiceRef;
+    }
+
     /**
      * A method that returns the {@link PreferencesService} instance.
      *
@@ -403,11 +731,119 @@ public abstract class AbstractComponentCompendium extends AbstractComponent {
         return preferencesServiceRef;
     }
 
+    /**
+     * A method that returns the {@link PriorityEventDispatcher} instance.
+     *
+     * @return the PriorityEventDispatcher instance. It can be null.
+     */
+    protected final PriorityEventDispatcher getPriorityEventDispatcherService() {
+        return getPriorityEventDispatcherServiceRef().get();
+    }
+
+    /**
+     *
+     * @return the atomic reference for PriorityEventDispatcher.
+     */
+    private AtomicReference<PriorityEventDispatcher> getPriorityEventDispatcherServiceRef() {
+        if (priorityEventDispatcherServiceRef == null) {
+            priorityEventDispatcherServiceRef = new AtomicReference<>();
+        }
+        return priorityEventDispatcherServiceRef;
+    }
+
+    private static Dictionary<String, ?> withTraceParent(
+            final Dictionary<String, ?> pProperties,
+            final TraceContext pTrace) {
+        if (!pTrace.isSampled()) {
+            return pProperties;
+        }
+        Dictionary<String, Object> properties = new Hashtable<>(); // NOSONAR
+        if (pProperties != null) {
+            for (Enumeration<String> keys = pProperties.keys(); keys
+                    .hasMoreElements();) {
+                String key = keys.nextElement();
+                properties.put(key, pProperties.get(key));
+            }
+        }
+        properties.put(EventTracer.PROPERTY_TRACE_PARENT,
+                pTrace.toTraceParent());
+        return properties;
+    }
+
+    private static Event withJournalOffset(final Event pEvent,
+            final long pOffset) {
+        Map<String, Object> properties = new HashMap<>();
+        for (String name : pEvent.getPropertyNames()) {
+            if (!EventConstants.EVENT_TOPIC.equals(name)) {
+                properties.put(name, pEvent.getProperty(name));
+            }
+        }
+        properties.put(EventJournal.PROPERTY_OFFSET, pOffset);
+        return new Event(pEvent.getTopic(), properties);
+    }
+
+    private static Map<String, ?> withTraceParent(
+            final Map<String, ?> pPropertiesMap, final TraceContext pTrace) {
+        if (!pTrace.isSampled()) {
+            return pPropertiesMap;
+        }
+        Map<String, Object> properties = pPropertiesMap != null
+                ? new HashMap<>(pPropertiesMap)
+                : new HashMap<>();
+        properties.put(EventTracer.PROPERTY_TRACE_PARENT,
+                pTrace.toTraceParent());
+        return properties;
+    }
+
     @Override
     protected void initializeComponentProperties(
             ComponentContext pInjectedComponentContext) {
     }
 
+    /**
+     * Appends the event to the bound journal when its topic is durable.
+     *
+     * @return the event to deliver, carrying its offset in the journal when
+     *         it was appended.
+     */
+    private Event appendToEventJournal(final Event pEvent) {
+        EventJournal journal = getEventJournalService();
+        if (journal != null && journal.isDurable(pEvent.getTopic())) {
+            try {
+                return withJournalOffset(pEvent, journal.append(pEvent));
+            } catch (RuntimeException e) {
+                getLogger().error(ConstantsLogging.MARKER_COMPONENT_LIFECYCLE,
+                        "Could not journal an event of topic '{}'.",
+                        pEvent.getTopic(), e);
+            }
+        }
+        return pEvent;
+    }
+
+    /**
+     * Commits a durable event processed by the specified consumer, so the
+     * next {@link #replayDurableEvents(String, EventJournalConsumer) replay}
+     * of the consumer is resumed after it. It must be called by the handlers
+     * of durable topics, for the live and the replayed events, in the order
+     * they were processed.
+     *
+     * @param pConsumerId
+     *            the identifier of the consumer.
+     * @param pEvent
+     *            the processed event.
+     * @return false if no journal is bound or the event was not journaled.
+     */
+    protected final boolean commitDurableEvent(final String pConsumerId,
+            final Event pEvent) {
+        EventJournal journal = getEventJournalService();
+        Object offset = pEvent.getProperty(EventJournal.PROPERTY_OFFSET);
+        if (journal == null || !(offset instanceof Long)) {
+            return false;
+        }
+        journal.commit(pConsumerId, (Long) offset);
+        return true;
+    }
+
     /**
      * Post an event (asynchronously) using the specified topic.
      *
@@ -422,6 +858,15 @@ public abstract class AbstractComponentCompendium extends AbstractComponent {
     /**
      * Post an event (asynchronously) using the specified topic, attaching the
      * specified properties map to it.
+     * <p>
+     * When an {@link EventJournal} is bound and the topic is durable, the
+     * event is appended to the journal before being posted, and its offset
+     * is attached to it as {@value EventJournal#PROPERTY_OFFSET}, see
+     * {@link #commitDurableEvent(String, Event)}.
+     * <p>
+     * The trace context given by the {@link EventTracer} is attached to it
+     * when the trace is sampled. Otherwise the properties are used untouched,
+     * the missing context telling the handlers that it was not sampled.
      *
      * @param pEventTopic
      *            the topic of the event being sent.
@@ -430,8 +875,17 @@ public abstract class AbstractComponentCompendium extends AbstractComponent {
      */
     protected final void postEvent(final String pEventTopic,
             final Map<String, ?> pPropertiesMap) {
-        Event event = new Event(pEventTopic, pPropertiesMap);
-        getEventAdminService().postEvent(event);
+        EventTracer tracer = EventTracer.getInstance();
+        TraceContext trace = tracer.startProducerSpan();
+        long start = trace.isSampled() ? System.nanoTime() : 0;
+        try {
+            Event event = new Event(pEventTopic,
+                    withTraceParent(pPropertiesMap, trace));
+            event = appendToEventJournal(event);
+            getEventAdminService().postEvent(event);
+        } finally {
+            tracer.endProducerSpan(trace, pEventTopic, getName(), start);
+        }
     }
 
     /**
@@ -451,6 +905,196 @@ public abstract class AbstractComponentCompendium extends AbstractComponent {
         postEvent(pEventTopic, properties);
     }
 
+    /**
+     * Post an event (asynchronously) through the partition of the bound
+     * {@link PartitionedEventDispatcher} mapped to the specified key. Events
+     * posted with equal keys are delivered in the order they were posted,
+     * while events of keys mapped to other partitions are delivered in
+     * parallel.
+     * <p>
+     * When no dispatcher is bound, the event is posted as
+     * {@link #postEvent(String, Map)} does, which only keeps the order of
+     * the events posted by the same thread.
+     *
+     * @param pEventTopic
+     *            the topic of the event being sent.
+     * @param pPartitionKey
+     *            the key whose events must be delivered in order, as a
+     *            device id.
+     * @param pPropertiesMap
+     *            the properties map to be attached to the event.
+     * @return false if the event was rejected because its partition is full.
+     */
+    protected final boolean postPartitionedEvent(final String pEventTopic,
+            final Object pPartitionKey, final Map<String, ?> pPropertiesMap) {
+        PartitionedEventDispatcher dispatcher = getPartitionedEventDispatcherService();
+        if (dispatcher == null) {
+            postEvent(pEventTopic, pPropertiesMap);
+            return true;
+        }
+        EventTracer tracer = EventTracer.getInstance();
+        TraceContext trace = tracer.startProducerSpan();
+        long start = trace.isSampled() ? System.nanoTime() : 0;
+        boolean posted;
+        try {
+            Event event = new Event(pEventTopic,
+                    withTraceParent(pPropertiesMap, trace));
+            event = appendToEventJournal(event);
+            posted = dispatcher.post(pPartitionKey, event);
+        } finally {
+            tracer.endProducerSpan(trace, pEventTopic, getName(), start);
+        }
+        if (!posted) {
+            getLogger().warn(ConstantsLogging.MARKER_COMPONENT_LIFECYCLE,
+                    "Rejected event of topic '{}', its partition '{}' is full.",
+                    pEventTopic,
+                    dispatcher.partitionOf(pPartitionKey).getName());
+        }
+        return posted;
+    }
+
+    /**
+     * Post an event (asynchronously) through the lane of the bound
+     * {@link PriorityEventDispatcher} mapped to the specified topic, so it
+     * does not wait behind the events of less important topics.
+     * <p>
+     * When no dispatcher is bound, the event is posted as
+     * {@link #postEvent(String, Map)} does.
+     *
+     * @param pEventTopic
+     *            the topic of the event being sent.
+     * @param pPropertiesMap
+     *            the properties map to be attached to the event.
+     * @return false if the event was rejected because its lane is full.
+     */
+    protected final boolean postPriorityEvent(final String pEventTopic,
+            final Map<String, ?> pPropertiesMap) {
+        PriorityEventDispatcher dispatcher = getPriorityEventDispatcherService();
+        if (dispatcher == null) {
+            postEvent(pEventTopic, pPropertiesMap);
+            return true;
+        }
+        EventTracer tracer = EventTracer.getInstance();
+        TraceContext trace = tracer.startProducerSpan();
+        long start = trace.isSampled() ? System.nanoTime() : 0;
+        boolean posted;
+        try {
+            Event event = new Event(pEventTopic,
+                    withTraceParent(pPropertiesMap, trace));
+            event = appendToEventJournal(event);
+            posted = dispatcher.post(event);
+        } finally {
+            tracer.endProducerSpan(trace, pEventTopic, getName(), start);
+        }
+        if (!posted) {
+            getLogger().warn(ConstantsLogging.MARKER_COMPONENT_LIFECYCLE,
+                    "Rejected event of topic '{}', its lane '{}' is full.",
+                    pEventTopic, dispatcher.laneOf(pEventTopic).getName());
+        }
+        return posted;
+    }
+
+    /**
+     * Replays, in order, the durable events appended to the bound
+     * {@link EventJournal} since the offset stored for the specified
+     * consumer, storing the new offset after all of them were consumed.
+     *
+     * @param pConsumerId
+     *            the identifier of the consumer whose offset is used.
+     * @param pConsumer
+     *            the consumer of the replayed events.
+     * @return the number of replayed events.
+     */
+    protected final long replayDurableEvents(final String pConsumerId,
+            final EventJournalConsumer pConsumer) {
+        EventJournal journal = getEventJournalService();
+        if (journal == null) {
+            return 0;
+        }
+        long[] count = new long[1];
+        long offset = journal.replay(journal.getStoredOffset(pConsumerId),
+                (o, e) -> {
+                    pConsumer.accept(o, e);
+                    count[0]++;
+                });
+        journal.storeOffset(pConsumerId, offset);
+        return count[0];
+    }
+
+    /**
+     * Makes the trace context propagated by the specified event the current
+     * one of the calling thread, so the events produced while handling it
+     * belong to the same trace. It must be called by the event handlers:
+     *
+     * <pre>
+     * public void handleEvent(Event pEvent) {
+     *     try (TraceScope scope = restoreTraceContext(pEvent)) {
+     *         // handle the event
+     *     }
+     * }
+     * </pre>
+     *
+     * @param pEvent
+     *            the event being handled.
+     * @return the scope that must be closed after the event is handled.
+     */
+    protected final TraceScope restoreTraceContext(final Event pEvent) {
+        return EventTracer.getInstance().restore(pEvent, getName());
+    }
+
+    @Override
+    void completeDeactivationWorkflow(Integer pDeactivationReason) {
+        DeadlineEventDelivery delivery;
+        ComponentExecutor executor;
+        synchronized (this) {
+            delivery = deadlineEventDelivery;
+            executor = deliveryExecutor;
+            deadlineEventDelivery = null;
+            deliveryExecutor = null;
+        }
+        try {
+            if (delivery != null) {
+                delivery.close();
+            }
+        } finally {
+            if (executor != null) {
+                executor.shutdown(ComponentProperties.getLong(
+                        getComponentContext(), PROP_EXECUTOR_SHUTDOWN_TIMEOUT,
+                        DEFAULT_EXECUTOR_SHUTDOWN_TIMEOUT),
+                        TimeUnit.MILLISECONDS);
+            }
+        }
+        super.completeDeactivationWorkflow(pDeactivationReason);
+    }
+
+    /**
+     * Besides logging, posts a {@value #TOPIC_RESOURCE_BUDGET_EXCEEDED} event
+     * when an EventAdmin service is bound.
+     */
+    @Override
+    void resourceBudgetExceeded(PhaseResourceUsage pUsage,
+            long pAllocatedBytes, long pCpuNanos) {
+        super.resourceBudgetExceeded(pUsage, pAllocatedBytes, pCpuNanos);
+        EventAdmin eventAdmin = getEventAdminService();
+        if (eventAdmin == null) {
+            return;
+        }
+        Map<String, Object> properties = new HashMap<>();
+        properties.put(ComponentConstants.COMPONENT_ID, getId());
+        properties.put(ComponentConstants.COMPONENT_NAME, getName());
+        properties.put(EVENT_PROP_PHASE, pUsage.getPhase().name());
+        properties.put(EVENT_PROP_ALLOCATED_BYTES, pAllocatedBytes);
+        properties.put(EVENT_PROP_CPU_NANOS, pCpuNanos);
+        try {
+            eventAdmin.postEvent(
+                    new Event(TOPIC_RESOURCE_BUDGET_EXCEEDED, properties));
+        } catch (RuntimeException e) {
+            getLogger().error(ConstantsLogging.MARKER_COMPONENT_LIFECYCLE,
+                    "Could not post the resource budget event of component instance id-{}.",
+                    getId(), e);
+        }
+    }
+
     @Override
     protected void resetComponentProperties() {
 
@@ -470,6 +1114,9 @@ public abstract class AbstractComponentCompendium extends AbstractComponent {
     /**
      * Send an event (synchronously) using the specified topic and attaching the
      * specified properties map to it.
+     * <p>
+     * The trace context given by the {@link EventTracer} is attached to it.
+     * When it is sampled, the recorded span covers its whole delivery.
      *
      * @param pEventTopic
      *            the topic of the event being sent.
@@ -478,8 +1125,67 @@ public abstract class AbstractComponentCompendium extends AbstractComponent {
      */
     protected final void sendEvent(final String pEventTopic,
             final Dictionary<String, ?> pProperties) {
-        Event event = new Event(pEventTopic, pProperties);
-        getEventAdminService().sendEvent(event);
+        EventTracer tracer = EventTracer.getInstance();
+        TraceContext trace = tracer.startProducerSpan();
+        long start = trace.isSampled() ? System.nanoTime() : 0;
+        try {
+            getEventAdminService().sendEvent(new Event(pEventTopic,
+                    withTraceParent(pProperties, trace)));
+        } finally {
+            tracer.endProducerSpan(trace, pEventTopic, getName(), start);
+        }
+    }
+
+    /**
+     * Send an event (synchronously) to the matching event handlers, as
+     * {@link #sendEvent(String, Dictionary)} does, but blocking the caller at
+     * most the specified time. It is safe to be called from threads that must
+     * never block for long, as the event loops of Vert.x.
+     * <p>
+     * The handlers are called concurrently on an executor dedicated to the
+     * deliveries, so the order of the deliveries is not defined. Handlers still
+     * running at the deadline are reported as timed out but are not
+     * interrupted, keeping one of its threads busy until they return. When
+     * running on platform threads, the number of handlers running at once is
+     * limited by the component property {@value #PROP_DELIVERY_MAX_THREADS}
+     * and the deliveries rejected by the saturated executor are reported as
+     * failed. A handler missing the
+     * deadline more times in a row than set by the component property
+     * {@value #PROP_DELIVERY_FAILURE_THRESHOLD} is shed during the time set by
+     * {@value #PROP_DELIVERY_OPEN_DURATION}.
+     *
+     * @param pEventTopic
+     *            the topic of the event being sent.
+     * @param pProperties
+     *            the properties map to be attached to the event.
+     * @param pTimeout
+     *            the maximum time the caller is blocked.
+     * @param pUnit
+     *            the unit of the timeout.
+     * @return the report of the delivery.
+     */
+    protected final DeliveryReport sendEvent(final String pEventTopic,
+            final Dictionary<String, ?> pProperties, final long pTimeout,
+            final TimeUnit pUnit) {
+        EventTracer tracer = EventTracer.getInstance();
+        TraceContext trace = tracer.startProducerSpan();
+        long start = trace.isSampled() ? System.nanoTime() : 0;
+        DeliveryReport report;
+        try {
+            report = getDeadlineEventDelivery().deliver(
+                    new Event(pEventTopic,
+                            withTraceParent(pProperties, trace)),
+                    pTimeout, pUnit);
+        } finally {
+            tracer.endProducerSpan(trace, pEventTopic, getName(), start);
+        }
+        if (!report.getTimedOutHandlers().isEmpty()) {
+            getLogger().warn(ConstantsLogging.MARKER_COMPONENT_LIFECYCLE,
+                    "Handlers {} missed the deadline of {}{} for event of topic '{}'.",
+                    report.getTimedOutHandlers(), pTimeout, pUnit,
+                    pEventTopic);
+        }
+        return report;
     }
 
     /**
@@ -508,9 +1214,24 @@ public abstract class AbstractComponentCompendium extends AbstractComponent {
         defaultUnbindEventAdminService(pEventAdmin);
     }
 
+    protected void unbindEventJournalService(
+            final EventJournal pEventJournal) {
+        defaultUnbindEventJournalService(pEventJournal);
+    }
+
+    protected void unbindPartitionedEventDispatcherService(
+            final PartitionedEventDispatcher pDispatcher) {
+        defaultUnbindPartitionedEventDispatcherService(pDispatcher);
+    }
+
     protected void unbindPreferencesService(
             final PreferencesService pPreferencesService) {
         defaultUnbindPreferencesService(pPreferencesService);
     }
 
+    protected void unbindPriorityEventDispatcherService(
+            final PriorityEventDispatcher pDispatcher) {
+        defaultUnbindPriorityEventDispatcherService(pDispatcher);
+    }
+
 }
@@ -13,11 +13,115 @@
  */
 package br.com.c8tech.vxosgi.lib.ds.components;
 
+import java.util.Collections;
+import java.util.Dictionary;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.osgi.framework.ServiceRegistration;
 import org.slf4j.Logger;
 
+import br.com.c8tech.vxosgi.lib.ConstantsLogging;
+import br.com.c8tech.vxosgi.lib.ds.ComponentWorkflowException;
+
+/**
+ * A basic abstract parent class for OSGi Declarative Service components that
+ * provide services.
+ * <p>
+ * Besides the behavior inherited from {@link AbstractComponentCompendium},
+ * it offers a warm-up phase that is executed during the activation workflow,
+ * right before {@link #afterActivationWorkflow()}. Since DS only hands the
+ * service object to consumers after the activation has ended, and the pooled
+ * services are registered from {@link #afterActivationWorkflow()}, the
+ * {@link #getWarmUpWorkloads() workloads} provided by the subclass are able
+ * to exercise the hot code paths before the first real request arrives.
+ * <p>
+ * The warm-up can be tuned using the component properties
+ * {@value #PROP_WARMUP_ITERATIONS}, {@value #PROP_WARMUP_TIME_BUDGET} and
+ * {@value #PROP_WARMUP_PARALLELISM}. It runs inside {@code activate()}, on
+ * the DS thread, so its time budget must stay well below the activation
+ * timeout of the DS implementation.
+ * <p>
+ * Expensive prototype scope services can be registered using
+ * {@link #registerPooledService(Class, PooledServiceHandler, Dictionary)},
+ * which backs them with a {@link ServiceInstancePool} bounded by the
+ * component properties {@value #PROP_POOL_MAX_IDLE} and
+ * {@value #PROP_POOL_IDLE_TIMEOUT}. The idle instances are also evicted
+ * periodically using the {@link #getComponentTimer() component timer}.
+ * Those services are unregistered and their pools closed automatically when
+ * the component is deactivated.
+ *
+ * @since 0.1.1
+ * @author Cristiano Gavião
+ *
+ */
 public abstract class AbstractComponentServiceProvider
         extends AbstractComponentCompendium {
 
+    /**
+     * The default time in milliseconds a pooled service instance can stay
+     * idle before being evicted.
+     */
+    public static final long DEFAULT_POOL_IDLE_TIMEOUT = 60_000L;
+
+    /**
+     * The default maximum number of idle instances kept by each service
+     * instance pool.
+     */
+    public static final int DEFAULT_POOL_MAX_IDLE = 16;
+
+    /**
+     * The default maximum number of iterations executed for each warm-up
+     * workload.
+     */
+    public static final int DEFAULT_WARMUP_ITERATIONS = 1_000;
+
+    /**
+     * The default time budget in milliseconds for the whole warm-up phase.
+     * It is kept small since the warm-up holds the thread DS uses to
+     * activate the components.
+     */
+    public static final long DEFAULT_WARMUP_TIME_BUDGET = 200L;
+
+    /**
+     * The component property used to set the time in milliseconds a pooled
+     * service instance can stay idle before being evicted. Zero disables the
+     * eviction.
+     */
+    public static final String PROP_POOL_IDLE_TIMEOUT = "component.pool.idle.timeout";
+
+    /**
+     * The component property used to set the maximum number of idle
+     * instances kept by each service instance pool.
+     */
+    public static final String PROP_POOL_MAX_IDLE = "component.pool.max.idle";
+
+    /**
+     * The component property used to set the maximum number of iterations
+     * executed for each warm-up workload. Zero means no limit.
+     */
+    public static final String PROP_WARMUP_ITERATIONS = "component.warmup.iterations";
+
+    /**
+     * The component property used to set the number of threads used to
+     * execute parallelizable warm-up workloads.
+     */
+    public static final String PROP_WARMUP_PARALLELISM = "component.warmup.parallelism";
+
+    /**
+     * The component property used to set the time budget in milliseconds for
+     * the whole warm-up phase. Zero means no limit.
+     */
+    public static final String PROP_WARMUP_TIME_BUDGET = "component.warmup.timebudget";
+
+    private final List<PooledPrototypeServiceFactory<?>> pooledServiceFactories = new CopyOnWriteArrayList<>();
+
+    private final List<ServiceRegistration<?>> pooledServiceRegistrations = new CopyOnWriteArrayList<>();
+
+    private volatile WarmUpResult warmUpResult;
+
     /**
      * DS needs a default constructor. But the children classes must call the
      * constructor {@link #AbstractComponent(Logger)} and pass the class logger
@@ -30,7 +134,7 @@ public abstract class AbstractComponentServiceProvider
      * Constructor that should be called by the children classe's default
      * constructor in order to explicitly pass the {@link Logger} instance
      * created for it.
-     * 
+     *
      * @param pLogger
      *            The logger instance used by the children class.
      */
@@ -38,4 +142,161 @@ public abstract class AbstractComponentServiceProvider
         super(pLogger);
     }
 
+    @Override
+    void completeDeactivationWorkflow(Integer pDeactivationReason) {
+        for (ServiceRegistration<?> registration : pooledServiceRegistrations) {
+            try {
+                registration.unregister();
+            } catch (IllegalStateException e) { // NOSONAR
+                // already unregistered
+            }
+        }
+        pooledServiceRegistrations.clear();
+        for (PooledPrototypeServiceFactory<?> factory : pooledServiceFactories) {
+            factory.getPool().close();
+            getLogger().debug(ConstantsLogging.MARKER_COMPONENT_LIFECYCLE,
+                    "Closed service pool of component instance id-{}: {}",
+                    getId(), factory.getPool());
+        }
+        pooledServiceFactories.clear();
+        super.completeDeactivationWorkflow(pDeactivationReason);
+    }
+
+    /**
+     * Creates a {@link org.osgi.framework.PrototypeServiceFactory} backed by a
+     * new {@link ServiceInstancePool} configured with the properties of this
+     * component. The pool will be closed when this component is deactivated.
+     *
+     * @param pHandler
+     *            the handler used to create, reset and destroy the instances.
+     * @param <S>
+     *            the type of the provided service.
+     * @return the new factory.
+     */
+    protected final <S> PooledPrototypeServiceFactory<S> createPooledServiceFactory(
+            final PooledServiceHandler<S> pHandler) {
+        long idleTimeout = ComponentProperties.getLong(getComponentContext(),
+                PROP_POOL_IDLE_TIMEOUT, DEFAULT_POOL_IDLE_TIMEOUT);
+        ServiceInstancePool<S> pool = new ServiceInstancePool<>(pHandler,
+                ComponentProperties.getInt(getComponentContext(),
+                        PROP_POOL_MAX_IDLE, DEFAULT_POOL_MAX_IDLE),
+                TimeUnit.MILLISECONDS.toNanos(idleTimeout));
+        PooledPrototypeServiceFactory<S> factory = new PooledPrototypeServiceFactory<>(
+                pool);
+        pooledServiceFactories.add(factory);
+        if (idleTimeout > 0) {
+            // a pool that went quiet gives nothing back to trigger eviction
+            getComponentTimer().scheduleWithFixedDelay(
+                    () -> scheduleEviction(pool), idleTimeout, idleTimeout,
+                    TimeUnit.MILLISECONDS);
+        }
+        return factory;
+    }
+
+    /**
+     * Returns the factories created by this component for its pooled
+     * services, allowing their pool statistics to be inspected.
+     *
+     * @return the current pooled service factories.
+     */
+    public final List<PooledPrototypeServiceFactory<?>> getPooledServiceFactories() {
+        return Collections.unmodifiableList(pooledServiceFactories);
+    }
+
+    /**
+     * Registers a prototype scope service whose instances are borrowed from
+     * a pool created by
+     * {@link #createPooledServiceFactory(PooledServiceHandler)}.
+     * <p>
+     * It is usually called from {@link #afterActivationWorkflow()}. The
+     * service is unregistered automatically during the deactivation.
+     *
+     * @param pServiceClass
+     *            the class under which the service will be registered.
+     * @param pHandler
+     *            the handler used to create, reset and destroy the instances.
+     * @param pProperties
+     *            the service properties. It can be null.
+     * @param <S>
+     *            the type of the provided service.
+     * @return the service registration.
+     */
+    protected final <S> ServiceRegistration<S> registerPooledService(
+            final Class<S> pServiceClass,
+            final PooledServiceHandler<S> pHandler,
+            final Dictionary<String, ?> pProperties) {
+        ServiceRegistration<S> registration = getBundleContext()
+                .registerService(pServiceClass,
+                        createPooledServiceFactory(pHandler), pProperties);
+        pooledServiceRegistrations.add(registration);
+        return registration;
+    }
+
+    /**
+     * This method is aimed to be optionally overridden by concrete subclasses
+     * in order to provide the synthetic workloads executed during the warm-up
+     * phase.
+     * <p>
+     * It is called after {@link #initializeComponentProperties} and before
+     * {@link #afterActivationWorkflow()}, so the workloads can rely on the
+     * component properties but must initialize by themselves anything else
+     * they exercise. This way no pooled service is published before the
+     * warm-up has ended.
+     *
+     * @return the workloads to execute. By default no warm-up is done.
+     */
+    protected List<WarmUpWorkload> getWarmUpWorkloads() {
+        return Collections.emptyList();
+    }
+
+    /**
+     * Returns what was measured during the latest warm-up phase.
+     *
+     * @return the warm-up result or null if no warm-up was done.
+     */
+    public final WarmUpResult getWarmUpResult() {
+        return warmUpResult;
+    }
+
+    @Override
+    void prepareActivationWorkflow() throws ComponentWorkflowException {
+        super.prepareActivationWorkflow();
+        warmUp();
+    }
+
+    private void scheduleEviction(ServiceInstancePool<?> pPool) {
+        try {
+            // the handler may block while destroying the instances
+            getComponentExecutor().execute(pPool::evictIdle);
+        } catch (RejectedExecutionException e) { // NOSONAR
+            // the component is being deactivated and the pool closed
+        }
+    }
+
+    private void warmUp() {
+        List<WarmUpWorkload> workloads = getWarmUpWorkloads();
+        if (workloads == null || workloads.isEmpty()) {
+            return;
+        }
+        ComponentWarmUp componentWarmUp = new ComponentWarmUp(getLogger(),
+                getNameShort(),
+                ComponentProperties.getLong(getComponentContext(),
+                        PROP_WARMUP_ITERATIONS, DEFAULT_WARMUP_ITERATIONS),
+                TimeUnit.MILLISECONDS.toNanos(ComponentProperties.getLong(
+                        getComponentContext(), PROP_WARMUP_TIME_BUDGET,
+                        DEFAULT_WARMUP_TIME_BUDGET)),
+                ComponentProperties.getInt(getComponentContext(),
+                        PROP_WARMUP_PARALLELISM, 1));
+        if (!componentWarmUp.isBounded()) {
+            getLogger().warn(ConstantsLogging.MARKER_COMPONENT_LIFECYCLE,
+                    "Skipped unbounded warm-up of component instance id-{} from '{}'.",
+                    getId(), getNameShort());
+            return;
+        }
+        warmUpResult = componentWarmUp.run(workloads);
+        getLogger().debug(ConstantsLogging.MARKER_COMPONENT_LIFECYCLE,
+                "Warmed up component instance id-{} from '{}': {}", getId(),
+                getNameShort(), warmUpResult);
+    }
+
 }
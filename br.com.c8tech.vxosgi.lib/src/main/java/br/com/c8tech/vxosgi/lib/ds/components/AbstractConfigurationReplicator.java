@@ -0,0 +1,289 @@
+/**
+ * ==========================================================================
+ * Copyright © 2015-2019 Cristiano Gavião, C8 Technology ME.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Cristiano Gavião (cvgaviao@c8tech.com.br)- initial API and implementation
+ * ==========================================================================
+ */
+package br.com.c8tech.vxosgi.lib.ds.components;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.osgi.framework.Constants;
+import org.osgi.service.cm.ConfigurationAdmin;
+import org.osgi.service.cm.ConfigurationEvent;
+import org.osgi.service.cm.ConfigurationListener;
+import org.slf4j.Logger;
+
+import br.com.c8tech.vxosgi.lib.ConstantsLogging;
+import br.com.c8tech.vxosgi.lib.cm.ConfigurationReplication;
+import br.com.c8tech.vxosgi.lib.ds.ComponentWorkflowException;
+import io.vertx.core.Vertx;
+
+/**
+ * A basic abstract parent class for the component that replicates the
+ * configurations of this node to its peers through a
+ * {@link ConfigurationReplication}.
+ * <p>
+ * The child concrete class must be registered as a
+ * {@link ConfigurationListener} service, in order to receive the local
+ * changes, and must bind the {@link ConfigurationAdmin} and the
+ * {@link Vertx} services:
+ *
+ * <pre>
+ * {@literal @}Component(service = ConfigurationListener.class)
+ * public class ConfigurationReplicator extends AbstractConfigurationReplicator {
+ *
+ *    {@literal @}Reference
+ *    {@literal @}Override
+ *    protected void bindVertxService(final Vertx pVertx) {
+ *       super.bindVertxService(pVertx);
+ *    }
+ *    ...
+ * }
+ * </pre>
+ *
+ * The replication is started when the component is activated. When it is
+ * modified the running replication is reconfigured, keeping the replicated
+ * versions, and it is only restarted when the node id changes. It can be
+ * tuned using the component properties {@value #PROP_REPLICATION_NODE_ID},
+ * {@value #PROP_REPLICATION_ADDRESS}, {@value #PROP_REPLICATION_BATCH_WINDOW}
+ * and {@value #PROP_REPLICATION_PIDS}.
+ * <p>
+ * The configuration of this component is never replicated, nor are the
+ * properties starting with
+ * {@value ConfigurationReplication#LOCAL_PROPERTY_PREFIX} of any
+ * configuration, so each node keeps its own replication settings.
+ *
+ * @since 0.1.1
+ * @author Cristiano Gavião
+ *
+ */
+public abstract class AbstractConfigurationReplicator
+        extends AbstractComponentCompendium implements ConfigurationListener {
+
+    /**
+     * The component property holding the event bus address shared by the
+     * peers. The default is {@value ConfigurationReplication#DEFAULT_ADDRESS}.
+     */
+    public static final String PROP_REPLICATION_ADDRESS = "cm.replication.address";
+
+    /**
+     * The component property holding the time in milliseconds the local
+     * changes are coalesced before being published. The default is
+     * {@value ConfigurationReplication#DEFAULT_BATCH_WINDOW}.
+     */
+    public static final String PROP_REPLICATION_BATCH_WINDOW = "cm.replication.batch.window";
+
+    /**
+     * The component property holding the id of this node. The default is the
+     * framework UUID.
+     */
+    public static final String PROP_REPLICATION_NODE_ID = "cm.replication.node.id";
+
+    /**
+     * The component property holding the pids of the replicated
+     * configurations. A pid ending with {@code *} matches the pids starting
+     * with its prefix. The default is {@code *}, which does not include the
+     * configuration of this component.
+     */
+    public static final String PROP_REPLICATION_PIDS = "cm.replication.pids";
+
+    private ConfigurationReplication replication;
+
+    private AtomicReference<Vertx> vertxServiceRef;
+
+    /**
+     * DS needs a default constructor. But the children classes must call the
+     * constructor {@link #AbstractConfigurationReplicator(Logger)} and pass
+     * the class logger instance.
+     */
+    public AbstractConfigurationReplicator() {
+    }
+
+    /**
+     * Constructor that should be called by the children classe's default
+     * constructor in order to explicitly pass the {@link Logger} instance
+     * created for it.
+     *
+     * @param pLogger
+     *            The logger instance used by the children class.
+     */
+    public AbstractConfigurationReplicator(Logger pLogger) {
+        super(pLogger);
+    }
+
+    /**
+     * This method is aimed to be used to bind the {@link Vertx} instance
+     * whose event bus reaches the peer nodes.
+     * <p>
+     * It must be overridden in child concrete classes and tagged
+     * with @Reference annotation in order to allow the
+     * bndlib/maven-bundle-plugin to detected it and generate the proper
+     * configuration files.
+     *
+     * @see #defaultBindVertxService(Vertx)
+     * @see #unbindVertxService(Vertx)
+     * @param pVertx
+     *            the injected Vertx instance.
+     */
+    protected void bindVertxService(final Vertx pVertx) {
+        defaultBindVertxService(pVertx);
+    }
+
+    @Override
+    void completeActivationWorkflow() throws ComponentWorkflowException {
+        super.completeActivationWorkflow();
+        startReplication();
+    }
+
+    @Override
+    void completeDeactivationWorkflow(Integer pDeactivationReason) {
+        stopReplication();
+        super.completeDeactivationWorkflow(pDeactivationReason);
+    }
+
+    @Override
+    void completeModificationWorkflow() throws ComponentWorkflowException {
+        super.completeModificationWorkflow();
+        updateReplication();
+    }
+
+    @Override
+    public void configurationEvent(ConfigurationEvent pEvent) {
+        ConfigurationReplication current = getConfigurationReplication();
+        if (current != null) {
+            current.configurationChanged(pEvent);
+        }
+    }
+
+    protected final void defaultBindVertxService(final Vertx pVertx) {
+        getVertxServiceRef().set(pVertx);
+        getLogger().trace(ConstantsLogging.MARKER_SERVICE_BINDING,
+                "Bound Vertx service for component.{}", "");
+    }
+
+    protected final void defaultUnbindVertxService(final Vertx pVertx) {
+        getVertxServiceRef().compareAndSet(pVertx, null);
+        getLogger().trace(ConstantsLogging.MARKER_SERVICE_BINDING,
+                "Unbound Vertx for component '{}'.", getId());
+    }
+
+    /**
+     * Returns the running replication, allowing its propagation metrics to
+     * be read.
+     *
+     * @return the replication or null if it is not running.
+     */
+    public final synchronized ConfigurationReplication getConfigurationReplication() {
+        return replication;
+    }
+
+    /**
+     * @return the pids configuring this component, which are not replicated.
+     */
+    private List<String> getOwnPids() {
+        List<String> pids = new ArrayList<>(
+                ComponentProperties.getStrings(getComponentContext(),
+                        Constants.SERVICE_PID, Collections.emptyList()));
+        // the default configuration pid of a component is its name
+        pids.add(getName());
+        return pids;
+    }
+
+    private String getReplicationAddress() {
+        return ComponentProperties.getString(getComponentContext(),
+                PROP_REPLICATION_ADDRESS,
+                ConfigurationReplication.DEFAULT_ADDRESS);
+    }
+
+    private long getReplicationBatchWindow() {
+        return ComponentProperties.getLong(getComponentContext(),
+                PROP_REPLICATION_BATCH_WINDOW,
+                ConfigurationReplication.DEFAULT_BATCH_WINDOW);
+    }
+
+    private String getReplicationNodeId() {
+        return ComponentProperties.getString(getComponentContext(),
+                PROP_REPLICATION_NODE_ID,
+                getBundleContext().getProperty(Constants.FRAMEWORK_UUID));
+    }
+
+    private List<String> getReplicationPids() {
+        return ComponentProperties.getStrings(getComponentContext(),
+                PROP_REPLICATION_PIDS, Collections.singletonList("*"));
+    }
+
+    /**
+     * A method that returns the {@link Vertx} instance.
+     *
+     * @return the Vertx instance. It can be null.
+     */
+    protected final Vertx getVertxService() {
+        return getVertxServiceRef().get();
+    }
+
+    /**
+     *
+     * @return the atomic reference for Vertx.
+     */
+    private AtomicReference<Vertx> getVertxServiceRef() {
+        if (vertxServiceRef == null) {
+            vertxServiceRef = new AtomicReference<>();
+        }
+        return vertxServiceRef;
+    }
+
+    private synchronized void startReplication() {
+        Vertx vertx = getVertxService();
+        ConfigurationAdmin configurationAdmin = getConfigurationAdmin();
+        if (vertx == null || configurationAdmin == null) {
+            getLogger().warn(ConstantsLogging.MARKER_COMPONENT_LIFECYCLE,
+                    "Configuration replication of component '{}' was not started, Vertx or ConfigurationAdmin is not bound.",
+                    getId());
+            return;
+        }
+        replication = new ConfigurationReplication(vertx, configurationAdmin,
+                task -> getComponentExecutor().execute(task),
+                getReplicationNodeId(), getReplicationAddress(),
+                getReplicationBatchWindow(), getReplicationPids(),
+                getOwnPids());
+        replication.start();
+        getLogger().debug(ConstantsLogging.MARKER_COMPONENT_LIFECYCLE,
+                "Started {}.", replication);
+    }
+
+    private synchronized void stopReplication() {
+        if (replication != null) {
+            replication.stop();
+            replication = null;
+        }
+    }
+
+    protected void unbindVertxService(final Vertx pVertx) {
+        defaultUnbindVertxService(pVertx);
+    }
+
+    private synchronized void updateReplication() {
+        if (replication == null
+                || !replication.getNodeId().equals(getReplicationNodeId())) {
+            // the versions are tied to the node id, so it starts over
+            stopReplication();
+            startReplication();
+            return;
+        }
+        replication.reconfigure(getReplicationAddress(),
+                getReplicationBatchWindow(), getReplicationPids());
+        getLogger().debug(ConstantsLogging.MARKER_COMPONENT_LIFECYCLE,
+                "Reconfigured {}.", replication);
+    }
+}
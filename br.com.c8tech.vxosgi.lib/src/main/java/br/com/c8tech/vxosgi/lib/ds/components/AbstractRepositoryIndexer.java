@@ -0,0 +1,452 @@
+/**
+ * ==========================================================================
+ * Copyright © 2015-2019 Cristiano Gavião, C8 Technology ME.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Cristiano Gavião (cvgaviao@c8tech.com.br)- initial API and implementation
+ * ==========================================================================
+ */
+package br.com.c8tech.vxosgi.lib.ds.components;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.osgi.framework.Constants;
+import org.osgi.resource.Capability;
+import org.osgi.resource.Requirement;
+import org.osgi.service.repository.Repository;
+import org.slf4j.Logger;
+
+import br.com.c8tech.vxosgi.lib.ConstantsLogging;
+import br.com.c8tech.vxosgi.lib.concurrent.Timeout;
+import br.com.c8tech.vxosgi.lib.ds.ComponentWorkflowException;
+import br.com.c8tech.vxosgi.lib.repository.CapabilityIndex;
+
+/**
+ * A basic abstract parent class for the components that look up
+ * capabilities in the {@link Repository} services through a
+ * {@link CapabilityIndex}.
+ * <p>
+ * The child concrete class must bind the repositories using a multiple and
+ * dynamic reference:
+ *
+ * <pre>
+ * {@literal @}Component
+ * public class RepositoryIndexer extends AbstractRepositoryIndexer {
+ *
+ *    {@literal @}Reference(cardinality = ReferenceCardinality.MULTIPLE,
+ *            policy = ReferencePolicy.DYNAMIC)
+ *    {@literal @}Override
+ *    protected void bindRepositoryService(final Repository pRepository,
+ *            final Map&lt;String, Object&gt; pProperties) {
+ *       super.bindRepositoryService(pRepository, pProperties);
+ *    }
+ *    ...
+ * }
+ * </pre>
+ *
+ * Each repository is indexed on the component executor when the component
+ * is activated or when the repository is bound, and indexed again when its
+ * service properties are updated, which is how a repository announces that
+ * its content changed. A repository that is not indexed yet is queried
+ * directly. Repositories that can not announce their changes can be
+ * refreshed periodically using the component property
+ * {@value #PROP_INDEX_REFRESH_INTERVAL}.
+ * <p>
+ * When the component is modified, a new index is built on the component
+ * executor while the current one keeps answering the queries, and it replaces
+ * the current one only when all the repositories were indexed.
+ *
+ * @since 0.1.1
+ * @author Cristiano Gavião
+ *
+ */
+public abstract class AbstractRepositoryIndexer
+        extends AbstractComponentCompendium {
+
+    /**
+     * The component property holding the maximum number of answers kept in
+     * the cache of the index. The default is
+     * {@value CapabilityIndex#DEFAULT_CACHE_SIZE}.
+     */
+    public static final String PROP_INDEX_CACHE_SIZE = "repository.index.cache.size";
+
+    /**
+     * The component property holding the interval in milliseconds between
+     * the refreshes of all the repositories. The default is zero, which
+     * disables the periodic refresh.
+     */
+    public static final String PROP_INDEX_REFRESH_INTERVAL = "repository.index.refresh.interval";
+
+    private volatile CapabilityIndex capabilityIndex;
+
+    private volatile boolean indexing;
+
+    /**
+     * The index being built after a modification, null when there is none.
+     */
+    private volatile CapabilityIndex nextCapabilityIndex;
+
+    /**
+     * The repositories bound but not indexed yet.
+     */
+    private final ConcurrentMap<Long, Repository> pendingRepositories = new ConcurrentHashMap<>();
+
+    private Timeout refreshTimeout;
+
+    private final ConcurrentMap<Long, Repository> repositories = new ConcurrentHashMap<>();
+
+    /**
+     * DS needs a default constructor. But the children classes must call the
+     * constructor {@link #AbstractRepositoryIndexer(Logger)} and pass the
+     * class logger instance.
+     */
+    public AbstractRepositoryIndexer() {
+    }
+
+    /**
+     * Constructor that should be called by the children classe's default
+     * constructor in order to explicitly pass the {@link Logger} instance
+     * created for it.
+     *
+     * @param pLogger
+     *            The logger instance used by the children class.
+     */
+    public AbstractRepositoryIndexer(Logger pLogger) {
+        super(pLogger);
+    }
+
+    private static Long serviceIdOf(Map<String, Object> pProperties) {
+        return ((Number) pProperties.get(Constants.SERVICE_ID)).longValue();
+    }
+
+    /**
+     * This method is aimed to be used to bind the {@link Repository}
+     * services whose capabilities are indexed.
+     * <p>
+     * It must be overridden in child concrete classes and tagged
+     * with @Reference annotation in order to allow the
+     * bndlib/maven-bundle-plugin to detected it and generate the proper
+     * configuration files.
+     *
+     * @see #defaultBindRepositoryService(Repository, Map)
+     * @see #updatedRepositoryService(Repository, Map)
+     * @see #unbindRepositoryService(Repository, Map)
+     * @param pRepository
+     *            the injected Repository instance.
+     * @param pProperties
+     *            the service properties of the repository.
+     */
+    protected void bindRepositoryService(final Repository pRepository,
+            final Map<String, Object> pProperties) {
+        defaultBindRepositoryService(pRepository, pProperties);
+    }
+
+    private void cancelRefresh() {
+        if (refreshTimeout != null) {
+            refreshTimeout.cancel();
+            refreshTimeout = null;
+        }
+    }
+
+    @Override
+    void completeActivationWorkflow() throws ComponentWorkflowException {
+        super.completeActivationWorkflow();
+        startIndexing();
+    }
+
+    @Override
+    void completeDeactivationWorkflow(Integer pDeactivationReason) {
+        stopIndexing();
+        super.completeDeactivationWorkflow(pDeactivationReason);
+    }
+
+    @Override
+    void completeModificationWorkflow() throws ComponentWorkflowException {
+        super.completeModificationWorkflow();
+        rebuildIndex();
+    }
+
+    protected final void defaultBindRepositoryService(
+            final Repository pRepository,
+            final Map<String, Object> pProperties) {
+        Long serviceId = serviceIdOf(pProperties);
+        repositories.put(serviceId, pRepository);
+        scheduleIndexing(serviceId, pRepository);
+        getLogger().trace(ConstantsLogging.MARKER_SERVICE_BINDING,
+                "Bound Repository service {} for component '{}'.", serviceId,
+                getId());
+    }
+
+    protected final void defaultUnbindRepositoryService(
+            final Repository pRepository,
+            final Map<String, Object> pProperties) {
+        Long serviceId = serviceIdOf(pProperties);
+        if (repositories.remove(serviceId, pRepository)) {
+            pendingRepositories.remove(serviceId);
+            // the next index is read first, it becomes the current one
+            // before being cleared
+            CapabilityIndex next = nextCapabilityIndex;
+            CapabilityIndex current = getCapabilityIndex();
+            if (next != null) {
+                next.remove(serviceId);
+            }
+            if (current != null) {
+                current.remove(serviceId);
+            }
+        }
+        getLogger().trace(ConstantsLogging.MARKER_SERVICE_BINDING,
+                "Unbound Repository service {} for component '{}'.",
+                serviceId, getId());
+    }
+
+    protected final void defaultUpdatedRepositoryService(
+            final Repository pRepository,
+            final Map<String, Object> pProperties) {
+        Long serviceId = serviceIdOf(pProperties);
+        repositories.put(serviceId, pRepository);
+        scheduleIndexing(serviceId, pRepository);
+    }
+
+    /**
+     * Finds the capabilities matching a requirement in the bound
+     * repositories.
+     *
+     * @param pRequirement
+     *            the requirement.
+     * @return the matching capabilities, it can be empty.
+     */
+    public final Collection<Capability> findProviders(
+            Requirement pRequirement) {
+        return findProviders(Collections.singleton(pRequirement))
+                .get(pRequirement);
+    }
+
+    /**
+     * Finds the capabilities matching each of the requirements in the bound
+     * repositories, with the same contract of
+     * {@link Repository#findProviders(Collection)}.
+     * <p>
+     * The requirements are answered by the index in a single batch. The
+     * repositories still being indexed are queried directly.
+     *
+     * @param pRequirements
+     *            the requirements.
+     * @return the matching capabilities of each requirement.
+     */
+    public final Map<Requirement, Collection<Capability>> findProviders(
+            Collection<? extends Requirement> pRequirements) {
+        CapabilityIndex current = getCapabilityIndex();
+        if (current == null) {
+            throw new IllegalStateException(
+                    "The component '" + getId() + "' is not active.");
+        }
+        Map<Requirement, Collection<Capability>> result = current
+                .findProviders(pRequirements);
+        for (Map.Entry<Long, Repository> pending : pendingRepositories
+                .entrySet()) {
+            if (current.isIndexed(pending.getKey())) {
+                // it is being indexed again, the previous segment is used
+                continue;
+            }
+            Map<Requirement, Collection<Capability>> direct = pending
+                    .getValue().findProviders(pRequirements);
+            for (Map.Entry<Requirement, Collection<Capability>> entry : direct
+                    .entrySet()) {
+                if (entry.getValue() == null || entry.getValue().isEmpty()) {
+                    continue;
+                }
+                result.compute(entry.getKey(), (r, indexed) -> {
+                    Collection<Capability> merged = indexed != null
+                            ? new ArrayList<>(indexed)
+                            : new ArrayList<>();
+                    merged.addAll(entry.getValue());
+                    return merged;
+                });
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the index used by this component, allowing its statistics to
+     * be read.
+     *
+     * @return the index or null if the component is not active.
+     */
+    public final CapabilityIndex getCapabilityIndex() {
+        return capabilityIndex;
+    }
+
+    private void indexRepository(Long pServiceId, Repository pRepository) {
+        CapabilityIndex next = nextCapabilityIndex;
+        CapabilityIndex current = getCapabilityIndex();
+        if (current == null || repositories.get(pServiceId) != pRepository) {
+            return;
+        }
+        long start = System.nanoTime();
+        try {
+            current.index(pServiceId, pRepository);
+            if (next != null) {
+                next.index(pServiceId, pRepository);
+            }
+        } catch (RuntimeException e) {
+            // kept pending, so it is queried directly until it is indexed
+            getLogger().warn(ConstantsLogging.MARKER_COMPONENT_LIFECYCLE,
+                    "Repository service {} could not be indexed by component '{}'.",
+                    pServiceId, getId(), e);
+            return;
+        }
+        pendingRepositories.remove(pServiceId, pRepository);
+        if (repositories.get(pServiceId) != pRepository) {
+            // unbound while it was being indexed
+            current.remove(pServiceId);
+            if (next != null) {
+                next.remove(pServiceId);
+            }
+            return;
+        }
+        getLogger().debug(ConstantsLogging.MARKER_COMPONENT_LIFECYCLE,
+                "Repository service {} indexed in {}ms, {}.", pServiceId,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start),
+                current);
+    }
+
+    /**
+     * Builds a new index on the component executor, using the current
+     * component properties, and swaps it in when all the bound repositories
+     * were indexed. The current index keeps answering the queries meanwhile.
+     */
+    private synchronized void rebuildIndex() {
+        cancelRefresh();
+        CapabilityIndex next = new CapabilityIndex(
+                ComponentProperties.getInt(getComponentContext(),
+                        PROP_INDEX_CACHE_SIZE,
+                        CapabilityIndex.DEFAULT_CACHE_SIZE));
+        nextCapabilityIndex = next;
+        try {
+            getComponentExecutor().execute(() -> rebuildIndex(next));
+        } catch (RejectedExecutionException e) {
+            nextCapabilityIndex = null;
+            getLogger().warn(ConstantsLogging.MARKER_COMPONENT_LIFECYCLE,
+                    "Rebuilding of the index was rejected by component '{}'.",
+                    getId(), e);
+        }
+        scheduleRefresh();
+    }
+
+    private void rebuildIndex(CapabilityIndex pNext) {
+        long start = System.nanoTime();
+        for (Map.Entry<Long, Repository> repository : repositories
+                .entrySet()) {
+            if (nextCapabilityIndex != pNext) {
+                // stopped or superseded by a newer modification
+                return;
+            }
+            Long serviceId = repository.getKey();
+            try {
+                pNext.index(serviceId, repository.getValue());
+            } catch (RuntimeException e) {
+                // queried directly until it is indexed again
+                pendingRepositories.put(serviceId, repository.getValue());
+                getLogger().warn(ConstantsLogging.MARKER_COMPONENT_LIFECYCLE,
+                        "Repository service {} could not be indexed by component '{}'.",
+                        serviceId, getId(), e);
+                continue;
+            }
+            if (repositories.get(serviceId) != repository.getValue()) {
+                // unbound while it was being indexed
+                pNext.remove(serviceId);
+            }
+        }
+        if (swapCapabilityIndex(pNext)) {
+            getLogger().debug(ConstantsLogging.MARKER_COMPONENT_LIFECYCLE,
+                    "Index of component '{}' rebuilt in {}ms, {}.", getId(),
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start),
+                    pNext);
+        }
+    }
+
+    /**
+     * Indexes again all the bound repositories, on the component executor.
+     */
+    public final void refresh() {
+        for (Map.Entry<Long, Repository> repository : repositories
+                .entrySet()) {
+            scheduleIndexing(repository.getKey(), repository.getValue());
+        }
+    }
+
+    private void scheduleIndexing(Long pServiceId, Repository pRepository) {
+        pendingRepositories.put(pServiceId, pRepository);
+        if (!indexing) {
+            // it will be indexed when the component is activated
+            return;
+        }
+        try {
+            getComponentExecutor()
+                    .execute(() -> indexRepository(pServiceId, pRepository));
+        } catch (RejectedExecutionException e) {
+            getLogger().warn(ConstantsLogging.MARKER_COMPONENT_LIFECYCLE,
+                    "Indexing of repository service {} was rejected by component '{}'.",
+                    pServiceId, getId(), e);
+        }
+    }
+
+    private void scheduleRefresh() {
+        long interval = ComponentProperties.getLong(getComponentContext(),
+                PROP_INDEX_REFRESH_INTERVAL, 0L);
+        if (interval > 0) {
+            refreshTimeout = getComponentTimer().scheduleWithFixedDelay(
+                    this::refresh, interval, interval, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private synchronized void startIndexing() {
+        capabilityIndex = new CapabilityIndex(
+                ComponentProperties.getInt(getComponentContext(),
+                        PROP_INDEX_CACHE_SIZE,
+                        CapabilityIndex.DEFAULT_CACHE_SIZE));
+        indexing = true;
+        refresh();
+        scheduleRefresh();
+    }
+
+    private synchronized void stopIndexing() {
+        indexing = false;
+        cancelRefresh();
+        nextCapabilityIndex = null;
+        capabilityIndex = null;
+    }
+
+    private synchronized boolean swapCapabilityIndex(CapabilityIndex pNext) {
+        if (nextCapabilityIndex != pNext) {
+            return false;
+        }
+        // the current index is replaced before the next one is cleared
+        capabilityIndex = pNext;
+        nextCapabilityIndex = null;
+        return true;
+    }
+
+    protected void unbindRepositoryService(final Repository pRepository,
+            final Map<String, Object> pProperties) {
+        defaultUnbindRepositoryService(pRepository, pProperties);
+    }
+
+    protected void updatedRepositoryService(final Repository pRepository,
+            final Map<String, Object> pProperties) {
+        defaultUpdatedRepositoryService(pRepository, pProperties);
+    }
+}
@@ -0,0 +1,127 @@
+/**
+ * ==========================================================================
+ * Copyright © 2015-2019 Cristiano Gavião, C8 Technology ME.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Cristiano Gavião (cvgaviao@c8tech.com.br)- initial API and implementation
+ * ==========================================================================
+ */
+package br.com.c8tech.vxosgi.lib.ds.components;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Dictionary;
+import java.util.List;
+
+import org.osgi.service.component.ComponentContext;
+
+/**
+ * Small helper used by the base component classes to read the optional
+ * tuning properties they understand from the injected component properties.
+ * <p>
+ * Values can be provided either as their natural type or as strings, since
+ * they usually come from configuration files.
+ *
+ * @since 0.1.1
+ * @author Cristiano Gavião
+ *
+ */
+final class ComponentProperties {
+
+    private ComponentProperties() {
+    }
+
+    private static Object get(final ComponentContext pComponentContext,
+            final String pKey) {
+        if (pComponentContext == null) {
+            return null;
+        }
+        Dictionary<String, Object> properties = pComponentContext
+                .getProperties();
+        return properties != null ? properties.get(pKey) : null;
+    }
+
+    static boolean getBoolean(final ComponentContext pComponentContext,
+            final String pKey, final boolean pDefault) {
+        Object value = get(pComponentContext, pKey);
+        if (value instanceof Boolean) {
+            return (Boolean) value;
+        }
+        return value != null ? Boolean.parseBoolean(value.toString().trim())
+                : pDefault;
+    }
+
+    static int getInt(final ComponentContext pComponentContext,
+            final String pKey, final int pDefault) {
+        Object value = get(pComponentContext, pKey);
+        if (value instanceof Number) {
+            return ((Number) value).intValue();
+        }
+        if (value != null) {
+            try {
+                return Integer.parseInt(value.toString().trim());
+            } catch (NumberFormatException e) { // NOSONAR
+                return pDefault;
+            }
+        }
+        return pDefault;
+    }
+
+    static long getLong(final ComponentContext pComponentContext,
+            final String pKey, final long pDefault) {
+        Object value = get(pComponentContext, pKey);
+        if (value instanceof Number) {
+            return ((Number) value).longValue();
+        }
+        if (value != null) {
+            try {
+                return Long.parseLong(value.toString().trim());
+            } catch (NumberFormatException e) { // NOSONAR
+                return pDefault;
+            }
+        }
+        return pDefault;
+    }
+
+    static String getString(final ComponentContext pComponentContext,
+            final String pKey, final String pDefault) {
+        Object value = get(pComponentContext, pKey);
+        if (value == null || value.toString().trim().isEmpty()) {
+            return pDefault;
+        }
+        return value.toString().trim();
+    }
+
+    /**
+     * Reads a multi-valued property, also accepting a single string with the
+     * values separated by commas.
+     */
+    static List<String> getStrings(final ComponentContext pComponentContext,
+            final String pKey, final List<String> pDefault) {
+        Object value = get(pComponentContext, pKey);
+        Collection<?> values;
+        if (value instanceof String[]) {
+            values = Arrays.asList((String[]) value);
+        } else if (value instanceof Collection) {
+            values = (Collection<?>) value;
+        } else if (value != null) {
+            values = Arrays.asList(value.toString().split(","));
+        } else {
+            return pDefault;
+        }
+        List<String> result = new ArrayList<>(values.size());
+        for (Object element : values) {
+            String trimmed = String.valueOf(element).trim();
+            if (!trimmed.isEmpty()) {
+                result.add(trimmed);
+            }
+        }
+        return result.isEmpty() ? pDefault : result;
+    }
+}
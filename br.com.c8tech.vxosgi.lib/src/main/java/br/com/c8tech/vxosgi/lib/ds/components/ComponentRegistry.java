@@ -0,0 +1,289 @@
+/**
+ * ==========================================================================
+ * Copyright © 2015-2019 Cristiano Gavião, C8 Technology ME.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Cristiano Gavião (cvgaviao@c8tech.com.br)- initial API and implementation
+ * ==========================================================================
+ */
+package br.com.c8tech.vxosgi.lib.ds.components;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import org.osgi.annotation.versioning.ProviderType;
+
+/**
+ * An index of the live {@link AbstractComponent} instances, allowing
+ * diagnostics and bulk operations to find them without querying DS.
+ * <p>
+ * Components register themselves at the end of their activation and remove
+ * themselves at the beginning of their deactivation. The index is keyed by
+ * component id, component name and the id of the bundle declaring the
+ * component. It only holds weak references, so it never prevents a component
+ * instance from being collected, even when its deactivation was not done
+ * through the default workflow.
+ *
+ * @since 0.1.1
+ * @author Cristiano Gavião
+ *
+ */
+@ProviderType
+public final class ComponentRegistry {
+
+    /**
+     * A weak reference to a registered component, remembering its keys.
+     */
+    private static final class Entry extends WeakReference<AbstractComponent> {
+
+        private final long bundleId;
+
+        private final long id;
+
+        private final String name;
+
+        private Entry(AbstractComponent pComponent, long pId, String pName,
+                long pBundleId, ReferenceQueue<AbstractComponent> pQueue) {
+            super(pComponent, pQueue);
+            id = pId;
+            name = pName;
+            bundleId = pBundleId;
+        }
+    }
+
+    /**
+     * The entries of the registry at a given version.
+     */
+    private static final class Snapshot {
+
+        private final Entry[] entries;
+
+        private final long version;
+
+        private Snapshot(long pVersion, Entry[] pEntries) {
+            version = pVersion;
+            entries = pEntries;
+        }
+    }
+
+    private static final Entry[] EMPTY = new Entry[0];
+
+    private static final ComponentRegistry INSTANCE = new ComponentRegistry();
+
+    private final ConcurrentMap<Long, ConcurrentMap<Long, Entry>> byBundle = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<Long, Entry> byId = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<String, ConcurrentMap<Long, Entry>> byName = new ConcurrentHashMap<>();
+
+    private final ReferenceQueue<AbstractComponent> collected = new ReferenceQueue<>();
+
+    /**
+     * The latest snapshot, rebuilt lazily after a change.
+     */
+    private volatile Snapshot snapshot;
+
+    private final AtomicLong version = new AtomicLong();
+
+    private ComponentRegistry() {
+    }
+
+    /**
+     * Adds an entry to a secondary index. The map of the key is created and
+     * changed atomically, so it can not be dropped meanwhile by
+     * {@link #removeFromIndex(ConcurrentMap, Object, Entry)}.
+     */
+    private static <K> void addToIndex(
+            ConcurrentMap<K, ConcurrentMap<Long, Entry>> pIndex, K pKey,
+            Entry pEntry) {
+        pIndex.compute(pKey, (k, entries) -> {
+            ConcurrentMap<Long, Entry> result = entries != null ? entries
+                    : new ConcurrentHashMap<>();
+            result.put(pEntry.id, pEntry);
+            return result;
+        });
+    }
+
+    /**
+     * @return the registry shared by all components of the framework.
+     */
+    public static ComponentRegistry getInstance() {
+        return INSTANCE;
+    }
+
+    private static <K> void removeFromIndex(
+            ConcurrentMap<K, ConcurrentMap<Long, Entry>> pIndex, K pKey,
+            Entry pEntry) {
+        pIndex.computeIfPresent(pKey, (k, entries) -> {
+            entries.remove(pEntry.id, pEntry);
+            // returning null drops the empty map of the key
+            return entries.isEmpty() ? null : entries;
+        });
+    }
+
+    private static List<AbstractComponent> resolve(
+            Collection<Entry> pEntries) {
+        List<AbstractComponent> components = new ArrayList<>(
+                pEntries.size());
+        for (Entry entry : pEntries) {
+            AbstractComponent component = entry.get();
+            if (component != null) {
+                components.add(component);
+            }
+        }
+        return components;
+    }
+
+    private void expungeCollected() {
+        Reference<? extends AbstractComponent> reference;
+        while ((reference = collected.poll()) != null) {
+            remove((Entry) reference);
+        }
+    }
+
+    /**
+     * Calls the specified action for each live component, iterating over a
+     * snapshot of the registry.
+     *
+     * @param pAction
+     *            the action to perform.
+     */
+    public void forEach(Consumer<? super AbstractComponent> pAction) {
+        for (Entry entry : getSnapshot()) {
+            AbstractComponent component = entry.get();
+            if (component != null) {
+                pAction.accept(component);
+            }
+        }
+    }
+
+    /**
+     * Returns the live components declared by the specified bundle.
+     *
+     * @param pBundleId
+     *            the bundle id.
+     * @return the components found, it can be empty.
+     */
+    public List<AbstractComponent> getByBundle(long pBundleId) {
+        ConcurrentMap<Long, Entry> entries = byBundle.get(pBundleId);
+        return entries != null ? resolve(entries.values())
+                : Collections.emptyList();
+    }
+
+    /**
+     * Returns the live component with the specified component id.
+     *
+     * @param pComponentId
+     *            the component id, as set by DS.
+     * @return the component found or null.
+     */
+    public AbstractComponent getById(long pComponentId) {
+        Entry entry = byId.get(pComponentId);
+        return entry != null ? entry.get() : null;
+    }
+
+    /**
+     * Returns the live components with the specified component name. There
+     * can be more than one when the component is a factory component.
+     *
+     * @param pComponentName
+     *            the component name.
+     * @return the components found, it can be empty.
+     */
+    public List<AbstractComponent> getByName(String pComponentName) {
+        ConcurrentMap<Long, Entry> entries = byName.get(pComponentName);
+        return entries != null ? resolve(entries.values())
+                : Collections.emptyList();
+    }
+
+    private Entry[] getSnapshot() {
+        Snapshot current = snapshot;
+        long currentVersion = version.get();
+        if (current == null || current.version != currentVersion) {
+            current = new Snapshot(currentVersion,
+                    byId.values().toArray(EMPTY));
+            snapshot = current;
+        }
+        return current.entries;
+    }
+
+    /**
+     * Registers an activated component.
+     *
+     * @param pComponent
+     *            the component being registered.
+     * @param pBundleId
+     *            the id of the bundle declaring the component.
+     */
+    void register(AbstractComponent pComponent, long pBundleId) {
+        expungeCollected();
+        Entry entry = new Entry(pComponent, pComponent.getId(),
+                pComponent.getName(), pBundleId, collected);
+        Entry previous = byId.put(entry.id, entry);
+        if (previous != null) {
+            removeFromIndexes(previous);
+        }
+        addToIndex(byName, entry.name, entry);
+        addToIndex(byBundle, entry.bundleId, entry);
+        version.incrementAndGet();
+    }
+
+    private void remove(Entry pEntry) {
+        if (byId.remove(pEntry.id, pEntry)) {
+            removeFromIndexes(pEntry);
+            version.incrementAndGet();
+        }
+    }
+
+    private void removeFromIndexes(Entry pEntry) {
+        removeFromIndex(byName, pEntry.name, pEntry);
+        removeFromIndex(byBundle, pEntry.bundleId, pEntry);
+    }
+
+    /**
+     * @return the number of registered components.
+     */
+    public int size() {
+        expungeCollected();
+        return byId.size();
+    }
+
+    /**
+     * Returns a snapshot of the live components. Consecutive calls share the
+     * same underlying index snapshot until the registry changes.
+     *
+     * @return the live components.
+     */
+    public List<AbstractComponent> snapshot() {
+        return resolve(Arrays.asList(getSnapshot()));
+    }
+
+    /**
+     * Removes a component that is being deactivated.
+     *
+     * @param pComponent
+     *            the component being removed.
+     */
+    void unregister(AbstractComponent pComponent) {
+        Entry entry = byId.get(pComponent.getId());
+        if (entry != null && entry.get() == pComponent) {
+            remove(entry);
+        }
+        expungeCollected();
+    }
+}
@@ -0,0 +1,221 @@
+/**
+ * ==========================================================================
+ * Copyright © 2015-2019 Cristiano Gavião, C8 Technology ME.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Cristiano Gavião (cvgaviao@c8tech.com.br)- initial API and implementation
+ * ==========================================================================
+ */
+package br.com.c8tech.vxosgi.lib.ds.components;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.osgi.annotation.versioning.ProviderType;
+
+/**
+ * Aggregates, per component name and {@link LifecyclePhase}, the bytes
+ * allocated and the CPU time spent by the thread executing the lifecycle
+ * workflows of the components that have enabled the accounting through the
+ * component property {@value AbstractComponent#PROP_ACCOUNTING_ENABLED}.
+ * <p>
+ * The measures are taken from the {@code com.sun.management.ThreadMXBean}
+ * of the platform. When it is not available, as when the framework does not
+ * export the {@code com.sun.management} package, the allocated bytes are
+ * reported as zero and only the CPU time is accounted.
+ *
+ * @since 0.1.1
+ * @author Cristiano Gavião
+ *
+ */
+@ProviderType
+public final class ComponentResourceAccounting {
+
+    /**
+     * Isolates the linkage of the JDK specific bean, so its absence only
+     * disables the allocation accounting.
+     */
+    private static final class AllocationProbe {
+
+        private static final com.sun.management.ThreadMXBean BEAN = lookup();
+
+        private AllocationProbe() {
+        }
+
+        private static long allocatedBytes() {
+            return BEAN != null
+                    ? BEAN.getThreadAllocatedBytes(
+                            Thread.currentThread().getId())
+                    : 0;
+        }
+
+        private static com.sun.management.ThreadMXBean lookup() {
+            java.lang.management.ThreadMXBean bean = ManagementFactory
+                    .getThreadMXBean();
+            if (!(bean instanceof com.sun.management.ThreadMXBean)) {
+                return null;
+            }
+            com.sun.management.ThreadMXBean sunBean = (com.sun.management.ThreadMXBean) bean;
+            if (!sunBean.isThreadAllocatedMemorySupported()) {
+                return null;
+            }
+            if (!sunBean.isThreadAllocatedMemoryEnabled()) {
+                sunBean.setThreadAllocatedMemoryEnabled(true);
+            }
+            return sunBean;
+        }
+    }
+
+    private static final ComponentResourceAccounting INSTANCE = new ComponentResourceAccounting();
+
+    private final boolean allocationSupported;
+
+    private final boolean cpuSupported;
+
+    private final ConcurrentMap<String, Map<LifecyclePhase, PhaseResourceUsage>> usages = new ConcurrentHashMap<>();
+
+    private final java.lang.management.ThreadMXBean threadBean;
+
+    private ComponentResourceAccounting() {
+        threadBean = ManagementFactory.getThreadMXBean();
+        cpuSupported = threadBean.isCurrentThreadCpuTimeSupported()
+                && threadBean.isThreadCpuTimeEnabled();
+        boolean supported;
+        try {
+            supported = AllocationProbe.BEAN != null;
+        } catch (LinkageError e) { // NOSONAR
+            supported = false;
+        }
+        allocationSupported = supported;
+    }
+
+    /**
+     * @return the accounting shared by all components of the framework.
+     */
+    public static ComponentResourceAccounting getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * @return the bytes allocated so far by the current thread or zero when
+     *         it can not be measured.
+     */
+    long currentThreadAllocatedBytes() {
+        return allocationSupported ? AllocationProbe.allocatedBytes() : 0;
+    }
+
+    /**
+     * @return the CPU time spent so far by the current thread or zero when it
+     *         can not be measured.
+     */
+    long currentThreadCpuNanos() {
+        return cpuSupported ? threadBean.getCurrentThreadCpuTime() : 0;
+    }
+
+    /**
+     * @return the names of the components with accounted phases.
+     */
+    public List<String> getComponentNames() {
+        List<String> names = new ArrayList<>(usages.keySet());
+        Collections.sort(names);
+        return names;
+    }
+
+    /**
+     * Returns the resources used by a phase of the components with the
+     * specified name.
+     *
+     * @param pComponentName
+     *            the component name.
+     * @param pPhase
+     *            the lifecycle phase.
+     * @return the usage or null if the phase was never accounted.
+     */
+    public PhaseResourceUsage getUsage(String pComponentName,
+            LifecyclePhase pPhase) {
+        Map<LifecyclePhase, PhaseResourceUsage> phases = usages
+                .get(pComponentName);
+        if (phases == null) {
+            return null;
+        }
+        synchronized (phases) {
+            return phases.get(pPhase);
+        }
+    }
+
+    /**
+     * Returns the resources used by each accounted phase of the components
+     * with the specified name.
+     *
+     * @param pComponentName
+     *            the component name.
+     * @return the usages found, it can be empty.
+     */
+    public List<PhaseResourceUsage> getUsages(String pComponentName) {
+        Map<LifecyclePhase, PhaseResourceUsage> phases = usages
+                .get(pComponentName);
+        if (phases == null) {
+            return Collections.emptyList();
+        }
+        synchronized (phases) {
+            return new ArrayList<>(phases.values());
+        }
+    }
+
+    /**
+     * @return true if the bytes allocated by a thread can be measured.
+     */
+    public boolean isAllocationSupported() {
+        return allocationSupported;
+    }
+
+    /**
+     * @return true if the CPU time of a thread can be measured.
+     */
+    public boolean isCpuSupported() {
+        return cpuSupported;
+    }
+
+    /**
+     * Records an execution of a phase.
+     *
+     * @return the usage updated.
+     */
+    PhaseResourceUsage record(String pComponentName, LifecyclePhase pPhase,
+            long pAllocatedBytes, long pCpuNanos, boolean pBreach) {
+        Map<LifecyclePhase, PhaseResourceUsage> phases = usages.computeIfAbsent(
+                pComponentName, k -> new EnumMap<>(LifecyclePhase.class));
+        PhaseResourceUsage usage;
+        synchronized (phases) {
+            usage = phases.computeIfAbsent(pPhase,
+                    p -> new PhaseResourceUsage(pComponentName, p));
+        }
+        usage.record(pAllocatedBytes, pCpuNanos, pBreach);
+        return usage;
+    }
+
+    /**
+     * Discards all the accounted usages.
+     */
+    public void reset() {
+        usages.clear();
+    }
+
+    @Override
+    public String toString() {
+        return "ComponentResourceAccounting[components=" + usages.size()
+                + ", allocationSupported=" + allocationSupported
+                + ", cpuSupported=" + cpuSupported + "]";
+    }
+}
@@ -0,0 +1,253 @@
+/**
+ * ==========================================================================
+ * Copyright © 2015-2019 Cristiano Gavião, C8 Technology ME.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Cristiano Gavião (cvgaviao@c8tech.com.br)- initial API and implementation
+ * ==========================================================================
+ */
+package br.com.c8tech.vxosgi.lib.ds.components;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+
+import br.com.c8tech.vxosgi.lib.ConstantsLogging;
+
+/**
+ * Executes the {@link WarmUpWorkload warm-up workloads} of a component,
+ * bounded by an iteration count and/or a time budget, measuring the latency
+ * of the first and of the last iterations of each workload.
+ *
+ * @since 0.1.1
+ * @author Cristiano Gavião
+ *
+ */
+final class ComponentWarmUp {
+
+    /**
+     * Accumulates the latencies measured by one thread for one workload.
+     */
+    private static final class Measurement {
+
+        private Exception failure;
+
+        private long initialCount;
+
+        private long initialSum;
+
+        private long iterations;
+
+        private final long[] window = new long[MEASUREMENT_WINDOW];
+
+        private void record(long pLatencyNanos) {
+            if (initialCount < MEASUREMENT_WINDOW) {
+                initialSum += pLatencyNanos;
+                initialCount++;
+            }
+            window[(int) (iterations % MEASUREMENT_WINDOW)] = pLatencyNanos;
+            iterations++;
+        }
+
+        private long windowCount() {
+            return Math.min(iterations, MEASUREMENT_WINDOW);
+        }
+
+        private long windowSum() {
+            long sum = 0;
+            for (int i = 0; i < windowCount(); i++) {
+                sum += window[i];
+            }
+            return sum;
+        }
+    }
+
+    /**
+     * The number of iterations considered when computing the initial and the
+     * final mean latencies.
+     */
+    static final int MEASUREMENT_WINDOW = 100;
+
+    private final String componentName;
+
+    private final long iterations;
+
+    private final Logger logger;
+
+    private final int parallelism;
+
+    private final long timeBudgetNanos;
+
+    /**
+     * @param pLogger
+     *            the logger of the component being warmed up.
+     * @param pComponentName
+     *            the name of the component being warmed up.
+     * @param pIterations
+     *            the maximum number of iterations per workload, zero means no
+     *            limit.
+     * @param pTimeBudgetNanos
+     *            the maximum time spent by the whole warm-up, zero means no
+     *            limit.
+     * @param pParallelism
+     *            the number of threads used to execute parallelizable
+     *            workloads.
+     */
+    ComponentWarmUp(Logger pLogger, String pComponentName, long pIterations,
+            long pTimeBudgetNanos, int pParallelism) {
+        logger = pLogger;
+        componentName = pComponentName;
+        iterations = Math.max(0, pIterations);
+        timeBudgetNanos = Math.max(0, pTimeBudgetNanos);
+        parallelism = Math.max(1, pParallelism);
+    }
+
+    private static Measurement measure(WarmUpWorkload pWorkload,
+            long pIterations, long pDeadline) {
+        Measurement measurement = new Measurement();
+        for (long i = 0; pIterations == 0 || i < pIterations; i++) {
+            long start = System.nanoTime();
+            if (start - pDeadline >= 0) {
+                break;
+            }
+            try {
+                pWorkload.execute(i);
+            } catch (Exception e) { // NOSONAR
+                measurement.failure = e;
+                break;
+            }
+            measurement.record(System.nanoTime() - start);
+        }
+        return measurement;
+    }
+
+    /**
+     * Informs whether this warm-up is bounded and can therefore be executed.
+     *
+     * @return true if an iteration count or a time budget was configured.
+     */
+    boolean isBounded() {
+        return iterations > 0 || timeBudgetNanos > 0;
+    }
+
+    private ExecutorService newExecutor(List<WarmUpWorkload> pWorkloads) {
+        if (parallelism < 2) {
+            return null;
+        }
+        for (WarmUpWorkload workload : pWorkloads) {
+            if (workload.isParallelizable()) {
+                AtomicInteger counter = new AtomicInteger();
+                return Executors.newFixedThreadPool(parallelism - 1, r -> {
+                    Thread thread = new Thread(r, "warm-up-" + componentName
+                            + "-" + counter.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Executes each one of the specified workloads, in sequence. Workloads
+     * that allow it are executed by several threads at the same time.
+     *
+     * @param pWorkloads
+     *            the workloads to execute.
+     * @return the measurements taken.
+     */
+    WarmUpResult run(final List<WarmUpWorkload> pWorkloads) {
+        long start = System.nanoTime();
+        List<WarmUpResult.WorkloadResult> results = new ArrayList<>(
+                pWorkloads.size());
+        ExecutorService executor = newExecutor(pWorkloads);
+        try {
+            for (int i = 0; i < pWorkloads.size()
+                    && !Thread.currentThread().isInterrupted(); i++) {
+                // the remaining budget is shared among the remaining workloads
+                long deadline = Long.MAX_VALUE;
+                if (timeBudgetNanos > 0) {
+                    long remaining = timeBudgetNanos
+                            - (System.nanoTime() - start);
+                    deadline = System.nanoTime()
+                            + Math.max(0, remaining / (pWorkloads.size() - i));
+                }
+                results.add(runWorkload(pWorkloads.get(i), deadline, executor));
+            }
+        } finally {
+            if (executor != null) {
+                executor.shutdownNow();
+            }
+        }
+        return new WarmUpResult(System.nanoTime() - start, results);
+    }
+
+    private WarmUpResult.WorkloadResult runWorkload(
+            final WarmUpWorkload pWorkload, final long pDeadline,
+            final ExecutorService pExecutor) {
+
+        List<Measurement> measurements = new ArrayList<>(parallelism);
+        if (pExecutor != null && pWorkload.isParallelizable()) {
+            long perThread = iterations > 0
+                    ? Math.max(1, iterations / parallelism)
+                    : 0;
+            List<Future<Measurement>> futures = new ArrayList<>(
+                    parallelism - 1);
+            for (int i = 1; i < parallelism; i++) {
+                futures.add(pExecutor
+                        .submit(() -> measure(pWorkload, perThread, pDeadline)));
+            }
+            measurements.add(measure(pWorkload, perThread, pDeadline));
+            for (Future<Measurement> future : futures) {
+                try {
+                    measurements.add(future.get());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    future.cancel(true);
+                } catch (ExecutionException e) {
+                    logger.warn(ConstantsLogging.MARKER_COMPONENT_LIFECYCLE,
+                            "Warm-up thread failed for workload '{}'.",
+                            pWorkload.getName(), e.getCause());
+                }
+            }
+        } else {
+            measurements.add(measure(pWorkload, iterations, pDeadline));
+        }
+
+        long executed = 0;
+        long initialSum = 0;
+        long initialCount = 0;
+        long finalSum = 0;
+        long finalCount = 0;
+        Exception failure = null;
+        for (Measurement measurement : measurements) {
+            executed += measurement.iterations;
+            initialSum += measurement.initialSum;
+            initialCount += measurement.initialCount;
+            finalSum += measurement.windowSum();
+            finalCount += measurement.windowCount();
+            if (failure == null) {
+                failure = measurement.failure;
+            }
+        }
+        if (failure != null) {
+            logger.warn(ConstantsLogging.MARKER_COMPONENT_LIFECYCLE,
+                    "Warm-up workload '{}' of component '{}' failed after {} iterations.",
+                    pWorkload.getName(), componentName, executed, failure);
+        }
+        return new WarmUpResult.WorkloadResult(pWorkload.getName(), executed,
+                initialCount > 0 ? initialSum / initialCount : 0,
+                finalCount > 0 ? finalSum / finalCount : 0, failure != null);
+    }
+}
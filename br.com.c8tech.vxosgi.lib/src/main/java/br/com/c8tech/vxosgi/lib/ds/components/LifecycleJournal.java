@@ -0,0 +1,244 @@
+/**
+ * ==========================================================================
+ * Copyright © 2015-2019 Cristiano Gavião, C8 Technology ME.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Cristiano Gavião (cvgaviao@c8tech.com.br)- initial API and implementation
+ * ==========================================================================
+ */
+package br.com.c8tech.vxosgi.lib.ds.components;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.osgi.annotation.versioning.ProviderType;
+
+/**
+ * Keeps the last lifecycle transitions of the components with a given name,
+ * so the reason of a flapping component can be found at runtime even when
+ * the lifecycle logging is disabled.
+ * <p>
+ * The transitions are written by the default workflows of
+ * {@link AbstractComponent} into fixed-size primitive ring buffers, without
+ * allocating, so the journal is always enabled. The journals outlive the
+ * component instances: the transitions of every instance of a component
+ * name, including the factory ones, are kept in the same journal.
+ * <p>
+ * The number of transitions kept by each journal is set by the system
+ * property {@value #PROPERTY_CAPACITY}.
+ *
+ * @since 0.1.1
+ * @author Cristiano Gavião
+ *
+ */
+@ProviderType
+public final class LifecycleJournal {
+
+    /**
+     * The default number of transitions kept by each journal.
+     */
+    public static final int DEFAULT_CAPACITY = 64;
+
+    /**
+     * The reason of the transitions that are not deactivations.
+     */
+    public static final int NO_REASON = -1;
+
+    /**
+     * The system property holding the number of transitions kept by each
+     * journal, rounded up to a power of two.
+     */
+    public static final String PROPERTY_CAPACITY = "vxosgi.lifecycle.journal.capacity";
+
+    private static final int CAPACITY = capacity();
+
+    private static final ConcurrentMap<String, LifecycleJournal> JOURNALS = new ConcurrentHashMap<>();
+
+    private static final LifecyclePhase[] PHASES = LifecyclePhase.values();
+
+    private final long[] componentIds;
+
+    private final long[] durations;
+
+    private final boolean[] failures;
+
+    private final int mask;
+
+    private final String name;
+
+    private final byte[] phases;
+
+    private final int[] reasons;
+
+    private long sequence;
+
+    private final long[] startedAt;
+
+    private LifecycleJournal(String pName, int pCapacity) {
+        name = pName;
+        mask = pCapacity - 1;
+        componentIds = new long[pCapacity];
+        durations = new long[pCapacity];
+        failures = new boolean[pCapacity];
+        phases = new byte[pCapacity];
+        reasons = new int[pCapacity];
+        startedAt = new long[pCapacity];
+    }
+
+    private static int capacity() {
+        int capacity = Integer.getInteger(PROPERTY_CAPACITY,
+                DEFAULT_CAPACITY);
+        return Integer.highestOneBit(Math.max(2, capacity) * 2 - 1);
+    }
+
+    /**
+     * Writes the transitions of every journal, grouped by component name.
+     *
+     * @param pOutput
+     *            where the transitions are written.
+     * @throws IOException
+     *             if the output fails.
+     */
+    public static void dumpAll(Appendable pOutput) throws IOException {
+        // iterates the journals themselves, a name may be gone meanwhile
+        List<LifecycleJournal> journals = new ArrayList<>(JOURNALS.values());
+        journals.sort(Comparator.comparing(journal -> journal.name));
+        for (LifecycleJournal journal : journals) {
+            journal.dump(pOutput);
+        }
+    }
+
+    /**
+     * @return the names of the components with journaled transitions.
+     */
+    public static List<String> getComponentNames() {
+        List<String> names = new ArrayList<>(JOURNALS.keySet());
+        Collections.sort(names);
+        return names;
+    }
+
+    /**
+     * Returns the journal of the components with the specified name.
+     *
+     * @param pComponentName
+     *            the component name.
+     * @return the journal or null if no transition was journaled.
+     */
+    public static LifecycleJournal getJournal(String pComponentName) {
+        return JOURNALS.get(pComponentName);
+    }
+
+    /**
+     * Returns the journal of the components with the specified name,
+     * creating it if needed.
+     */
+    static LifecycleJournal journalOf(String pComponentName) {
+        LifecycleJournal journal = JOURNALS.get(pComponentName);
+        if (journal == null) {
+            journal = JOURNALS.computeIfAbsent(pComponentName,
+                    n -> new LifecycleJournal(n, CAPACITY));
+        }
+        return journal;
+    }
+
+    /**
+     * Discards all the journals.
+     */
+    public static void reset() {
+        JOURNALS.clear();
+    }
+
+    /**
+     * Writes the transitions of this journal, the oldest first.
+     *
+     * @param pOutput
+     *            where the transitions are written.
+     * @throws IOException
+     *             if the output fails.
+     */
+    public void dump(Appendable pOutput) throws IOException {
+        pOutput.append(name).append(System.lineSeparator());
+        for (LifecycleTransition transition : getTransitions()) {
+            pOutput.append("  ").append(transition.toString())
+                    .append(System.lineSeparator());
+        }
+    }
+
+    /**
+     * @return the number of transitions kept.
+     */
+    public int getCapacity() {
+        return mask + 1;
+    }
+
+    /**
+     * @return the last transition journaled or null if none.
+     */
+    public synchronized LifecycleTransition getLastTransition() {
+        return sequence > 0 ? read(sequence) : null;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return the number of transitions journaled so far, including the
+     *         ones already overwritten.
+     */
+    public synchronized long getRecordedCount() {
+        return sequence;
+    }
+
+    /**
+     * @return the transitions kept, the oldest first.
+     */
+    public synchronized List<LifecycleTransition> getTransitions() {
+        long first = Math.max(1, sequence - mask);
+        List<LifecycleTransition> transitions = new ArrayList<>(
+                (int) (sequence - first + 1));
+        for (long s = first; s <= sequence; s++) {
+            transitions.add(read(s));
+        }
+        return transitions;
+    }
+
+    private LifecycleTransition read(long pSequence) {
+        int slot = (int) (pSequence - 1) & mask;
+        return new LifecycleTransition(pSequence, componentIds[slot],
+                PHASES[phases[slot]], reasons[slot], startedAt[slot],
+                durations[slot], failures[slot]);
+    }
+
+    /**
+     * Journals a transition, overwriting the oldest one when the journal is
+     * full.
+     */
+    synchronized void record(long pComponentId, LifecyclePhase pPhase,
+            int pReason, long pStartedAt, long pDurationNanos,
+            boolean pFailed) {
+        int slot = (int) sequence++ & mask;
+        componentIds[slot] = pComponentId;
+        phases[slot] = (byte) pPhase.ordinal();
+        reasons[slot] = pReason;
+        startedAt[slot] = pStartedAt;
+        durations[slot] = pDurationNanos;
+        failures[slot] = pFailed;
+    }
+
+    @Override
+    public String toString() {
+        return "LifecycleJournal[" + name + ", recorded=" + getRecordedCount()
+                + ", capacity=" + getCapacity() + "]";
+    }
+}
@@ -0,0 +1,51 @@
+/**
+ * ==========================================================================
+ * Copyright © 2015-2019 Cristiano Gavião, C8 Technology ME.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Cristiano Gavião (cvgaviao@c8tech.com.br)- initial API and implementation
+ * ==========================================================================
+ */
+package br.com.c8tech.vxosgi.lib.ds.components;
+
+/**
+ * The phases of the lifecycle workflows of an {@link AbstractComponent}
+ * whose resource usage can be accounted.
+ *
+ * @since 0.1.1
+ * @author Cristiano Gavião
+ *
+ */
+public enum LifecyclePhase {
+
+    /**
+     * The custom activation, {@link AbstractComponent#afterActivationWorkflow()}
+     * and the steps done by the base classes right after it.
+     */
+    ACTIVATION,
+
+    /**
+     * The
+     * {@link AbstractComponent#initializeComponentProperties(org.osgi.service.component.ComponentContext)}
+     * call of the activation and modification workflows.
+     */
+    CONFIGURATION,
+
+    /**
+     * The custom deactivation,
+     * {@link AbstractComponent#beforeDeactivationWorkflow(Integer)} and the
+     * steps done by the base classes right after it.
+     */
+    DEACTIVATION,
+
+    /**
+     * The custom modification,
+     * {@link AbstractComponent#afterModificationWorkflow(org.osgi.service.component.ComponentContext)}.
+     */
+    MODIFICATION
+}
@@ -0,0 +1,137 @@
+/**
+ * ==========================================================================
+ * Copyright © 2015-2019 Cristiano Gavião, C8 Technology ME.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Cristiano Gavião (cvgaviao@c8tech.com.br)- initial API and implementation
+ * ==========================================================================
+ */
+package br.com.c8tech.vxosgi.lib.ds.components;
+
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+
+import org.osgi.annotation.versioning.ProviderType;
+
+/**
+ * A lifecycle transition of a component instance read from a
+ * {@link LifecycleJournal}.
+ *
+ * @since 0.1.1
+ * @author Cristiano Gavião
+ *
+ */
+@ProviderType
+public final class LifecycleTransition {
+
+    /**
+     * The names of the deactivation reasons defined by
+     * {@link org.osgi.service.component.ComponentConstants}, indexed by their
+     * codes.
+     */
+    private static final String[] REASONS = { "UNSPECIFIED", "DISABLED",
+            "REFERENCE", "CONFIGURATION_MODIFIED", "CONFIGURATION_DELETED",
+            "DISPOSED", "BUNDLE_STOPPED" };
+
+    private final long componentId;
+
+    private final long durationNanos;
+
+    private final boolean failed;
+
+    private final LifecyclePhase phase;
+
+    private final int reason;
+
+    private final long sequence;
+
+    private final long startedAt;
+
+    LifecycleTransition(long pSequence, long pComponentId,
+            LifecyclePhase pPhase, int pReason, long pStartedAt,
+            long pDurationNanos, boolean pFailed) {
+        sequence = pSequence;
+        componentId = pComponentId;
+        phase = pPhase;
+        reason = pReason;
+        startedAt = pStartedAt;
+        durationNanos = pDurationNanos;
+        failed = pFailed;
+    }
+
+    public long getComponentId() {
+        return componentId;
+    }
+
+    public long getDurationNanos() {
+        return durationNanos;
+    }
+
+    /**
+     * @return the activation, modification or deactivation phase.
+     */
+    public LifecyclePhase getPhase() {
+        return phase;
+    }
+
+    /**
+     * @return the deactivation reason informed by DS or
+     *         {@link LifecycleJournal#NO_REASON} for the other phases.
+     */
+    public int getReason() {
+        return reason;
+    }
+
+    /**
+     * @return the name of the deactivation reason, or null for the other
+     *         phases.
+     */
+    public String getReasonName() {
+        if (reason == LifecycleJournal.NO_REASON) {
+            return null;
+        }
+        return reason >= 0 && reason < REASONS.length ? REASONS[reason]
+                : String.valueOf(reason);
+    }
+
+    /**
+     * @return the position of the transition in its journal, starting at 1.
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * @return the time in milliseconds since the epoch when the transition
+     *         has started.
+     */
+    public long getStartedAt() {
+        return startedAt;
+    }
+
+    /**
+     * @return true if the workflow has ended with an exception.
+     */
+    public boolean isFailed() {
+        return failed;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder(96)
+                .append(Instant.ofEpochMilli(startedAt)).append(" #")
+                .append(sequence).append(" id-").append(componentId)
+                .append(' ').append(phase);
+        if (reason != LifecycleJournal.NO_REASON) {
+            builder.append('(').append(getReasonName()).append(')');
+        }
+        return builder.append(failed ? " FAILED in " : " SUCCEEDED in ")
+                .append(TimeUnit.NANOSECONDS.toMicros(durationNanos))
+                .append("us").toString();
+    }
+}
@@ -0,0 +1,225 @@
+/**
+ * ==========================================================================
+ * Copyright © 2015-2019 Cristiano Gavião, C8 Technology ME.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Cristiano Gavião (cvgaviao@c8tech.com.br)- initial API and implementation
+ * ==========================================================================
+ */
+package br.com.c8tech.vxosgi.lib.ds.components;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+import org.osgi.service.component.ComponentContext;
+
+import br.com.c8tech.vxosgi.lib.concurrent.HashedWheelTimer;
+import br.com.c8tech.vxosgi.lib.concurrent.Timeout;
+
+/**
+ * Coalesces the configuration modifications of a component that arrive
+ * within a quiet window, so only the latest one is applied.
+ * <p>
+ * Each new modification restarts the quiet window, but the first pending
+ * modification is never delayed longer than the configured maximum delay.
+ * The modifications are applied one at a time on the executor of the
+ * component, never on the thread of the shared timer. A modification that
+ * becomes due while another one is being applied is applied right after it.
+ *
+ * @since 0.1.1
+ * @author Cristiano Gavião
+ *
+ */
+final class ModificationDebouncer {
+
+    private final Consumer<ComponentContext> applier;
+
+    private final LongAdder applied = new LongAdder();
+
+    private boolean cancelled;
+
+    private final LongAdder coalesced = new LongAdder();
+
+    private final Executor executor;
+
+    private long firstPendingAt;
+
+    private ComponentContext pending;
+
+    private long quietNanos;
+
+    /**
+     * Set while a modification is handed to the executor or being applied.
+     */
+    private boolean running;
+
+    private Timeout scheduled;
+
+    /**
+     * @param pExecutor
+     *            the executor where the modifications are applied. When it
+     *            rejects a modification, the modification is kept pending
+     *            and handed to it again after the quiet window.
+     * @param pApplier
+     *            applies a modification.
+     */
+    ModificationDebouncer(Executor pExecutor,
+            Consumer<ComponentContext> pApplier) {
+        executor = pExecutor;
+        applier = pApplier;
+    }
+
+    /**
+     * Applies the due modifications, one at a time. Runs on the executor.
+     */
+    private void apply() {
+        for (;;) {
+            ComponentContext context;
+            synchronized (this) {
+                // a modification still in its quiet window is dispatched by
+                // its own timeout
+                if (cancelled || pending == null || scheduled != null) {
+                    finishRunning();
+                    return;
+                }
+                context = pending;
+                pending = null;
+            }
+            boolean completed = false;
+            try {
+                applied.increment();
+                applier.accept(context);
+                completed = true;
+            } finally {
+                if (!completed) {
+                    synchronized (this) {
+                        finishRunning();
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Discards the pending modification, if any, and waits for the one being
+     * applied to finish. No modification is applied afterwards.
+     *
+     * @param pTimeout
+     *            the maximum time to wait.
+     * @param pUnit
+     *            the unit of the timeout.
+     * @return false if a modification was still being applied when the
+     *         timeout elapsed.
+     * @throws InterruptedException
+     *             if the current thread was interrupted while waiting.
+     */
+    synchronized boolean cancel(long pTimeout, TimeUnit pUnit)
+            throws InterruptedException {
+        cancelled = true;
+        if (scheduled != null) {
+            scheduled.cancel();
+            scheduled = null;
+        }
+        pending = null;
+        long deadline = System.nanoTime() + pUnit.toNanos(pTimeout);
+        long remaining;
+        while (running
+                && (remaining = deadline - System.nanoTime()) > 0) {
+            TimeUnit.NANOSECONDS.timedWait(this, remaining);
+        }
+        return !running;
+    }
+
+    /**
+     * Hands the due modification to the executor. Called on the thread of the
+     * shared timer, so it must never block nor apply the modification.
+     */
+    private void dispatch() {
+        synchronized (this) {
+            scheduled = null;
+            if (cancelled || pending == null || running) {
+                // the running application takes it when it finishes
+                return;
+            }
+            running = true;
+        }
+        try {
+            executor.execute(this::apply);
+        } catch (RejectedExecutionException e) { // NOSONAR
+            // the latest modification must not be lost, it is retried.
+            // After a shutdown nothing is pending, cancel() was called.
+            synchronized (this) {
+                finishRunning();
+                if (!cancelled && pending != null && scheduled == null) {
+                    schedule(quietNanos);
+                }
+            }
+        }
+    }
+
+    private void finishRunning() {
+        running = false;
+        notifyAll();
+    }
+
+    /**
+     * @return the number of modifications actually applied.
+     */
+    long getAppliedCount() {
+        return applied.sum();
+    }
+
+    /**
+     * @return the number of modifications replaced by a newer one before
+     *         being applied.
+     */
+    long getCoalescedCount() {
+        return coalesced.sum();
+    }
+
+    private void schedule(long pDelayNanos) {
+        // the shared timer only triggers the modification, which is then
+        // applied by the executor of the component
+        scheduled = HashedWheelTimer.getSharedInstance().schedule(
+                this::dispatch, pDelayNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Schedules the application of a modification, replacing the pending one.
+     * It is ignored after {@link #cancel(long, TimeUnit)}.
+     *
+     * @param pContext
+     *            the component context holding the modified properties.
+     * @param pQuietNanos
+     *            the time without new modifications to wait before applying.
+     * @param pMaxDelayNanos
+     *            the maximum time a modification can stay pending.
+     */
+    synchronized void submit(ComponentContext pContext, long pQuietNanos,
+            long pMaxDelayNanos) {
+        if (cancelled) {
+            return;
+        }
+        long now = System.nanoTime();
+        if (pending != null) {
+            coalesced.increment();
+            if (scheduled != null) {
+                scheduled.cancel();
+            }
+        } else {
+            firstPendingAt = now;
+        }
+        pending = pContext;
+        quietNanos = pQuietNanos;
+        schedule(Math.min(pQuietNanos,
+                Math.max(0, firstPendingAt + pMaxDelayNanos - now)));
+    }
+}
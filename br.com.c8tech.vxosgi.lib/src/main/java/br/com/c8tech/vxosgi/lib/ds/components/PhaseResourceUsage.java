@@ -0,0 +1,140 @@
+/**
+ * ==========================================================================
+ * Copyright © 2015-2019 Cristiano Gavião, C8 Technology ME.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Cristiano Gavião (cvgaviao@c8tech.com.br)- initial API and implementation
+ * ==========================================================================
+ */
+package br.com.c8tech.vxosgi.lib.ds.components;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.osgi.annotation.versioning.ProviderType;
+
+/**
+ * The resources used by all the executions of a lifecycle phase of the
+ * components with a given name.
+ *
+ * @since 0.1.1
+ * @author Cristiano Gavião
+ *
+ */
+@ProviderType
+public final class PhaseResourceUsage {
+
+    private final LongAdder allocatedBytes = new LongAdder();
+
+    private final LongAccumulator allocatedBytesMax = new LongAccumulator(
+            Math::max, 0);
+
+    private final LongAdder budgetBreaches = new LongAdder();
+
+    private final String componentName;
+
+    private final LongAdder cpuNanos = new LongAdder();
+
+    private final LongAccumulator cpuNanosMax = new LongAccumulator(Math::max,
+            0);
+
+    private final LongAdder executions = new LongAdder();
+
+    private final LifecyclePhase phase;
+
+    PhaseResourceUsage(String pComponentName, LifecyclePhase pPhase) {
+        componentName = pComponentName;
+        phase = pPhase;
+    }
+
+    /**
+     * @return the bytes allocated by all the executions of the phase.
+     */
+    public long getAllocatedBytes() {
+        return allocatedBytes.sum();
+    }
+
+    /**
+     * @return the bytes allocated by the most allocating execution.
+     */
+    public long getAllocatedBytesMax() {
+        return allocatedBytesMax.get();
+    }
+
+    /**
+     * @return the number of executions that exceeded a budget.
+     */
+    public long getBudgetBreaches() {
+        return budgetBreaches.sum();
+    }
+
+    public String getComponentName() {
+        return componentName;
+    }
+
+    /**
+     * @return the CPU time spent by all the executions of the phase.
+     */
+    public long getCpuNanos() {
+        return cpuNanos.sum();
+    }
+
+    /**
+     * @return the CPU time spent by the most expensive execution.
+     */
+    public long getCpuNanosMax() {
+        return cpuNanosMax.get();
+    }
+
+    /**
+     * @return the number of executions of the phase.
+     */
+    public long getExecutions() {
+        return executions.sum();
+    }
+
+    /**
+     * @return the mean bytes allocated by an execution of the phase.
+     */
+    public long getMeanAllocatedBytes() {
+        long count = executions.sum();
+        return count > 0 ? allocatedBytes.sum() / count : 0;
+    }
+
+    /**
+     * @return the mean CPU time spent by an execution of the phase.
+     */
+    public long getMeanCpuNanos() {
+        long count = executions.sum();
+        return count > 0 ? cpuNanos.sum() / count : 0;
+    }
+
+    public LifecyclePhase getPhase() {
+        return phase;
+    }
+
+    void record(long pAllocatedBytes, long pCpuNanos, boolean pBreach) {
+        executions.increment();
+        allocatedBytes.add(pAllocatedBytes);
+        allocatedBytesMax.accumulate(pAllocatedBytes);
+        cpuNanos.add(pCpuNanos);
+        cpuNanosMax.accumulate(pCpuNanos);
+        if (pBreach) {
+            budgetBreaches.increment();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "PhaseResourceUsage[component=" + componentName + ", phase="
+                + phase + ", executions=" + getExecutions()
+                + ", meanAllocated=" + getMeanAllocatedBytes()
+                + "B, meanCpu=" + getMeanCpuNanos() + "ns, breaches="
+                + getBudgetBreaches() + "]";
+    }
+}
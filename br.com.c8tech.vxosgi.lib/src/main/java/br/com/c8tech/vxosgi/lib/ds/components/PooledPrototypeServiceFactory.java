@@ -0,0 +1,65 @@
+/**
+ * ==========================================================================
+ * Copyright © 2015-2019 Cristiano Gavião, C8 Technology ME.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Cristiano Gavião (cvgaviao@c8tech.com.br)- initial API and implementation
+ * ==========================================================================
+ */
+package br.com.c8tech.vxosgi.lib.ds.components;
+
+import org.osgi.annotation.versioning.ProviderType;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.PrototypeServiceFactory;
+import org.osgi.framework.ServiceRegistration;
+
+/**
+ * A {@link PrototypeServiceFactory} that borrows its service instances from a
+ * {@link ServiceInstancePool} instead of creating a new one for each
+ * {@code getService} call, giving them back to the pool on
+ * {@code ungetService}.
+ *
+ * @param <S>
+ *            the type of the provided service.
+ *
+ * @see AbstractComponentServiceProvider#registerPooledService(Class,
+ *      PooledServiceHandler, java.util.Dictionary)
+ *
+ * @since 0.1.1
+ * @author Cristiano Gavião
+ *
+ */
+@ProviderType
+public final class PooledPrototypeServiceFactory<S>
+        implements PrototypeServiceFactory<S> {
+
+    private final ServiceInstancePool<S> pool;
+
+    public PooledPrototypeServiceFactory(ServiceInstancePool<S> pPool) {
+        pool = pPool;
+    }
+
+    /**
+     * @return the pool used by this factory.
+     */
+    public ServiceInstancePool<S> getPool() {
+        return pool;
+    }
+
+    @Override
+    public S getService(Bundle pBundle,
+            ServiceRegistration<S> pRegistration) {
+        return pool.borrow();
+    }
+
+    @Override
+    public void ungetService(Bundle pBundle,
+            ServiceRegistration<S> pRegistration, S pService) {
+        pool.giveBack(pService);
+    }
+}
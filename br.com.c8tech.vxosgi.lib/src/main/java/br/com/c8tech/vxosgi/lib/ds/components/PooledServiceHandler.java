@@ -0,0 +1,61 @@
+/**
+ * ==========================================================================
+ * Copyright © 2015-2019 Cristiano Gavião, C8 Technology ME.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Cristiano Gavião (cvgaviao@c8tech.com.br)- initial API and implementation
+ * ==========================================================================
+ */
+package br.com.c8tech.vxosgi.lib.ds.components;
+
+import org.osgi.annotation.versioning.ConsumerType;
+
+/**
+ * Manages the life of the service instances held by a
+ * {@link ServiceInstancePool}.
+ *
+ * @param <S>
+ *            the type of the pooled service instances.
+ *
+ * @since 0.1.1
+ * @author Cristiano Gavião
+ *
+ */
+@ConsumerType
+public interface PooledServiceHandler<S> {
+
+    /**
+     * Creates a new service instance. It is called whenever the pool has no
+     * idle instance to offer.
+     *
+     * @return a new service instance. Must not be null.
+     */
+    S create();
+
+    /**
+     * Releases the resources held by a service instance that is being
+     * discarded by the pool.
+     *
+     * @param pInstance
+     *            the instance being discarded.
+     */
+    default void destroy(S pInstance) {
+    }
+
+    /**
+     * Brings a returned service instance back to its initial state before
+     * it is offered again by the pool.
+     *
+     * @param pInstance
+     *            the instance being returned.
+     * @return false if the instance can not be reused and must be destroyed.
+     */
+    default boolean reset(S pInstance) {
+        return true;
+    }
+}
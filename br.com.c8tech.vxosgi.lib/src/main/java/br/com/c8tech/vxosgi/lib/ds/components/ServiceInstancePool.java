@@ -0,0 +1,261 @@
+/**
+ * ==========================================================================
+ * Copyright © 2015-2019 Cristiano Gavião, C8 Technology ME.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Cristiano Gavião (cvgaviao@c8tech.com.br)- initial API and implementation
+ * ==========================================================================
+ */
+package br.com.c8tech.vxosgi.lib.ds.components;
+
+import java.util.Objects;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.osgi.annotation.versioning.ProviderType;
+
+/**
+ * A bounded and lock-free pool of service instances.
+ * <p>
+ * Idle instances are kept in a deque where the most recently returned ones
+ * are borrowed first, so the least used ones accumulate at its tail and are
+ * evicted after staying idle longer than the configured timeout. The eviction
+ * is done opportunistically while instances are being returned and by
+ * {@link #evictIdle()}, which the owner must call periodically so a pool
+ * that went quiet also releases its instances.
+ *
+ * @param <S>
+ *            the type of the pooled service instances.
+ *
+ * @since 0.1.1
+ * @author Cristiano Gavião
+ *
+ */
+@ProviderType
+public final class ServiceInstancePool<S> {
+
+    private static final class Entry<S> {
+
+        private final S instance;
+
+        private final long returnedAt;
+
+        private Entry(S pInstance, long pReturnedAt) {
+            instance = pInstance;
+            returnedAt = pReturnedAt;
+        }
+    }
+
+    private final LongAdder borrowed = new LongAdder();
+
+    private volatile boolean closed;
+
+    private final LongAdder created = new LongAdder();
+
+    private final LongAdder destroyed = new LongAdder();
+
+    private final PooledServiceHandler<S> handler;
+
+    private final LongAdder hits = new LongAdder();
+
+    private final AtomicInteger idleCount = new AtomicInteger();
+
+    private final ConcurrentLinkedDeque<Entry<S>> idleInstances = new ConcurrentLinkedDeque<>();
+
+    private final long idleTimeoutNanos;
+
+    private final AtomicLong lastEviction = new AtomicLong(System.nanoTime());
+
+    private final int maxIdle;
+
+    /**
+     * Creates a new pool.
+     *
+     * @param pHandler
+     *            the handler used to create, reset and destroy instances.
+     * @param pMaxIdle
+     *            the maximum number of idle instances kept by the pool.
+     * @param pIdleTimeoutNanos
+     *            the time an instance can stay idle before being evicted.
+     *            Zero or a negative value disables the eviction.
+     */
+    public ServiceInstancePool(PooledServiceHandler<S> pHandler, int pMaxIdle,
+            long pIdleTimeoutNanos) {
+        handler = Objects.requireNonNull(pHandler, "handler");
+        maxIdle = Math.max(0, pMaxIdle);
+        idleTimeoutNanos = pIdleTimeoutNanos;
+    }
+
+    /**
+     * Borrows an idle instance from the pool or creates a new one when none
+     * is available.
+     *
+     * @return a service instance.
+     * @throws IllegalStateException
+     *             if the pool was closed.
+     */
+    public S borrow() {
+        checkOpen();
+        borrowed.increment();
+        Entry<S> entry = idleInstances.pollFirst();
+        if (entry != null) {
+            idleCount.decrementAndGet();
+            hits.increment();
+            return entry.instance;
+        }
+        S instance = Objects.requireNonNull(handler.create(),
+                "The pool handler has created a null instance.");
+        created.increment();
+        if (closed) {
+            // raced with close(), the owner is already gone
+            destroy(instance);
+            checkOpen();
+        }
+        return instance;
+    }
+
+    private void checkOpen() {
+        if (closed) {
+            throw new IllegalStateException(
+                    "The service instance pool was closed.");
+        }
+    }
+
+    /**
+     * Closes this pool, destroying all idle instances. Instances given back
+     * after the pool was closed are destroyed too.
+     */
+    public void close() {
+        closed = true;
+        Entry<S> entry;
+        while ((entry = idleInstances.pollFirst()) != null) {
+            idleCount.decrementAndGet();
+            destroy(entry.instance);
+        }
+    }
+
+    private void destroy(S pInstance) {
+        destroyed.increment();
+        handler.destroy(pInstance);
+    }
+
+    /**
+     * Evicts the instances that have been idle for longer than the configured
+     * timeout.
+     *
+     * @return the number of evicted instances.
+     */
+    public int evictIdle() {
+        if (idleTimeoutNanos <= 0) {
+            return 0;
+        }
+        long now = System.nanoTime();
+        lastEviction.set(now);
+        int evicted = 0;
+        Entry<S> eldest;
+        while ((eldest = idleInstances.peekLast()) != null
+                && now - eldest.returnedAt > idleTimeoutNanos) {
+            if (idleInstances.removeLastOccurrence(eldest)) {
+                idleCount.decrementAndGet();
+                destroy(eldest.instance);
+                evicted++;
+            }
+        }
+        return evicted;
+    }
+
+    /**
+     * @return the number of times an instance was requested from the pool.
+     */
+    public long getBorrowCount() {
+        return borrowed.sum();
+    }
+
+    /**
+     * @return the number of instances created by the pool.
+     */
+    public long getCreationCount() {
+        return created.sum();
+    }
+
+    /**
+     * @return the number of instances destroyed by the pool.
+     */
+    public long getDestructionCount() {
+        return destroyed.sum();
+    }
+
+    /**
+     * The ratio of borrow requests that were served by an idle instance.
+     *
+     * @return the hit rate, between zero and one.
+     */
+    public double getHitRate() {
+        long total = borrowed.sum();
+        return total > 0 ? (double) hits.sum() / total : 0d;
+    }
+
+    /**
+     * @return the number of idle instances currently held by the pool.
+     */
+    public int getIdleCount() {
+        return idleCount.get();
+    }
+
+    /**
+     * @return true if the pool was closed and no longer hands out instances.
+     */
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Gives back an instance previously borrowed from this pool. The instance
+     * is reset and kept for reuse unless the pool is full or closed.
+     *
+     * @param pInstance
+     *            the instance being given back.
+     */
+    public void giveBack(S pInstance) {
+        if (pInstance == null) {
+            return;
+        }
+        boolean reusable;
+        try {
+            reusable = !closed && handler.reset(pInstance);
+        } catch (RuntimeException e) { // NOSONAR
+            reusable = false;
+        }
+        if (reusable && idleCount.incrementAndGet() <= maxIdle) {
+            idleInstances.offerFirst(new Entry<>(pInstance, System.nanoTime()));
+            if (closed) {
+                // raced with close(), drains what was just offered
+                close();
+            }
+        } else {
+            if (reusable) {
+                idleCount.decrementAndGet();
+            }
+            destroy(pInstance);
+        }
+        long last = lastEviction.get();
+        if (idleTimeoutNanos > 0 && System.nanoTime() - last > idleTimeoutNanos
+                && lastEviction.compareAndSet(last, System.nanoTime())) {
+            evictIdle();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "ServiceInstancePool[idle=" + getIdleCount() + ", borrowed="
+                + getBorrowCount() + ", created=" + getCreationCount()
+                + ", hitRate=" + String.format("%.2f", getHitRate()) + "]";
+    }
+}
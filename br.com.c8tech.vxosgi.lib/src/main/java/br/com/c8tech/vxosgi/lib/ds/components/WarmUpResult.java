@@ -0,0 +1,142 @@
+/**
+ * ==========================================================================
+ * Copyright © 2015-2019 Cristiano Gavião, C8 Technology ME.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Cristiano Gavião (cvgaviao@c8tech.com.br)- initial API and implementation
+ * ==========================================================================
+ */
+package br.com.c8tech.vxosgi.lib.ds.components;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.osgi.annotation.versioning.ProviderType;
+
+/**
+ * Holds what was measured while running the warm-up phase of a
+ * {@link AbstractComponentServiceProvider} instance.
+ *
+ * @since 0.1.1
+ * @author Cristiano Gavião
+ *
+ */
+@ProviderType
+public final class WarmUpResult {
+
+    /**
+     * The measurements collected for a single {@link WarmUpWorkload}.
+     */
+    @ProviderType
+    public static final class WorkloadResult {
+
+        private final long finalLatencyNanos;
+
+        private final boolean failed;
+
+        private final long initialLatencyNanos;
+
+        private final long iterations;
+
+        private final String name;
+
+        WorkloadResult(String pName, long pIterations,
+                long pInitialLatencyNanos, long pFinalLatencyNanos,
+                boolean pFailed) {
+            name = pName;
+            iterations = pIterations;
+            initialLatencyNanos = pInitialLatencyNanos;
+            finalLatencyNanos = pFinalLatencyNanos;
+            failed = pFailed;
+        }
+
+        /**
+         * @return the mean latency of the last measured iterations.
+         */
+        public long getFinalLatencyNanos() {
+            return finalLatencyNanos;
+        }
+
+        /**
+         * @return the mean latency of the first measured iterations.
+         */
+        public long getInitialLatencyNanos() {
+            return initialLatencyNanos;
+        }
+
+        /**
+         * @return the number of iterations executed by all threads.
+         */
+        public long getIterations() {
+            return iterations;
+        }
+
+        /**
+         * The latency improvement achieved by the warm-up, expressed as the
+         * ratio between the initial and the final mean latencies.
+         *
+         * @return the speedup factor or 1 when nothing could be measured.
+         */
+        public double getLatencyImprovement() {
+            return finalLatencyNanos > 0
+                    ? (double) initialLatencyNanos / finalLatencyNanos
+                    : 1d;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return true if the workload has thrown an exception.
+         */
+        public boolean isFailed() {
+            return failed;
+        }
+
+        @Override
+        public String toString() {
+            return name + "[iterations=" + iterations + ", initial="
+                    + initialLatencyNanos + "ns, final=" + finalLatencyNanos
+                    + "ns, improvement="
+                    + String.format("%.2f", getLatencyImprovement()) + "x"
+                    + (failed ? ", failed" : "") + "]";
+        }
+    }
+
+    private final long durationNanos;
+
+    private final List<WorkloadResult> workloadResults;
+
+    WarmUpResult(long pDurationNanos, List<WorkloadResult> pWorkloadResults) {
+        durationNanos = pDurationNanos;
+        workloadResults = Collections
+                .unmodifiableList(new ArrayList<>(pWorkloadResults));
+    }
+
+    /**
+     * @return the time spent executing the whole warm-up phase.
+     */
+    public long getDurationNanos() {
+        return durationNanos;
+    }
+
+    /**
+     * @return the results of each executed workload.
+     */
+    public List<WorkloadResult> getWorkloadResults() {
+        return workloadResults;
+    }
+
+    @Override
+    public String toString() {
+        return "WarmUpResult[duration=" + durationNanos / 1_000_000
+                + "ms, workloads=" + workloadResults + "]";
+    }
+}
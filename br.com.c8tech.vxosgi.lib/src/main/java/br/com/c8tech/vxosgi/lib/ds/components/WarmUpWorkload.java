@@ -0,0 +1,65 @@
+/**
+ * ==========================================================================
+ * Copyright © 2015-2019 Cristiano Gavião, C8 Technology ME.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Cristiano Gavião (cvgaviao@c8tech.com.br)- initial API and implementation
+ * ==========================================================================
+ */
+package br.com.c8tech.vxosgi.lib.ds.components;
+
+import org.osgi.annotation.versioning.ConsumerType;
+
+/**
+ * A synthetic workload provided by a {@link AbstractComponentServiceProvider}
+ * subclass in order to exercise its hot code paths before its service is
+ * handed to consumers.
+ * <p>
+ * Each workload is executed repeatedly by the warm-up phase. The execution
+ * must be side-effect free with respect to the outside world, since it
+ * happens while the component is still being activated.
+ *
+ * @see AbstractComponentServiceProvider#getWarmUpWorkloads()
+ *
+ * @since 0.1.1
+ * @author Cristiano Gavião
+ *
+ */
+@ConsumerType
+public interface WarmUpWorkload {
+
+    /**
+     * Executes one iteration of this workload.
+     *
+     * @param pIteration
+     *            the sequential number of the iteration being executed by the
+     *            current thread.
+     * @throws Exception
+     *             any failure. It will stop the warm-up of this workload.
+     */
+    void execute(long pIteration) throws Exception; // NOSONAR
+
+    /**
+     * The name used to identify this workload in logs and results.
+     *
+     * @return the workload name.
+     */
+    default String getName() {
+        return getClass().getSimpleName();
+    }
+
+    /**
+     * Informs whether this workload can be executed by several threads at the
+     * same time.
+     *
+     * @return true when the workload can be executed in parallel.
+     */
+    default boolean isParallelizable() {
+        return false;
+    }
+}
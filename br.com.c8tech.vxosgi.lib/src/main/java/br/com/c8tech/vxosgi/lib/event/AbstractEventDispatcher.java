@@ -0,0 +1,153 @@
+/**
+ * ==========================================================================
+ * Copyright © 2015-2019 Cristiano Gavião, C8 Technology ME.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Cristiano Gavião (cvgaviao@c8tech.com.br)- initial API and implementation
+ * ==========================================================================
+ */
+package br.com.c8tech.vxosgi.lib.event;
+
+import java.io.Closeable;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+import org.osgi.service.event.Event;
+import org.osgi.service.event.EventAdmin;
+
+/**
+ * The base of the dispatchers that deliver the events waiting in a set of
+ * {@link EventLane lanes} from their own delivery threads.
+ * <p>
+ * The events are delivered synchronously through {@link EventAdmin#sendEvent}
+ * and the delivery is recorded in the metrics of their lane. Subclasses only
+ * decide which event each delivery thread delivers next.
+ *
+ * @since 0.1.1
+ * @author Cristiano Gavião
+ *
+ */
+abstract class AbstractEventDispatcher implements Closeable {
+
+    private volatile boolean closed;
+
+    private final EventAdmin eventAdmin;
+
+    private final List<EventLane> lanes;
+
+    private final Thread[] workers;
+
+    /**
+     * Creates the dispatcher. The delivery threads are only started by
+     * {@link #start(String)}, after the subclass is fully constructed.
+     *
+     * @param pEventAdmin
+     *            the EventAdmin used to deliver the events.
+     * @param pLanes
+     *            the lanes of the dispatcher.
+     * @param pDeliveryThreads
+     *            the number of delivery threads.
+     */
+    AbstractEventDispatcher(EventAdmin pEventAdmin, List<EventLane> pLanes,
+            int pDeliveryThreads) {
+        eventAdmin = Objects.requireNonNull(pEventAdmin, "eventAdmin");
+        if (pLanes.isEmpty()) {
+            throw new IllegalArgumentException("At least one lane is needed.");
+        }
+        lanes = Collections.unmodifiableList(
+                Arrays.asList(pLanes.toArray(new EventLane[pLanes.size()])));
+        workers = new Thread[Math.max(1, pDeliveryThreads)];
+    }
+
+    /**
+     * Stops the delivery threads. Events still waiting are discarded.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        for (Thread worker : workers) {
+            if (worker != null) {
+                worker.interrupt();
+            }
+        }
+    }
+
+    private void deliverLoop(int pWorker) {
+        while (!closed) {
+            EventLane.Pending pending;
+            try {
+                pending = next(pWorker);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            try {
+                eventAdmin.sendEvent(pending.getEvent());
+            } catch (RuntimeException e) { // NOSONAR
+                // EventAdmin already isolates and logs handler failures
+            }
+            pending.getLane().recordDelivery(pending);
+        }
+    }
+
+    /**
+     * @return the lanes of this dispatcher, in the order they were given.
+     */
+    final List<EventLane> getLaneList() {
+        return lanes;
+    }
+
+    /**
+     * Waits for the next event to be delivered by a delivery thread.
+     *
+     * @param pWorker
+     *            the index of the delivery thread.
+     * @return the event to deliver.
+     * @throws InterruptedException
+     *             if the thread was interrupted while waiting, usually when
+     *             the dispatcher is closed.
+     */
+    abstract EventLane.Pending next(int pWorker) throws InterruptedException;
+
+    /**
+     * Posts an event to a lane of this dispatcher.
+     *
+     * @param pLane
+     *            the lane.
+     * @param pEvent
+     *            the event to post.
+     * @return false if the event was rejected because the lane is full or
+     *         the dispatcher is closed.
+     */
+    final boolean offer(EventLane pLane, Event pEvent) {
+        return !closed && pLane.offer(pEvent);
+    }
+
+    /**
+     * Starts the delivery threads.
+     *
+     * @param pThreadName
+     *            the prefix of the thread names, followed by their index.
+     */
+    final void start(String pThreadName) {
+        for (int i = 0; i < workers.length; i++) {
+            int worker = i;
+            workers[i] = new Thread(() -> deliverLoop(worker),
+                    pThreadName + "-" + i);
+            workers[i].setDaemon(true);
+            workers[i].start();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + lanes;
+    }
+}
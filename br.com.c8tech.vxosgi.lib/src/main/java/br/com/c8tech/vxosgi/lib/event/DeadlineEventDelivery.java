@@ -0,0 +1,460 @@
+/**
+ * ==========================================================================
+ * Copyright © 2015-2019 Cristiano Gavião, C8 Technology ME.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Cristiano Gavião (cvgaviao@c8tech.com.br)- initial API and implementation
+ * ==========================================================================
+ */
+package br.com.c8tech.vxosgi.lib.event;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.osgi.annotation.versioning.ProviderType;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.Constants;
+import org.osgi.framework.Filter;
+import org.osgi.framework.InvalidSyntaxException;
+import org.osgi.framework.ServiceReference;
+import org.osgi.service.component.ComponentConstants;
+import org.osgi.service.event.Event;
+import org.osgi.service.event.EventConstants;
+import org.osgi.service.event.EventHandler;
+import org.osgi.service.event.TopicPermission;
+import org.osgi.util.tracker.ServiceTracker;
+import org.osgi.util.tracker.ServiceTrackerCustomizer;
+
+/**
+ * Delivers events synchronously to the matching {@link EventHandler}
+ * services, as {@link org.osgi.service.event.EventAdmin#sendEvent} does, but
+ * never blocking the caller longer than a deadline.
+ * <p>
+ * The handlers are tracked while they are registered and are matched using
+ * the same {@code event.topics} and {@code event.filter} rules of EventAdmin,
+ * read from their service properties. As EventAdmin does, the service object
+ * of a handler is only obtained when the first event matching it is
+ * delivered, so tracking does not activate the delayed handler components. When a security manager is
+ * installed, the caller must have the {@link TopicPermission#PUBLISH} and
+ * the bundle of each handler the {@link TopicPermission#SUBSCRIBE}
+ * permission for the topic. The handlers are called concurrently on the
+ * provided executor. When the deadline is reached the caller is released and
+ * the handlers still running are reported as timed out; they are not
+ * interrupted.
+ * <p>
+ * A handler that timed out keeps a thread of the executor busy until it
+ * returns, so the executor must be dedicated to the deliveries. When it is
+ * bounded and saturated by slow handlers, the deliveries it rejects are
+ * reported as failed.
+ * <p>
+ * Each handler has a circuit breaker: after missing the deadline a number of
+ * times in a row it is shed for a while, then a single trial delivery
+ * decides whether it is restored.
+ *
+ * @since 0.1.1
+ * @author Cristiano Gavião
+ *
+ */
+@ProviderType
+public final class DeadlineEventDelivery implements Closeable {
+
+    /**
+     * Tracks the registered handlers, replacing their matching rules when
+     * their service properties are modified.
+     */
+    private final class HandlerCustomizer implements
+            ServiceTrackerCustomizer<EventHandler, HandlerDeliveryStats> {
+
+        @Override
+        public HandlerDeliveryStats addingService(
+                ServiceReference<EventHandler> pReference) {
+            long serviceId = ((Number) pReference
+                    .getProperty(Constants.SERVICE_ID)).longValue();
+            HandlerDeliveryStats stats = new HandlerDeliveryStats(pReference,
+                    serviceId, describe(pReference, serviceId));
+            handlers.put(serviceId, new TrackedHandler(
+                    new HandlerService(pReference), stats, pReference));
+            return stats;
+        }
+
+        @Override
+        public void modifiedService(ServiceReference<EventHandler> pReference,
+                HandlerDeliveryStats pStats) {
+            TrackedHandler tracked = handlers.get(pStats.getServiceId());
+            if (tracked != null) {
+                handlers.put(pStats.getServiceId(), new TrackedHandler(
+                        tracked.service, pStats, pReference));
+            }
+        }
+
+        @Override
+        public void removedService(ServiceReference<EventHandler> pReference,
+                HandlerDeliveryStats pStats) {
+            TrackedHandler tracked = handlers.remove(pStats.getServiceId());
+            if (tracked != null) {
+                tracked.service.release();
+            }
+        }
+    }
+
+    /**
+     * The service object of a handler, obtained on the first delivery that
+     * needs it and released when the handler is unregistered.
+     */
+    private final class HandlerService {
+
+        private EventHandler handler;
+
+        private final ServiceReference<EventHandler> reference;
+
+        private boolean released;
+
+        private HandlerService(ServiceReference<EventHandler> pReference) {
+            reference = pReference;
+        }
+
+        /**
+         * @return the service object or null if the handler is gone.
+         */
+        private synchronized EventHandler get() {
+            if (handler == null && !released) {
+                handler = bundleContext.getService(reference);
+            }
+            return handler;
+        }
+
+        private synchronized void release() {
+            released = true;
+            if (handler != null) {
+                handler = null;
+                bundleContext.ungetService(reference);
+            }
+        }
+    }
+
+    /**
+     * A call of a handler, remembering how it ended.
+     */
+    private static final class Invocation implements Runnable {
+
+        private volatile boolean done;
+
+        private final Event event;
+
+        private volatile boolean failed;
+
+        private final CountDownLatch latch;
+
+        private boolean rejected;
+
+        private final TrackedHandler tracked;
+
+        private Invocation(TrackedHandler pTracked, Event pEvent,
+                CountDownLatch pLatch) {
+            tracked = pTracked;
+            event = pEvent;
+            latch = pLatch;
+        }
+
+        private void reject() {
+            rejected = true;
+            failed = true;
+            done = true;
+            tracked.stats.release();
+            latch.countDown();
+        }
+
+        @Override
+        public void run() {
+            long start = System.nanoTime();
+            try {
+                EventHandler handler = tracked.service.get();
+                if (handler != null) {
+                    handler.handleEvent(event);
+                } else {
+                    // unregistered meanwhile
+                    failed = true;
+                }
+            } catch (RuntimeException e) { // NOSONAR
+                failed = true;
+            } finally {
+                tracked.stats.recordCompletion(System.nanoTime() - start,
+                        failed);
+                done = true;
+                latch.countDown();
+            }
+        }
+    }
+
+    /**
+     * A registered handler with its lazily obtained service object and its
+     * matching rules.
+     */
+    private static final class TrackedHandler {
+
+        /**
+         * False when its {@code event.filter} is invalid, EventAdmin does not
+         * deliver events to such a handler.
+         */
+        private final boolean deliverable;
+
+        /**
+         * The parsed {@code event.filter}, null when there is none.
+         */
+        private final Filter filter;
+
+        private final HandlerService service;
+
+        private final HandlerDeliveryStats stats;
+
+        private final TopicMatcher<Boolean> topics;
+
+        private TrackedHandler(HandlerService pService,
+                HandlerDeliveryStats pStats,
+                ServiceReference<EventHandler> pReference) {
+            service = pService;
+            stats = pStats;
+            topics = TopicMatcher.of(topicsOf(
+                    pReference.getProperty(EventConstants.EVENT_TOPIC)));
+            Object filterString = pReference
+                    .getProperty(EventConstants.EVENT_FILTER);
+            Filter parsed = null;
+            boolean valid = true;
+            if (filterString instanceof String) {
+                try {
+                    parsed = pReference.getBundle() != null
+                            ? pReference.getBundle().getBundleContext()
+                                    .createFilter((String) filterString)
+                            : null;
+                    valid = parsed != null;
+                } catch (InvalidSyntaxException | RuntimeException e) { // NOSONAR
+                    valid = false;
+                }
+            }
+            filter = parsed;
+            deliverable = valid;
+        }
+
+        private boolean matches(Event pEvent) {
+            return deliverable && topics.match(pEvent.getTopic())
+                    && (filter == null || pEvent.matches(filter));
+        }
+    }
+
+    /**
+     * The default number of deadlines a handler can miss in a row before
+     * being shed.
+     */
+    public static final int DEFAULT_FAILURE_THRESHOLD = 3;
+
+    /**
+     * The default time in milliseconds a handler stays shed.
+     */
+    public static final long DEFAULT_OPEN_DURATION = 30_000L;
+
+    private final BundleContext bundleContext;
+
+    private final Executor executor;
+
+    private final int failureThreshold;
+
+    private final ConcurrentMap<Long, TrackedHandler> handlers = new ConcurrentHashMap<>();
+
+    private final long openNanos;
+
+    private final ServiceTracker<EventHandler, HandlerDeliveryStats> tracker;
+
+    /**
+     * Creates the delivery and starts tracking the handlers.
+     *
+     * @param pBundleContext
+     *            the context used to track the handlers.
+     * @param pExecutor
+     *            the executor where the handlers are called, dedicated to the
+     *            deliveries.
+     * @param pFailureThreshold
+     *            the number of deadlines a handler can miss in a row before
+     *            being shed.
+     * @param pOpenDuration
+     *            the time in milliseconds a handler stays shed.
+     */
+    public DeadlineEventDelivery(BundleContext pBundleContext,
+            Executor pExecutor, int pFailureThreshold, long pOpenDuration) {
+        bundleContext = Objects.requireNonNull(pBundleContext,
+                "bundleContext");
+        executor = Objects.requireNonNull(pExecutor, "executor");
+        failureThreshold = Math.max(1, pFailureThreshold);
+        openNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, pOpenDuration));
+        tracker = new ServiceTracker<>(pBundleContext, EventHandler.class,
+                new HandlerCustomizer());
+        tracker.open();
+    }
+
+    private static String describe(ServiceReference<?> pReference,
+            long pServiceId) {
+        Object name = pReference
+                .getProperty(ComponentConstants.COMPONENT_NAME);
+        if (name == null) {
+            name = pReference.getProperty(Constants.SERVICE_PID);
+        }
+        return (name != null ? name : EventHandler.class.getSimpleName())
+                + "[service.id=" + pServiceId + "]";
+    }
+
+    private static boolean mayReceive(TrackedHandler pTracked,
+            String pTopic) {
+        Bundle bundle = pTracked.stats.getServiceReference().getBundle();
+        return bundle != null && bundle.hasPermission(
+                new TopicPermission(pTopic, TopicPermission.SUBSCRIBE));
+    }
+
+    private static Collection<String> topicsOf(Object pTopics) {
+        if (pTopics instanceof String) {
+            return Collections.singleton((String) pTopics);
+        }
+        if (pTopics instanceof String[]) {
+            return Arrays.asList((String[]) pTopics);
+        }
+        List<String> topics = new ArrayList<>();
+        if (pTopics instanceof Collection) {
+            for (Object topic : (Collection<?>) pTopics) {
+                if (topic instanceof String) {
+                    topics.add((String) topic);
+                }
+            }
+        }
+        return topics;
+    }
+
+    /**
+     * Stops tracking the handlers, releasing their service objects.
+     */
+    @Override
+    public void close() {
+        tracker.close();
+        handlers.clear();
+    }
+
+    /**
+     * Delivers an event to the matching handlers, waiting for them at most
+     * the specified time.
+     *
+     * @param pEvent
+     *            the event to deliver.
+     * @param pTimeout
+     *            the maximum time the caller is blocked.
+     * @param pUnit
+     *            the unit of the timeout.
+     * @return the report of the delivery.
+     * @throws SecurityException
+     *             if the caller is not allowed to publish to the topic.
+     */
+    public DeliveryReport deliver(Event pEvent, long pTimeout,
+            TimeUnit pUnit) {
+        long start = System.nanoTime();
+        SecurityManager security = System.getSecurityManager();
+        if (security != null) {
+            security.checkPermission(new TopicPermission(pEvent.getTopic(),
+                    TopicPermission.PUBLISH));
+        }
+        List<TrackedHandler> targets = new ArrayList<>();
+        List<String> shed = new ArrayList<>();
+        for (TrackedHandler tracked : handlers.values()) {
+            if (!tracked.matches(pEvent) || (security != null
+                    && !mayReceive(tracked, pEvent.getTopic()))) {
+                continue;
+            }
+            if (tracked.stats.acquire(start, openNanos)) {
+                targets.add(tracked);
+            } else {
+                shed.add(tracked.stats.getDescription());
+            }
+        }
+        CountDownLatch latch = new CountDownLatch(targets.size());
+        List<Invocation> invocations = new ArrayList<>(targets.size());
+        for (TrackedHandler target : targets) {
+            Invocation invocation = new Invocation(target, pEvent, latch);
+            invocations.add(invocation);
+            try {
+                executor.execute(invocation);
+            } catch (RejectedExecutionException e) { // NOSONAR
+                invocation.reject();
+            }
+        }
+        try {
+            latch.await(Math.max(0,
+                    pUnit.toNanos(pTimeout) - (System.nanoTime() - start)),
+                    TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        long now = System.nanoTime();
+        int delivered = 0;
+        List<String> timedOut = new ArrayList<>();
+        List<String> failed = new ArrayList<>();
+        for (Invocation invocation : invocations) {
+            HandlerDeliveryStats stats = invocation.tracked.stats;
+            if (!invocation.done) {
+                stats.recordTimeout(now, failureThreshold);
+                timedOut.add(stats.getDescription());
+                continue;
+            }
+            if (!invocation.rejected) {
+                stats.recordInTime();
+            }
+            if (invocation.failed) {
+                failed.add(stats.getDescription());
+            } else {
+                delivered++;
+            }
+        }
+        return new DeliveryReport(pEvent.getTopic(), delivered, timedOut,
+                failed, shed, now - start);
+    }
+
+    /**
+     * @return the statistics of the handlers currently registered.
+     */
+    public List<HandlerDeliveryStats> getHandlerStats() {
+        List<HandlerDeliveryStats> stats = new ArrayList<>(handlers.size());
+        for (TrackedHandler tracked : handlers.values()) {
+            stats.add(tracked.stats);
+        }
+        return stats;
+    }
+
+    /**
+     * Returns the statistics of the handler with the specified service id.
+     *
+     * @param pServiceId
+     *            the service id of the handler.
+     * @return the statistics or null if the handler is not registered.
+     */
+    public HandlerDeliveryStats getHandlerStats(long pServiceId) {
+        TrackedHandler tracked = handlers.get(pServiceId);
+        return tracked != null ? tracked.stats : null;
+    }
+
+    @Override
+    public String toString() {
+        return "DeadlineEventDelivery[handlers=" + handlers.size()
+                + ", failureThreshold=" + failureThreshold + "]";
+    }
+}
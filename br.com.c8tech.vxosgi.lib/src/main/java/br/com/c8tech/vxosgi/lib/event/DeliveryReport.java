@@ -0,0 +1,109 @@
+/**
+ * ==========================================================================
+ * Copyright © 2015-2019 Cristiano Gavião, C8 Technology ME.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Cristiano Gavião (cvgaviao@c8tech.com.br)- initial API and implementation
+ * ==========================================================================
+ */
+package br.com.c8tech.vxosgi.lib.event;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.osgi.annotation.versioning.ProviderType;
+
+/**
+ * The outcome of a delivery made by a {@link DeadlineEventDelivery}.
+ *
+ * @since 0.1.1
+ * @author Cristiano Gavião
+ *
+ */
+@ProviderType
+public final class DeliveryReport {
+
+    private final int delivered;
+
+    private final long elapsedNanos;
+
+    private final List<String> failed;
+
+    private final List<String> shed;
+
+    private final List<String> timedOut;
+
+    private final String topic;
+
+    DeliveryReport(String pTopic, int pDelivered, List<String> pTimedOut,
+            List<String> pFailed, List<String> pShed, long pElapsedNanos) {
+        topic = pTopic;
+        delivered = pDelivered;
+        timedOut = Collections.unmodifiableList(pTimedOut);
+        failed = Collections.unmodifiableList(pFailed);
+        shed = Collections.unmodifiableList(pShed);
+        elapsedNanos = pElapsedNanos;
+    }
+
+    /**
+     * @return the number of handlers that have handled the event within the
+     *         deadline, including the ones that have failed.
+     */
+    public int getDeliveredCount() {
+        return delivered;
+    }
+
+    /**
+     * @return the time the caller was blocked.
+     */
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    /**
+     * @return the handlers that have thrown an exception or could not be
+     *         called.
+     */
+    public List<String> getFailedHandlers() {
+        return failed;
+    }
+
+    /**
+     * @return the handlers skipped because their circuit was open.
+     */
+    public List<String> getShedHandlers() {
+        return shed;
+    }
+
+    /**
+     * @return the handlers that were still handling the event when the
+     *         deadline was reached.
+     */
+    public List<String> getTimedOutHandlers() {
+        return timedOut;
+    }
+
+    public String getTopic() {
+        return topic;
+    }
+
+    /**
+     * @return true if every matching handler has handled the event within the
+     *         deadline without failing.
+     */
+    public boolean isComplete() {
+        return timedOut.isEmpty() && failed.isEmpty() && shed.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return "DeliveryReport[topic=" + topic + ", delivered=" + delivered
+                + ", timedOut=" + timedOut + ", failed=" + failed + ", shed="
+                + shed + ", elapsed=" + elapsedNanos + "ns]";
+    }
+}
@@ -0,0 +1,230 @@
+/**
+ * ==========================================================================
+ * Copyright © 2015-2019 Cristiano Gavião, C8 Technology ME.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Cristiano Gavião (cvgaviao@c8tech.com.br)- initial API and implementation
+ * ==========================================================================
+ */
+package br.com.c8tech.vxosgi.lib.event;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.osgi.service.event.Event;
+import org.osgi.service.event.EventConstants;
+
+/**
+ * Encodes events into a compact binary form and decodes them back.
+ * <p>
+ * Property values of the basic types, their arrays being limited to strings
+ * and bytes, are kept as they are. Any other value is stored as its string
+ * representation. Strings are stored as their length followed by their UTF-8
+ * bytes, so they are not limited to the 64KB of
+ * {@link DataOutputStream#writeUTF(String)}.
+ *
+ * @since 0.1.1
+ * @author Cristiano Gavião
+ *
+ */
+final class EventCodec {
+
+    /**
+     * A reusable output buffer, exposing its internal array in order to avoid
+     * copying the encoded bytes.
+     */
+    static final class Buffer extends ByteArrayOutputStream {
+
+        private final DataOutputStream output = new DataOutputStream(this);
+
+        Buffer() {
+            super(512);
+        }
+
+        byte[] array() {
+            return buf;
+        }
+    }
+
+    private static final byte TYPE_BOOLEAN = 'Z';
+    private static final byte TYPE_BYTE = 'B';
+    private static final byte TYPE_BYTES = 'b';
+    private static final byte TYPE_CHAR = 'C';
+    private static final byte TYPE_DOUBLE = 'D';
+    private static final byte TYPE_FLOAT = 'F';
+    private static final byte TYPE_INT = 'I';
+    private static final byte TYPE_LONG = 'J';
+    private static final byte TYPE_SHORT = 'S';
+    private static final byte TYPE_STRING = 's';
+    private static final byte TYPE_STRINGS = 'a';
+
+    private static final ThreadLocal<Buffer> BUFFERS = ThreadLocal
+            .withInitial(Buffer::new);
+
+    private EventCodec() {
+    }
+
+    /**
+     * Decodes an event previously encoded by {@link #encode(Event)}.
+     *
+     * @param pInput
+     *            the input holding the encoded event.
+     * @param pOffset
+     *            the offset of the event in the journal, which is added to
+     *            its properties as {@value EventJournal#PROPERTY_OFFSET}.
+     * @return the decoded event.
+     * @throws IOException
+     *             if the data is not a valid encoded event.
+     */
+    static Event decode(DataInput pInput, long pOffset) throws IOException {
+        String topic = readString(pInput);
+        int count = pInput.readInt();
+        Map<String, Object> properties = new HashMap<>(count * 2 + 2);
+        for (int i = 0; i < count; i++) {
+            String key = readString(pInput);
+            properties.put(key, readValue(pInput));
+        }
+        properties.put(EventJournal.PROPERTY_OFFSET, pOffset);
+        return new Event(topic, properties);
+    }
+
+    /**
+     * Encodes the specified event into a buffer reused by the current thread.
+     *
+     * @param pEvent
+     *            the event to encode.
+     * @return the buffer holding the encoded event.
+     */
+    static Buffer encode(Event pEvent) {
+        Buffer buffer = BUFFERS.get();
+        buffer.reset();
+        DataOutputStream output = buffer.output;
+        try {
+            writeString(output, pEvent.getTopic());
+            String[] names = pEvent.getPropertyNames();
+            int count = 0;
+            for (String name : names) {
+                if (!EventConstants.EVENT_TOPIC.equals(name)) {
+                    count++;
+                }
+            }
+            output.writeInt(count);
+            for (String name : names) {
+                if (!EventConstants.EVENT_TOPIC.equals(name)) {
+                    writeString(output, name);
+                    writeValue(output, pEvent.getProperty(name));
+                }
+            }
+        } catch (IOException e) {
+            // not expected while writing into memory
+            throw new IllegalStateException(e);
+        }
+        return buffer;
+    }
+
+    private static String readString(DataInput pInput) throws IOException {
+        byte[] bytes = new byte[pInput.readInt()];
+        pInput.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static Object readValue(DataInput pInput) throws IOException {
+        byte type = pInput.readByte();
+        switch (type) {
+        case TYPE_BOOLEAN:
+            return pInput.readBoolean();
+        case TYPE_BYTE:
+            return pInput.readByte();
+        case TYPE_BYTES:
+            byte[] bytes = new byte[pInput.readInt()];
+            pInput.readFully(bytes);
+            return bytes;
+        case TYPE_CHAR:
+            return pInput.readChar();
+        case TYPE_DOUBLE:
+            return pInput.readDouble();
+        case TYPE_FLOAT:
+            return pInput.readFloat();
+        case TYPE_INT:
+            return pInput.readInt();
+        case TYPE_LONG:
+            return pInput.readLong();
+        case TYPE_SHORT:
+            return pInput.readShort();
+        case TYPE_STRING:
+            return readString(pInput);
+        case TYPE_STRINGS:
+            String[] strings = new String[pInput.readInt()];
+            for (int i = 0; i < strings.length; i++) {
+                strings[i] = readString(pInput);
+            }
+            return strings;
+        default:
+            throw new IOException("Unknown property type '" + type + "'.");
+        }
+    }
+
+    private static void writeString(DataOutputStream pOutput, String pString)
+            throws IOException {
+        byte[] bytes = pString.getBytes(StandardCharsets.UTF_8);
+        pOutput.writeInt(bytes.length);
+        pOutput.write(bytes);
+    }
+
+    private static void writeValue(DataOutputStream pOutput, Object pValue)
+            throws IOException {
+        if (pValue instanceof String) {
+            pOutput.writeByte(TYPE_STRING);
+            writeString(pOutput, (String) pValue);
+        } else if (pValue instanceof Integer) {
+            pOutput.writeByte(TYPE_INT);
+            pOutput.writeInt((Integer) pValue);
+        } else if (pValue instanceof Long) {
+            pOutput.writeByte(TYPE_LONG);
+            pOutput.writeLong((Long) pValue);
+        } else if (pValue instanceof Boolean) {
+            pOutput.writeByte(TYPE_BOOLEAN);
+            pOutput.writeBoolean((Boolean) pValue);
+        } else if (pValue instanceof Double) {
+            pOutput.writeByte(TYPE_DOUBLE);
+            pOutput.writeDouble((Double) pValue);
+        } else if (pValue instanceof Float) {
+            pOutput.writeByte(TYPE_FLOAT);
+            pOutput.writeFloat((Float) pValue);
+        } else if (pValue instanceof Short) {
+            pOutput.writeByte(TYPE_SHORT);
+            pOutput.writeShort((Short) pValue);
+        } else if (pValue instanceof Byte) {
+            pOutput.writeByte(TYPE_BYTE);
+            pOutput.writeByte((Byte) pValue);
+        } else if (pValue instanceof Character) {
+            pOutput.writeByte(TYPE_CHAR);
+            pOutput.writeChar((Character) pValue);
+        } else if (pValue instanceof byte[]) {
+            byte[] bytes = (byte[]) pValue;
+            pOutput.writeByte(TYPE_BYTES);
+            pOutput.writeInt(bytes.length);
+            pOutput.write(bytes);
+        } else if (pValue instanceof String[]) {
+            String[] strings = (String[]) pValue;
+            pOutput.writeByte(TYPE_STRINGS);
+            pOutput.writeInt(strings.length);
+            for (String string : strings) {
+                writeString(pOutput, String.valueOf(string));
+            }
+        } else {
+            pOutput.writeByte(TYPE_STRING);
+            writeString(pOutput, String.valueOf(pValue));
+        }
+    }
+}
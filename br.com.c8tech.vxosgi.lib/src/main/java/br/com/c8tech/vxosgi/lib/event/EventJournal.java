@@ -0,0 +1,108 @@
+/**
+ * ==========================================================================
+ * Copyright © 2015-2019 Cristiano Gavião, C8 Technology ME.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Cristiano Gavião (cvgaviao@c8tech.com.br)- initial API and implementation
+ * ==========================================================================
+ */
+package br.com.c8tech.vxosgi.lib.event;
+
+import org.osgi.annotation.versioning.ProviderType;
+import org.osgi.service.event.Event;
+
+/**
+ * A journal where the events published to durable topics are appended
+ * before being delivered, allowing them to be replayed after a restart.
+ * <p>
+ * Every appended event is identified by its offset in the journal, which is
+ * attached to the delivered and replayed events as the property
+ * {@value #PROPERTY_OFFSET}. Consumers may {@link #commit(String, long)
+ * commit} the latest event they have processed and resume the replay after
+ * it later.
+ *
+ * @since 0.1.1
+ * @author Cristiano Gavião
+ *
+ */
+@ProviderType
+public interface EventJournal {
+
+    /**
+     * The event property holding the offset of a journaled event.
+     */
+    String PROPERTY_OFFSET = "event.journal.offset";
+
+    /**
+     * Appends the specified event to this journal.
+     *
+     * @param pEvent
+     *            the event to append.
+     * @return the offset of the appended event.
+     * @throws java.io.UncheckedIOException
+     *             if the event could not be written.
+     */
+    long append(Event pEvent);
+
+    /**
+     * Stores, as the offset of the specified consumer, the offset following
+     * the event appended at the specified offset, so its replay is resumed
+     * after that event. A stored offset is never moved backwards.
+     *
+     * @param pConsumerId
+     *            the identifier of the consumer.
+     * @param pOffset
+     *            the offset of the latest event processed by the consumer,
+     *            as found in its {@value #PROPERTY_OFFSET} property.
+     * @throws IllegalArgumentException
+     *             if no event was appended at the offset.
+     */
+    void commit(String pConsumerId, long pOffset);
+
+    /**
+     * Returns the offset previously stored for the specified consumer.
+     *
+     * @param pConsumerId
+     *            the identifier of the consumer.
+     * @return the stored offset or zero when none was stored.
+     */
+    long getStoredOffset(String pConsumerId);
+
+    /**
+     * Informs whether events published to the specified topic must be
+     * appended to this journal.
+     *
+     * @param pTopic
+     *            the event topic.
+     * @return true if the topic is durable.
+     */
+    boolean isDurable(String pTopic);
+
+    /**
+     * Replays, in order, all events appended from the specified offset on.
+     *
+     * @param pFromOffset
+     *            the offset of the first event to replay. Offsets older than
+     *            the retained events are moved to the oldest retained one.
+     * @param pConsumer
+     *            the consumer of the replayed events.
+     * @return the offset following the last replayed event.
+     */
+    long replay(long pFromOffset, EventJournalConsumer pConsumer);
+
+    /**
+     * Stores the offset from where the replay of the specified consumer must
+     * be resumed.
+     *
+     * @param pConsumerId
+     *            the identifier of the consumer.
+     * @param pOffset
+     *            the offset to store.
+     */
+    void storeOffset(String pConsumerId, long pOffset);
+}
@@ -0,0 +1,39 @@
+/**
+ * ==========================================================================
+ * Copyright © 2015-2019 Cristiano Gavião, C8 Technology ME.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Cristiano Gavião (cvgaviao@c8tech.com.br)- initial API and implementation
+ * ==========================================================================
+ */
+package br.com.c8tech.vxosgi.lib.event;
+
+import org.osgi.annotation.versioning.ConsumerType;
+import org.osgi.service.event.Event;
+
+/**
+ * Receives the events replayed from an {@link EventJournal}.
+ *
+ * @since 0.1.1
+ * @author Cristiano Gavião
+ *
+ */
+@ConsumerType
+@FunctionalInterface
+public interface EventJournalConsumer {
+
+    /**
+     * Consumes a replayed event.
+     *
+     * @param pOffset
+     *            the offset of the event in the journal.
+     * @param pEvent
+     *            the replayed event.
+     */
+    void accept(long pOffset, Event pEvent);
+}
@@ -0,0 +1,185 @@
+/**
+ * ==========================================================================
+ * Copyright © 2015-2019 Cristiano Gavião, C8 Technology ME.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Cristiano Gavião (cvgaviao@c8tech.com.br)- initial API and implementation
+ * ==========================================================================
+ */
+package br.com.c8tech.vxosgi.lib.event;
+
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.osgi.annotation.versioning.ProviderType;
+import org.osgi.service.event.Event;
+
+/**
+ * A delivery lane of a {@link PriorityEventDispatcher}, with its own bounded
+ * queue and the weight it has when the dispatcher shares its delivery
+ * capacity among the lanes. It is also used as a partition of a
+ * {@link PartitionedEventDispatcher}, where the weight does not apply.
+ *
+ * @since 0.1.1
+ * @author Cristiano Gavião
+ *
+ */
+@ProviderType
+public final class EventLane {
+
+    /**
+     * An event waiting in the lane, remembering when it was enqueued.
+     */
+    static final class Pending {
+
+        private final long enqueuedAt;
+
+        private final Event event;
+
+        private final EventLane lane;
+
+        private Pending(EventLane pLane, Event pEvent) {
+            lane = pLane;
+            event = pEvent;
+            enqueuedAt = System.nanoTime();
+        }
+
+        Event getEvent() {
+            return event;
+        }
+
+        EventLane getLane() {
+            return lane;
+        }
+    }
+
+    private final LongAdder delivered = new LongAdder();
+
+    private final LongAccumulator latencyMax = new LongAccumulator(Math::max,
+            0);
+
+    private final LongAdder latencySum = new LongAdder();
+
+    private final String name;
+
+    private final BlockingQueue<Pending> queue;
+
+    private final LongAdder rejected = new LongAdder();
+
+    private final int weight;
+
+    /**
+     * Creates a new lane.
+     *
+     * @param pName
+     *            the lane name.
+     * @param pWeight
+     *            the number of events delivered from this lane on each
+     *            round of the dispatcher.
+     * @param pCapacity
+     *            the maximum number of events waiting in this lane.
+     */
+    public EventLane(String pName, int pWeight, int pCapacity) {
+        name = Objects.requireNonNull(pName, "name");
+        weight = Math.max(1, pWeight);
+        queue = new ArrayBlockingQueue<>(Math.max(1, pCapacity));
+    }
+
+    /**
+     * @return the number of events delivered from this lane.
+     */
+    public long getDeliveredCount() {
+        return delivered.sum();
+    }
+
+    /**
+     * @return the longest time an event took from being posted until its
+     *         delivery has ended.
+     */
+    public long getMaxDeliveryLatencyNanos() {
+        return latencyMax.get();
+    }
+
+    /**
+     * @return the mean time the events took from being posted until their
+     *         delivery has ended.
+     */
+    public long getMeanDeliveryLatencyNanos() {
+        long count = delivered.sum();
+        return count > 0 ? latencySum.sum() / count : 0;
+    }
+
+    /**
+     * @return the time the oldest event waiting in this lane has been
+     *         waiting, zero when the lane is empty.
+     */
+    public long getLagNanos() {
+        Pending oldest = queue.peek();
+        return oldest != null
+                ? Math.max(0, System.nanoTime() - oldest.enqueuedAt)
+                : 0;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return the number of events waiting in this lane.
+     */
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    /**
+     * @return the number of events rejected because this lane was full.
+     */
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+
+    public int getWeight() {
+        return weight;
+    }
+
+    boolean offer(Event pEvent) {
+        if (queue.offer(new Pending(this, pEvent))) {
+            return true;
+        }
+        rejected.increment();
+        return false;
+    }
+
+    Pending poll() {
+        return queue.poll();
+    }
+
+    /**
+     * Waits for an event, used when the lane has a single consumer.
+     */
+    Pending take() throws InterruptedException {
+        return queue.take();
+    }
+
+    void recordDelivery(Pending pPending) {
+        long latency = System.nanoTime() - pPending.enqueuedAt;
+        delivered.increment();
+        latencySum.add(latency);
+        latencyMax.accumulate(latency);
+    }
+
+    @Override
+    public String toString() {
+        return "EventLane[name=" + name + ", weight=" + weight + ", depth="
+                + getQueueDepth() + ", delivered=" + getDeliveredCount()
+                + ", meanLatency=" + getMeanDeliveryLatencyNanos() + "ns]";
+    }
+}
@@ -0,0 +1,226 @@
+/**
+ * ==========================================================================
+ * Copyright © 2015-2019 Cristiano Gavião, C8 Technology ME.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Cristiano Gavião (cvgaviao@c8tech.com.br)- initial API and implementation
+ * ==========================================================================
+ */
+package br.com.c8tech.vxosgi.lib.event;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.osgi.annotation.versioning.ProviderType;
+import org.osgi.framework.ServiceReference;
+import org.osgi.service.event.EventHandler;
+
+/**
+ * The delivery statistics of an {@link EventHandler} service reached by a
+ * {@link DeadlineEventDelivery}, together with the circuit breaker that
+ * sheds it while it keeps missing the deadlines.
+ *
+ * @since 0.1.1
+ * @author Cristiano Gavião
+ *
+ */
+@ProviderType
+public final class HandlerDeliveryStats {
+
+    /**
+     * The states of the circuit breaker of a handler.
+     */
+    public enum CircuitState {
+
+        /**
+         * The handler receives the events.
+         */
+        CLOSED,
+
+        /**
+         * The open period has ended and a single trial delivery decides
+         * whether the circuit is closed or opened again.
+         */
+        HALF_OPEN,
+
+        /**
+         * The handler is shed, it does not receive the events.
+         */
+        OPEN
+    }
+
+    private int consecutiveTimeouts;
+
+    private final String description;
+
+    private final LongAdder failures = new LongAdder();
+
+    private final LongAdder invocations = new LongAdder();
+
+    private final LongAccumulator latencyMax = new LongAccumulator(Math::max,
+            0);
+
+    private final LongAdder latencySum = new LongAdder();
+
+    private long openedAt;
+
+    private final long serviceId;
+
+    private final ServiceReference<EventHandler> serviceReference;
+
+    private final LongAdder shed = new LongAdder();
+
+    private CircuitState state = CircuitState.CLOSED;
+
+    private final LongAdder timeouts = new LongAdder();
+
+    private boolean trialInFlight;
+
+    HandlerDeliveryStats(ServiceReference<EventHandler> pServiceReference,
+            long pServiceId, String pDescription) {
+        serviceReference = pServiceReference;
+        serviceId = pServiceId;
+        description = pDescription;
+    }
+
+    /**
+     * Decides whether the handler can receive an event.
+     *
+     * @param pNow
+     *            the current {@link System#nanoTime()}.
+     * @param pOpenNanos
+     *            how long the circuit stays open.
+     * @return false if the handler must be shed.
+     */
+    synchronized boolean acquire(long pNow, long pOpenNanos) {
+        if (state == CircuitState.OPEN && pNow - openedAt >= pOpenNanos) {
+            state = CircuitState.HALF_OPEN;
+            trialInFlight = false;
+        }
+        if (state == CircuitState.CLOSED
+                || (state == CircuitState.HALF_OPEN && !trialInFlight)) {
+            trialInFlight = state == CircuitState.HALF_OPEN;
+            return true;
+        }
+        shed.increment();
+        return false;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    /**
+     * @return the number of deliveries where the handler has thrown an
+     *         exception.
+     */
+    public long getFailureCount() {
+        return failures.sum();
+    }
+
+    /**
+     * @return the number of deliveries made to the handler.
+     */
+    public long getInvocationCount() {
+        return invocations.sum();
+    }
+
+    /**
+     * @return the longest time the handler took to handle an event.
+     */
+    public long getMaxLatencyNanos() {
+        return latencyMax.get();
+    }
+
+    /**
+     * @return the mean time the handler took to handle an event, including
+     *         the deliveries that missed their deadlines.
+     */
+    public long getMeanLatencyNanos() {
+        long count = invocations.sum();
+        return count > 0 ? latencySum.sum() / count : 0;
+    }
+
+    public long getServiceId() {
+        return serviceId;
+    }
+
+    ServiceReference<EventHandler> getServiceReference() {
+        return serviceReference;
+    }
+
+    /**
+     * @return the number of deliveries skipped while the circuit was open.
+     */
+    public long getShedCount() {
+        return shed.sum();
+    }
+
+    public synchronized CircuitState getState() {
+        return state;
+    }
+
+    /**
+     * @return the number of deliveries where the handler missed the
+     *         deadline.
+     */
+    public long getTimeoutCount() {
+        return timeouts.sum();
+    }
+
+    void recordCompletion(long pLatencyNanos, boolean pFailed) {
+        invocations.increment();
+        latencySum.add(pLatencyNanos);
+        latencyMax.accumulate(pLatencyNanos);
+        if (pFailed) {
+            failures.increment();
+        }
+    }
+
+    /**
+     * Gives up a delivery granted by {@link #acquire(long, long)} that could
+     * not be made, so a pending trial does not keep the circuit half open.
+     */
+    synchronized void release() {
+        trialInFlight = false;
+    }
+
+    synchronized void recordInTime() {
+        consecutiveTimeouts = 0;
+        trialInFlight = false;
+        state = CircuitState.CLOSED;
+    }
+
+    /**
+     * Records a missed deadline, opening the circuit when the handler has
+     * missed too many in a row or the trial delivery has failed.
+     *
+     * @return true if the circuit was opened.
+     */
+    synchronized boolean recordTimeout(long pNow, int pFailureThreshold) {
+        timeouts.increment();
+        consecutiveTimeouts++;
+        if (state == CircuitState.HALF_OPEN
+                || (state == CircuitState.CLOSED
+                        && consecutiveTimeouts >= pFailureThreshold)) {
+            state = CircuitState.OPEN;
+            openedAt = pNow;
+            trialInFlight = false;
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public String toString() {
+        return "HandlerDeliveryStats[" + description + ", state="
+                + getState() + ", invocations=" + getInvocationCount()
+                + ", timeouts=" + getTimeoutCount() + ", meanLatency="
+                + getMeanLatencyNanos() + "ns]";
+    }
+}
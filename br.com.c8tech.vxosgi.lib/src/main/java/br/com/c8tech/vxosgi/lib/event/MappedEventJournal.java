@@ -0,0 +1,687 @@
+/**
+ * ==========================================================================
+ * Copyright © 2015-2019 Cristiano Gavião, C8 Technology ME.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Cristiano Gavião (cvgaviao@c8tech.com.br)- initial API and implementation
+ * ==========================================================================
+ */
+package br.com.c8tech.vxosgi.lib.event;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.CRC32;
+
+import org.osgi.annotation.versioning.ProviderType;
+import org.osgi.service.event.Event;
+
+/**
+ * An {@link EventJournal} kept in a directory as a sequence of fixed size
+ * memory-mapped segment files.
+ * <p>
+ * Appending an event does not take any lock: the writer reserves the space
+ * for its record in the active segment with a compare-and-set and copies the
+ * encoded event straight into the mapped memory. Then it publishes a commit
+ * marker for its record and moves the committed end of the segment, that
+ * readers stop at, over every contiguous record whose marker was published.
+ * No writer waits for another, a slow writer only delays the visibility of
+ * the records reserved after its own. Only rolling to a new segment, which
+ * happens once per segment, is serialized.
+ * <p>
+ * The written records reach the disk according to the {@link FsyncPolicy}.
+ * When it is {@link FsyncPolicy#INTERVAL} the records appended since the last
+ * flush are forced as a single batch by a maintenance thread, which also
+ * removes the oldest segments exceeding the retention size or age.
+ * <p>
+ * Each record is made of its payload length, the CRC32 of the payload and the
+ * encoded event. The offset of an event is the offset of the segment, which
+ * is also its file name, plus the position of the record in it. A torn record
+ * found when reopening the journal marks the end of the written data.
+ * <p>
+ * The offsets committed by the consumers are kept in memory and written to
+ * the offsets file by the maintenance thread, and when the journal is
+ * closed, so a commit costs no disk access. After a crash, a consumer may
+ * therefore replay the events committed during the latest maintenance
+ * interval again. Offsets set through {@link #storeOffset(String, long)} are
+ * written immediately.
+ *
+ * @since 0.1.1
+ * @author Cristiano Gavião
+ *
+ */
+@ProviderType
+public final class MappedEventJournal implements EventJournal, Closeable {
+
+    /**
+     * The policies for forcing the appended events to the disk.
+     */
+    public enum FsyncPolicy {
+        /**
+         * Forces the segment after each append. Concurrent writers share the
+         * same force call.
+         */
+        ALWAYS,
+        /**
+         * Forces the appended events periodically, in batches.
+         */
+        INTERVAL,
+        /**
+         * Leaves to the operating system the decision of when to write the
+         * mapped memory to the disk.
+         */
+        NEVER
+    }
+
+    /**
+     * A memory-mapped segment file of the journal.
+     */
+    private static final class Segment {
+
+        private final long baseOffset;
+
+        private final MappedByteBuffer buffer;
+
+        private final int capacity;
+
+        private final FileChannel channel;
+
+        /**
+         * The end of the records that were completely written, in order.
+         */
+        private final AtomicInteger committed = new AtomicInteger();
+
+        /**
+         * The commit markers of the records written beyond the committed
+         * end, keyed by the start of the record and holding its end.
+         */
+        private final ConcurrentMap<Integer, Integer> completed = new ConcurrentHashMap<>();
+
+        private int forced;
+
+        private final Path path;
+
+        /**
+         * The end of the space already reserved by writers.
+         */
+        private final AtomicInteger reserved = new AtomicInteger();
+
+        private volatile long sealedAt;
+
+        private Segment(long pBaseOffset, Path pPath, FileChannel pChannel,
+                int pCapacity) throws IOException {
+            baseOffset = pBaseOffset;
+            path = pPath;
+            channel = pChannel;
+            capacity = pCapacity;
+            buffer = pChannel.map(FileChannel.MapMode.READ_WRITE, 0, pCapacity);
+        }
+
+        private void close() {
+            try {
+                channel.close();
+            } catch (IOException e) { // NOSONAR
+                // nothing else can be done
+            }
+        }
+
+        private void commit(int pStart, int pEnd) {
+            completed.put(pStart, pEnd);
+            // also moves over the records whose writers have finished before
+            // this one while it was still missing
+            for (;;) {
+                int end = committed.get();
+                Integer next = completed.get(end);
+                if (next == null) {
+                    return;
+                }
+                if (committed.compareAndSet(end, next)) {
+                    completed.remove(end);
+                }
+            }
+        }
+
+        /**
+         * Forces the segment unless a force that covered the specified end
+         * was already done.
+         */
+        private void force(int pEnd) {
+            synchronized (this) {
+                if (forced < pEnd) {
+                    // everything below it was written before the force
+                    int end = committed.get();
+                    buffer.force();
+                    forced = Math.max(forced, end);
+                }
+            }
+        }
+
+        /**
+         * Finds the end of the valid records, checking their CRC.
+         */
+        private int recover() {
+            ByteBuffer view = buffer.duplicate();
+            CRC32 crc = new CRC32();
+            byte[] payload = new byte[0];
+            int position = 0;
+            while (position + RECORD_HEADER <= capacity) {
+                int length = view.getInt(position);
+                if (length <= 0
+                        || position + RECORD_HEADER + length > capacity) {
+                    break;
+                }
+                if (payload.length < length) {
+                    payload = new byte[length];
+                }
+                view.position(position + RECORD_HEADER);
+                view.get(payload, 0, length);
+                crc.reset();
+                crc.update(payload, 0, length);
+                if ((int) crc.getValue() != view.getInt(position + 4)) {
+                    break;
+                }
+                position += RECORD_HEADER + length;
+            }
+            reserved.set(position);
+            committed.set(position);
+            forced = position;
+            return position;
+        }
+
+        private void write(int pPosition, byte[] pPayload, int pLength,
+                int pCrc) {
+            ByteBuffer view = buffer.duplicate();
+            view.position(pPosition + RECORD_HEADER);
+            view.put(pPayload, 0, pLength);
+            view.putInt(pPosition + 4, pCrc);
+            // the length is written last, so a torn record is never valid
+            view.putInt(pPosition, pLength);
+        }
+    }
+
+    /**
+     * The default size of each segment file.
+     */
+    public static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+
+    private static final ThreadLocal<CRC32> CRCS = ThreadLocal
+            .withInitial(CRC32::new);
+
+    private static final String OFFSETS_FILE = "consumer-offsets.properties";
+
+    private static final int RECORD_HEADER = 8;
+
+    private static final String SEGMENT_SUFFIX = ".journal";
+
+    private volatile Segment active;
+
+    private final LongAdder appendedBytes = new LongAdder();
+
+    private final LongAdder appendedEvents = new LongAdder();
+
+    private volatile boolean closed;
+
+    private final Path directory;
+
+    private final TopicMatcher<Boolean> durableTopics;
+
+    private final FsyncPolicy fsyncPolicy;
+
+    private final ScheduledExecutorService maintenanceExecutor;
+
+    private final ConcurrentMap<String, Long> offsets = new ConcurrentHashMap<>();
+
+    /**
+     * Set when an offset was committed after the offsets file was written.
+     */
+    private volatile boolean offsetsDirty;
+
+    private final long retentionBytes;
+
+    private final long retentionMillis;
+
+    private final int segmentSize;
+
+    private final ConcurrentSkipListMap<Long, Segment> segments = new ConcurrentSkipListMap<>();
+
+    /**
+     * Opens the journal kept in the specified directory, creating it when
+     * needed, and recovers the events already written.
+     *
+     * @param pDirectory
+     *            the directory where the segment files are kept.
+     * @param pDurableTopics
+     *            the patterns of the topics whose events must be journaled.
+     * @param pSegmentSize
+     *            the size in bytes of each new segment file.
+     * @param pFsyncPolicy
+     *            the policy for forcing the events to the disk.
+     * @param pMaintenanceIntervalMillis
+     *            the interval between flushes, when the policy is
+     *            {@link FsyncPolicy#INTERVAL}, between retention checks and
+     *            between the writings of the committed offsets.
+     * @param pRetentionBytes
+     *            the maximum size of the retained segments. Zero means no
+     *            limit.
+     * @param pRetentionMillis
+     *            the maximum age of a retained segment, counted from the time
+     *            it was filled up. Zero means no limit.
+     * @throws IOException
+     *             if the journal files could not be opened.
+     */
+    public MappedEventJournal(Path pDirectory,
+            Collection<String> pDurableTopics, int pSegmentSize,
+            FsyncPolicy pFsyncPolicy, long pMaintenanceIntervalMillis,
+            long pRetentionBytes, long pRetentionMillis) throws IOException {
+        directory = Objects.requireNonNull(pDirectory, "directory");
+        durableTopics = TopicMatcher.of(pDurableTopics);
+        segmentSize = pSegmentSize;
+        fsyncPolicy = Objects.requireNonNull(pFsyncPolicy, "fsyncPolicy");
+        retentionBytes = pRetentionBytes;
+        retentionMillis = pRetentionMillis;
+        if (pSegmentSize <= RECORD_HEADER * 2) {
+            throw new IllegalArgumentException(
+                    "Invalid segment size: " + pSegmentSize);
+        }
+        Files.createDirectories(pDirectory);
+        recover();
+        maintenanceExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r,
+                    "event-journal-" + pDirectory.getFileName());
+            thread.setDaemon(true);
+            return thread;
+        });
+        long interval = Math.max(1, pMaintenanceIntervalMillis);
+        maintenanceExecutor.scheduleWithFixedDelay(this::maintain, interval,
+                interval, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public long append(Event pEvent) {
+        if (closed) {
+            throw new IllegalStateException("The event journal is closed.");
+        }
+        EventCodec.Buffer encoded = EventCodec.encode(pEvent);
+        int length = encoded.size();
+        int recordLength = RECORD_HEADER + length;
+        if (recordLength > segmentSize) {
+            throw new IllegalArgumentException("The event of topic '"
+                    + pEvent.getTopic() + "' is bigger than a segment.");
+        }
+        CRC32 crc = CRCS.get();
+        crc.reset();
+        crc.update(encoded.array(), 0, length);
+        int checksum = (int) crc.getValue();
+
+        for (;;) {
+            Segment segment = active;
+            int position = segment.reserved.get();
+            if (position + recordLength > segment.capacity) {
+                roll(segment);
+                continue;
+            }
+            if (segment.reserved.compareAndSet(position,
+                    position + recordLength)) {
+                try {
+                    segment.write(position, encoded.array(), length,
+                            checksum);
+                } finally {
+                    segment.commit(position, position + recordLength);
+                }
+                if (fsyncPolicy == FsyncPolicy.ALWAYS) {
+                    segment.force(position + recordLength);
+                }
+                appendedEvents.increment();
+                appendedBytes.add(recordLength);
+                return segment.baseOffset + position;
+            }
+        }
+    }
+
+    /**
+     * Flushes and closes the journal, writing the committed offsets. Events
+     * can not be appended anymore.
+     *
+     * @throws UncheckedIOException
+     *             if the committed offsets could not be written.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        maintenanceExecutor.shutdownNow();
+        try {
+            for (Segment segment : segments.values()) {
+                if (fsyncPolicy != FsyncPolicy.NEVER) {
+                    segment.force(segment.committed.get());
+                }
+                segment.close();
+            }
+        } finally {
+            flushOffsets();
+        }
+    }
+
+    @Override
+    public void commit(String pConsumerId, long pOffset) {
+        if (pOffset < getFirstOffset()) {
+            // already removed, a replay starts after it anyway
+            return;
+        }
+        Map.Entry<Long, Segment> entry = segments.floorEntry(pOffset);
+        Segment segment = entry != null ? entry.getValue() : null;
+        int position = segment != null
+                ? (int) Math.min(Integer.MAX_VALUE,
+                        pOffset - segment.baseOffset)
+                : -1;
+        if (segment == null
+                || position + RECORD_HEADER > segment.committed.get()) {
+            throw new IllegalArgumentException(
+                    "No event was appended at offset " + pOffset + ".");
+        }
+        long next = pOffset + RECORD_HEADER
+                + segment.buffer.duplicate().getInt(position);
+        if (offsets.merge(pConsumerId, next, Math::max) == next) {
+            // written by the next maintenance
+            offsetsDirty = true;
+        }
+    }
+
+    /**
+     * Writes the committed offsets to the offsets file if any of them has
+     * changed since the last writing.
+     *
+     * @throws UncheckedIOException
+     *             if the offsets could not be written.
+     */
+    private void flushOffsets() {
+        if (offsetsDirty) {
+            // cleared first, so a concurrent commit is written next time
+            offsetsDirty = false;
+            try {
+                writeOffsets();
+            } catch (IOException e) {
+                offsetsDirty = true;
+                throw new UncheckedIOException(
+                        "Could not write the consumer offsets.", e);
+            }
+        }
+    }
+
+    /**
+     * @return the number of bytes appended since the journal was opened.
+     */
+    public long getAppendedBytes() {
+        return appendedBytes.sum();
+    }
+
+    /**
+     * @return the number of events appended since the journal was opened.
+     */
+    public long getAppendedCount() {
+        return appendedEvents.sum();
+    }
+
+    /**
+     * @return the offset of the oldest retained event.
+     */
+    public long getFirstOffset() {
+        return segments.firstKey();
+    }
+
+    /**
+     * @return the offset the next appended event will probably have.
+     */
+    public long getNextOffset() {
+        Segment segment = active;
+        return segment.baseOffset + segment.committed.get();
+    }
+
+    /**
+     * @return the number of segment files currently retained.
+     */
+    public int getSegmentCount() {
+        return segments.size();
+    }
+
+    @Override
+    public long getStoredOffset(String pConsumerId) {
+        Long offset = offsets.get(pConsumerId);
+        return offset != null ? offset : 0L;
+    }
+
+    @Override
+    public boolean isDurable(String pTopic) {
+        return durableTopics.match(pTopic);
+    }
+
+    private void loadOffsets() throws IOException {
+        Path file = directory.resolve(OFFSETS_FILE);
+        if (!Files.exists(file)) {
+            return;
+        }
+        Properties properties = new Properties();
+        try (InputStream input = Files.newInputStream(file)) {
+            properties.load(input);
+        }
+        for (String consumerId : properties.stringPropertyNames()) {
+            try {
+                offsets.put(consumerId,
+                        Long.valueOf(properties.getProperty(consumerId)));
+            } catch (NumberFormatException e) { // NOSONAR
+                // ignores a corrupted entry
+            }
+        }
+    }
+
+    private void maintain() {
+        try {
+            flushAndRetain();
+        } catch (RuntimeException e) { // NOSONAR
+            // keeps the maintenance scheduled, it will be retried
+        }
+        try {
+            flushOffsets();
+        } catch (RuntimeException e) { // NOSONAR
+            // kept dirty, it will be retried
+        }
+    }
+
+    private void flushAndRetain() {
+        if (fsyncPolicy == FsyncPolicy.INTERVAL) {
+            for (Segment segment : segments.values()) {
+                segment.force(segment.committed.get());
+            }
+        }
+        long now = System.currentTimeMillis();
+        long retainedBytes = 0;
+        for (Segment segment : segments.values()) {
+            retainedBytes += segment.capacity;
+        }
+        for (Segment segment : segments.values()) {
+            if (segment == active) {
+                break;
+            }
+            boolean expired = retentionMillis > 0
+                    && now - segment.sealedAt > retentionMillis;
+            boolean oversized = retentionBytes > 0
+                    && retainedBytes > retentionBytes;
+            if (!expired && !oversized) {
+                break;
+            }
+            segments.remove(segment.baseOffset);
+            retainedBytes -= segment.capacity;
+            segment.close();
+            try {
+                Files.deleteIfExists(segment.path);
+            } catch (IOException e) { // NOSONAR
+                // it will be retried by the next maintenance
+            }
+        }
+    }
+
+    private Segment openSegment(long pBaseOffset, int pCapacity)
+            throws IOException {
+        Path path = directory
+                .resolve(String.format("%020d", pBaseOffset) + SEGMENT_SUFFIX);
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            return new Segment(pBaseOffset, path, channel, pCapacity);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    private void recover() throws IOException {
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory,
+                "*" + SEGMENT_SUFFIX)) {
+            for (Path path : stream) {
+                String name = path.getFileName().toString();
+                long baseOffset;
+                try {
+                    baseOffset = Long.parseLong(name.substring(0,
+                            name.length() - SEGMENT_SUFFIX.length()));
+                } catch (NumberFormatException e) { // NOSONAR
+                    continue;
+                }
+                long size = Files.size(path);
+                if (size <= RECORD_HEADER) {
+                    // a segment that was being created when the node died
+                    Files.delete(path);
+                    continue;
+                }
+                Segment segment = openSegment(baseOffset,
+                        (int) Math.min(Integer.MAX_VALUE, size));
+                segment.sealedAt = Files.getLastModifiedTime(path).toMillis();
+                segment.recover();
+                segments.put(baseOffset, segment);
+            }
+        }
+        if (segments.isEmpty()) {
+            segments.put(0L, openSegment(0L, segmentSize));
+        }
+        active = segments.lastEntry().getValue();
+        loadOffsets();
+    }
+
+    @Override
+    public long replay(long pFromOffset, EventJournalConsumer pConsumer) {
+        long offset = Math.max(pFromOffset, getFirstOffset());
+        Long start = segments.floorKey(offset);
+        for (Segment segment : segments
+                .tailMap(start != null ? start : offset).values()) {
+            ByteBuffer view = segment.buffer.duplicate();
+            int position = (int) Math.max(0, offset - segment.baseOffset);
+            int limit = segment.committed.get();
+            while (position + RECORD_HEADER <= limit) {
+                int length = view.getInt(position);
+                if (length <= 0) {
+                    break;
+                }
+                byte[] payload = new byte[length];
+                view.position(position + RECORD_HEADER);
+                view.get(payload);
+                Event event;
+                try {
+                    event = EventCodec.decode(
+                            new DataInputStream(
+                                    new ByteArrayInputStream(payload)),
+                            segment.baseOffset + position);
+                } catch (IOException e) {
+                    throw new UncheckedIOException("Corrupted event at offset "
+                            + (segment.baseOffset + position), e);
+                }
+                pConsumer.accept(segment.baseOffset + position, event);
+                position += RECORD_HEADER + length;
+            }
+            offset = segment.baseOffset + position;
+        }
+        return offset;
+    }
+
+    private synchronized void roll(Segment pFull) {
+        if (active != pFull) {
+            return;
+        }
+        // stops further reservations in the full segment
+        pFull.reserved.getAndSet(pFull.capacity);
+        pFull.sealedAt = System.currentTimeMillis();
+        try {
+            Segment next = openSegment(pFull.baseOffset + pFull.capacity,
+                    segmentSize);
+            segments.put(next.baseOffset, next);
+            active = next;
+        } catch (IOException e) {
+            throw new UncheckedIOException(
+                    "Could not roll the event journal to a new segment.", e);
+        }
+    }
+
+    @Override
+    public void storeOffset(String pConsumerId, long pOffset) {
+        offsets.put(pConsumerId, pOffset);
+        try {
+            writeOffsets();
+        } catch (IOException e) {
+            offsetsDirty = true;
+            throw new UncheckedIOException(
+                    "Could not store the offset of consumer '" + pConsumerId
+                            + "'.",
+                    e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "MappedEventJournal[directory=" + directory + ", segments="
+                + getSegmentCount() + ", appended=" + getAppendedCount()
+                + "]";
+    }
+
+    private void writeOffsets() throws IOException {
+        synchronized (offsets) {
+            Properties properties = new Properties();
+            for (Map.Entry<String, Long> entry : offsets.entrySet()) {
+                properties.setProperty(entry.getKey(),
+                        entry.getValue().toString());
+            }
+            Path temporary = directory.resolve(OFFSETS_FILE + ".tmp");
+            try (OutputStream output = Files.newOutputStream(temporary)) {
+                properties.store(output, null);
+            }
+            Files.move(temporary, directory.resolve(OFFSETS_FILE),
+                    StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        }
+    }
+}
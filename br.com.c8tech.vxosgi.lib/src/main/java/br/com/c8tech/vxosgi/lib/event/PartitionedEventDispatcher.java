@@ -0,0 +1,121 @@
+/**
+ * ==========================================================================
+ * Copyright © 2015-2019 Cristiano Gavião, C8 Technology ME.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Cristiano Gavião (cvgaviao@c8tech.com.br)- initial API and implementation
+ * ==========================================================================
+ */
+package br.com.c8tech.vxosgi.lib.event;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+import org.osgi.annotation.versioning.ProviderType;
+import org.osgi.service.event.Event;
+import org.osgi.service.event.EventAdmin;
+
+/**
+ * Delivers events asynchronously keeping the order of the events posted with
+ * the same partition key, while the events of different keys are delivered
+ * in parallel.
+ * <p>
+ * Each key is mapped by its hash to one of a fixed set of partitions. A
+ * partition is an {@link EventLane} drained by its own single delivery
+ * thread, which delivers the events synchronously through
+ * {@link EventAdmin#sendEvent}, so an event is only delivered after all the
+ * handlers have handled the previous event of the partition. A slow handler
+ * therefore delays only the keys of its partition.
+ *
+ * @since 0.1.1
+ * @author Cristiano Gavião
+ *
+ */
+@ProviderType
+public final class PartitionedEventDispatcher extends AbstractEventDispatcher {
+
+    /**
+     * The default maximum number of events waiting in each partition.
+     */
+    public static final int DEFAULT_PARTITION_CAPACITY = 4096;
+
+    /**
+     * Creates the dispatcher and starts one delivery thread per partition.
+     *
+     * @param pEventAdmin
+     *            the EventAdmin used to deliver the events.
+     * @param pPartitionCount
+     *            the number of partitions, usually the number of cores.
+     * @param pPartitionCapacity
+     *            the maximum number of events waiting in each partition.
+     */
+    public PartitionedEventDispatcher(EventAdmin pEventAdmin,
+            int pPartitionCount, int pPartitionCapacity) {
+        super(pEventAdmin, createPartitions(pPartitionCount,
+                pPartitionCapacity), pPartitionCount);
+        start("vxosgi-event-partition");
+    }
+
+    private static List<EventLane> createPartitions(int pPartitionCount,
+            int pPartitionCapacity) {
+        List<EventLane> partitions = new ArrayList<>();
+        for (int i = 0; i < Math.max(1, pPartitionCount); i++) {
+            partitions.add(
+                    new EventLane("partition-" + i, 1, pPartitionCapacity));
+        }
+        return partitions;
+    }
+
+    /**
+     * @return the partitions of this dispatcher, allowing their lag and
+     *         delivery metrics to be read.
+     */
+    public List<EventLane> getPartitions() {
+        return getLaneList();
+    }
+
+    @Override
+    EventLane.Pending next(int pWorker) throws InterruptedException {
+        return getLaneList().get(pWorker).take();
+    }
+
+    /**
+     * Returns the partition where the events of the specified key are posted.
+     *
+     * @param pKey
+     *            the partition key, it must not be null.
+     * @return the partition of the key.
+     * @throws NullPointerException
+     *             if the key is null.
+     */
+    public EventLane partitionOf(Object pKey) {
+        int hash = Objects.requireNonNull(pKey, "key").hashCode();
+        // spreads the high bits, as keys often differ only on them
+        hash ^= hash >>> 16;
+        List<EventLane> partitions = getLaneList();
+        return partitions.get((hash & Integer.MAX_VALUE) % partitions.size());
+    }
+
+    /**
+     * Posts an event to the partition of the specified key.
+     *
+     * @param pKey
+     *            the partition key, events with equal keys are delivered in
+     *            the order they were posted. It must not be null.
+     * @param pEvent
+     *            the event to post.
+     * @return false if the event was rejected because the partition is full
+     *         or the dispatcher is closed.
+     * @throws NullPointerException
+     *             if the key is null.
+     */
+    public boolean post(Object pKey, Event pEvent) {
+        return offer(partitionOf(pKey), pEvent);
+    }
+}
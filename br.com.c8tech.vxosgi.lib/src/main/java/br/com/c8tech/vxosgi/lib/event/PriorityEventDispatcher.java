@@ -0,0 +1,164 @@
+/**
+ * ==========================================================================
+ * Copyright © 2015-2019 Cristiano Gavião, C8 Technology ME.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Cristiano Gavião (cvgaviao@c8tech.com.br)- initial API and implementation
+ * ==========================================================================
+ */
+package br.com.c8tech.vxosgi.lib.event;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+
+import org.osgi.annotation.versioning.ProviderType;
+import org.osgi.service.event.Event;
+import org.osgi.service.event.EventAdmin;
+
+/**
+ * Delivers events asynchronously through a set of {@link EventLane lanes},
+ * so a burst of low value events can not delay the delivery of the events
+ * of more important topics.
+ * <p>
+ * Each topic is mapped to a lane using the same patterns accepted by the
+ * EventAdmin {@code event.topics} property; topics not mapped go to the
+ * default lane. The delivery threads drain the lanes in weighted round-robin
+ * order: on each round a lane can deliver as many events as its weight. The
+ * events are delivered synchronously through {@link EventAdmin#sendEvent},
+ * bypassing the single asynchronous queue of EventAdmin.
+ * <p>
+ * When more than one delivery thread is used, events of the same lane can be
+ * delivered out of order.
+ *
+ * @since 0.1.1
+ * @author Cristiano Gavião
+ *
+ */
+@ProviderType
+public final class PriorityEventDispatcher extends AbstractEventDispatcher {
+
+    /**
+     * Counts the events waiting in all lanes.
+     */
+    private final Semaphore available = new Semaphore(0);
+
+    private int credits;
+
+    private int current;
+
+    private final TopicMatcher<EventLane> topicLanes;
+
+    /**
+     * Creates the dispatcher and starts its delivery threads.
+     *
+     * @param pEventAdmin
+     *            the EventAdmin used to deliver the events.
+     * @param pLanes
+     *            the lanes of the dispatcher.
+     * @param pTopicLanes
+     *            maps topic patterns to lane names.
+     * @param pDefaultLane
+     *            the name of the lane used for topics not mapped.
+     * @param pDeliveryThreads
+     *            the number of delivery threads.
+     */
+    public PriorityEventDispatcher(EventAdmin pEventAdmin,
+            List<EventLane> pLanes, Map<String, String> pTopicLanes,
+            String pDefaultLane, int pDeliveryThreads) {
+        super(pEventAdmin, pLanes, pDeliveryThreads);
+        EventLane defaultLane = getLane(pDefaultLane);
+        if (defaultLane == null) {
+            throw new IllegalArgumentException(
+                    "Unknown default lane '" + pDefaultLane + "'.");
+        }
+        topicLanes = new TopicMatcher<>(defaultLane);
+        for (Map.Entry<String, String> entry : pTopicLanes.entrySet()) {
+            EventLane lane = getLane(entry.getValue());
+            if (lane == null) {
+                throw new IllegalArgumentException("Unknown lane '"
+                        + entry.getValue() + "' for topic '" + entry.getKey()
+                        + "'.");
+            }
+            topicLanes.add(entry.getKey(), lane);
+        }
+        credits = pLanes.get(0).getWeight();
+        start("vxosgi-event-lanes");
+    }
+
+    /**
+     * Returns the lane with the specified name.
+     *
+     * @param pName
+     *            the lane name.
+     * @return the lane or null if none has that name.
+     */
+    public EventLane getLane(String pName) {
+        for (EventLane lane : getLaneList()) {
+            if (lane.getName().equals(pName)) {
+                return lane;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the lanes of this dispatcher, allowing their metrics to be
+     *         read.
+     */
+    public List<EventLane> getLanes() {
+        return getLaneList();
+    }
+
+    /**
+     * Returns the lane where events of the specified topic are posted.
+     *
+     * @param pTopic
+     *            the event topic.
+     * @return the lane mapped to the topic or the default lane.
+     */
+    public EventLane laneOf(String pTopic) {
+        return topicLanes.match(pTopic);
+    }
+
+    @Override
+    EventLane.Pending next(int pWorker) throws InterruptedException {
+        available.acquire();
+        List<EventLane> lanes = getLaneList();
+        synchronized (this) {
+            // weighted round-robin, a permit grants there is an event
+            for (;;) {
+                EventLane.Pending pending = credits > 0
+                        ? lanes.get(current).poll()
+                        : null;
+                if (pending != null) {
+                    credits--;
+                    return pending;
+                }
+                current = (current + 1) % lanes.size();
+                credits = lanes.get(current).getWeight();
+            }
+        }
+    }
+
+    /**
+     * Posts an event to the lane mapped to its topic.
+     *
+     * @param pEvent
+     *            the event to post.
+     * @return false if the event was rejected because the lane is full or
+     *         the dispatcher is closed.
+     */
+    public boolean post(Event pEvent) {
+        if (!offer(laneOf(pEvent.getTopic()), pEvent)) {
+            return false;
+        }
+        available.release();
+        return true;
+    }
+}
@@ -0,0 +1,140 @@
+/**
+ * ==========================================================================
+ * Copyright © 2015-2019 Cristiano Gavião, C8 Technology ME.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Cristiano Gavião (cvgaviao@c8tech.com.br)- initial API and implementation
+ * ==========================================================================
+ */
+package br.com.c8tech.vxosgi.lib.event;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Matches event topics against a set of topic patterns using the same syntax
+ * of the EventAdmin {@code event.topics} property, where a pattern can be an
+ * exact topic, {@code *} or a prefix followed by {@code /*}.
+ * <p>
+ * Since the same topics are published over and over, the result of each
+ * lookup is cached.
+ *
+ * @since 0.1.1
+ * @author Cristiano Gavião
+ *
+ */
+final class TopicMatcher<V> {
+
+    /**
+     * The maximum number of topics whose lookup result is cached. Publishers
+     * using unbounded topic names would otherwise grow the cache forever.
+     */
+    private static final int MAX_CACHED_TOPICS = 4096;
+
+    private static final Object NONE = new Object();
+
+    private final ConcurrentMap<String, Object> cache = new ConcurrentHashMap<>();
+
+    private final V defaultValue;
+
+    private final ConcurrentMap<String, V> exactTopics = new ConcurrentHashMap<>();
+
+    private final List<String> prefixes = new ArrayList<>();
+
+    private final List<V> prefixValues = new ArrayList<>();
+
+    /**
+     * @param pDefaultValue
+     *            the value returned for topics not matching any pattern.
+     */
+    TopicMatcher(V pDefaultValue) {
+        defaultValue = pDefaultValue;
+    }
+
+    /**
+     * Creates a matcher that maps the specified patterns to true.
+     *
+     * @param pPatterns
+     *            the topic patterns.
+     * @return the new matcher.
+     */
+    static TopicMatcher<Boolean> of(Collection<String> pPatterns) {
+        TopicMatcher<Boolean> matcher = new TopicMatcher<>(Boolean.FALSE);
+        Set<String> patterns = new HashSet<>(pPatterns);
+        for (String pattern : patterns) {
+            matcher.add(pattern, Boolean.TRUE);
+        }
+        return matcher;
+    }
+
+    /**
+     * Adds a pattern. When a topic matches more than one pattern, the exact
+     * one or else the longest prefix wins. It must not be called after the
+     * matcher has been shared among threads.
+     *
+     * @param pPattern
+     *            the topic pattern.
+     * @param pValue
+     *            the value returned for topics matching the pattern.
+     */
+    void add(String pPattern, V pValue) {
+        String pattern = pPattern.trim();
+        if ("*".equals(pattern)) {
+            insertPrefix("", pValue);
+        } else if (pattern.endsWith("/*")) {
+            insertPrefix(pattern.substring(0, pattern.length() - 1), pValue);
+        } else if (!pattern.isEmpty()) {
+            exactTopics.put(pattern, pValue);
+        }
+        cache.clear();
+    }
+
+    private void insertPrefix(String pPrefix, V pValue) {
+        // longer prefixes first, so the most specific one wins
+        int i = 0;
+        while (i < prefixes.size()
+                && prefixes.get(i).length() >= pPrefix.length()) {
+            i++;
+        }
+        prefixes.add(i, pPrefix);
+        prefixValues.add(i, pValue);
+    }
+
+    /**
+     * Returns the value of the pattern matching the specified topic.
+     *
+     * @param pTopic
+     *            the topic.
+     * @return the value of the matching pattern or the default value.
+     */
+    @SuppressWarnings("unchecked")
+    V match(String pTopic) {
+        Object cached = cache.get(pTopic);
+        if (cached != null) {
+            return cached == NONE ? defaultValue : (V) cached;
+        }
+        V value = exactTopics.get(pTopic);
+        if (value == null) {
+            for (int i = 0; i < prefixes.size(); i++) {
+                if (pTopic.startsWith(prefixes.get(i))) {
+                    value = prefixValues.get(i);
+                    break;
+                }
+            }
+        }
+        if (cache.size() < MAX_CACHED_TOPICS) {
+            cache.put(pTopic, value != null ? value : NONE);
+        }
+        return value != null ? value : defaultValue;
+    }
+}
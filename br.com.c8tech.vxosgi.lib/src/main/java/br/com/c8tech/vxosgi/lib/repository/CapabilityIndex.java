@@ -0,0 +1,443 @@
+/**
+ * ==========================================================================
+ * Copyright © 2015-2019 Cristiano Gavião, C8 Technology ME.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Cristiano Gavião (cvgaviao@c8tech.com.br)- initial API and implementation
+ * ==========================================================================
+ */
+package br.com.c8tech.vxosgi.lib.repository;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.osgi.annotation.versioning.ProviderType;
+import org.osgi.framework.Filter;
+import org.osgi.framework.FrameworkUtil;
+import org.osgi.framework.InvalidSyntaxException;
+import org.osgi.resource.Capability;
+import org.osgi.resource.Namespace;
+import org.osgi.resource.Requirement;
+import org.osgi.service.repository.Repository;
+
+/**
+ * Answers requirements from an in-memory index of the capabilities of a set
+ * of {@link Repository} services, instead of calling the repositories on
+ * every lookup.
+ * <p>
+ * The capabilities of each repository are kept in a segment, indexed by
+ * namespace and attribute value. A requirement filter is answered by taking
+ * the equality terms of its top level conjunction, as in
+ * {@code (&(osgi.wiring.package=foo)(version>=1.0))}, reading the smallest
+ * matching bucket and verifying only those candidates against the whole
+ * filter. Requirements whose filters can not use the index are evaluated
+ * together, with a single pass over the capabilities of each namespace.
+ * <p>
+ * The answers are kept in a bounded cache keyed by namespace and filter,
+ * which is discarded whenever a segment is added, refreshed or removed.
+ *
+ * @since 0.1.1
+ * @author Cristiano Gavião
+ *
+ */
+@ProviderType
+public final class CapabilityIndex {
+
+    /**
+     * The indexed segments. It is replaced, never changed, so a lookup sees
+     * a consistent set of segments and its identity tells whether an answer
+     * is still current.
+     */
+    private static final class Snapshot {
+
+        private final Map<Object, RepositorySegment> segments;
+
+        private Snapshot(Map<Object, RepositorySegment> pSegments) {
+            segments = pSegments;
+        }
+    }
+
+    /**
+     * A lookup, all the requirements with the same namespace and filter have
+     * the same answer.
+     */
+    private static final class Query {
+
+        private List<Capability> answer;
+
+        private Filter filter;
+
+        private final String filterString;
+
+        private final String namespace;
+
+        private Query(String pNamespace, String pFilterString) {
+            namespace = pNamespace;
+            filterString = pFilterString;
+        }
+
+        @Override
+        public boolean equals(Object pObject) {
+            if (this == pObject) {
+                return true;
+            }
+            if (!(pObject instanceof Query)) {
+                return false;
+            }
+            Query other = (Query) pObject;
+            return namespace.equals(other.namespace)
+                    && Objects.equals(filterString, other.filterString);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * namespace.hashCode() + Objects.hashCode(filterString);
+        }
+    }
+
+    /**
+     * The default maximum number of answers kept in the cache.
+     */
+    public static final int DEFAULT_CACHE_SIZE = 1024;
+
+    private final Map<Query, List<Capability>> cache;
+
+    private final LongAdder hits = new LongAdder();
+
+    private final LongAdder misses = new LongAdder();
+
+    private volatile Snapshot snapshot = new Snapshot(
+            Collections.<Object, RepositorySegment>emptyMap());
+
+    /**
+     * @param pCacheSize
+     *            the maximum number of answers kept in the cache, zero
+     *            disables it.
+     */
+    public CapabilityIndex(int pCacheSize) {
+        int cacheSize = Math.max(0, pCacheSize);
+        cache = new LinkedHashMap<Query, List<Capability>>(16, 0.75f, true) {
+
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(
+                    Map.Entry<Query, List<Capability>> pEldest) {
+                return size() > cacheSize;
+            }
+        };
+    }
+
+    /**
+     * Extracts the {@code (attribute=value)} terms that every capability
+     * matching the filter must satisfy, which are the equality terms without
+     * wildcards of the filter itself or of its top level conjunction.
+     *
+     * @param pFilter
+     *            the filter string.
+     * @return the pairs of attribute name and value, it can be empty.
+     */
+    static List<String[]> equalityTerms(String pFilter) {
+        String filter = pFilter.trim();
+        if (!filter.startsWith("(&")) {
+            String[] term = equalityTerm(filter);
+            return term != null ? Collections.singletonList(term)
+                    : Collections.<String[]>emptyList();
+        }
+        List<String[]> terms = new ArrayList<>();
+        int depth = 0;
+        int start = -1;
+        for (int i = 2; i < filter.length(); i++) {
+            char c = filter.charAt(i);
+            if (c == '\\') {
+                i++;
+            } else if (c == '(') {
+                if (depth++ == 0) {
+                    start = i;
+                }
+            } else if (c == ')' && depth > 0 && --depth == 0) {
+                String[] term = equalityTerm(filter.substring(start, i + 1));
+                if (term != null) {
+                    terms.add(term);
+                }
+            }
+        }
+        return terms;
+    }
+
+    private static String[] equalityTerm(String pItem) {
+        if (pItem.length() < 4 || pItem.charAt(0) != '('
+                || pItem.charAt(pItem.length() - 1) != ')') {
+            return null;
+        }
+        char operator = pItem.charAt(1);
+        if (operator == '&' || operator == '|' || operator == '!') {
+            return null;
+        }
+        int equals = pItem.indexOf('=');
+        if (equals < 2) {
+            return null;
+        }
+        char previous = pItem.charAt(equals - 1);
+        if (previous == '<' || previous == '>' || previous == '~') {
+            return null;
+        }
+        StringBuilder value = new StringBuilder();
+        for (int i = equals + 1; i < pItem.length() - 1; i++) {
+            char c = pItem.charAt(i);
+            if (c == '*') {
+                // a substring or presence test
+                return null;
+            }
+            if (c == '\\' && i + 1 < pItem.length() - 1) {
+                c = pItem.charAt(++i);
+            }
+            value.append(c);
+        }
+        return new String[] { pItem.substring(1, equals).trim(),
+                value.toString() };
+    }
+
+    private static void select(Query pQuery, List<Capability> pCandidates) {
+        for (Capability capability : pCandidates) {
+            if (pQuery.filter == null
+                    || pQuery.filter.matches(capability.getAttributes())) {
+                pQuery.answer.add(capability);
+            }
+        }
+    }
+
+    /**
+     * Discards the cached answers.
+     */
+    public void clearCache() {
+        synchronized (cache) {
+            cache.clear();
+        }
+    }
+
+    private void evaluate(Snapshot pSnapshot, Collection<Query> pQueries) {
+        // the queries that must scan a namespace, by segment and namespace
+        Map<RepositorySegment, Map<String, List<Query>>> scans = new LinkedHashMap<>();
+        for (Query query : pQueries) {
+            query.answer = new ArrayList<>();
+            List<String[]> terms = Collections.emptyList();
+            if (query.filterString != null) {
+                try {
+                    query.filter = FrameworkUtil
+                            .createFilter(query.filterString);
+                } catch (InvalidSyntaxException e) { // NOSONAR
+                    // nothing matches an invalid filter
+                    continue;
+                }
+                terms = equalityTerms(query.filterString);
+            }
+            for (RepositorySegment segment : pSnapshot.segments.values()) {
+                List<Capability> candidates = query.filter != null
+                        ? segment.candidates(query.namespace, terms)
+                        : segment.capabilities(query.namespace);
+                if (candidates != null) {
+                    select(query, candidates);
+                } else {
+                    scans.computeIfAbsent(segment, s -> new HashMap<>())
+                            .computeIfAbsent(query.namespace,
+                                    n -> new ArrayList<>())
+                            .add(query);
+                }
+            }
+        }
+        for (Map.Entry<RepositorySegment, Map<String, List<Query>>> scan : scans
+                .entrySet()) {
+            for (Map.Entry<String, List<Query>> namespace : scan.getValue()
+                    .entrySet()) {
+                for (Capability capability : scan.getKey()
+                        .capabilities(namespace.getKey())) {
+                    for (Query query : namespace.getValue()) {
+                        if (query.filter.matches(capability.getAttributes())) {
+                            query.answer.add(capability);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Finds the capabilities matching a requirement.
+     *
+     * @param pRequirement
+     *            the requirement.
+     * @return the matching capabilities of the indexed repositories, it can
+     *         be empty.
+     */
+    public Collection<Capability> findProviders(Requirement pRequirement) {
+        return findProviders(Collections.singleton(pRequirement))
+                .get(pRequirement);
+    }
+
+    /**
+     * Finds the capabilities matching each of the requirements, with the
+     * same contract of {@link Repository#findProviders(Collection)}.
+     * <p>
+     * The requirements are answered together, so requirements with the same
+     * namespace and filter are evaluated once and the capabilities that
+     * must be scanned are read once for all of them.
+     *
+     * @param pRequirements
+     *            the requirements.
+     * @return the matching capabilities of each requirement.
+     */
+    public Map<Requirement, Collection<Capability>> findProviders(
+            Collection<? extends Requirement> pRequirements) {
+        Snapshot current = snapshot;
+        Map<Requirement, Collection<Capability>> result = new HashMap<>();
+        Map<Query, List<Requirement>> pending = new LinkedHashMap<>();
+        for (Requirement requirement : pRequirements) {
+            Query query = new Query(requirement.getNamespace(),
+                    requirement.getDirectives()
+                            .get(Namespace.REQUIREMENT_FILTER_DIRECTIVE));
+            List<Capability> answer;
+            synchronized (cache) {
+                answer = cache.get(query);
+            }
+            if (answer != null) {
+                hits.increment();
+                result.put(requirement, answer);
+            } else {
+                pending.computeIfAbsent(query, q -> new ArrayList<>())
+                        .add(requirement);
+            }
+        }
+        if (pending.isEmpty()) {
+            return result;
+        }
+        misses.add(pending.size());
+        evaluate(current, pending.keySet());
+        synchronized (cache) {
+            // an answer computed from replaced segments is not cached
+            boolean cacheable = current == snapshot;
+            for (Map.Entry<Query, List<Requirement>> entry : pending
+                    .entrySet()) {
+                List<Capability> answer = Collections
+                        .unmodifiableList(entry.getKey().answer);
+                if (cacheable) {
+                    cache.put(entry.getKey(), answer);
+                }
+                for (Requirement requirement : entry.getValue()) {
+                    result.put(requirement, answer);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return the number of capabilities indexed.
+     */
+    public int getCapabilityCount() {
+        int count = 0;
+        for (RepositorySegment segment : snapshot.segments.values()) {
+            count += segment.getCapabilityCount();
+        }
+        return count;
+    }
+
+    /**
+     * @return the number of requirements answered from the cache.
+     */
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    /**
+     * @return the number of distinct lookups that were evaluated against
+     *         the index.
+     */
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    /**
+     * @return the number of repositories indexed.
+     */
+    public int getRepositoryCount() {
+        return snapshot.segments.size();
+    }
+
+    /**
+     * Indexes, or indexes again, the capabilities of a repository.
+     * <p>
+     * The repository is read before the index is changed, so the lookups
+     * keep being answered from the previous segment meanwhile.
+     *
+     * @param pKey
+     *            the key identifying the repository, as its service id.
+     * @param pRepository
+     *            the repository.
+     */
+    public void index(Object pKey, Repository pRepository) {
+        Objects.requireNonNull(pKey, "key");
+        RepositorySegment segment = RepositorySegment.build(pRepository);
+        synchronized (cache) {
+            Map<Object, RepositorySegment> segments = new LinkedHashMap<>(
+                    snapshot.segments);
+            segments.put(pKey, segment);
+            replace(segments);
+        }
+    }
+
+    /**
+     * Checks whether a repository is indexed.
+     *
+     * @param pKey
+     *            the key identifying the repository.
+     * @return true if the repository is indexed.
+     */
+    public boolean isIndexed(Object pKey) {
+        return snapshot.segments.containsKey(pKey);
+    }
+
+    /**
+     * Removes the capabilities of a repository from the index.
+     *
+     * @param pKey
+     *            the key identifying the repository.
+     * @return true if the repository was indexed.
+     */
+    public boolean remove(Object pKey) {
+        synchronized (cache) {
+            if (!snapshot.segments.containsKey(pKey)) {
+                return false;
+            }
+            Map<Object, RepositorySegment> segments = new LinkedHashMap<>(
+                    snapshot.segments);
+            segments.remove(pKey);
+            replace(segments);
+            return true;
+        }
+    }
+
+    private void replace(Map<Object, RepositorySegment> pSegments) {
+        snapshot = new Snapshot(Collections.unmodifiableMap(pSegments));
+        cache.clear();
+    }
+
+    @Override
+    public String toString() {
+        return "CapabilityIndex[repositories=" + getRepositoryCount()
+                + ", capabilities=" + getCapabilityCount() + ", hits="
+                + getHitCount() + ", misses=" + getMissCount() + "]";
+    }
+}
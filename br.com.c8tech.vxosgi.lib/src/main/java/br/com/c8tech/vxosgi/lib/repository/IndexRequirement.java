@@ -0,0 +1,69 @@
+/**
+ * ==========================================================================
+ * Copyright © 2015-2019 Cristiano Gavião, C8 Technology ME.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Cristiano Gavião (cvgaviao@c8tech.com.br)- initial API and implementation
+ * ==========================================================================
+ */
+package br.com.c8tech.vxosgi.lib.repository;
+
+import java.util.Collections;
+import java.util.Map;
+
+import org.osgi.resource.Namespace;
+import org.osgi.resource.Requirement;
+import org.osgi.resource.Resource;
+
+/**
+ * A requirement without resource used to query the repositories being
+ * indexed.
+ *
+ * @since 0.1.1
+ * @author Cristiano Gavião
+ *
+ */
+final class IndexRequirement implements Requirement {
+
+    private final Map<String, String> directives;
+
+    private final String namespace;
+
+    IndexRequirement(String pNamespace, String pFilter) {
+        namespace = pNamespace;
+        directives = pFilter != null
+                ? Collections.singletonMap(
+                        Namespace.REQUIREMENT_FILTER_DIRECTIVE, pFilter)
+                : Collections.<String, String>emptyMap();
+    }
+
+    @Override
+    public Map<String, Object> getAttributes() {
+        return Collections.emptyMap();
+    }
+
+    @Override
+    public Map<String, String> getDirectives() {
+        return directives;
+    }
+
+    @Override
+    public String getNamespace() {
+        return namespace;
+    }
+
+    @Override
+    public Resource getResource() {
+        return null;
+    }
+
+    @Override
+    public String toString() {
+        return "IndexRequirement[" + namespace + ", " + directives + "]";
+    }
+}
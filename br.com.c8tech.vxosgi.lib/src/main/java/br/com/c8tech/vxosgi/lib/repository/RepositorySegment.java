@@ -0,0 +1,198 @@
+/**
+ * ==========================================================================
+ * Copyright © 2015-2019 Cristiano Gavião, C8 Technology ME.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Cristiano Gavião (cvgaviao@c8tech.com.br)- initial API and implementation
+ * ==========================================================================
+ */
+package br.com.c8tech.vxosgi.lib.repository;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.osgi.framework.namespace.IdentityNamespace;
+import org.osgi.resource.Capability;
+import org.osgi.resource.Requirement;
+import org.osgi.resource.Resource;
+import org.osgi.service.repository.Repository;
+
+/**
+ * The capabilities of a single repository, indexed by namespace and by the
+ * values of their attributes.
+ * <p>
+ * Only the attributes whose values are always strings, or lists of
+ * strings, are indexed, since the filters compare the other types using
+ * their own rules, as versions and numbers.
+ *
+ * @since 0.1.1
+ * @author Cristiano Gavião
+ *
+ */
+final class RepositorySegment {
+
+    /**
+     * The capabilities of a namespace.
+     */
+    private static final class NamespaceIndex {
+
+        private final List<Capability> capabilities = new ArrayList<>();
+
+        /**
+         * The attributes whose values are not all strings.
+         */
+        private final Set<String> unindexed = new HashSet<>();
+
+        private final Map<String, Map<String, List<Capability>>> values = new HashMap<>();
+
+        private void add(Capability pCapability) {
+            capabilities.add(pCapability);
+            for (Map.Entry<String, Object> attribute : pCapability
+                    .getAttributes().entrySet()) {
+                String name = attribute.getKey();
+                if (unindexed.contains(name)) {
+                    continue;
+                }
+                Collection<?> attributeValues = attribute
+                        .getValue() instanceof Collection
+                                ? (Collection<?>) attribute.getValue()
+                                : Collections.singleton(attribute.getValue());
+                Map<String, List<Capability>> index = values
+                        .computeIfAbsent(name, n -> new HashMap<>());
+                for (Object value : attributeValues) {
+                    if (!(value instanceof String)) {
+                        unindexed.add(name);
+                        values.remove(name);
+                        break;
+                    }
+                    List<Capability> bucket = index.computeIfAbsent(
+                            (String) value, v -> new ArrayList<>(2));
+                    // a list may repeat a value
+                    if (bucket.isEmpty()
+                            || bucket.get(bucket.size() - 1) != pCapability) {
+                        bucket.add(pCapability);
+                    }
+                }
+            }
+        }
+
+        /**
+         * @return the capabilities having the attribute value or null if
+         *         the attribute is not indexed.
+         */
+        private List<Capability> withValue(String pAttribute, String pValue) {
+            if (unindexed.contains(pAttribute)) {
+                return null;
+            }
+            Map<String, List<Capability>> index = values.get(pAttribute);
+            List<Capability> bucket = index != null ? index.get(pValue) : null;
+            return bucket != null ? bucket
+                    : Collections.<Capability>emptyList();
+        }
+    }
+
+    private final int capabilityCount;
+
+    private final Map<String, NamespaceIndex> namespaces;
+
+    private RepositorySegment(Map<String, NamespaceIndex> pNamespaces,
+            int pCapabilityCount) {
+        namespaces = pNamespaces;
+        capabilityCount = pCapabilityCount;
+    }
+
+    /**
+     * Reads every capability of a repository.
+     * <p>
+     * The repository API has no way to list its content, so the resources
+     * are found through their identity capabilities, which every resource
+     * must provide, and then all their capabilities are indexed.
+     *
+     * @param pRepository
+     *            the repository.
+     * @return the indexed capabilities.
+     */
+    static RepositorySegment build(Repository pRepository) {
+        Requirement identities = new IndexRequirement(
+                IdentityNamespace.IDENTITY_NAMESPACE, null);
+        Collection<Capability> identityCapabilities = pRepository
+                .findProviders(Collections.singleton(identities))
+                .get(identities);
+        Map<String, NamespaceIndex> namespaces = new HashMap<>();
+        Set<Resource> resources = Collections
+                .newSetFromMap(new IdentityHashMap<>());
+        int count = 0;
+        if (identityCapabilities != null) {
+            for (Capability identity : identityCapabilities) {
+                Resource resource = identity.getResource();
+                if (resource == null || !resources.add(resource)) {
+                    continue;
+                }
+                for (Capability capability : resource.getCapabilities(null)) {
+                    namespaces.computeIfAbsent(capability.getNamespace(),
+                            n -> new NamespaceIndex()).add(capability);
+                    count++;
+                }
+            }
+        }
+        return new RepositorySegment(namespaces, count);
+    }
+
+    /**
+     * Returns the capabilities of a namespace.
+     *
+     * @param pNamespace
+     *            the namespace.
+     * @return the capabilities, it can be empty.
+     */
+    List<Capability> capabilities(String pNamespace) {
+        NamespaceIndex index = namespaces.get(pNamespace);
+        return index != null ? index.capabilities
+                : Collections.<Capability>emptyList();
+    }
+
+    /**
+     * Returns the smallest set of capabilities of a namespace that must be
+     * matched against a filter, using the attribute values the filter
+     * requires.
+     *
+     * @param pNamespace
+     *            the namespace.
+     * @param pTerms
+     *            the attribute names and values required by the filter.
+     * @return the candidates or null if none of the attributes is indexed,
+     *         meaning that every capability of the namespace is a
+     *         candidate.
+     */
+    List<Capability> candidates(String pNamespace, List<String[]> pTerms) {
+        NamespaceIndex index = namespaces.get(pNamespace);
+        if (index == null) {
+            return Collections.emptyList();
+        }
+        List<Capability> smallest = null;
+        for (String[] term : pTerms) {
+            List<Capability> bucket = index.withValue(term[0], term[1]);
+            if (bucket != null
+                    && (smallest == null || bucket.size() < smallest.size())) {
+                smallest = bucket;
+            }
+        }
+        return smallest;
+    }
+
+    int getCapabilityCount() {
+        return capabilityCount;
+    }
+}
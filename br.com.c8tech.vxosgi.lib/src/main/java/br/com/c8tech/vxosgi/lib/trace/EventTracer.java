@@ -0,0 +1,285 @@
+/**
+ * ==========================================================================
+ * Copyright © 2015-2019 Cristiano Gavião, C8 Technology ME.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Cristiano Gavião (cvgaviao@c8tech.com.br)- initial API and implementation
+ * ==========================================================================
+ */
+package br.com.c8tech.vxosgi.lib.trace;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.osgi.annotation.versioning.ProviderType;
+import org.osgi.service.event.Event;
+
+/**
+ * Propagates a {@link TraceContext} through the events exchanged by the
+ * components, recording the time spent on each hop in a
+ * {@link SpanRecorder}.
+ * <p>
+ * The sampling decision is taken once, when an event is produced by a thread
+ * without a current context, and is inherited by all the events produced
+ * while handling it. Only the sampled events receive the
+ * {@value #PROPERTY_TRACE_PARENT} property, so producing an unsampled event
+ * costs no allocation. An event restored without it is handled as not
+ * sampled, so the hops handling it do not sample again and no orphan trace is
+ * started. Traces are therefore only started by events produced outside of
+ * the handling of a restored event.
+ * <p>
+ * The sampling rate and the buffer size are read from the system properties
+ * {@value #PROP_SAMPLING_RATE} and {@value #PROP_BUFFER_SIZE}.
+ *
+ * @since 0.1.1
+ * @author Cristiano Gavião
+ *
+ */
+@ProviderType
+public final class EventTracer {
+
+    /**
+     * The scope of an event being handled, which propagated a sampling
+     * decision.
+     */
+    private final class RestoredScope implements TraceScope {
+
+        private final String component;
+
+        private final TraceContext context;
+
+        private final TraceContext previous;
+
+        private final long startNanos;
+
+        private final String topic;
+
+        private RestoredScope(TraceContext pContext, TraceContext pPrevious,
+                String pTopic, String pComponent) {
+            context = pContext;
+            previous = pPrevious;
+            topic = pTopic;
+            component = pComponent;
+            startNanos = System.nanoTime();
+        }
+
+        @Override
+        public void close() {
+            if (context.isSampled()) {
+                recorder.record(context, SpanRecorder.KIND_CONSUMER, topic,
+                        component, startNanos,
+                        System.nanoTime() - startNanos);
+            }
+            if (previous == null) {
+                CURRENT.remove();
+            } else {
+                CURRENT.set(previous);
+            }
+        }
+
+        @Override
+        public TraceContext getContext() {
+            return context.isSampled() ? context : null;
+        }
+    }
+
+    public static final int DEFAULT_BUFFER_SIZE = 8192;
+
+    public static final double DEFAULT_SAMPLING_RATE = 0.01;
+
+    /**
+     * The system property holding the number of spans kept in memory.
+     */
+    public static final String PROP_BUFFER_SIZE = "vxosgi.trace.buffer.size";
+
+    /**
+     * The system property holding the fraction of the traces sampled, from
+     * 0.0 to 1.0.
+     */
+    public static final String PROP_SAMPLING_RATE = "vxosgi.trace.sampling.rate";
+
+    /**
+     * The event property carrying the W3C {@code traceparent} of a sampled
+     * event. Unsampled events do not have it.
+     */
+    public static final String PROPERTY_TRACE_PARENT = "vxosgi.traceparent";
+
+    private static final ThreadLocal<TraceContext> CURRENT = new ThreadLocal<>();
+
+    private static final EventTracer INSTANCE = new EventTracer();
+
+    /**
+     * Returned when the handled event was not sampled and the thread had no
+     * context, the most frequent case, so no allocation is made.
+     */
+    private static final TraceScope NOT_SAMPLED = new TraceScope() {
+
+        @Override
+        public void close() {
+            CURRENT.remove();
+        }
+
+        @Override
+        public TraceContext getContext() {
+            return null;
+        }
+    };
+
+    /**
+     * Returned when the handled event changes nothing in the context of the
+     * thread, so no allocation is made.
+     */
+    private static final TraceScope NOT_TRACED = new TraceScope() {
+
+        @Override
+        public void close() {
+            // nothing to restore
+        }
+
+        @Override
+        public TraceContext getContext() {
+            return null;
+        }
+    };
+
+    private final SpanRecorder recorder;
+
+    private volatile double samplingRate;
+
+    private EventTracer() {
+        recorder = new SpanRecorder(
+                Integer.getInteger(PROP_BUFFER_SIZE, DEFAULT_BUFFER_SIZE));
+        double rate = DEFAULT_SAMPLING_RATE;
+        String configured = System.getProperty(PROP_SAMPLING_RATE);
+        if (configured != null) {
+            try {
+                rate = Double.parseDouble(configured);
+            } catch (NumberFormatException e) { // NOSONAR
+                // keeps the default rate
+            }
+        }
+        setSamplingRate(rate);
+    }
+
+    /**
+     * @return the tracer shared by all components of the framework.
+     */
+    public static EventTracer getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * @return the context of the span being executed by the current thread
+     *         or null if it is not handling a sampled event.
+     */
+    public TraceContext current() {
+        TraceContext context = CURRENT.get();
+        return context != null && context.isSampled() ? context : null;
+    }
+
+    /**
+     * Records the span started by {@link #startProducerSpan()}.
+     *
+     * @param pContext
+     *            the context of the span, the span is only recorded when it
+     *            is sampled.
+     * @param pTopic
+     *            the topic of the produced event.
+     * @param pComponent
+     *            the name of the producer component.
+     * @param pStartNanos
+     *            the {@link System#nanoTime()} when the span has started.
+     */
+    public void endProducerSpan(TraceContext pContext, String pTopic,
+            String pComponent, long pStartNanos) {
+        if (pContext != null && pContext.isSampled()) {
+            recorder.record(pContext, SpanRecorder.KIND_PRODUCER, pTopic,
+                    pComponent, pStartNanos, System.nanoTime() - pStartNanos);
+        }
+    }
+
+    public SpanRecorder getSpanRecorder() {
+        return recorder;
+    }
+
+    public double getSamplingRate() {
+        return samplingRate;
+    }
+
+    /**
+     * Makes the context propagated by the specified event the current one of
+     * the thread, until the returned scope is closed.
+     *
+     * @param pEvent
+     *            the event being handled.
+     * @param pComponent
+     *            the name of the component handling the event.
+     * @return the scope that must be closed after the event is handled.
+     */
+    public TraceScope restore(Event pEvent, String pComponent) {
+        Object traceParent = pEvent.getProperty(PROPERTY_TRACE_PARENT);
+        if (!(traceParent instanceof String)) {
+            // unsampled events carry no context, the decision is inherited
+            if (CURRENT.get() != null) {
+                return NOT_TRACED;
+            }
+            CURRENT.set(TraceContext.NOT_SAMPLED);
+            return NOT_SAMPLED;
+        }
+        TraceContext parent = TraceContext
+                .fromTraceParent((String) traceParent);
+        if (parent == null) {
+            return NOT_TRACED;
+        }
+        TraceContext context = parent.newChild();
+        TraceContext previous = CURRENT.get();
+        TraceScope scope = !context.isSampled() && previous == null
+                ? NOT_SAMPLED
+                : new RestoredScope(context, previous, pEvent.getTopic(),
+                        pComponent);
+        CURRENT.set(context);
+        return scope;
+    }
+
+    /**
+     * Sets the fraction of the new traces that are sampled.
+     *
+     * @param pSamplingRate
+     *            a value from 0.0, no trace, to 1.0, all traces.
+     */
+    public void setSamplingRate(double pSamplingRate) {
+        samplingRate = Math.max(0.0, Math.min(1.0, pSamplingRate));
+    }
+
+    /**
+     * Starts the span of an event being produced. It is a child of the
+     * current span or, when there is none, the root of a new trace if the
+     * sampler decides so. The decision of a trace that was not sampled is
+     * inherited as well.
+     *
+     * @return the context to propagate with the event,
+     *         {@link TraceContext#NOT_SAMPLED} if it is not sampled.
+     */
+    public TraceContext startProducerSpan() {
+        TraceContext parent = CURRENT.get();
+        if (parent != null) {
+            return parent.newChild();
+        }
+        double rate = samplingRate;
+        if (rate <= 0.0
+                || (rate < 1.0 && ThreadLocalRandom.current().nextDouble() >= rate)) {
+            return TraceContext.NOT_SAMPLED;
+        }
+        return TraceContext.newRoot();
+    }
+
+    @Override
+    public String toString() {
+        return "EventTracer[samplingRate=" + samplingRate + ", " + recorder
+                + "]";
+    }
+}
@@ -0,0 +1,269 @@
+/**
+ * ==========================================================================
+ * Copyright © 2015-2019 Cristiano Gavião, C8 Technology ME.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Cristiano Gavião (cvgaviao@c8tech.com.br)- initial API and implementation
+ * ==========================================================================
+ */
+package br.com.c8tech.vxosgi.lib.trace;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+import org.osgi.annotation.versioning.ProviderType;
+
+/**
+ * Keeps the latest finished spans in a fixed size ring buffer, overwriting
+ * the oldest ones, so tracing never grows the heap.
+ * <p>
+ * The spans can be exported to a file using the JSON encoding of the
+ * OpenTelemetry protocol (OTLP), which can be loaded by the usual trace
+ * viewers without any collector.
+ *
+ * @since 0.1.1
+ * @author Cristiano Gavião
+ *
+ */
+@ProviderType
+public final class SpanRecorder {
+
+    /**
+     * The OTLP span kind of a span that delivers an event.
+     */
+    public static final int KIND_CONSUMER = 5;
+
+    /**
+     * The OTLP span kind of a span that posts or sends an event.
+     */
+    public static final int KIND_PRODUCER = 4;
+
+    /**
+     * Converts {@link System#nanoTime()} to nanoseconds since the epoch.
+     */
+    private static final long EPOCH_OFFSET_NANOS = System.currentTimeMillis()
+            * 1_000_000L - System.nanoTime();
+
+    private final String[] components;
+
+    private final long[] durations;
+
+    private final int[] kinds;
+
+    private final String[] names;
+
+    private final long[] parentSpanIds;
+
+    /**
+     * The number of spans ever recorded.
+     */
+    private long recorded;
+
+    private final long[] spanIds;
+
+    private final long[] starts;
+
+    private final long[] traceIdsHigh;
+
+    private final long[] traceIdsLow;
+
+    /**
+     * @param pCapacity
+     *            the maximum number of spans kept.
+     */
+    public SpanRecorder(int pCapacity) {
+        int capacity = Math.max(1, pCapacity);
+        traceIdsHigh = new long[capacity];
+        traceIdsLow = new long[capacity];
+        spanIds = new long[capacity];
+        parentSpanIds = new long[capacity];
+        starts = new long[capacity];
+        durations = new long[capacity];
+        kinds = new int[capacity];
+        names = new String[capacity];
+        components = new String[capacity];
+    }
+
+    private static void writeAttribute(Writer pWriter, String pKey,
+            String pValue) throws IOException {
+        pWriter.write("{\"key\":");
+        writeString(pWriter, pKey);
+        pWriter.write(",\"value\":{\"stringValue\":");
+        writeString(pWriter, pValue);
+        pWriter.write("}}");
+    }
+
+    private static void writeString(Writer pWriter, String pValue)
+            throws IOException {
+        pWriter.write('"');
+        for (int i = 0; i < pValue.length(); i++) {
+            char c = pValue.charAt(i);
+            if (c == '"' || c == '\\') {
+                pWriter.write('\\');
+                pWriter.write(c);
+            } else if (c < 0x20) {
+                pWriter.write(String.format("\\u%04x", (int) c));
+            } else {
+                pWriter.write(c);
+            }
+        }
+        pWriter.write('"');
+    }
+
+    /**
+     * @return the maximum number of spans kept.
+     */
+    public int getCapacity() {
+        return spanIds.length;
+    }
+
+    /**
+     * @return the number of spans ever recorded, including the ones already
+     *         overwritten.
+     */
+    public synchronized long getRecordedCount() {
+        return recorded;
+    }
+
+    /**
+     * Discards all the spans kept.
+     */
+    public synchronized void clear() {
+        recorded = 0;
+        for (int i = 0; i < names.length; i++) {
+            names[i] = null;
+            components[i] = null;
+        }
+    }
+
+    /**
+     * Writes the spans kept, oldest first, as an OTLP JSON trace export
+     * request. The file is replaced atomically.
+     *
+     * @param pFile
+     *            the file to write.
+     * @param pServiceName
+     *            the value of the {@code service.name} resource attribute.
+     * @return the number of spans written.
+     * @throws IOException
+     *             if the file could not be written.
+     */
+    public int exportOtlpJson(Path pFile, String pServiceName)
+            throws IOException {
+        SpanRecorder copy;
+        int count;
+        int first;
+        synchronized (this) {
+            count = (int) Math.min(recorded, getCapacity());
+            first = (int) ((recorded - count) % getCapacity());
+            copy = new SpanRecorder(getCapacity());
+            System.arraycopy(traceIdsHigh, 0, copy.traceIdsHigh, 0, count);
+            System.arraycopy(traceIdsLow, 0, copy.traceIdsLow, 0, count);
+            System.arraycopy(spanIds, 0, copy.spanIds, 0, count);
+            System.arraycopy(parentSpanIds, 0, copy.parentSpanIds, 0, count);
+            System.arraycopy(starts, 0, copy.starts, 0, count);
+            System.arraycopy(durations, 0, copy.durations, 0, count);
+            System.arraycopy(kinds, 0, copy.kinds, 0, count);
+            System.arraycopy(names, 0, copy.names, 0, count);
+            System.arraycopy(components, 0, copy.components, 0, count);
+        }
+        Path parent = pFile.toAbsolutePath().getParent();
+        Files.createDirectories(parent);
+        Path temp = Files.createTempFile(parent, "spans", ".tmp");
+        try {
+            try (Writer writer = Files.newBufferedWriter(temp,
+                    StandardCharsets.UTF_8)) {
+                writer.write("{\"resourceSpans\":[{\"resource\":{\"attributes\":[");
+                writeAttribute(writer, "service.name", pServiceName);
+                writer.write(
+                        "]},\"scopeSpans\":[{\"scope\":{\"name\":\"vxosgi\"},\"spans\":[");
+                for (int i = 0; i < count; i++) {
+                    if (i > 0) {
+                        writer.write(',');
+                    }
+                    copy.writeSpan(writer, (first + i) % getCapacity());
+                }
+                writer.write("]}]}]}");
+            }
+            Files.move(temp, pFile, StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+        return count;
+    }
+
+    /**
+     * Records a finished span.
+     *
+     * @param pContext
+     *            the context of the span.
+     * @param pKind
+     *            the OTLP span kind.
+     * @param pName
+     *            the span name, usually the event topic.
+     * @param pComponent
+     *            the name of the component that has produced the span.
+     * @param pStartNanos
+     *            the {@link System#nanoTime()} when the span has started.
+     * @param pDurationNanos
+     *            the duration of the span.
+     */
+    public synchronized void record(TraceContext pContext, int pKind,
+            String pName, String pComponent, long pStartNanos,
+            long pDurationNanos) {
+        int slot = (int) (recorded++ % getCapacity());
+        traceIdsHigh[slot] = pContext.getTraceIdHigh();
+        traceIdsLow[slot] = pContext.getTraceIdLow();
+        spanIds[slot] = pContext.getSpanId();
+        parentSpanIds[slot] = pContext.getParentSpanId();
+        starts[slot] = pStartNanos + EPOCH_OFFSET_NANOS;
+        durations[slot] = pDurationNanos;
+        kinds[slot] = pKind;
+        names[slot] = pName;
+        components[slot] = pComponent;
+    }
+
+    @Override
+    public String toString() {
+        return "SpanRecorder[capacity=" + getCapacity() + ", recorded="
+                + getRecordedCount() + "]";
+    }
+
+    private void writeSpan(Writer pWriter, int pSlot) throws IOException {
+        pWriter.write("{\"traceId\":\"");
+        pWriter.write(TraceContext.toHex(traceIdsHigh[pSlot]));
+        pWriter.write(TraceContext.toHex(traceIdsLow[pSlot]));
+        pWriter.write("\",\"spanId\":\"");
+        pWriter.write(TraceContext.toHex(spanIds[pSlot]));
+        pWriter.write('"');
+        if (parentSpanIds[pSlot] != 0) {
+            pWriter.write(",\"parentSpanId\":\"");
+            pWriter.write(TraceContext.toHex(parentSpanIds[pSlot]));
+            pWriter.write('"');
+        }
+        pWriter.write(",\"name\":");
+        writeString(pWriter, names[pSlot]);
+        pWriter.write(",\"kind\":" + kinds[pSlot]);
+        // OTLP JSON encodes 64 bits integers as strings
+        pWriter.write(",\"startTimeUnixNano\":\"" + starts[pSlot]
+                + "\",\"endTimeUnixNano\":\""
+                + (starts[pSlot] + durations[pSlot]) + "\"");
+        pWriter.write(",\"attributes\":[");
+        writeAttribute(pWriter, "messaging.destination.name", names[pSlot]);
+        if (components[pSlot] != null) {
+            pWriter.write(',');
+            writeAttribute(pWriter, "vxosgi.component", components[pSlot]);
+        }
+        pWriter.write("]}");
+    }
+}
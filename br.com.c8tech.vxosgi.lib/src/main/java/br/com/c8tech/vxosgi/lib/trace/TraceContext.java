@@ -0,0 +1,201 @@
+/**
+ * ==========================================================================
+ * Copyright © 2015-2019 Cristiano Gavião, C8 Technology ME.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Cristiano Gavião (cvgaviao@c8tech.com.br)- initial API and implementation
+ * ==========================================================================
+ */
+package br.com.c8tech.vxosgi.lib.trace;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.osgi.annotation.versioning.ProviderType;
+
+/**
+ * Identifies a span of a sampled trace: a 128 bits trace id shared by all
+ * the spans of a request, the 64 bits id of the span and the id of its
+ * parent span.
+ * <p>
+ * It is propagated as a W3C {@code traceparent} string. A trace that was not
+ * sampled has the single context {@link #NOT_SAMPLED}, without ids, which
+ * only propagates the decision, with the trace flags {@code 00}, so the
+ * following hops do not sample it again.
+ *
+ * @since 0.1.1
+ * @author Cristiano Gavião
+ *
+ */
+@ProviderType
+public final class TraceContext {
+
+    /**
+     * The context of all the spans of the traces that were not sampled.
+     */
+    public static final TraceContext NOT_SAMPLED = new TraceContext(0, 0, 0,
+            0, false);
+
+    private static final int TRACE_PARENT_LENGTH = 55;
+
+    private static final String TRACE_PARENT_NOT_SAMPLED = "00-00000000000000000000000000000000-0000000000000000-00";
+
+    private static final String TRACE_PARENT_SAMPLED = "-01";
+
+    private static final String TRACE_PARENT_VERSION = "00-";
+
+    private final long parentSpanId;
+
+    private final boolean sampled;
+
+    private final long spanId;
+
+    private final long traceIdHigh;
+
+    private final long traceIdLow;
+
+    private TraceContext(long pTraceIdHigh, long pTraceIdLow, long pSpanId,
+            long pParentSpanId, boolean pSampled) {
+        traceIdHigh = pTraceIdHigh;
+        traceIdLow = pTraceIdLow;
+        spanId = pSpanId;
+        parentSpanId = pParentSpanId;
+        sampled = pSampled;
+    }
+
+    private static void appendHex(StringBuilder pBuilder, long pValue) {
+        String hex = Long.toHexString(pValue);
+        for (int i = hex.length(); i < 16; i++) {
+            pBuilder.append('0');
+        }
+        pBuilder.append(hex);
+    }
+
+    static String toHex(long pValue) {
+        StringBuilder builder = new StringBuilder(16);
+        appendHex(builder, pValue);
+        return builder.toString();
+    }
+
+    /**
+     * Parses a W3C {@code traceparent} string. The context returned belongs
+     * to the span that has propagated it.
+     *
+     * @param pTraceParent
+     *            the string to parse.
+     * @return the parsed context, {@link #NOT_SAMPLED} if the sampled flag
+     *         is not set, or null if the string is malformed.
+     */
+    public static TraceContext fromTraceParent(String pTraceParent) {
+        if (pTraceParent == null
+                || pTraceParent.length() != TRACE_PARENT_LENGTH
+                || !pTraceParent.startsWith(TRACE_PARENT_VERSION)
+                || pTraceParent.charAt(TRACE_PARENT_LENGTH - 3) != '-') {
+            return null;
+        }
+        try {
+            int flags = Integer.parseInt(
+                    pTraceParent.substring(TRACE_PARENT_LENGTH - 2), 16);
+            if ((flags & 1) == 0) {
+                return NOT_SAMPLED;
+            }
+            long high = Long.parseUnsignedLong(pTraceParent.substring(3, 19),
+                    16);
+            long low = Long.parseUnsignedLong(pTraceParent.substring(19, 35),
+                    16);
+            long span = Long.parseUnsignedLong(pTraceParent.substring(36, 52),
+                    16);
+            if ((high == 0 && low == 0) || span == 0) {
+                return null;
+            }
+            return new TraceContext(high, low, span, 0, true);
+        } catch (NumberFormatException e) { // NOSONAR
+            return null;
+        }
+    }
+
+    private static long newId() {
+        long id;
+        do {
+            id = ThreadLocalRandom.current().nextLong();
+        } while (id == 0);
+        return id;
+    }
+
+    /**
+     * @return the context of the root span of a new trace.
+     */
+    static TraceContext newRoot() {
+        return new TraceContext(newId(), newId(), newId(), 0, true);
+    }
+
+    public long getParentSpanId() {
+        return parentSpanId;
+    }
+
+    public long getSpanId() {
+        return spanId;
+    }
+
+    public long getTraceIdHigh() {
+        return traceIdHigh;
+    }
+
+    public long getTraceIdLow() {
+        return traceIdLow;
+    }
+
+    /**
+     * @return true if the spans of this trace must be recorded.
+     */
+    public boolean isSampled() {
+        return sampled;
+    }
+
+    /**
+     * @return the context of a new span, child of the span of this context.
+     */
+    TraceContext newChild() {
+        if (!sampled) {
+            return this;
+        }
+        return new TraceContext(traceIdHigh, traceIdLow, newId(), spanId,
+                true);
+    }
+
+    /**
+     * @return the trace id as 32 hexadecimal digits.
+     */
+    public String getTraceIdHex() {
+        StringBuilder builder = new StringBuilder(32);
+        appendHex(builder, traceIdHigh);
+        appendHex(builder, traceIdLow);
+        return builder.toString();
+    }
+
+    /**
+     * @return the W3C {@code traceparent} string of this context.
+     */
+    public String toTraceParent() {
+        if (!sampled) {
+            return TRACE_PARENT_NOT_SAMPLED;
+        }
+        StringBuilder builder = new StringBuilder(TRACE_PARENT_LENGTH);
+        builder.append(TRACE_PARENT_VERSION);
+        appendHex(builder, traceIdHigh);
+        appendHex(builder, traceIdLow);
+        builder.append('-');
+        appendHex(builder, spanId);
+        builder.append(TRACE_PARENT_SAMPLED);
+        return builder.toString();
+    }
+
+    @Override
+    public String toString() {
+        return "TraceContext[" + toTraceParent() + "]";
+    }
+}
@@ -0,0 +1,44 @@
+/**
+ * ==========================================================================
+ * Copyright © 2015-2019 Cristiano Gavião, C8 Technology ME.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Cristiano Gavião (cvgaviao@c8tech.com.br)- initial API and implementation
+ * ==========================================================================
+ */
+package br.com.c8tech.vxosgi.lib.trace;
+
+import org.osgi.annotation.versioning.ProviderType;
+
+/**
+ * The scope where a restored {@link TraceContext} is the current one of the
+ * thread. Closing it ends the span of the scope and restores the previous
+ * context.
+ *
+ * <pre>
+ * try (TraceScope scope = EventTracer.getInstance().restore(pEvent)) {
+ *     // handle the event
+ * }
+ * </pre>
+ *
+ * @since 0.1.1
+ * @author Cristiano Gavião
+ *
+ */
+@ProviderType
+public interface TraceScope extends AutoCloseable {
+
+    @Override
+    void close();
+
+    /**
+     * @return the context of the span of this scope or null if the handled
+     *         event was not sampled.
+     */
+    TraceContext getContext();
+}
@@ -0,0 +1,88 @@
+/**
+ * ==========================================================================
+ * Copyright © 2015-2019 Cristiano Gavião, C8 Technology ME.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Cristiano Gavião (cvgaviao@c8tech.com.br)- initial API and implementation
+ * ==========================================================================
+ */
+package br.com.c8tech.vxosgi.lib.cm;
+
+import java.util.Dictionary;
+
+import org.osgi.util.converter.Converters;
+
+import br.com.c8tech.vxosgi.lib.cm.ConfigurationBindersTest.ServerConfiguration;
+
+/**
+ * A simple timing harness comparing a generated binder with the reflective
+ * binding of the standard converter. Each operation binds the properties
+ * and reads every member, as a component does when it is activated or
+ * modified.
+ * <p>
+ * It is not run by the build, run its main method with the test class
+ * path, optionally passing the number of measured iterations.
+ *
+ * @since 0.1.1
+ * @author Cristiano Gavião
+ *
+ */
+public final class ConfigurationBindersBenchmark {
+
+    private static final int ROUNDS = 5;
+
+    private static long sink;
+
+    private ConfigurationBindersBenchmark() {
+    }
+
+    private static void consume(ServerConfiguration pConfiguration) {
+        sink += pConfiguration.host().length() + pConfiguration.port()
+                + pConfiguration.timeouts().length
+                + pConfiguration.unit().ordinal() + pConfiguration.workers()
+                + pConfiguration.name().length();
+    }
+
+    public static void main(String[] pArgs) {
+        int iterations = pArgs.length > 0 ? Integer.parseInt(pArgs[0])
+                : 200_000;
+        Dictionary<String, Object> properties = ConfigurationBindersTest
+                .properties();
+        ConfigurationBinder<ServerConfiguration> binder = ConfigurationBinders
+                .binderOf(ServerConfiguration.class);
+        if (!ConfigurationBinders.isGenerated(ServerConfiguration.class)) {
+            throw new IllegalStateException(
+                    "The binder was not generated, check the annotation processing of the tests.");
+        }
+        for (int round = 0; round < ROUNDS; round++) {
+            long generated = measure(iterations,
+                    () -> consume(binder.bind(properties)));
+            long reflective = measure(iterations,
+                    () -> consume(Converters.standardConverter()
+                            .convert(properties)
+                            .to(ServerConfiguration.class)));
+            System.out.printf(
+                    "round %d: generated %,d ns/op, reflective %,d ns/op (%.1fx)%n",
+                    round + 1, generated, reflective,
+                    (double) reflective / Math.max(1, generated));
+        }
+        System.out.println("sink " + sink);
+    }
+
+    private static long measure(int pIterations, Runnable pOperation) {
+        // the first half warms up the code being measured
+        for (int i = 0; i < pIterations / 2; i++) {
+            pOperation.run();
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < pIterations; i++) {
+            pOperation.run();
+        }
+        return (System.nanoTime() - start) / Math.max(1, pIterations);
+    }
+}
@@ -0,0 +1,141 @@
+/**
+ * ==========================================================================
+ * Copyright © 2015-2019 Cristiano Gavião, C8 Technology ME.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Cristiano Gavião (cvgaviao@c8tech.com.br)- initial API and implementation
+ * ==========================================================================
+ */
+package br.com.c8tech.vxosgi.lib.cm;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+import java.util.Dictionary;
+import java.util.Hashtable;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.osgi.util.converter.ConversionException;
+import org.osgi.util.converter.Converters;
+
+/**
+ * Checks that the generated binders behave as the reflective binding of the
+ * standard converter.
+ *
+ * @since 0.1.1
+ * @author Cristiano Gavião
+ *
+ */
+public class ConfigurationBindersTest {
+
+    /**
+     * A configuration type bound by a generated binder.
+     */
+    @ConfigurationBinding
+    public interface ServerConfiguration {
+
+        String host();
+
+        default String name() {
+            return "server-" + port();
+        }
+
+        int port();
+
+        long[] timeouts();
+
+        TimeUnit unit();
+
+        default int workers() {
+            return 4;
+        }
+    }
+
+    static Dictionary<String, Object> properties() {
+        Dictionary<String, Object> properties = new Hashtable<>();
+        properties.put("host", "localhost");
+        properties.put("port", "8080");
+        properties.put("timeouts", new String[] { "10", "20" });
+        properties.put("unit", "SECONDS");
+        return properties;
+    }
+
+    private static ServerConfiguration reflective(
+            Dictionary<String, Object> pProperties) {
+        return Converters.standardConverter().convert(pProperties)
+                .to(ServerConfiguration.class);
+    }
+
+    @Test
+    public void testBinderIsGenerated() {
+        assertTrue(ConfigurationBinders.isGenerated(ServerConfiguration.class));
+    }
+
+    @Test
+    public void testDefaultMethodsAreCalledWhenPropertiesAreMissing() {
+        ServerConfiguration configuration = ConfigurationBinders
+                .bind(ServerConfiguration.class, properties());
+        assertEquals(4, configuration.workers());
+        assertEquals("server-8080", configuration.name());
+    }
+
+    @Test
+    public void testDefaultMethodsReadTheirProperties() {
+        Dictionary<String, Object> properties = properties();
+        properties.put("workers", "16");
+        properties.put("name", "main");
+        ServerConfiguration generated = ConfigurationBinders
+                .bind(ServerConfiguration.class, properties);
+        ServerConfiguration reflective = reflective(properties);
+        assertEquals(16, generated.workers());
+        assertEquals("main", generated.name());
+        assertEquals(reflective.workers(), generated.workers());
+        assertEquals(reflective.name(), generated.name());
+    }
+
+    @Test
+    public void testGeneratedMatchesReflective() {
+        ServerConfiguration generated = ConfigurationBinders
+                .bind(ServerConfiguration.class, properties());
+        ServerConfiguration reflective = reflective(properties());
+        assertEquals(reflective.host(), generated.host());
+        assertEquals(reflective.port(), generated.port());
+        assertArrayEquals(reflective.timeouts(), generated.timeouts());
+        assertEquals(reflective.unit(), generated.unit());
+        assertEquals(reflective.workers(), generated.workers());
+        assertEquals(reflective.name(), generated.name());
+    }
+
+    @Test
+    public void testUnparsableValuesFailAsTheConverter() {
+        for (String key : Arrays.asList("port", "timeouts", "unit")) {
+            Dictionary<String, Object> properties = properties();
+            properties.put(key, "not-a-value");
+            ServerConfiguration reflective = reflective(properties);
+            try {
+                reflective.port();
+                reflective.timeouts();
+                reflective.unit();
+                fail("The converter accepted '" + key + "'.");
+            } catch (ConversionException e) { // NOSONAR
+                // expected
+            }
+            try {
+                ConfigurationBinders.bind(ServerConfiguration.class,
+                        properties);
+                fail("The binder accepted '" + key + "'.");
+            } catch (ConversionException e) { // NOSONAR
+                // expected
+            }
+        }
+    }
+}
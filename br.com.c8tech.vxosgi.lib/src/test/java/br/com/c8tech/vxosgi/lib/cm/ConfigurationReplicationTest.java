@@ -0,0 +1,291 @@
+/**
+ * ==========================================================================
+ * Copyright © 2015-2019 Cristiano Gavião, C8 Technology ME.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Cristiano Gavião (cvgaviao@c8tech.com.br)- initial API and implementation
+ * ==========================================================================
+ */
+package br.com.c8tech.vxosgi.lib.cm;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Dictionary;
+import java.util.Hashtable;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.osgi.framework.Constants;
+import org.osgi.service.cm.Configuration;
+import org.osgi.service.cm.ConfigurationAdmin;
+import org.osgi.service.cm.ConfigurationEvent;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.VertxOptions;
+import io.vertx.test.fakecluster.FakeClusterManager;
+
+/**
+ * Replicates configurations among nodes running their own clustered Vert.x
+ * instances, each one with an in memory ConfigurationAdmin.
+ *
+ * @since 0.1.1
+ * @author Cristiano Gavião
+ *
+ */
+public class ConfigurationReplicationTest {
+
+    /**
+     * A node of the cluster, with its own Vert.x, ConfigurationAdmin and
+     * replication.
+     */
+    private static final class Node {
+
+        private final Map<String, Hashtable<String, Object>> configurations = new ConcurrentHashMap<>();
+
+        private final ConfigurationReplication replication;
+
+        private final Vertx vertx;
+
+        private Node(String pNodeId, Vertx pVertx, ExecutorService pExecutor,
+                String... pExcludedPids) {
+            vertx = pVertx;
+            replication = new ConfigurationReplication(pVertx,
+                    configurationAdmin(), pExecutor, pNodeId, ADDRESS, 10,
+                    Collections.singletonList("*"),
+                    Arrays.asList(pExcludedPids));
+        }
+
+        private Configuration configuration(String pPid) {
+            return (Configuration) Proxy.newProxyInstance(
+                    getClass().getClassLoader(),
+                    new Class<?>[] { Configuration.class },
+                    (proxy, method, args) -> {
+                        switch (method.getName()) {
+                        case "getPid":
+                            return pPid;
+                        case "getFactoryPid":
+                            return null;
+                        case "getProperties":
+                            Hashtable<String, Object> current = configurations
+                                    .get(pPid);
+                            return current != null ? new Hashtable<>(current)
+                                    : null;
+                        case "update":
+                            @SuppressWarnings("unchecked")
+                            Dictionary<String, Object> properties = (Dictionary<String, Object>) args[0];
+                            update(pPid, properties);
+                            return null;
+                        case "delete":
+                            delete(pPid);
+                            return null;
+                        default:
+                            throw new UnsupportedOperationException(
+                                    method.getName());
+                        }
+                    });
+        }
+
+        private ConfigurationAdmin configurationAdmin() {
+            return (ConfigurationAdmin) Proxy.newProxyInstance(
+                    getClass().getClassLoader(),
+                    new Class<?>[] { ConfigurationAdmin.class },
+                    (proxy, method, args) -> {
+                        switch (method.getName()) {
+                        case "getConfiguration":
+                            return configuration((String) args[0]);
+                        case "listConfigurations":
+                            List<Configuration> found = new ArrayList<>();
+                            for (String pid : configurations.keySet()) {
+                                if (args[0] == null || args[0].equals("("
+                                        + Constants.SERVICE_PID + "=" + pid
+                                        + ")")) {
+                                    found.add(configuration(pid));
+                                }
+                            }
+                            return found.isEmpty() ? null
+                                    : found.toArray(new Configuration[0]);
+                        default:
+                            throw new UnsupportedOperationException(
+                                    method.getName());
+                        }
+                    });
+        }
+
+        private void delete(String pPid) {
+            if (configurations.remove(pPid) != null) {
+                replication.configurationChanged(new ConfigurationEvent(null,
+                        ConfigurationEvent.CM_DELETED, null, pPid));
+            }
+        }
+
+        private Object get(String pPid, String pKey) {
+            Hashtable<String, Object> properties = configurations.get(pPid);
+            return properties != null ? properties.get(pKey) : null;
+        }
+
+        private void update(String pPid, Dictionary<String, ?> pProperties) {
+            Hashtable<String, Object> properties = new Hashtable<>();
+            for (String key : Collections.list(pProperties.keys())) {
+                properties.put(key, pProperties.get(key));
+            }
+            properties.put(Constants.SERVICE_PID, pPid);
+            configurations.put(pPid, properties);
+            replication.configurationChanged(new ConfigurationEvent(null,
+                    ConfigurationEvent.CM_UPDATED, null, pPid));
+        }
+    }
+
+    private static final String ADDRESS = "test.cm.replication";
+
+    private ExecutorService executor;
+
+    private final List<Node> nodes = new ArrayList<>();
+
+    private static void await(BooleanSupplier pCondition)
+            throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!pCondition.getAsBoolean()) {
+            assertTrue("Timed out waiting the replication.",
+                    System.nanoTime() < deadline);
+            Thread.sleep(20);
+        }
+    }
+
+    private static Hashtable<String, Object> properties(Object... pPairs) {
+        Hashtable<String, Object> properties = new Hashtable<>();
+        for (int i = 0; i < pPairs.length; i += 2) {
+            properties.put((String) pPairs[i], pPairs[i + 1]);
+        }
+        return properties;
+    }
+
+    @Before
+    public void setUp() {
+        executor = Executors.newCachedThreadPool();
+    }
+
+    private Node startNode(String pNodeId, String... pExcludedPids)
+            throws Exception {
+        CompletableFuture<Vertx> started = new CompletableFuture<>();
+        Vertx.clusteredVertx(
+                new VertxOptions().setClusterManager(new FakeClusterManager()),
+                ar -> {
+                    if (ar.succeeded()) {
+                        started.complete(ar.result());
+                    } else {
+                        started.completeExceptionally(ar.cause());
+                    }
+                });
+        Node node = new Node(pNodeId, started.get(10, TimeUnit.SECONDS),
+                executor, pExcludedPids);
+        nodes.add(node);
+        node.replication.start();
+        await(node.replication::isListening);
+        return node;
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        for (Node node : nodes) {
+            node.replication.stop();
+            CompletableFuture<Void> closed = new CompletableFuture<>();
+            node.vertx.close(ar -> closed.complete(null));
+            closed.get(10, TimeUnit.SECONDS);
+        }
+        executor.shutdownNow();
+        FakeClusterManager.reset();
+    }
+
+    @Test
+    public void testChangesReachEveryNode() throws Exception {
+        Node a = startNode("a");
+        Node b = startNode("b");
+        Node c = startNode("c");
+
+        a.update("app", properties("size", 10, "name", "x"));
+        await(() -> Integer.valueOf(10).equals(b.get("app", "size"))
+                && Integer.valueOf(10).equals(c.get("app", "size")));
+
+        b.update("app", properties("size", 20));
+        await(() -> Integer.valueOf(20).equals(a.get("app", "size"))
+                && Integer.valueOf(20).equals(c.get("app", "size")));
+        assertNull(c.get("app", "name"));
+
+        c.delete("app");
+        await(() -> !a.configurations.containsKey("app")
+                && !b.configurations.containsKey("app"));
+    }
+
+    @Test
+    public void testLateNodeIsSynchronizedByItsPeers() throws Exception {
+        Node a = startNode("a");
+        Node b = startNode("b");
+        a.update("app", properties("size", 10));
+        await(() -> Integer.valueOf(10).equals(b.get("app", "size")));
+
+        Node late = startNode("late");
+        await(() -> Integer.valueOf(10).equals(late.get("app", "size")));
+        assertEquals(a.replication.getVersion("app"),
+                late.replication.getVersion("app"));
+    }
+
+    @Test
+    public void testLocalSettingsAreNotReplicated() throws Exception {
+        Node a = startNode("a", "replicator");
+        Node b = startNode("b", "replicator");
+
+        a.update("replicator", properties("cm.replication.node.id", "a"));
+        b.update("app", properties("cm.replication.address", "b.only"));
+        await(() -> a.configurations.containsKey("app"));
+        a.update("app", properties("size", 10,
+                "cm.replication.address", "a.only"));
+        await(() -> Integer.valueOf(10).equals(b.get("app", "size")));
+
+        assertEquals("b.only", b.get("app", "cm.replication.address"));
+        assertNull(b.configurations.get("replicator"));
+    }
+
+    @Test
+    public void testReconfigurationKeepsTheVersions() throws Exception {
+        Node a = startNode("a");
+        Node b = startNode("b");
+        a.update("app", properties("size", 10));
+        await(() -> Integer.valueOf(10).equals(b.get("app", "size")));
+        long version = b.replication.getVersion("app");
+
+        a.replication.reconfigure(ADDRESS, 5,
+                Arrays.asList("app", "other*"));
+        b.replication.reconfigure(ADDRESS, 5,
+                Arrays.asList("app", "other*"));
+        assertEquals(version, b.replication.getVersion("app"));
+
+        a.update("app", properties("size", 20));
+        await(() -> Integer.valueOf(20).equals(b.get("app", "size")));
+        assertEquals(version + 1, b.replication.getVersion("app"));
+
+        a.update("ignored", properties("size", 30));
+        a.update("other.app", properties("size", 40));
+        await(() -> Integer.valueOf(40).equals(b.get("other.app", "size")));
+        assertNull(b.configurations.get("ignored"));
+    }
+}
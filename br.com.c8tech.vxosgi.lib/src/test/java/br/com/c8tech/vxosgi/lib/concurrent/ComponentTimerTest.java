@@ -0,0 +1,114 @@
+/**
+ * ==========================================================================
+ * Copyright © 2015-2019 Cristiano Gavião, C8 Technology ME.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Cristiano Gavião (cvgaviao@c8tech.com.br)- initial API and implementation
+ * ==========================================================================
+ */
+package br.com.c8tech.vxosgi.lib.concurrent;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Checks the periodic rescheduling and the bulk cancellation of the
+ * {@link ComponentTimer}.
+ *
+ * @since 0.1.1
+ * @author Cristiano Gavião
+ *
+ */
+public class ComponentTimerTest {
+
+    private HashedWheelTimer wheelTimer;
+
+    @Before
+    public void createTimer() {
+        wheelTimer = new HashedWheelTimer("test-component-timer", 5,
+                TimeUnit.MILLISECONDS, 64);
+    }
+
+    @After
+    public void stopTimer() {
+        wheelTimer.stop();
+    }
+
+    @Test
+    public void testCancelAllStopsPeriodicTasks() throws InterruptedException {
+        ComponentTimer timer = new ComponentTimer(wheelTimer);
+        AtomicInteger executions = new AtomicInteger();
+        CountDownLatch started = new CountDownLatch(2);
+        timer.scheduleWithFixedDelay(() -> {
+            executions.incrementAndGet();
+            started.countDown();
+        }, 10, 10, TimeUnit.MILLISECONDS);
+        timer.schedule(() -> fail("A cancelled task must not run."), 1,
+                TimeUnit.SECONDS);
+        assertTrue(started.await(2, TimeUnit.SECONDS));
+
+        assertEquals(2, timer.cancelAll());
+        assertTrue(timer.isClosed());
+        assertEquals(0, timer.getPendingCount());
+        int afterCancel = executions.get();
+        TimeUnit.MILLISECONDS.sleep(60);
+        // at most the execution running during the cancellation
+        assertTrue(executions.get() <= afterCancel + 1);
+        try {
+            timer.schedule(() -> {
+            }, 10, TimeUnit.MILLISECONDS);
+            fail("A closed component timer must refuse new tasks.");
+        } catch (IllegalStateException e) { // NOSONAR
+            // expected
+        }
+    }
+
+    @Test
+    public void testOneShotTaskIsForgottenAfterRunning()
+            throws InterruptedException {
+        ComponentTimer timer = new ComponentTimer(wheelTimer);
+        CountDownLatch done = new CountDownLatch(1);
+        Timeout timeout = timer.schedule(done::countDown, 10,
+                TimeUnit.MILLISECONDS);
+        assertEquals(1, timer.getPendingCount());
+        assertTrue(done.await(2, TimeUnit.SECONDS));
+        assertTrue(timeout.isExpired());
+        assertFalse(timeout.cancel());
+        assertEquals(0, timer.getPendingCount());
+    }
+
+    @Test
+    public void testPeriodicTaskIsRescheduledAfterEachExecution()
+            throws InterruptedException {
+        ComponentTimer timer = new ComponentTimer(wheelTimer);
+        CountDownLatch executions = new CountDownLatch(5);
+        AtomicInteger failures = new AtomicInteger();
+        Timeout timeout = timer.scheduleWithFixedDelay(() -> {
+            executions.countDown();
+            if (failures.getAndIncrement() == 0) {
+                // a failing execution must not stop the next ones
+                throw new IllegalStateException("failure");
+            }
+        }, 5, 10, TimeUnit.MILLISECONDS);
+        assertTrue(executions.await(2, TimeUnit.SECONDS));
+        assertFalse(timeout.isExpired());
+        assertEquals(1, timer.getPendingCount());
+        assertTrue(timeout.cancel());
+        assertEquals(0, timer.getPendingCount());
+    }
+}
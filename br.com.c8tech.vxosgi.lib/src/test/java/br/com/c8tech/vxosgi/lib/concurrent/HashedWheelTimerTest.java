@@ -0,0 +1,146 @@
+/**
+ * ==========================================================================
+ * Copyright © 2015-2019 Cristiano Gavião, C8 Technology ME.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Cristiano Gavião (cvgaviao@c8tech.com.br)- initial API and implementation
+ * ==========================================================================
+ */
+package br.com.c8tech.vxosgi.lib.concurrent;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Checks the expiration and the cancellation of the timeouts of the
+ * {@link HashedWheelTimer}.
+ *
+ * @since 0.1.1
+ * @author Cristiano Gavião
+ *
+ */
+public class HashedWheelTimerTest {
+
+    private HashedWheelTimer timer;
+
+    @Before
+    public void createTimer() {
+        // a small wheel, so the longer delays take more than one round
+        timer = new HashedWheelTimer("test-wheel-timer", 5,
+                TimeUnit.MILLISECONDS, 8);
+    }
+
+    @After
+    public void stopTimer() {
+        timer.stop();
+    }
+
+    @Test
+    public void testCancelledTimeoutNeverExpires()
+            throws InterruptedException {
+        CountDownLatch expired = new CountDownLatch(1);
+        Timeout cancelled = timer.schedule(
+                () -> fail("A cancelled timeout must not expire."), 20,
+                TimeUnit.MILLISECONDS);
+        timer.schedule(expired::countDown, 60, TimeUnit.MILLISECONDS);
+
+        assertTrue(cancelled.cancel());
+        assertFalse(cancelled.cancel());
+        assertTrue(cancelled.isCancelled());
+        assertTrue(expired.await(2, TimeUnit.SECONDS));
+        assertFalse(cancelled.isExpired());
+        // the cancelled timeout is discounted on the next tick
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(2);
+        while (timer.getPendingCount() > 0 && System.nanoTime() < deadline) {
+            TimeUnit.MILLISECONDS.sleep(5);
+        }
+        assertEquals(0, timer.getPendingCount());
+    }
+
+    @Test
+    public void testSharedInstanceCanNotBeStopped() {
+        try {
+            HashedWheelTimer.getSharedInstance().stop();
+            fail("The shared timer must only be stopped with its bundle.");
+        } catch (UnsupportedOperationException e) { // NOSONAR
+            // expected
+        }
+    }
+
+    @Test
+    public void testSharedInstanceFollowsBundleLifecycle() {
+        HashedWheelTimer shared = HashedWheelTimer.getSharedInstance();
+        HashedWheelTimer.closeSharedInstance();
+        try {
+            try {
+                shared.schedule(() -> {
+                }, 10, TimeUnit.MILLISECONDS);
+                fail("The stopped shared timer must refuse new timeouts.");
+            } catch (IllegalStateException e) { // NOSONAR
+                // expected
+            }
+            try {
+                HashedWheelTimer.getSharedInstance();
+                fail("The shared timer must not be created again while "
+                        + "its bundle is stopped.");
+            } catch (IllegalStateException e) { // NOSONAR
+                // expected
+            }
+        } finally {
+            HashedWheelTimer.openSharedInstance();
+        }
+        assertNotSame(shared, HashedWheelTimer.getSharedInstance());
+    }
+
+    @Test
+    public void testStoppedTimerRefusesTimeouts() {
+        timer.stop();
+        try {
+            timer.schedule(() -> {
+            }, 10, TimeUnit.MILLISECONDS);
+            fail("A stopped timer must refuse new timeouts.");
+        } catch (IllegalStateException e) { // NOSONAR
+            // expected
+        }
+    }
+
+    @Test
+    public void testTimeoutsExpireInDeadlineOrder()
+            throws InterruptedException {
+        List<Integer> expired = Collections
+                .synchronizedList(new ArrayList<>());
+        CountDownLatch done = new CountDownLatch(4);
+        // scheduled out of order, the longest ones span several rounds
+        for (int delay : new int[] { 120, 15, 70, 40 }) {
+            timer.schedule(() -> {
+                expired.add(delay);
+                done.countDown();
+            }, delay, TimeUnit.MILLISECONDS);
+        }
+        long start = System.nanoTime();
+        assertTrue(done.await(2, TimeUnit.SECONDS));
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS
+                .toNanos(110));
+        assertEquals(Arrays.asList(15, 40, 70, 120), expired);
+        assertEquals(0, timer.getPendingCount());
+    }
+}
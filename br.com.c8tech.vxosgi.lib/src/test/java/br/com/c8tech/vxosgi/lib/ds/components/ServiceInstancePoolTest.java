@@ -0,0 +1,177 @@
+/**
+ * ==========================================================================
+ * Copyright © 2015-2019 Cristiano Gavião, C8 Technology ME.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Cristiano Gavião (cvgaviao@c8tech.com.br)- initial API and implementation
+ * ==========================================================================
+ */
+package br.com.c8tech.vxosgi.lib.ds.components;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+/**
+ * Checks the reuse order, the eviction and the closing of the
+ * {@link ServiceInstancePool}.
+ *
+ * @since 0.1.1
+ * @author Cristiano Gavião
+ *
+ */
+public class ServiceInstancePoolTest {
+
+    /**
+     * Creates numbered instances and remembers the destroyed ones.
+     */
+    static final class CountingHandler
+            implements PooledServiceHandler<StringBuilder> {
+
+        private int count;
+
+        private final List<StringBuilder> destroyed = new ArrayList<>();
+
+        @Override
+        public StringBuilder create() {
+            return new StringBuilder("instance-" + count++);
+        }
+
+        @Override
+        public void destroy(StringBuilder pInstance) {
+            destroyed.add(pInstance);
+        }
+
+        @Override
+        public boolean reset(StringBuilder pInstance) {
+            return pInstance.indexOf("broken") < 0;
+        }
+    }
+
+    @Test
+    public void testBorrowAfterCloseFails() {
+        CountingHandler handler = new CountingHandler();
+        ServiceInstancePool<StringBuilder> pool = new ServiceInstancePool<>(
+                handler, 4, 0);
+        pool.close();
+        try {
+            pool.borrow();
+            fail("A closed pool must not hand out instances.");
+        } catch (IllegalStateException e) { // NOSONAR
+            // expected
+        }
+        assertEquals(0, pool.getCreationCount());
+    }
+
+    @Test
+    public void testCloseDestroysIdleAndReturnedInstances() {
+        CountingHandler handler = new CountingHandler();
+        ServiceInstancePool<StringBuilder> pool = new ServiceInstancePool<>(
+                handler, 4, 0);
+        StringBuilder idle = pool.borrow();
+        StringBuilder inUse = pool.borrow();
+        pool.giveBack(idle);
+        pool.close();
+        assertTrue(pool.isClosed());
+        assertEquals(0, pool.getIdleCount());
+        assertEquals(1, handler.destroyed.size());
+        assertSame(idle, handler.destroyed.get(0));
+
+        pool.giveBack(inUse);
+        assertEquals(0, pool.getIdleCount());
+        assertEquals(2, pool.getDestructionCount());
+        assertSame(inUse, handler.destroyed.get(1));
+    }
+
+    @Test
+    public void testEvictIdleReleasesQuietPool() throws InterruptedException {
+        CountingHandler handler = new CountingHandler();
+        ServiceInstancePool<StringBuilder> pool = new ServiceInstancePool<>(
+                handler, 4, TimeUnit.MILLISECONDS.toNanos(50));
+        StringBuilder first = pool.borrow();
+        StringBuilder second = pool.borrow();
+        pool.giveBack(first);
+        pool.giveBack(second);
+        assertEquals(0, pool.evictIdle());
+
+        TimeUnit.MILLISECONDS.sleep(80);
+        assertEquals(2, pool.evictIdle());
+        assertEquals(0, pool.getIdleCount());
+        assertEquals(2, pool.getDestructionCount());
+    }
+
+    @Test
+    public void testGiveBackEvictsOnlyInstancesIdleLongerThanTimeout()
+            throws InterruptedException {
+        CountingHandler handler = new CountingHandler();
+        ServiceInstancePool<StringBuilder> pool = new ServiceInstancePool<>(
+                handler, 4, TimeUnit.MILLISECONDS.toNanos(50));
+        StringBuilder eldest = pool.borrow();
+        StringBuilder recent = pool.borrow();
+        pool.giveBack(eldest);
+        TimeUnit.MILLISECONDS.sleep(80);
+        pool.giveBack(recent);
+
+        assertEquals(1, pool.getIdleCount());
+        assertEquals(1, handler.destroyed.size());
+        assertSame(eldest, handler.destroyed.get(0));
+        assertSame(recent, pool.borrow());
+    }
+
+    @Test
+    public void testKeepsAtMostMaxIdleInstances() {
+        CountingHandler handler = new CountingHandler();
+        ServiceInstancePool<StringBuilder> pool = new ServiceInstancePool<>(
+                handler, 1, 0);
+        StringBuilder first = pool.borrow();
+        StringBuilder second = pool.borrow();
+        pool.giveBack(first);
+        pool.giveBack(second);
+        assertEquals(1, pool.getIdleCount());
+        assertSame(second, handler.destroyed.get(0));
+    }
+
+    @Test
+    public void testReusesMostRecentlyReturnedInstanceFirst() {
+        CountingHandler handler = new CountingHandler();
+        ServiceInstancePool<StringBuilder> pool = new ServiceInstancePool<>(
+                handler, 4, 0);
+        StringBuilder first = pool.borrow();
+        StringBuilder second = pool.borrow();
+        StringBuilder third = pool.borrow();
+        pool.giveBack(first);
+        pool.giveBack(second);
+        pool.giveBack(third);
+
+        assertSame(third, pool.borrow());
+        assertSame(second, pool.borrow());
+        assertSame(first, pool.borrow());
+        assertEquals(3, pool.getCreationCount());
+        assertEquals(6, pool.getBorrowCount());
+        assertEquals(0.5d, pool.getHitRate(), 0d);
+    }
+
+    @Test
+    public void testUnresettableInstanceIsDestroyed() {
+        CountingHandler handler = new CountingHandler();
+        ServiceInstancePool<StringBuilder> pool = new ServiceInstancePool<>(
+                handler, 4, 0);
+        StringBuilder instance = pool.borrow();
+        instance.append("-broken");
+        pool.giveBack(instance);
+        assertEquals(0, pool.getIdleCount());
+        assertSame(instance, handler.destroyed.get(0));
+    }
+}
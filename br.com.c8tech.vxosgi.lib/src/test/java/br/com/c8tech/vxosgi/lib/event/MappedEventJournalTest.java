@@ -0,0 +1,215 @@
+/**
+ * ==========================================================================
+ * Copyright © 2015-2019 Cristiano Gavião, C8 Technology ME.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Cristiano Gavião (cvgaviao@c8tech.com.br)- initial API and implementation
+ * ==========================================================================
+ */
+package br.com.c8tech.vxosgi.lib.event;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.osgi.service.event.Event;
+
+import br.com.c8tech.vxosgi.lib.event.MappedEventJournal.FsyncPolicy;
+
+/**
+ * Checks the appending, the recovery and the replay of the
+ * {@link MappedEventJournal}, across reopenings.
+ *
+ * @since 0.1.1
+ * @author Cristiano Gavião
+ *
+ */
+public class MappedEventJournalTest {
+
+    private static final String CONSUMER = "consumer";
+
+    private static final int SEGMENT_SIZE = 4096;
+
+    private static final String TOPIC = "vxosgi/test/journal";
+
+    private Path directory;
+
+    private static Event event(int pSequence) {
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("sequence", pSequence);
+        properties.put("name", "event-" + pSequence);
+        return new Event(TOPIC, properties);
+    }
+
+    @Before
+    public void createDirectory() throws IOException {
+        directory = Files.createTempDirectory("journal-test");
+    }
+
+    @After
+    public void deleteDirectory() throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> {
+                try {
+                    Files.delete(path);
+                } catch (IOException e) { // NOSONAR
+                    // left behind in the temporary directory
+                }
+            });
+        }
+    }
+
+    private MappedEventJournal open() throws IOException {
+        return new MappedEventJournal(directory,
+                Collections.singleton("vxosgi/test/*"), SEGMENT_SIZE,
+                FsyncPolicy.NEVER, 60_000L, 0L, 0L);
+    }
+
+    private static List<Integer> replay(MappedEventJournal pJournal,
+            long pFromOffset, List<Long> pOffsets) {
+        List<Integer> sequences = new ArrayList<>();
+        pJournal.replay(pFromOffset, (offset, event) -> {
+            assertEquals(offset,
+                    ((Long) event.getProperty(EventJournal.PROPERTY_OFFSET))
+                            .longValue());
+            assertEquals("event-" + event.getProperty("sequence"),
+                    event.getProperty("name"));
+            if (pOffsets != null) {
+                pOffsets.add(offset);
+            }
+            sequences.add((Integer) event.getProperty("sequence"));
+        });
+        return sequences;
+    }
+
+    @Test
+    public void testCommitIsNeverMovedBackwards() throws IOException {
+        try (MappedEventJournal journal = open()) {
+            long first = journal.append(event(0));
+            long second = journal.append(event(1));
+            journal.commit(CONSUMER, second);
+            long stored = journal.getStoredOffset(CONSUMER);
+            journal.commit(CONSUMER, first);
+            assertEquals(stored, journal.getStoredOffset(CONSUMER));
+            assertEquals(journal.getNextOffset(), stored);
+        }
+    }
+
+    @Test
+    public void testCommitIsWrittenByCloseOnly() throws IOException {
+        Path file = directory.resolve("consumer-offsets.properties");
+        MappedEventJournal journal = open();
+        try {
+            journal.commit(CONSUMER, journal.append(event(0)));
+            assertFalse(Files.exists(file));
+        } finally {
+            journal.close();
+        }
+        assertTrue(Files.exists(file));
+    }
+
+    @Test
+    public void testCommitOfUnknownOffsetFails() throws IOException {
+        try (MappedEventJournal journal = open()) {
+            journal.append(event(0));
+            try {
+                journal.commit(CONSUMER, journal.getNextOffset() + 1);
+                fail("An offset beyond the journal must be rejected.");
+            } catch (IllegalArgumentException e) { // NOSONAR
+                // expected
+            }
+        }
+    }
+
+    @Test
+    public void testCommittedOffsetSurvivesReopening() throws IOException {
+        List<Long> offsets = new ArrayList<>();
+        try (MappedEventJournal journal = open()) {
+            for (int i = 0; i < 10; i++) {
+                offsets.add(journal.append(event(i)));
+            }
+            journal.commit(CONSUMER, offsets.get(5));
+        }
+        try (MappedEventJournal journal = open()) {
+            long resumeAt = journal.getStoredOffset(CONSUMER);
+            assertEquals(offsets.get(6).longValue(), resumeAt);
+            assertEquals(Arrays.asList(6, 7, 8, 9),
+                    replay(journal, resumeAt, null));
+        }
+    }
+
+    @Test
+    public void testReplayAcrossSegmentsAfterReopening() throws IOException {
+        List<Long> appended = new ArrayList<>();
+        try (MappedEventJournal journal = open()) {
+            for (int i = 0; i < 200; i++) {
+                appended.add(journal.append(event(i)));
+            }
+            assertTrue(journal.getSegmentCount() > 1);
+            assertEquals(200, journal.getAppendedCount());
+        }
+        try (MappedEventJournal journal = open()) {
+            List<Long> replayed = new ArrayList<>();
+            List<Integer> sequences = replay(journal, 0L, replayed);
+            assertEquals(200, sequences.size());
+            for (int i = 0; i < sequences.size(); i++) {
+                assertEquals(i, sequences.get(i).intValue());
+            }
+            assertEquals(appended, replayed);
+            // new events follow the recovered ones
+            assertTrue(journal.append(event(200)) > appended.get(199));
+        }
+    }
+
+    @Test
+    public void testTornRecordEndsTheRecoveredData() throws IOException {
+        long third;
+        try (MappedEventJournal journal = open()) {
+            journal.append(event(0));
+            journal.append(event(1));
+            third = journal.append(event(2));
+        }
+        Path segment = directory.resolve(String.format("%020d", 0L)
+                + ".journal");
+        try (FileChannel channel = FileChannel.open(segment,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            // breaks the payload of the third record, its CRC no longer
+            // matches
+            ByteBuffer last = ByteBuffer.allocate(1);
+            channel.read(last, third + 12);
+            last.put(0, (byte) (last.get(0) ^ 0xFF));
+            last.rewind();
+            channel.write(last, third + 12);
+        }
+        try (MappedEventJournal journal = open()) {
+            assertEquals(Arrays.asList(0, 1),
+                    replay(journal, 0L, null));
+            assertEquals(third, journal.getNextOffset());
+            assertEquals(third, journal.append(event(3)));
+        }
+    }
+}
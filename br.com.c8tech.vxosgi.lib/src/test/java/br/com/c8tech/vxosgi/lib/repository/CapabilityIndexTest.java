@@ -0,0 +1,322 @@
+/**
+ * ==========================================================================
+ * Copyright © 2015-2019 Cristiano Gavião, C8 Technology ME.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Cristiano Gavião (cvgaviao@c8tech.com.br)- initial API and implementation
+ * ==========================================================================
+ */
+package br.com.c8tech.vxosgi.lib.repository;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.osgi.framework.Filter;
+import org.osgi.framework.FrameworkUtil;
+import org.osgi.framework.InvalidSyntaxException;
+import org.osgi.framework.Version;
+import org.osgi.framework.namespace.IdentityNamespace;
+import org.osgi.resource.Capability;
+import org.osgi.resource.Namespace;
+import org.osgi.resource.Requirement;
+import org.osgi.resource.Resource;
+import org.osgi.service.repository.Repository;
+
+/**
+ * Checks the extraction of the equality terms of the requirement filters and
+ * that the answers read from the candidate buckets of the
+ * {@link CapabilityIndex} are the ones of a full scan of the capabilities.
+ *
+ * @since 0.1.1
+ * @author Cristiano Gavião
+ *
+ */
+public class CapabilityIndexTest {
+
+    /**
+     * A capability of a {@link TestResource}.
+     */
+    private static final class TestCapability implements Capability {
+
+        private final Map<String, Object> attributes;
+
+        private final String namespace;
+
+        private final Resource resource;
+
+        private TestCapability(Resource pResource, String pNamespace,
+                Map<String, Object> pAttributes) {
+            resource = pResource;
+            namespace = pNamespace;
+            attributes = pAttributes;
+        }
+
+        @Override
+        public Map<String, Object> getAttributes() {
+            return attributes;
+        }
+
+        @Override
+        public Map<String, String> getDirectives() {
+            return Collections.emptyMap();
+        }
+
+        @Override
+        public String getNamespace() {
+            return namespace;
+        }
+
+        @Override
+        public Resource getResource() {
+            return resource;
+        }
+
+        @Override
+        public String toString() {
+            return namespace + attributes;
+        }
+    }
+
+    /**
+     * A resource providing an identity and some package capabilities.
+     */
+    private static final class TestResource implements Resource {
+
+        private final List<Capability> capabilities = new ArrayList<>();
+
+        private TestResource(String pName) {
+            capabilities.add(new TestCapability(this,
+                    IdentityNamespace.IDENTITY_NAMESPACE,
+                    Collections.singletonMap(
+                            IdentityNamespace.IDENTITY_NAMESPACE, pName)));
+        }
+
+        private TestResource provide(Object... pAttributes) {
+            Map<String, Object> attributes = new HashMap<>();
+            for (int i = 0; i < pAttributes.length; i += 2) {
+                attributes.put((String) pAttributes[i], pAttributes[i + 1]);
+            }
+            capabilities.add(new TestCapability(this, PACKAGE, attributes));
+            return this;
+        }
+
+        @Override
+        public List<Capability> getCapabilities(String pNamespace) {
+            List<Capability> result = new ArrayList<>();
+            for (Capability capability : capabilities) {
+                if (pNamespace == null
+                        || pNamespace.equals(capability.getNamespace())) {
+                    result.add(capability);
+                }
+            }
+            return result;
+        }
+
+        @Override
+        public List<Requirement> getRequirements(String pNamespace) {
+            return Collections.emptyList();
+        }
+    }
+
+    private static final String PACKAGE = "osgi.wiring.package";
+
+    private static final String[] FILTERS = { null, "(osgi.wiring.package=foo)",
+            "(&(osgi.wiring.package=foo)(version>=1.1.0))",
+            "(&(|(osgi.wiring.package=foo)(osgi.wiring.package=bar))(version>=1.0.0))",
+            "(&(osgi.wiring.package=foo)(|(vendor=acme)(vendor=other)))",
+            "(&(vendor=acme)(tags=web)(osgi.wiring.package=bar))",
+            "(|(osgi.wiring.package=foo)(osgi.wiring.package=baz))",
+            "(!(osgi.wiring.package=foo))", "(osgi.wiring.package=fo*)",
+            "(tags=web)", "(tags=*)", "(mixed=1)",
+            "(&(osgi.wiring.package=foo)(mixed=1))",
+            "(&(osgi.wiring.package=missing)(version>=1.0.0))",
+            "(vendor=nobody)" };
+
+    private List<TestResource> first;
+
+    private List<TestResource> second;
+
+    private static void assertTerms(String pFilter, String... pExpected) {
+        List<String[]> terms = CapabilityIndex.equalityTerms(pFilter);
+        assertEquals(pFilter, pExpected.length / 2, terms.size());
+        for (int i = 0; i < terms.size(); i++) {
+            assertArrayEquals(pFilter,
+                    new String[] { pExpected[2 * i], pExpected[2 * i + 1] },
+                    terms.get(i));
+        }
+    }
+
+    private static Repository repository(List<TestResource> pResources) {
+        return (Repository) Proxy.newProxyInstance(
+                CapabilityIndexTest.class.getClassLoader(),
+                new Class<?>[] { Repository.class }, (proxy, method, args) -> {
+                    if (!"findProviders".equals(method.getName())
+                            || !(args[0] instanceof Collection)) {
+                        throw new UnsupportedOperationException(
+                                method.getName());
+                    }
+                    Map<Requirement, Collection<Capability>> result = new HashMap<>();
+                    for (Object requirement : (Collection<?>) args[0]) {
+                        List<Capability> identities = new ArrayList<>();
+                        for (TestResource resource : pResources) {
+                            identities.addAll(resource.getCapabilities(
+                                    IdentityNamespace.IDENTITY_NAMESPACE));
+                        }
+                        result.put((Requirement) requirement, identities);
+                    }
+                    return result;
+                });
+    }
+
+    private static Collection<Capability> scan(String pFilter,
+            List<List<TestResource>> pRepositories)
+            throws InvalidSyntaxException {
+        Filter filter = pFilter != null ? FrameworkUtil.createFilter(pFilter)
+                : null;
+        List<Capability> result = new ArrayList<>();
+        for (List<TestResource> repository : pRepositories) {
+            for (TestResource resource : repository) {
+                for (Capability capability : resource
+                        .getCapabilities(PACKAGE)) {
+                    if (filter == null
+                            || filter.matches(capability.getAttributes())) {
+                        result.add(capability);
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    @Before
+    public void setUp() {
+        first = Arrays.asList(
+                new TestResource("a")
+                        .provide(PACKAGE, "foo", "version",
+                                Version.parseVersion("1.0.0"), "vendor",
+                                "acme", "tags", Arrays.asList("web", "core"))
+                        .provide(PACKAGE, "bar", "version",
+                                Version.parseVersion("2.0.0"), "vendor",
+                                "acme", "tags", Arrays.asList("web", "web")),
+                new TestResource("b")
+                        .provide(PACKAGE, "foo", "version",
+                                Version.parseVersion("1.2.0"), "vendor",
+                                "other", "mixed", Long.valueOf(1))
+                        .provide(PACKAGE, "baz", "version",
+                                Version.parseVersion("1.0.0"), "mixed",
+                                "1"));
+        second = Arrays.asList(new TestResource("c")
+                .provide(PACKAGE, "foo", "version",
+                        Version.parseVersion("1.5.0"), "vendor", "acme",
+                        "mixed", "1")
+                .provide(PACKAGE, "qux", "version",
+                        Version.parseVersion("0.1.0"), "tags",
+                        Collections.singletonList("web")));
+    }
+
+    @Test
+    public void testAnswersAgreeWithFullScan() throws Exception {
+        CapabilityIndex index = new CapabilityIndex(0);
+        index.index(1L, repository(first));
+        index.index(2L, repository(second));
+        List<List<TestResource>> repositories = Arrays.asList(first, second);
+        for (String filter : FILTERS) {
+            Collection<Capability> expected = scan(filter, repositories);
+            Collection<Capability> answer = index
+                    .findProviders(new IndexRequirement(PACKAGE, filter));
+            assertEquals(filter, expected.size(), answer.size());
+            assertEquals(filter, new HashSet<>(expected),
+                    new HashSet<>(answer));
+        }
+    }
+
+    @Test
+    public void testBatchedAnswersAgreeWithFullScan() throws Exception {
+        CapabilityIndex index = new CapabilityIndex(16);
+        index.index(1L, repository(first));
+        index.index(2L, repository(second));
+        List<List<TestResource>> repositories = Arrays.asList(first, second);
+        List<Requirement> requirements = new ArrayList<>();
+        for (String filter : FILTERS) {
+            // the same lookup twice, evaluated once
+            requirements.add(new IndexRequirement(PACKAGE, filter));
+            requirements.add(new IndexRequirement(PACKAGE, filter));
+        }
+        for (int round = 0; round < 2; round++) {
+            Map<Requirement, Collection<Capability>> answers = index
+                    .findProviders(requirements);
+            for (Requirement requirement : requirements) {
+                String filter = requirement.getDirectives()
+                        .get(Namespace.REQUIREMENT_FILTER_DIRECTIVE);
+                assertEquals(filter,
+                        new HashSet<>(scan(filter, repositories)),
+                        new HashSet<>(answers.get(requirement)));
+            }
+        }
+        assertEquals(FILTERS.length, index.getMissCount());
+        assertEquals(2 * FILTERS.length, index.getHitCount());
+    }
+
+    @Test
+    public void testEqualityTermsOfConjunction() {
+        assertTerms("  (&(a=1)(b>=2)(c~=x)(d<=3)(e=*)(f=x*y)(g=2)) ", "a",
+                "1", "g", "2");
+    }
+
+    @Test
+    public void testEqualityTermsOfSingleItem() {
+        assertTerms("(osgi.wiring.package=foo)", PACKAGE, "foo");
+        assertTerms("(osgi.wiring.package=fo*)");
+        assertTerms("(version>=1.0.0)");
+        assertTerms("(|(a=1)(a=2))");
+        assertTerms("(!(a=1))");
+    }
+
+    @Test
+    public void testEqualityTermsSkipNestedOperations() {
+        assertTerms("(&(|(a=1)(b=2))(c=3)(!(d=4))(&(e=5)))", "c", "3");
+        assertTerms("(&(|(a=\\))(a=2))(b=3))", "b", "3");
+        assertTerms("(&(|(a=1)(&(b=2)(c=3)))(!(|(d=4)(e=5))))");
+    }
+
+    @Test
+    public void testEqualityTermsWithEscapedValues() {
+        assertTerms("(&(name=a\\(b\\)c)(path=x\\*y)(z=1))", "name", "a(b)c",
+                "path", "x*y", "z", "1");
+        assertTerms("(a=x\\\\)", "a", "x\\");
+        assertTerms("(&(a=x\\\\)(b=2))", "a", "x\\", "b", "2");
+        assertTerms("(a=\\*)", "a", "*");
+    }
+
+    @Test
+    public void testReindexingDiscardsCachedAnswers() throws Exception {
+        CapabilityIndex index = new CapabilityIndex(16);
+        index.index(1L, repository(first));
+        Requirement requirement = new IndexRequirement(PACKAGE,
+                "(osgi.wiring.package=foo)");
+        assertEquals(2, index.findProviders(requirement).size());
+        index.index(2L, repository(second));
+        assertEquals(3, index.findProviders(requirement).size());
+        assertTrue(index.remove(1L));
+        assertEquals(1, index.findProviders(requirement).size());
+        assertEquals(0, index.getHitCount());
+    }
+}